@@ -0,0 +1,44 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.api;
+
+import it.water.core.api.model.Resource;
+import it.water.permission.model.ActionSet;
+
+/**
+ * Permission manager extension checking sets of actions, for resources defining more than the 64 actions
+ * a core Action id can address.
+ * Checks follow the same rules of the PermissionManager checks, a set is granted when all its actions are.
+ */
+public interface ActionSetPermissionManager {
+
+    /**
+     * @param username     username
+     * @param resourceName resource type
+     * @param actions      actions to check
+     * @return true if all the actions are granted on the resource type
+     */
+    boolean checkActions(String username, String resourceName, ActionSet actions);
+
+    /**
+     * @param username username
+     * @param entity   entity
+     * @param actions  actions to check
+     * @return true if all the actions are granted on the entity
+     */
+    boolean checkActions(String username, Resource entity, ActionSet actions);
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.api;
+
+import it.water.core.api.action.Action;
+import it.water.core.api.model.Resource;
+import it.water.permission.model.AuthorizedResourceIds;
+
+/**
+ * Permission manager extension listing the entities a user is authorized on, instead of checking them one by one.
+ * Services push the returned ids into their own queries, so list endpoints scale with the page size
+ * rather than with the size of the table.
+ */
+public interface AuthorizedIdsManager {
+
+    /**
+     * @param username      username
+     * @param resourceClass resource type
+     * @param action        action to check
+     * @return ids of the entities on which the action is granted to the user
+     */
+    AuthorizedResourceIds findAuthorizedIds(String username, Class<? extends Resource> resourceClass, Action action);
+}
@@ -2,8 +2,19 @@ package it.water.permission.api;
 
 import it.water.core.api.service.BaseEntityApi;
 
+import it.water.permission.model.EffectivePermissionReport;
+import it.water.permission.model.PermissionBatchItemResult;
+import it.water.permission.model.PermissionChangePage;
+import it.water.permission.model.PermissionDecisionData;
+import it.water.permission.model.PermissionGranteePage;
+import it.water.permission.model.PermissionIndexPreloadStatus;
+import it.water.permission.model.PermissionSearchPage;
+import it.water.permission.model.PermissionSnapshotReport;
+import it.water.permission.model.PermissionTransferReport;
 import it.water.permission.model.WaterPermission;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -20,4 +31,163 @@ public interface PermissionApi extends BaseEntityApi<WaterPermission> {
      * @return
      */
     Map<String, Map<String, Map<String, Boolean>>> entityPermissionMap(Map<String, List<Long>> entityPks);
-}
\ No newline at end of file
+
+    /**
+     * Saves all the given permissions inside a single transaction.
+     *
+     * @param permissions permissions to save
+     * @return one result for each permission, in the same order of the input list
+     */
+    List<PermissionBatchItemResult> saveAll(List<WaterPermission> permissions);
+
+    /**
+     * Updates all the given permissions inside a single transaction.
+     *
+     * @param permissions permissions to update
+     * @return one result for each permission, in the same order of the input list
+     */
+    List<PermissionBatchItemResult> updateAll(List<WaterPermission> permissions);
+
+    /**
+     * Removes all the permissions with the given ids inside a single transaction.
+     *
+     * @param ids ids of the permissions to remove
+     * @return one result for each id, in the same order of the input list
+     */
+    List<PermissionBatchItemResult> removeAll(List<Long> ids);
+
+    /**
+     * Find all the permissions with the given ids
+     *
+     * @param ids ids of the permissions
+     * @return found permissions, missing ids are ignored
+     */
+    List<WaterPermission> findByIds(List<Long> ids);
+
+    /**
+     * Keyset paginated search on permissions.
+     * Every filter is optional, null values are ignored.
+     * Cost of each page does not depend on its position since pages are fetched starting from the last returned id.
+     *
+     * @param roleId             role filter
+     * @param userId             user filter
+     * @param entityResourceName resource name filter
+     * @param resourceId         resource id filter
+     * @param limit              page size
+     * @param continuationToken  token returned by the previous page, null for the first page
+     * @return page of results with the token for the next one
+     */
+    PermissionSearchPage search(Long roleId, Long userId, String entityResourceName, Long resourceId, int limit, String continuationToken);
+
+    /**
+     * Keyset paginated search of the roles and users whose permissions grant an action on an entity,
+     * with the rules of the permission manager: the permission of a role, or user, specific to the entity decides
+     * when it exists, otherwise its resource type permission does.
+     * Ownership, sharing, impersonation and administrators are not considered, since they don't depend on permission rows.
+     *
+     * @param entityResourceName resource name
+     * @param resourceId         entity id, 0 to search the grantees of the resource type
+     * @param actionId           action id
+     * @param limit              page size
+     * @param continuationToken  token returned by the previous page, null for the first page
+     * @return page of user and role ids with the token for the next one
+     */
+    PermissionGranteePage findGrantees(String entityResourceName, long resourceId, long actionId, int limit, String continuationToken);
+
+    /**
+     * Writes all the permissions to the given stream in CSV format, in constant memory.
+     * The stream is flushed but not closed.
+     *
+     * @param output destination stream
+     * @return number of exported permissions
+     */
+    long exportPermissions(OutputStream output);
+
+    /**
+     * Reads permissions in CSV format, as produced by exportPermissions, and imports them with upsert semantics.
+     * Rows are written in chunks, each chunk in its own transaction.
+     *
+     * @param input source stream
+     * @return import summary
+     */
+    PermissionTransferReport importPermissions(InputStream input);
+
+    /**
+     * Returns, in a single bundle, everything needed to evaluate the permissions of a user on a resource type.
+     *
+     * @param userId             user id
+     * @param roleIds            ids of the user roles
+     * @param entityResourceName resource name
+     * @param resourceIds        ids of the entities whose specific permissions must be included
+     * @return decision data
+     */
+    PermissionDecisionData getDecisionData(long userId, List<Long> roleIds, String entityResourceName, List<Long> resourceIds);
+
+    /**
+     * Decision data including the specific permissions of every entity the user, or one of its roles, has one on.
+     *
+     * @param userId             user id
+     * @param roleIds            ids of the user roles
+     * @param entityResourceName resource name
+     * @param resourceIds        ids of other entities whose specific permissions must be included
+     * @return decision data
+     */
+    PermissionDecisionData getResourceDecisionData(long userId, List<Long> roleIds, String entityResourceName, List<Long> resourceIds);
+
+    /**
+     * @return token which changes whenever the permission table changes
+     */
+    String getVersionToken();
+
+    /**
+     * @return token which changes whenever the permission table or the roles of the logged user change,
+     * different for every user since listings only contain what the caller is allowed to see
+     */
+    String getCallerVersionToken();
+
+    /**
+     * @param sequence sequence returned by the previous page, 0 to read the log from the start
+     * @param limit    page size
+     * @return permission changes recorded after the given sequence
+     */
+    PermissionChangePage getChangesAfter(long sequence, int limit);
+
+    /**
+     * Computes again the effective permission store from the permission table.
+     *
+     * @return rebuild summary
+     */
+    EffectivePermissionReport rebuildEffectivePermissions();
+
+    /**
+     * @return differences between the effective permission store and the permission table
+     */
+    EffectivePermissionReport checkEffectivePermissions();
+
+    /**
+     * Fixes the differences between the effective permission store and the permission table, it writes the store
+     * so it requires the same permissions of rebuildEffectivePermissions.
+     *
+     * @return differences found, and fixed, between the effective permission store and the permission table
+     */
+    EffectivePermissionReport repairEffectivePermissions();
+
+    /**
+     * Writes the role grant index to the configured snapshot file, loaded on the next start.
+     *
+     * @return snapshot summary
+     */
+    PermissionSnapshotReport writePermissionSnapshot();
+
+    /**
+     * Preloads the role grant index, if not done yet, waiting until it completes or its time budget expires.
+     *
+     * @return status at the end of the preload
+     */
+    PermissionIndexPreloadStatus preloadIndex();
+
+    /**
+     * @return progress of the preload of the role grant index
+     */
+    PermissionIndexPreloadStatus getIndexPreloadStatus();
+}
@@ -3,10 +3,18 @@ package it.water.permission.api;
 import it.water.core.api.action.ResourceAction;
 import it.water.core.api.model.Resource;
 import it.water.core.api.repository.BaseRepository;
+import it.water.permission.model.EffectivePermissionReport;
+import it.water.permission.model.PermissionBatchItemResult;
+import it.water.permission.model.PermissionTransferReport;
+import it.water.permission.model.WaterEffectivePermission;
 import it.water.permission.model.WaterPermission;
+import it.water.permission.model.WaterPermissionChange;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * @Generated by Water Generator
@@ -102,4 +110,205 @@ public interface PermissionRepository extends BaseRepository<WaterPermission> {
      * @return true if exist a specific permission to this entity, false otherwise
      */
     boolean permissionSpecificToEntityExists(String resourceName, long resourceId);
+
+    /**
+     * Persists all the given permissions inside a single transaction.
+     * Items which would break the permission unique constraint are skipped and reported as failed.
+     *
+     * @param permissions permissions to persist
+     * @return one result for each permission, in the same order of the input list
+     */
+    List<PermissionBatchItemResult> persistAll(List<WaterPermission> permissions);
+
+    /**
+     * Updates all the given permissions inside a single transaction.
+     * Items which do not exist or have a stale entity version are skipped and reported as failed.
+     *
+     * @param permissions permissions to update
+     * @return one result for each permission, in the same order of the input list
+     */
+    List<PermissionBatchItemResult> updateAll(List<WaterPermission> permissions);
+
+    /**
+     * Removes all the permissions with the given ids inside a single transaction.
+     *
+     * @param ids ids of the permissions to remove
+     * @return one result for each id, in the same order of the input list
+     */
+    List<PermissionBatchItemResult> removeAll(List<Long> ids);
+
+    /**
+     * Find all the permissions with the given ids
+     *
+     * @param ids ids of the permissions
+     * @return found permissions, missing ids are ignored
+     */
+    List<WaterPermission> findByIds(List<Long> ids);
+
+    /**
+     * Keyset paginated search on permissions ordered by id.
+     * Every filter is optional, null values are ignored.
+     *
+     * @param roleId             role filter
+     * @param userId             user filter
+     * @param entityResourceName resource name filter
+     * @param resourceId         resource id filter
+     * @param afterId            only permissions with id greater than this value are returned
+     * @param maxResults         maximum number of permissions returned
+     * @return permissions matching filters
+     */
+    List<WaterPermission> search(Long roleId, Long userId, String entityResourceName, Long resourceId, long afterId, int maxResults);
+
+    /**
+     * Finds the permissions through which roles and users are granted an action on an entity, ordered by role and user.
+     * For each role, or user, its permission specific to the entity decides when it exists, otherwise its resource type one does.
+     *
+     * @param entityResourceName resource name
+     * @param resourceId         entity id, 0 for the resource type
+     * @param actionId           action id
+     * @param afterRoleId        role id of the last grantee already returned
+     * @param afterUserId        user id of the last grantee already returned
+     * @param maxResults         maximum number of permissions returned
+     * @return one granting permission per role or user
+     */
+    List<WaterPermission> findGrantingPermissions(String entityResourceName, long resourceId, long actionId, long afterRoleId, long afterUserId, int maxResults);
+
+    /**
+     * Streams all the permissions, ordered by id, to the given consumer through a forward only cursor.
+     * Permissions are detached periodically so memory usage does not depend on the table size.
+     *
+     * @param consumer receives every permission
+     * @return number of exported permissions
+     */
+    long exportAll(Consumer<WaterPermission> consumer);
+
+    /**
+     * Inserts or updates the given permissions in a single transaction.
+     * Permissions are matched on role, user, resource name and resource id, existing ones get the imported actions.
+     *
+     * @param permissions permissions to import
+     * @return counters of inserted, updated and unchanged permissions
+     */
+    PermissionTransferReport upsertAll(List<WaterPermission> permissions);
+
+    /**
+     * Finds role and user permissions needed to evaluate the decisions of a user:
+     * permissions of the given roles with no user, and permissions of the given user with no role.
+     *
+     * @param userId              user id
+     * @param roleIds             ids of the user roles
+     * @param entityResourceNames resource names
+     * @param resourceIds         entity ids, resource type permissions (resource id 0) are always included
+     * @return matching permissions
+     */
+    List<WaterPermission> findDecisionRows(long userId, List<Long> roleIds, List<String> entityResourceNames, List<Long> resourceIds);
+
+    /**
+     * @param entityResourceName resource name
+     * @param resourceIds        entity ids
+     * @return ids, among the given ones, which have at least one permission specific to the entity
+     */
+    Set<Long> findResourceIdsWithSpecificPermissions(String entityResourceName, List<Long> resourceIds);
+
+    /**
+     * @param userId             user id
+     * @param roleIds            ids of the user roles
+     * @param entityResourceName resource name
+     * @return ids of the entities on which the user, or one of the given roles, has a permission specific to the entity
+     */
+    Set<Long> findResourceIdsWithUserSpecificPermissions(long userId, List<Long> roleIds, String entityResourceName);
+
+    /**
+     * @param sequence   sequence of the last change already known by the caller, 0 to read the log from the start
+     * @param maxResults maximum number of changes to return
+     * @return changes recorded after the given sequence, ordered by sequence
+     */
+    List<WaterPermissionChange> findChangesAfter(long sequence, int maxResults);
+
+    /**
+     * @return sequence of the last recorded change, 0 if the change log is empty
+     */
+    long getLastChangeSequence();
+
+    /**
+     * @return number of distinct entity resource names stored in the resource name dictionary
+     */
+    long countResourceNames();
+
+    /**
+     * @param names entity resource names
+     * @return dictionary key of each name, names missing from the dictionary are not returned
+     */
+    Map<String, Integer> findResourceNameIds(Collection<String> names);
+
+    /**
+     * @param userId  user id
+     * @param roleIds ids of the user roles
+     * @return true if the effective permission store already records the user with exactly these roles
+     */
+    boolean hasEffectivePermissionUserRoles(long userId, Collection<Long> roleIds);
+
+    /**
+     * Records the role membership of a user in the effective permission store.
+     * When the user is new or its roles changed, all its effective permissions are computed again.
+     *
+     * @param userId  user id
+     * @param roleIds ids of the user roles
+     * @return true if the membership has been created or changed
+     */
+    boolean updateEffectivePermissionUser(long userId, Collection<Long> roleIds);
+
+    /**
+     * @param userId             user id
+     * @param entityResourceName resource name
+     * @param resourceId         entity id, 0 for the resource type only
+     * @return stored effective permissions of the user on the resource type and on the given entity
+     */
+    List<WaterEffectivePermission> findEffectivePermissions(long userId, String entityResourceName, long resourceId);
+
+    /**
+     * Updates the effective permissions affected by a permission change:
+     * the row of the user of a user permission, the rows of every member of the role of a role permission.
+     * Only the resource name and resource id of the change are computed again,
+     * along with the previous ones when the change moved the permission.
+     * Writes of the repository call it inside their own transaction, when the effective permission store is enabled.
+     *
+     * @param change recorded change
+     */
+    void applyToEffectivePermissions(WaterPermissionChange change);
+
+    /**
+     * @param sequences sequence numbers of the changes, at most 1000
+     * @return the changes with the given sequence numbers, ordered by sequence, missing numbers are ignored
+     */
+    List<WaterPermissionChange> findChanges(Collection<Long> sequences);
+
+    /**
+     * @param afterUserId only users with id greater than this value are returned
+     * @param maxResults  maximum number of ids returned
+     * @return ids of the users known by the effective permission store, ordered
+     */
+    List<Long> findEffectivePermissionUserIds(long afterUserId, int maxResults);
+
+    /**
+     * Compares the effective permissions of the given users with the ones computed from the permission table,
+     * inside a single transaction.
+     *
+     * @param userIds users to check
+     * @param repair  true to fix the differences
+     * @return counters of the comparison, elapsed time excluded
+     */
+    EffectivePermissionReport reconcileEffectivePermissions(List<Long> userIds, boolean repair);
+
+    /**
+     * Removes the effective permissions of users whose role membership is not recorded.
+     *
+     * @return number of removed rows
+     */
+    long removeOrphanEffectivePermissions();
+
+    /**
+     * @return token which changes whenever a permission is created, updated or removed
+     */
+    String getVersionToken();
 }
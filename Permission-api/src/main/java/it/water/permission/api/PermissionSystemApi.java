@@ -3,8 +3,20 @@ package it.water.permission.api;
 import it.water.core.api.action.ResourceAction;
 import it.water.core.api.model.Resource;
 import it.water.core.api.service.BaseEntitySystemApi;
+import it.water.permission.model.EffectivePermissionReport;
+import it.water.permission.model.PermissionBatchItemResult;
+import it.water.permission.model.PermissionChangePage;
+import it.water.permission.model.PermissionDecisionData;
+import it.water.permission.model.PermissionGranteePage;
+import it.water.permission.model.PermissionIndexPreloadStatus;
+import it.water.permission.model.PermissionSearchPage;
+import it.water.permission.model.PermissionSnapshotReport;
+import it.water.permission.model.PermissionTransferReport;
+import it.water.permission.model.WaterEffectivePermission;
 import it.water.permission.model.WaterPermission;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collection;
 import java.util.List;
 
@@ -99,4 +111,205 @@ public interface PermissionSystemApi extends BaseEntitySystemApi<WaterPermission
      * @return true if exist a specific permission to this entity, false otherwise
      */
     boolean permissionSpecificToEntityExists(String resourceName, long resourceId);
-}
\ No newline at end of file
+
+    /**
+     * Saves all the given permissions inside a single transaction.
+     *
+     * @param permissions permissions to save
+     * @return one result for each permission, in the same order of the input list
+     */
+    List<PermissionBatchItemResult> saveAll(List<WaterPermission> permissions);
+
+    /**
+     * Updates all the given permissions inside a single transaction.
+     *
+     * @param permissions permissions to update
+     * @return one result for each permission, in the same order of the input list
+     */
+    List<PermissionBatchItemResult> updateAll(List<WaterPermission> permissions);
+
+    /**
+     * Removes all the permissions with the given ids inside a single transaction.
+     *
+     * @param ids ids of the permissions to remove
+     * @return one result for each id, in the same order of the input list
+     */
+    List<PermissionBatchItemResult> removeAll(List<Long> ids);
+
+    /**
+     * Find all the permissions with the given ids
+     *
+     * @param ids ids of the permissions
+     * @return found permissions, missing ids are ignored
+     */
+    List<WaterPermission> findByIds(List<Long> ids);
+
+    /**
+     * Keyset paginated search on permissions.
+     * Every filter is optional, null values are ignored.
+     * Cost of each page does not depend on its position since pages are fetched starting from the last returned id.
+     *
+     * @param roleId             role filter
+     * @param userId             user filter
+     * @param entityResourceName resource name filter
+     * @param resourceId         resource id filter
+     * @param limit              page size
+     * @param continuationToken  token returned by the previous page, null for the first page
+     * @return page of results with the token for the next one
+     */
+    PermissionSearchPage search(Long roleId, Long userId, String entityResourceName, Long resourceId, int limit, String continuationToken);
+
+    /**
+     * Keyset paginated search of the roles and users whose permissions grant an action on an entity,
+     * with the rules of the permission manager: the permission of a role, or user, specific to the entity decides
+     * when it exists, otherwise its resource type permission does.
+     * Ownership, sharing, impersonation and administrators are not considered, since they don't depend on permission rows.
+     *
+     * @param entityResourceName resource name
+     * @param resourceId         entity id, 0 to search the grantees of the resource type
+     * @param actionId           action id
+     * @param limit              page size
+     * @param continuationToken  token returned by the previous page, null for the first page
+     * @return page of user and role ids with the token for the next one
+     */
+    PermissionGranteePage findGrantees(String entityResourceName, long resourceId, long actionId, int limit, String continuationToken);
+
+    /**
+     * Writes all the permissions to the given stream in CSV format, in constant memory.
+     * The stream is flushed but not closed.
+     *
+     * @param output destination stream
+     * @return number of exported permissions
+     */
+    long exportPermissions(OutputStream output);
+
+    /**
+     * Reads permissions in CSV format, as produced by exportPermissions, and imports them with upsert semantics.
+     * Rows are written in chunks, each chunk in its own transaction.
+     *
+     * @param input source stream
+     * @return import summary
+     */
+    PermissionTransferReport importPermissions(InputStream input);
+
+    /**
+     * Returns, in a single bundle, everything needed to evaluate the permissions of a user on a resource type:
+     * resource type permissions of the user and of each role, impersonation permissions of each role
+     * and entity specific permissions of the requested entities.
+     *
+     * @param userId             user id
+     * @param roleIds            ids of the user roles
+     * @param entityResourceName resource name
+     * @param resourceIds        ids of the entities whose specific permissions must be included
+     * @return decision data
+     */
+    PermissionDecisionData getDecisionData(long userId, List<Long> roleIds, String entityResourceName, List<Long> resourceIds);
+
+    /**
+     * Decision data whose entity specific permissions cover every entity on which the user, or one of its roles,
+     * has a specific permission, besides the requested ones.
+     * Together with the entities shared with the user it is enough to list all the entities the user is authorized on.
+     *
+     * @param userId             user id
+     * @param roleIds            ids of the user roles
+     * @param entityResourceName resource name
+     * @param resourceIds        ids of other entities whose specific permissions must be included, as the shared ones
+     * @return decision data
+     */
+    PermissionDecisionData getResourceDecisionData(long userId, List<Long> roleIds, String entityResourceName, List<Long> resourceIds);
+
+    /**
+     * Ids of the entities on which at least one of the roles is granted every bit of the action
+     * by a permission specific to the entity, resource type permissions are not considered.
+     *
+     * @param roleIds            role ids
+     * @param entityResourceName resource name
+     * @param actionId           action id, bits of actions 0-63 only: actions beyond the 64th are not considered
+     * @return sorted entity ids
+     */
+    long[] findResourceIdsGrantedToRoles(List<Long> roleIds, String entityResourceName, long actionId);
+
+    /**
+     * Returns a token which changes whenever the permission table changes,
+     * it can be used to validate cached listings of permissions.
+     *
+     * @return version token
+     */
+    String getVersionToken();
+
+    /**
+     * Returns the permission changes recorded after the given sequence, so clients holding a copy of the permissions
+     * can stay aligned pulling only what changed instead of reading everything again.
+     *
+     * @param sequence sequence returned by the previous page, 0 to read the log from the start
+     * @param limit    page size, values out of range are replaced by the default or the maximum page size
+     * @return page of changes with the sequence to pass on the next call
+     */
+    PermissionChangePage getChangesAfter(long sequence, int limit);
+
+    /**
+     * @return true if the effective permission store is enabled, the store is maintained and read only when enabled
+     */
+    boolean isEffectivePermissionStoreEnabled();
+
+    /**
+     * Reads the effective permissions of a user: for the resource type and for the given entity,
+     * the OR of the actions granted by the user roles and by the user permissions.
+     * The given roles are compared with the recorded ones, the user rows are computed again when they differ.
+     *
+     * @param userId             user id
+     * @param roleIds            ids of the user roles
+     * @param entityResourceName resource name
+     * @param resourceId         entity id, 0 for the resource type only
+     * @return stored effective permissions, resources on which nothing is granted are missing
+     */
+    List<WaterEffectivePermission> findEffectivePermissions(long userId, List<Long> roleIds, String entityResourceName, long resourceId);
+
+    /**
+     * Notifies a change of the roles of a user to the effective permission store.
+     * Integrations aware of role membership changes can call it so the next decision doesn't pay for the update.
+     *
+     * @param userId  user id
+     * @param roleIds ids of the user roles
+     */
+    void updateEffectivePermissionRoles(long userId, List<Long> roleIds);
+
+    /**
+     * Computes again the effective permissions of every known user, fixing them in place,
+     * and removes the rows of unknown users.
+     *
+     * @return rebuild summary
+     */
+    EffectivePermissionReport rebuildEffectivePermissions();
+
+    /**
+     * Compares the effective permission store with the permission table.
+     *
+     * @param repair true to fix the differences
+     * @return check summary
+     */
+    EffectivePermissionReport checkEffectivePermissions(boolean repair);
+
+    /**
+     * Writes the role grant index to the configured snapshot file, replacing the previous snapshot.
+     * On the next start the index is loaded from the file, catching up on the changes recorded after it,
+     * instead of scanning the permission table. Corrupt or outdated snapshots are ignored.
+     *
+     * @return snapshot summary
+     */
+    PermissionSnapshotReport writePermissionSnapshot();
+
+    /**
+     * Preloads the role grant index, when both the index and its preload are enabled,
+     * so the first decisions after a restart don't wait for it.
+     * The preload runs once, in background, and the caller waits until it completes or its time budget expires.
+     *
+     * @return status at the end of the preload
+     */
+    PermissionIndexPreloadStatus preloadIndex();
+
+    /**
+     * @return progress of the preload, ready right away when the preload or the index is disabled
+     */
+    PermissionIndexPreloadStatus getIndexPreloadStatus();
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.api.integration;
+
+import it.water.permission.model.WaterEffectivePermission;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Permission client able to read the materialized effective permission store.
+ * When the store is enabled the permission manager answers most decisions from the effective permissions
+ * of the user instead of combining the permission rows of each role.
+ * Implemented by clients of services hosting the permission service, where the store lives.
+ */
+public interface EffectivePermissionClient {
+
+    /**
+     * @return true if the effective permission store is enabled
+     */
+    boolean isEffectivePermissionStoreEnabled();
+
+    /**
+     * @param userId             user id
+     * @param roleIds            ids of the user roles, the store updates the user rows when they changed
+     * @param entityResourceName resource name
+     * @param resourceId         entity id, 0 for the resource type only
+     * @return effective permissions of the user on the resource type and on the given entity,
+     * resources on which nothing is granted are missing
+     */
+    List<WaterEffectivePermission> findEffectivePermissions(long userId, Collection<Long> roleIds, String entityResourceName, long resourceId);
+}
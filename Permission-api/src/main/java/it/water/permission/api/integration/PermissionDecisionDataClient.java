@@ -0,0 +1,39 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.api.integration;
+
+import it.water.permission.model.PermissionDecisionData;
+
+import java.util.Collection;
+
+/**
+ * Permission client able to fetch all the permission rows needed by a decision with a single call.
+ * The permission manager prefers it to single lookups, so the number of queries of a decision
+ * doesn't grow with the number of roles of the user.
+ * Implemented by clients whose single lookups are not cached, as the one of services hosting the permission service.
+ */
+public interface PermissionDecisionDataClient {
+
+    /**
+     * @param userId             user id
+     * @param roleIds            ids of the user roles
+     * @param entityResourceName resource name
+     * @param resourceIds        ids of the entities whose specific permissions must be included
+     * @return decision data
+     */
+    PermissionDecisionData getDecisionData(long userId, Collection<Long> roleIds, String entityResourceName, Collection<Long> resourceIds);
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.api.integration;
+
+import it.water.core.api.permission.Permission;
+import it.water.core.api.service.integration.PermissionIntegrationClient;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous companion of PermissionIntegrationClient.
+ * Callers can issue all the lookups needed by a decision at once and wait for them together,
+ * so with remote storage a decision costs roughly the slowest lookup instead of the sum of all of them.
+ * Default methods complete on the caller thread, implementations backed by remote storage override them.
+ */
+public interface PermissionIntegrationAsyncClient extends PermissionIntegrationClient {
+
+    default CompletableFuture<Permission> findByUserAndResourceNameAsync(long userId, String resourceName) {
+        return CompletableFuture.completedFuture(findByUserAndResourceName(userId, resourceName));
+    }
+
+    default CompletableFuture<Permission> findByUserAndResourceNameAndResourceIdAsync(long userId, String resourceName, long resourceId) {
+        return CompletableFuture.completedFuture(findByUserAndResourceNameAndResourceId(userId, resourceName, resourceId));
+    }
+
+    default CompletableFuture<Permission> findByRoleAndResourceNameAsync(long roleId, String resourceName) {
+        return CompletableFuture.completedFuture(findByRoleAndResourceName(roleId, resourceName));
+    }
+
+    default CompletableFuture<Permission> findByRoleAndResourceNameAndResourceIdAsync(long roleId, String resourceName, long resourceId) {
+        return CompletableFuture.completedFuture(findByRoleAndResourceNameAndResourceId(roleId, resourceName, resourceId));
+    }
+
+    default CompletableFuture<Collection<Permission>> findByRoleAsync(long roleId) {
+        return CompletableFuture.completedFuture(findByRole(roleId));
+    }
+
+    default CompletableFuture<Boolean> permissionSpecificToEntityExistsAsync(String resourceName, long resourceId) {
+        return CompletableFuture.completedFuture(permissionSpecificToEntityExists(resourceName, resourceId));
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.api.integration;
+
+import it.water.permission.model.PermissionDecisionData;
+
+import java.util.Collection;
+
+/**
+ * Permission client able to fetch the decision data of a user on a whole resource type,
+ * including the specific permissions of every entity the user or its roles have one on.
+ * The permission manager needs it to list the entities a user is authorized on without checking them one by one.
+ */
+public interface ResourceDecisionDataClient {
+
+    /**
+     * @param userId             user id
+     * @param roleIds            ids of the user roles
+     * @param entityResourceName resource name
+     * @param resourceIds        ids of other entities whose specific permissions must be included, as the shared ones
+     * @return decision data
+     */
+    PermissionDecisionData getResourceDecisionData(long userId, Collection<Long> roleIds, String entityResourceName, Collection<Long> resourceIds);
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.permission.api.invalidation;
+
+import it.water.core.api.service.Service;
+import it.water.permission.model.PermissionInvalidation;
+
+/**
+ * Broadcasts permission invalidations to the caches of every node of the cluster.
+ * Invalidations are delivered to the listeners of the local node right away,
+ * other nodes receive them through the registered PermissionInvalidationTransport.
+ */
+public interface PermissionInvalidationBus extends Service {
+
+    /**
+     * @param invalidation invalidation to broadcast
+     */
+    void publish(PermissionInvalidation invalidation);
+
+    /**
+     * @param listener listener notified of local and remote invalidations
+     */
+    void addListener(PermissionInvalidationListener listener);
+
+    /**
+     * @param listener listener to remove
+     */
+    void removeListener(PermissionInvalidationListener listener);
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.permission.api.invalidation;
+
+import it.water.permission.model.PermissionInvalidation;
+
+/**
+ * Implemented by caches holding permissions.
+ * Components registering this interface are notified by the PermissionInvalidationBus without explicit subscription.
+ */
+@FunctionalInterface
+public interface PermissionInvalidationListener {
+
+    /**
+     * @param invalidation coordinates of the changed permission, PermissionInvalidation.ALL to drop everything
+     */
+    void onInvalidation(PermissionInvalidation invalidation);
+}
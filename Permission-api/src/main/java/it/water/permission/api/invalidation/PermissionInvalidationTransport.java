@@ -0,0 +1,39 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.permission.api.invalidation;
+
+import it.water.core.api.service.Service;
+
+import java.util.function.Consumer;
+
+/**
+ * Service provider interface of the channel which carries invalidations between nodes.
+ * Frames are opaque binary payloads built by the PermissionInvalidationBus, transports only deliver them
+ * to every other node, the sender does not need to receive its own frames.
+ * Implementations based on a message broker or on multicast register with a higher priority than the in-JVM one.
+ */
+public interface PermissionInvalidationTransport extends Service {
+
+    /**
+     * @param frame encoded invalidations
+     */
+    void send(byte[] frame);
+
+    /**
+     * @param receiver invoked with each frame sent by other nodes
+     */
+    void subscribe(Consumer<byte[]> receiver);
+}
@@ -6,11 +6,22 @@ import it.water.core.api.model.PaginableResult;
 import it.water.core.api.service.rest.FrameworkRestApi;
 import it.water.core.api.service.rest.RestApi;
 import it.water.core.api.service.rest.WaterJsonView;
+import it.water.permission.model.EffectivePermissionReport;
+import it.water.permission.model.PermissionBatchItemResult;
+import it.water.permission.model.PermissionChangePage;
+import it.water.permission.model.PermissionDecisionData;
+import it.water.permission.model.PermissionGranteePage;
+import it.water.permission.model.PermissionIndexPreloadStatus;
+import it.water.permission.model.PermissionSearchPage;
+import it.water.permission.model.PermissionSnapshotReport;
+import it.water.permission.model.PermissionTransferReport;
 import it.water.permission.model.WaterPermission;
 import it.water.service.rest.api.security.LoggedIn;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -24,6 +35,10 @@ import java.util.Map;
 @Api(produces = MediaType.APPLICATION_JSON, tags = "Permission API")
 @FrameworkRestApi
 public interface PermissionRestApi extends RestApi {
+    /**
+     * Binary Jackson format negotiated by service to service clients, JSON stays the default representation
+     */
+    String APPLICATION_SMILE = "application/x-jackson-smile";
 
     @LoggedIn
     @POST
@@ -58,7 +73,7 @@ public interface PermissionRestApi extends RestApi {
     @LoggedIn
     @Path("/{id}")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_SMILE})
     @Consumes(MediaType.APPLICATION_JSON)
     @JsonView(WaterJsonView.Public.class)
     @ApiOperation(value = "/{id}", notes = "Permission Find API", httpMethod = "GET", produces = MediaType.APPLICATION_JSON)
@@ -73,7 +88,7 @@ public interface PermissionRestApi extends RestApi {
 
     @LoggedIn
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_SMILE})
     @Consumes(MediaType.APPLICATION_JSON)
     @JsonView(WaterJsonView.Public.class)
     @ApiOperation(value = "/", notes = "Permission Find All API", httpMethod = "GET", produces = MediaType.APPLICATION_JSON)
@@ -126,7 +141,7 @@ public interface PermissionRestApi extends RestApi {
     @LoggedIn
     @Path("/map")
     @POST
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_SMILE})
     @Consumes(MediaType.APPLICATION_JSON)
     @JsonView(WaterJsonView.Compact.class)
     @ApiOperation(value = "/map", notes = "calculate the User Permission Map for specific resources", httpMethod = "POST", produces = "application/json", authorizations = @Authorization("jwt-auth"))
@@ -134,4 +149,235 @@ public interface PermissionRestApi extends RestApi {
             @ApiResponse(code = 403, message = "Not authorized"),
             @ApiResponse(code = 404, message = "Entity not found")})
     Map<String, Map<String, Map<String, Boolean>>> elaboratePermissionMap(@ApiParam(value = "Entity names and primary keys", required = true) Map<String, List<Long>> entityPks);
+
+    @LoggedIn
+    @Path("/batch")
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/batch", notes = "Permission Batch Save API, items are saved in a single transaction", httpMethod = "POST", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation, one result per item"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    List<PermissionBatchItemResult> saveAll(List<WaterPermission> permissions);
+
+    @LoggedIn
+    @Path("/batch")
+    @PUT
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/batch", notes = "Permission Batch Update API, items are updated in a single transaction", httpMethod = "PUT", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation, one result per item"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    List<PermissionBatchItemResult> updateAll(List<WaterPermission> permissions);
+
+    @LoggedIn
+    @Path("/batch")
+    @DELETE
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/batch", notes = "Permission Batch Delete API, items are removed in a single transaction", httpMethod = "DELETE", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation, one result per item"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    List<PermissionBatchItemResult> removeAll(@ApiParam(value = "Ids of the permissions to remove", required = true) @QueryParam("id") List<Long> ids);
+
+    @LoggedIn
+    @Path("/batch")
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_SMILE})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/batch", notes = "Permission Multi Get API", httpMethod = "GET", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    List<WaterPermission> findByIds(@ApiParam(value = "Ids of the permissions to find", required = true) @QueryParam("id") List<Long> ids);
+
+    @LoggedIn
+    @Path("/search")
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_SMILE})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/search", notes = "Permission keyset paginated search, pass the returned continuationToken to get the next page", httpMethod = "GET", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    PermissionSearchPage search(@QueryParam("roleId") Long roleId,
+                                @QueryParam("userId") Long userId,
+                                @QueryParam("entityResourceName") String entityResourceName,
+                                @QueryParam("resourceId") Long resourceId,
+                                @QueryParam("limit") @DefaultValue("100") int limit,
+                                @QueryParam("continuationToken") String continuationToken);
+
+    @LoggedIn
+    @Path("/grantees")
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_SMILE})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/grantees", notes = "Users and roles whose permissions grant an action on an entity, pass the returned continuationToken to get the next page", httpMethod = "GET", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    PermissionGranteePage findGrantees(@QueryParam("entityResourceName") String entityResourceName,
+                                       @ApiParam(value = "Entity id, 0 for the resource type") @QueryParam("resourceId") @DefaultValue("0") long resourceId,
+                                       @QueryParam("actionId") long actionId,
+                                       @QueryParam("limit") @DefaultValue("100") int limit,
+                                       @QueryParam("continuationToken") String continuationToken);
+
+    @LoggedIn
+    @Path("/changes")
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_SMILE})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/changes", notes = "Permission changes recorded after the given sequence, pass the returned lastSequence to get the following ones", httpMethod = "GET", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    PermissionChangePage getChanges(@ApiParam(value = "Sequence returned by the previous call, 0 to read the log from the start") @QueryParam("after") @DefaultValue("0") long after,
+                                    @QueryParam("limit") @DefaultValue("100") int limit);
+
+    @LoggedIn
+    @Path("/export")
+    @GET
+    @Produces("text/csv")
+    @ApiOperation(value = "/export", notes = "Streams all permissions in CSV format", httpMethod = "GET", produces = "text/csv")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    StreamingOutput exportPermissions();
+
+    @LoggedIn
+    @Path("/import")
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes("text/csv")
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/import", notes = "Imports permissions in CSV format with upsert semantics", httpMethod = "POST", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    PermissionTransferReport importPermissions(InputStream csv);
+
+    @LoggedIn
+    @Path("/decision-data")
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_SMILE})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/decision-data", notes = "Returns everything needed to evaluate the permissions of a user on a resource type in a single response", httpMethod = "GET", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    PermissionDecisionData getDecisionData(@QueryParam("userId") long userId,
+                                           @ApiParam(value = "Ids of the user roles") @QueryParam("roleId") List<Long> roleIds,
+                                           @QueryParam("entityResourceName") String entityResourceName,
+                                           @ApiParam(value = "Ids of the entities whose specific permissions must be included") @QueryParam("resourceId") List<Long> resourceIds);
+
+    @LoggedIn
+    @Path("/resource-decision-data")
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_SMILE})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/resource-decision-data", notes = "Returns the decision data of a user including the specific permissions of every entity the user or its roles have one on", httpMethod = "GET", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    PermissionDecisionData getResourceDecisionData(@QueryParam("userId") long userId,
+                                                   @ApiParam(value = "Ids of the user roles") @QueryParam("roleId") List<Long> roleIds,
+                                                   @QueryParam("entityResourceName") String entityResourceName,
+                                                   @ApiParam(value = "Ids of other entities whose specific permissions must be included") @QueryParam("resourceId") List<Long> resourceIds);
+
+    @LoggedIn
+    @Path("/effective/rebuild")
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/effective/rebuild", notes = "Computes again the effective permission store from the permission table", httpMethod = "POST", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    EffectivePermissionReport rebuildEffectivePermissions();
+
+    @LoggedIn
+    @Path("/effective/check")
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/effective/check", notes = "Compares the effective permission store with the permission table, optionally fixing the differences", httpMethod = "POST", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    EffectivePermissionReport checkEffectivePermissions(@QueryParam("repair") @DefaultValue("false") boolean repair);
+
+    @LoggedIn
+    @Path("/snapshot")
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/snapshot", notes = "Writes the role grant index to the snapshot file loaded on the next start", httpMethod = "POST", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    PermissionSnapshotReport writePermissionSnapshot();
+
+    @LoggedIn
+    @Path("/index/preload")
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/index/preload", notes = "Preloads the role grant index, if not done yet, and returns the status of the preload", httpMethod = "POST", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    PermissionIndexPreloadStatus preloadIndex();
+
+    @Path("/index/preload")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/index/preload", notes = "Returns the progress of the preload of the role grant index, its ready flag can be polled by readiness probes", httpMethod = "GET", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    PermissionIndexPreloadStatus getIndexPreloadStatus();
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.service.integration;
+
+/**
+ * Stops calls to a service which keeps failing.
+ * After failureThreshold consecutive failures the circuit opens and requests are rejected without reaching the service,
+ * once openMillis have elapsed a single probe request is let through: its success closes the circuit,
+ * its failure opens it again, a probe ending without an answer, as an interrupted one, lets the next request probe.
+ */
+class CircuitBreaker {
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private int consecutiveFailures;
+    private boolean open;
+    private boolean probing;
+    //thread sending the probe request
+    private Thread prober;
+    private long openedAt;
+
+    CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openMillis * 1_000_000L;
+    }
+
+    /**
+     * @return true if the request can be sent to the service
+     */
+    synchronized boolean allowRequest() {
+        if (!open)
+            return true;
+        if (!probing && System.nanoTime() - openedAt >= openNanos) {
+            probing = true;
+            prober = Thread.currentThread();
+            return true;
+        }
+        return false;
+    }
+
+    synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        open = false;
+        probing = false;
+        prober = null;
+    }
+
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        probing = false;
+        prober = null;
+        if (open || consecutiveFailures >= failureThreshold) {
+            open = true;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Called when a request let through ends without an answer from the service,
+     * it releases the probe if the request was the probe, the circuit stays open.
+     */
+    synchronized void onAbandoned() {
+        if (prober == Thread.currentThread()) {
+            probing = false;
+            prober = null;
+        }
+    }
+
+    synchronized boolean isOpen() {
+        return open;
+    }
+}
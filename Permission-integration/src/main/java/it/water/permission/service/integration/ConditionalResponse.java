@@ -0,0 +1,64 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.service.integration;
+
+import java.util.function.Function;
+
+/**
+ * Outcome of a conditional request to the permission service:
+ * either a new value with its ETag or the confirmation that the cached copy is still current.
+ *
+ * @param <T> value type
+ */
+final class ConditionalResponse<T> {
+    private static final ConditionalResponse<?> NOT_MODIFIED = new ConditionalResponse<>(null, null, true);
+
+    private final T value;
+    private final String etag;
+    private final boolean notModified;
+
+    private ConditionalResponse(T value, String etag, boolean notModified) {
+        this.value = value;
+        this.etag = etag;
+        this.notModified = notModified;
+    }
+
+    static <T> ConditionalResponse<T> of(T value, String etag) {
+        return new ConditionalResponse<>(value, etag, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> ConditionalResponse<T> notModified() {
+        return (ConditionalResponse<T>) NOT_MODIFIED;
+    }
+
+    <R> ConditionalResponse<R> map(Function<T, R> mapper) {
+        return notModified ? notModified() : of(mapper.apply(value), etag);
+    }
+
+    T getValue() {
+        return value;
+    }
+
+    String getEtag() {
+        return etag;
+    }
+
+    boolean isNotModified() {
+        return notModified;
+    }
+}
@@ -16,66 +16,470 @@
 
 package it.water.permission.service.integration;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import it.water.core.api.action.ResourceAction;
+import it.water.core.api.bundle.ApplicationProperties;
 import it.water.core.api.model.Resource;
 import it.water.core.api.permission.Permission;
 import it.water.core.api.service.integration.PermissionIntegrationClient;
 import it.water.core.interceptors.annotations.FrameworkComponent;
+import it.water.core.interceptors.annotations.Inject;
+import it.water.core.model.exceptions.WaterRuntimeException;
+import it.water.permission.api.integration.PermissionIntegrationAsyncClient;
+import it.water.permission.api.integration.ResourceDecisionDataClient;
+import it.water.permission.api.invalidation.PermissionInvalidationListener;
+import it.water.permission.model.PermissionDecisionData;
+import it.water.permission.model.PermissionInvalidation;
+import it.water.permission.model.PermissionSearchPage;
+import it.water.permission.model.PermissionView;
+import it.water.permission.model.WaterPermission;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
+/**
+ * Permission client for microservices which don't host the permission service.
+ * Finders are resolved through the keyset paginated search exposed by the permission rest api,
+ * responses are kept in a bounded local cache with time to live, as compact PermissionView copies.
+ * Expired responses are revalidated with their ETag, when nothing changed the permission service answers
+ * 304 Not Modified and the cached value is kept without transferring it again.
+ * In stale-while-revalidate cache mode expired values are served immediately and refreshed in background,
+ * up to a hard time to live, so a slow permission service does not slow down authorization.
+ * A circuit breaker stops calls to a permission service which keeps failing.
+ * Concurrent lookups of the same missing key are coalesced into a single remote call.
+ * Services which evaluate many actions or entities of the same resource type can fetch a PermissionDecisionData
+ * bundle with a single call through getDecisionData, getResourceDecisionData extends it to every entity the user
+ * has a specific permission on, so the permission manager can list the authorized entities of a resource type.
+ * Asynchronous lookups are answered on the caller thread when cached, otherwise they run on a dedicated pool
+ * so that the lookups of a decision overlap their round trips.
+ * The underlying http client keeps connections alive and reuses them across requests.
+ * Responses are requested in the Smile binary format, which is smaller and cheaper to parse than JSON,
+ * permission services which only offer JSON are handled transparently.
+ * Where a PermissionInvalidationBus is deployed the client expires the entries affected by each invalidation,
+ * so the cache time to live can be raised without serving outdated permissions.
+ */
 @FrameworkComponent
-public class PermissionIntegrationRestClient implements PermissionIntegrationClient {
+public class PermissionIntegrationRestClient implements PermissionIntegrationClient, PermissionIntegrationAsyncClient, ResourceDecisionDataClient, PermissionInvalidationListener {
+    private static final Logger log = LoggerFactory.getLogger(PermissionIntegrationRestClient.class);
+
+    public static final String PERMISSION_SERVICE_URL_PROPERTY = "water.permission.integration.url";
+    public static final String CONNECT_TIMEOUT_PROPERTY = "water.permission.integration.connect.timeout.millis";
+    public static final String REQUEST_TIMEOUT_PROPERTY = "water.permission.integration.request.timeout.millis";
+    public static final String CACHE_MAX_ENTRIES_PROPERTY = "water.permission.integration.cache.max.entries";
+    public static final String CACHE_TTL_PROPERTY = "water.permission.integration.cache.ttl.millis";
+    public static final String AUTH_TOKEN_PROPERTY = "water.permission.integration.auth.token";
+    public static final String CACHE_MODE_PROPERTY = "water.permission.integration.cache.mode";
+    public static final String CACHE_HARD_TTL_PROPERTY = "water.permission.integration.cache.hard.ttl.millis";
+    public static final String CIRCUIT_BREAKER_FAILURE_THRESHOLD_PROPERTY = "water.permission.integration.circuit.breaker.failure.threshold";
+    public static final String CIRCUIT_BREAKER_OPEN_PROPERTY = "water.permission.integration.circuit.breaker.open.millis";
+    public static final String ASYNC_THREADS_PROPERTY = "water.permission.integration.async.threads";
+    public static final String PAYLOAD_FORMAT_PROPERTY = "water.permission.integration.payload.format";
+
+    public static final String CACHE_MODE_STRICT = "strict";
+    public static final String CACHE_MODE_STALE_WHILE_REVALIDATE = "stale-while-revalidate";
+    public static final String PAYLOAD_FORMAT_JSON = "json";
+    public static final String PAYLOAD_FORMAT_SMILE = "smile";
+
+    private static final String JSON_ACCEPT = "application/json";
+    private static final String SMILE_CONTENT_TYPE = "application/x-jackson-smile";
+    //JSON is accepted with a lower preference so services without the binary provider keep working
+    private static final String SMILE_ACCEPT = SMILE_CONTENT_TYPE + ", application/json;q=0.9";
+
+    private static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 5000;
+    private static final long DEFAULT_CACHE_MAX_ENTRIES = 10000;
+    private static final long DEFAULT_CACHE_TTL_MILLIS = 30000;
+    private static final long DEFAULT_CACHE_HARD_TTL_MILLIS = 300000;
+    private static final long DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+    private static final long DEFAULT_CIRCUIT_BREAKER_OPEN_MILLIS = 10000;
+    private static final long DEFAULT_ASYNC_THREADS = 8;
+    private static final int REFRESH_THREADS = 2;
+    //same as the maximum page size accepted by the permission service
+    private static final int FIND_BY_ROLE_PAGE_SIZE = 1000;
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory())
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final LongAdder binaryResponses = new LongAdder();
+
+    @Inject
+    @Setter
+    private ApplicationProperties applicationProperties;
+
+    private String permissionsUrl;
+    private String authToken;
+    private Duration requestTimeout;
+    private HttpClient httpClient;
+    private PermissionResponseCache cache;
+    private CircuitBreaker circuitBreaker;
+    private Executor lookupExecutor;
+    private String acceptHeader;
 
     @Override
-    public Permission findByUserAndResource(long l, Resource resource) {
-        //todo implement rest invocation and caching logic
-        return null;
+    public Permission findByUserAndResource(long userId, Resource resource) {
+        if (resource == null)
+            return null;
+        return findByUserAndResourceName(userId, resource.getResourceName());
     }
 
     @Override
-    public Permission findByUserAndResourceName(long l, String s) {
-        //todo implement rest invocation and caching logic
-        return null;
+    public Permission findByUserAndResourceName(long userId, String resourceName) {
+        return findByUserAndResourceNameAndResourceId(userId, resourceName, 0);
     }
 
     @Override
-    public Permission findByUserAndResourceNameAndResourceId(long l, String s, long l1) {
-        //todo implement rest invocation and caching logic
-        return null;
+    public Permission findByUserAndResourceNameAndResourceId(long userId, String resourceName, long resourceId) {
+        return findFirst(userKey(userId, resourceName, resourceId), 0L, userId, resourceName, resourceId);
     }
 
     @Override
-    public Permission findByRoleAndResourceName(long l, String s) {
-        //todo implement rest invocation and caching logic
-        return null;
+    public Permission findByRoleAndResourceName(long roleId, String resourceName) {
+        return findByRoleAndResourceNameAndResourceId(roleId, resourceName, 0);
     }
 
     @Override
-    public Collection<Permission> findByRole(long l) {
-        //todo implement rest invocation and caching logic
-        return Collections.emptyList();
+    public Collection<Permission> findByRole(long roleId) {
+        return getCache().get(roleKey(roleId), etag -> {
+            //listing tags depend on the whole table, so an unchanged first page means unchanged following pages
+            ConditionalResponse<PermissionSearchPage> firstPage = search(roleId, 0L, null, null, FIND_BY_ROLE_PAGE_SIZE, null, etag);
+            if (firstPage.isNotModified())
+                return ConditionalResponse.notModified();
+            List<Permission> permissions = new ArrayList<>(firstPage.getValue().getResults().size());
+            firstPage.getValue().getResults().forEach(permission -> permissions.add(PermissionView.of(permission)));
+            String continuationToken = firstPage.getValue().getContinuationToken();
+            while (continuationToken != null) {
+                PermissionSearchPage page = search(roleId, 0L, null, null, FIND_BY_ROLE_PAGE_SIZE, continuationToken, null).getValue();
+                page.getResults().forEach(permission -> permissions.add(PermissionView.of(permission)));
+                continuationToken = page.getContinuationToken();
+            }
+            return ConditionalResponse.of(Collections.unmodifiableList(permissions), firstPage.getEtag());
+        });
     }
 
     @Override
-    public Permission findByRoleAndResourceNameAndResourceId(long l, String s, long l1) {
-        return null;
+    public Permission findByRoleAndResourceNameAndResourceId(long roleId, String resourceName, long resourceId) {
+        return findFirst(roleKey(roleId, resourceName, resourceId), roleId, 0L, resourceName, resourceId);
     }
 
+    /**
+     * Permissions are created by the service which owns them, remote creation is not supported.
+     */
     @Override
-    public void checkOrCreatePermissions(long l, List<ResourceAction<?>> list) {
+    public void checkOrCreatePermissions(long roleId, List<ResourceAction<?>> actions) {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Permissions are created by the service which owns them, remote creation is not supported.
+     */
     @Override
-    public void checkOrCreatePermissionsSpecificToEntity(long l, long l1, List<ResourceAction<?>> list) {
+    public void checkOrCreatePermissionsSpecificToEntity(long roleId, long entityId, List<ResourceAction<?>> actions) {
         throw new UnsupportedOperationException();
     }
 
     @Override
-    public boolean permissionSpecificToEntityExists(String s, long l) {
-        return false;
+    public boolean permissionSpecificToEntityExists(String resourceName, long resourceId) {
+        if (resourceId == 0)
+            return false;
+        Boolean exists = getCache().get(specificKey(resourceName, resourceId),
+                etag -> search(null, null, resourceName, resourceId, 1, null, etag).map(page -> !page.getResults().isEmpty()));
+        return Boolean.TRUE.equals(exists);
+    }
+
+    @Override
+    public CompletableFuture<Permission> findByUserAndResourceNameAsync(long userId, String resourceName) {
+        return findByUserAndResourceNameAndResourceIdAsync(userId, resourceName, 0);
+    }
+
+    @Override
+    public CompletableFuture<Permission> findByUserAndResourceNameAndResourceIdAsync(long userId, String resourceName, long resourceId) {
+        return lookupAsync(userKey(userId, resourceName, resourceId), () -> findByUserAndResourceNameAndResourceId(userId, resourceName, resourceId));
+    }
+
+    @Override
+    public CompletableFuture<Permission> findByRoleAndResourceNameAsync(long roleId, String resourceName) {
+        return findByRoleAndResourceNameAndResourceIdAsync(roleId, resourceName, 0);
+    }
+
+    @Override
+    public CompletableFuture<Permission> findByRoleAndResourceNameAndResourceIdAsync(long roleId, String resourceName, long resourceId) {
+        return lookupAsync(roleKey(roleId, resourceName, resourceId), () -> findByRoleAndResourceNameAndResourceId(roleId, resourceName, resourceId));
+    }
+
+    @Override
+    public CompletableFuture<Collection<Permission>> findByRoleAsync(long roleId) {
+        return lookupAsync(roleKey(roleId), () -> findByRole(roleId));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> permissionSpecificToEntityExistsAsync(String resourceName, long resourceId) {
+        if (resourceId == 0)
+            return CompletableFuture.completedFuture(false);
+        return lookupAsync(specificKey(resourceName, resourceId), () -> permissionSpecificToEntityExists(resourceName, resourceId));
+    }
+
+    /**
+     * Fetches everything needed to evaluate the permissions of a user on a resource type with a single call.
+     * Decision data is not cached since it depends on the requested ids.
+     *
+     * @param userId             user id
+     * @param roleIds            ids of the user roles
+     * @param entityResourceName resource name
+     * @param resourceIds        ids of the entities whose specific permissions must be included
+     * @return decision data
+     */
+    public PermissionDecisionData getDecisionData(long userId, Collection<Long> roleIds, String entityResourceName, Collection<Long> resourceIds) {
+        StringBuilder query = new StringBuilder("?userId=").append(userId);
+        appendParam(query, "entityResourceName", entityResourceName);
+        roleIds.forEach(roleId -> appendParam(query, "roleId", roleId));
+        resourceIds.forEach(resourceId -> appendParam(query, "resourceId", resourceId));
+        return get("/decision-data" + query, PermissionDecisionData.class, null).getValue();
+    }
+
+    /**
+     * Not cached, like getDecisionData.
+     */
+    @Override
+    public PermissionDecisionData getResourceDecisionData(long userId, Collection<Long> roleIds, String entityResourceName, Collection<Long> resourceIds) {
+        StringBuilder query = new StringBuilder("?userId=").append(userId);
+        appendParam(query, "entityResourceName", entityResourceName);
+        roleIds.forEach(roleId -> appendParam(query, "roleId", roleId));
+        resourceIds.forEach(resourceId -> appendParam(query, "resourceId", resourceId));
+        return get("/resource-decision-data" + query, PermissionDecisionData.class, null).getValue();
+    }
+
+    /**
+     * @return number of lookups which have been served by a remote call issued by another thread for the same key
+     */
+    public long getCoalescedCalls() {
+        return getCache().getCoalescedCalls();
+    }
+
+    /**
+     * @return number of expired responses which have been confirmed by the permission service with 304 Not Modified
+     */
+    public long getRevalidatedResponses() {
+        return getCache().getRevalidatedEntries();
+    }
+
+    /**
+     * @return number of lookups answered with an expired value while it was being refreshed in background
+     */
+    public long getStaleResponses() {
+        return getCache().getStaleHits();
+    }
+
+    /**
+     * @return number of responses received in the Smile binary format
+     */
+    public long getBinaryResponses() {
+        return binaryResponses.sum();
+    }
+
+    /**
+     * @return true if calls to the permission service are currently rejected by the circuit breaker
+     */
+    public boolean isCircuitOpen() {
+        getCache();
+        return circuitBreaker.isOpen();
+    }
+
+    /**
+     * Expires all cached responses, next invocations will revalidate them with the permission service.
+     */
+    public void invalidateCache() {
+        getCache().invalidateAll();
+    }
+
+    /**
+     * Expires the cached responses which may depend on the changed permission.
+     */
+    @Override
+    public void onInvalidation(PermissionInvalidation invalidation) {
+        PermissionResponseCache configuredCache;
+        synchronized (this) {
+            configuredCache = cache;
+        }
+        if (configuredCache == null)
+            return;
+        if (invalidation.isAll()) {
+            configuredCache.invalidateAll();
+            return;
+        }
+        String resourceName = invalidation.getEntityResourceName();
+        long resourceId = invalidation.getResourceId();
+        List<String> keys = new ArrayList<>(4);
+        if (invalidation.getUserId() != 0)
+            keys.add(userKey(invalidation.getUserId(), resourceName, resourceId));
+        if (invalidation.getRoleId() != 0) {
+            keys.add(roleKey(invalidation.getRoleId(), resourceName, resourceId));
+            keys.add(roleKey(invalidation.getRoleId()));
+        }
+        if (resourceId != 0)
+            keys.add(specificKey(resourceName, resourceId));
+        configuredCache.invalidate(keys);
+    }
+
+    /**
+     * Cached lookups complete on the caller thread, a thread hop would cost more than the lookup itself.
+     */
+    private <T> CompletableFuture<T> lookupAsync(String cacheKey, Supplier<T> lookup) {
+        if (getCache().isAvailable(cacheKey))
+            return CompletableFuture.completedFuture(lookup.get());
+        return CompletableFuture.supplyAsync(lookup, lookupExecutor);
+    }
+
+    private static String userKey(long userId, String resourceName, long resourceId) {
+        return "user:" + userId + ":" + resourceName + ":" + resourceId;
+    }
+
+    private static String roleKey(long roleId, String resourceName, long resourceId) {
+        return "role:" + roleId + ":" + resourceName + ":" + resourceId;
+    }
+
+    private static String roleKey(long roleId) {
+        return "role:" + roleId;
+    }
+
+    private static String specificKey(String resourceName, long resourceId) {
+        return "specific:" + resourceName + ":" + resourceId;
+    }
+
+    private Permission findFirst(String cacheKey, Long roleId, Long userId, String resourceName, Long resourceId) {
+        return getCache().get(cacheKey, etag -> search(roleId, userId, resourceName, resourceId, 1, null, etag).map(page -> {
+            List<WaterPermission> results = page.getResults();
+            return results.isEmpty() ? null : PermissionView.of(results.get(0));
+        }));
+    }
+
+    private ConditionalResponse<PermissionSearchPage> search(Long roleId, Long userId, String resourceName, Long resourceId, int limit, String continuationToken, String etag) {
+        StringBuilder query = new StringBuilder("?limit=").append(limit);
+        appendParam(query, "roleId", roleId);
+        appendParam(query, "userId", userId);
+        appendParam(query, "entityResourceName", resourceName);
+        appendParam(query, "resourceId", resourceId);
+        appendParam(query, "continuationToken", continuationToken);
+        return get("/search" + query, PermissionSearchPage.class, etag);
+    }
+
+    /**
+     * @param etag tag of the cached copy sent as If-None-Match, null for unconditional requests
+     */
+    private <T> ConditionalResponse<T> get(String pathAndQuery, Class<T> responseType, String etag) {
+        //loads the configuration on first use
+        getCache();
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(permissionsUrl + pathAndQuery))
+                .timeout(requestTimeout)
+                .header("Accept", acceptHeader)
+                .GET();
+        if (authToken != null && !authToken.isBlank())
+            request.header("Authorization", "Bearer " + authToken);
+        if (etag != null)
+            request.header("If-None-Match", etag);
+        if (!circuitBreaker.allowRequest())
+            throw new WaterRuntimeException("Permission service is unavailable, circuit breaker is open");
+        boolean answered = false;
+        try {
+            HttpResponse<byte[]> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            answered = true;
+            //client errors come from a service which is up and running
+            if (response.statusCode() >= 500)
+                circuitBreaker.onFailure();
+            else
+                circuitBreaker.onSuccess();
+            if (response.statusCode() == 304 && etag != null)
+                return ConditionalResponse.notModified();
+            if (response.statusCode() != 200)
+                throw new WaterRuntimeException("Permission service responded with status " + response.statusCode());
+            return ConditionalResponse.of(readBody(response, responseType), response.headers().firstValue("ETag").orElse(null));
+        } catch (IOException e) {
+            circuitBreaker.onFailure();
+            log.error("Unable to reach permission service: {}", e.getMessage());
+            throw new WaterRuntimeException("Unable to reach permission service");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WaterRuntimeException("Interrupted while waiting for permission service");
+        } finally {
+            //an interrupted or otherwise abandoned probe must not keep the circuit open forever
+            if (!answered)
+                circuitBreaker.onAbandoned();
+        }
+    }
+
+    private <T> T readBody(HttpResponse<byte[]> response, Class<T> responseType) throws IOException {
+        String contentType = response.headers().firstValue("Content-Type").orElse(JSON_ACCEPT);
+        if (contentType.startsWith(SMILE_CONTENT_TYPE)) {
+            binaryResponses.increment();
+            return smileMapper.readValue(response.body(), responseType);
+        }
+        return mapper.readValue(response.body(), responseType);
+    }
+
+    private static void appendParam(StringBuilder query, String name, Object value) {
+        if (value == null)
+            return;
+        query.append('&').append(name).append('=').append(URLEncoder.encode(value.toString(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Configuration is read on first use, when application properties are available.
+     */
+    private synchronized PermissionResponseCache getCache() {
+        if (cache == null) {
+            String serviceUrl = applicationProperties.getPropertyOrDefault(PERMISSION_SERVICE_URL_PROPERTY, "");
+            if (serviceUrl.isBlank())
+                throw new WaterRuntimeException("Property " + PERMISSION_SERVICE_URL_PROPERTY + " is not set");
+            permissionsUrl = (serviceUrl.endsWith("/") ? serviceUrl : serviceUrl + "/") + "permissions";
+            authToken = applicationProperties.getPropertyOrDefault(AUTH_TOKEN_PROPERTY, "");
+            String payloadFormat = applicationProperties.getPropertyOrDefault(PAYLOAD_FORMAT_PROPERTY, PAYLOAD_FORMAT_SMILE);
+            acceptHeader = PAYLOAD_FORMAT_JSON.equalsIgnoreCase(payloadFormat.trim()) ? JSON_ACCEPT : SMILE_ACCEPT;
+            requestTimeout = Duration.ofMillis(applicationProperties.getPropertyOrDefault(REQUEST_TIMEOUT_PROPERTY, DEFAULT_REQUEST_TIMEOUT_MILLIS));
+            httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofMillis(applicationProperties.getPropertyOrDefault(CONNECT_TIMEOUT_PROPERTY, DEFAULT_CONNECT_TIMEOUT_MILLIS)))
+                    .build();
+            circuitBreaker = new CircuitBreaker(
+                    (int) applicationProperties.getPropertyOrDefault(CIRCUIT_BREAKER_FAILURE_THRESHOLD_PROPERTY, DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD),
+                    applicationProperties.getPropertyOrDefault(CIRCUIT_BREAKER_OPEN_PROPERTY, DEFAULT_CIRCUIT_BREAKER_OPEN_MILLIS));
+            String cacheMode = applicationProperties.getPropertyOrDefault(CACHE_MODE_PROPERTY, CACHE_MODE_STRICT);
+            long ttlMillis = applicationProperties.getPropertyOrDefault(CACHE_TTL_PROPERTY, DEFAULT_CACHE_TTL_MILLIS);
+            boolean staleWhileRevalidate = CACHE_MODE_STALE_WHILE_REVALIDATE.equalsIgnoreCase(cacheMode.trim());
+            cache = new PermissionResponseCache(
+                    (int) applicationProperties.getPropertyOrDefault(CACHE_MAX_ENTRIES_PROPERTY, DEFAULT_CACHE_MAX_ENTRIES),
+                    ttlMillis,
+                    staleWhileRevalidate ? applicationProperties.getPropertyOrDefault(CACHE_HARD_TTL_PROPERTY, DEFAULT_CACHE_HARD_TTL_MILLIS) : ttlMillis,
+                    staleWhileRevalidate ? Executors.newFixedThreadPool(REFRESH_THREADS, daemonThreads("permission-cache-refresh")) : null);
+            lookupExecutor = Executors.newFixedThreadPool(
+                    (int) applicationProperties.getPropertyOrDefault(ASYNC_THREADS_PROPERTY, DEFAULT_ASYNC_THREADS),
+                    daemonThreads("permission-async-lookup"));
+        }
+        return cache;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 }
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.service.integration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded LRU cache with a time to live, used to keep remote permission responses.
+ * Empty responses are cached as well, since "no permission" is the most frequent answer.
+ * Expired entries are kept with their ETag until evicted, so the loader can revalidate them
+ * and the cached value is reused when the permission service answers 304 Not Modified.
+ * When a refresh executor is given the cache works in stale-while-revalidate mode: once the soft time to live
+ * expires the last known value is still returned, and refreshed in background, until the hard time to live expires.
+ * Invalidated entries are never served stale, only their ETag is kept to revalidate them.
+ * Loaders run outside the lock so a slow remote call never blocks readers of other keys,
+ * concurrent misses on the same key share a single loader invocation.
+ */
+class PermissionResponseCache {
+    private static final Logger log = LoggerFactory.getLogger(PermissionResponseCache.class);
+    private static final Object NO_VALUE = new Object();
+
+    private final long ttlNanos;
+    private final long hardTtlNanos;
+    private final Executor refreshExecutor;
+    private final Map<String, Entry> entries;
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final LongAdder revalidatedEntries = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+
+    /**
+     * @param refreshExecutor executor of background refreshes, null to always load expired entries synchronously
+     */
+    PermissionResponseCache(int maxEntries, long ttlMillis, long hardTtlMillis, Executor refreshExecutor) {
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.hardTtlNanos = Math.max(ttlMillis, hardTtlMillis) * 1_000_000L;
+        this.refreshExecutor = refreshExecutor;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param key    cache key
+     * @param loader invoked on miss with the ETag of the expired entry, null if there is none
+     * @return cached or loaded value
+     */
+    <T> T get(String key, Function<String, ConditionalResponse<T>> loader) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null && entry.isFresh())
+            return entry.getValue();
+        if (entry != null && refreshExecutor != null && entry.isUsable()) {
+            staleHits.increment();
+            refreshInBackground(key, loader);
+            return entry.getValue();
+        }
+        return singleFlight.execute(key, () -> load(key, loader));
+    }
+
+    /**
+     * @return true if a lookup of the key is answered without waiting for the permission service
+     */
+    boolean isAvailable(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            return entry != null && (entry.isFresh() || (refreshExecutor != null && entry.isUsable()));
+        }
+    }
+
+    long getCoalescedCalls() {
+        return singleFlight.getCoalescedCalls();
+    }
+
+    long getRevalidatedEntries() {
+        return revalidatedEntries.sum();
+    }
+
+    /**
+     * @return number of lookups answered with an expired value while it was being refreshed
+     */
+    long getStaleHits() {
+        return staleHits.sum();
+    }
+
+    /**
+     * Expires all entries, their ETags are kept so the next lookups revalidate them.
+     * Invalidated values are not served anymore, not even in stale-while-revalidate mode:
+     * they may carry revoked grants, so the next lookups wait for the permission service.
+     */
+    void invalidateAll() {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            entries.replaceAll((key, entry) -> new Entry(entry.value, entry.etag, now, now));
+        }
+    }
+
+    /**
+     * Expires the given entries and makes them unusable, keeping their ETags like invalidateAll.
+     */
+    void invalidate(Collection<String> keys) {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            for (String key : keys) {
+                Entry entry = entries.get(key);
+                if (entry != null)
+                    entries.put(key, new Entry(entry.value, entry.etag, now, now));
+            }
+        }
+    }
+
+    private <T> T load(String key, Function<String, ConditionalResponse<T>> loader) {
+        Entry stored;
+        synchronized (entries) {
+            stored = entries.get(key);
+        }
+        //the previous flight may have stored the value after our lookup
+        if (stored != null && stored.isFresh())
+            return stored.getValue();
+        ConditionalResponse<T> response = loader.apply(stored != null ? stored.etag : null);
+        long now = System.nanoTime();
+        Entry loaded;
+        if (response.isNotModified() && stored != null) {
+            revalidatedEntries.increment();
+            loaded = new Entry(stored.value, stored.etag, now + ttlNanos, now + hardTtlNanos);
+        } else {
+            T value = response.getValue();
+            loaded = new Entry(value == null ? NO_VALUE : value, response.getEtag(), now + ttlNanos, now + hardTtlNanos);
+        }
+        synchronized (entries) {
+            entries.put(key, loaded);
+        }
+        return loaded.getValue();
+    }
+
+    private <T> void refreshInBackground(String key, Function<String, ConditionalResponse<T>> loader) {
+        if (!refreshing.add(key))
+            return;
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    singleFlight.execute(key, () -> load(key, loader));
+                } catch (RuntimeException e) {
+                    log.debug("Background refresh of {} failed: {}", key, e.getMessage());
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final String etag;
+        private final long expiresAt;
+        private final long unusableAt;
+
+        private Entry(Object value, String etag, long expiresAt, long unusableAt) {
+            this.value = value;
+            this.etag = etag;
+            this.expiresAt = expiresAt;
+            this.unusableAt = unusableAt;
+        }
+
+        private boolean isFresh() {
+            return expiresAt - System.nanoTime() > 0;
+        }
+
+        /**
+         * @return true until the hard time to live expires
+         */
+        private boolean isUsable() {
+            return unusableAt - System.nanoTime() > 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T getValue() {
+            return value == NO_VALUE ? null : (T) value;
+        }
+    }
+}
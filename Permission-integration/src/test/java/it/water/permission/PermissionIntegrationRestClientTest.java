@@ -16,26 +16,91 @@
 
 package it.water.permission;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
 import it.water.core.api.action.ResourceAction;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.permission.Permission;
 import it.water.core.api.service.Service;
 import it.water.core.api.service.integration.PermissionIntegrationClient;
 import it.water.core.interceptors.annotations.Inject;
+import it.water.core.model.exceptions.WaterRuntimeException;
+import it.water.core.testing.utils.interceptors.TestServiceProxy;
 import it.water.core.testing.utils.junit.WaterTestExtension;
+import it.water.permission.model.PermissionDecisionData;
+import it.water.permission.model.PermissionInvalidation;
+import it.water.permission.service.integration.PermissionIntegrationRestClient;
 import lombok.Setter;
-import org.junit.jupiter.api.Assertions;
-import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
 
-import java.util.Collections;
-import java.util.List;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 @ExtendWith(WaterTestExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
 class PermissionIntegrationRestClientTest implements Service {
+    private static final int STAND_IN_PORT = 18091;
+    //page size enforced by the stand-in, small enough to make findByRole walk several pages
+    private static final int STAND_IN_PAGE_SIZE = 2;
+    private static final String RESOURCE = "it.water.example.Resource";
+    //lookups of this resource are held by the stand-in until slowResponse is released
+    private static final String SLOW_RESOURCE = "it.water.example.Slow";
+    private static final String SMILE = "application/x-jackson-smile";
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+    private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory());
 
     @Inject
     @Setter
     private PermissionIntegrationClient permissionIntegrationClient;
 
+    private HttpServer permissionServiceStandIn;
+    private final AtomicInteger remoteCalls = new AtomicInteger();
+    //part of the ETags returned by the stand-in, incrementing it simulates a change of the permission table
+    private final AtomicInteger tableVersion = new AtomicInteger();
+    private volatile CountDownLatch slowResponse = new CountDownLatch(0);
+    //id, name, actionIds, entityResourceName, resourceId, roleId, userId
+    private final List<Object[]> rows = List.of(
+            new Object[]{1L, "rolePermission", 3L, RESOURCE, 0L, 10L, 0L},
+            new Object[]{2L, "roleSpecificPermission", 1L, RESOURCE, 5L, 10L, 0L},
+            new Object[]{3L, "otherRolePermission", 7L, "it.water.example.Other", 0L, 10L, 0L},
+            new Object[]{4L, "userPermission", 2L, RESOURCE, 0L, 0L, 20L}
+    );
+
+    @BeforeAll
+    void startPermissionServiceStandIn() throws IOException {
+        permissionServiceStandIn = HttpServer.create(new InetSocketAddress("localhost", STAND_IN_PORT), 0);
+        permissionServiceStandIn.createContext("/water/permissions/search", this::search);
+        permissionServiceStandIn.createContext("/water/permissions/decision-data", this::decisionData);
+        permissionServiceStandIn.createContext("/water/permissions/resource-decision-data", this::decisionData);
+        permissionServiceStandIn.createContext("/water/failing", this::unavailable);
+        //concurrent requests must be served concurrently to observe overlapping lookups
+        permissionServiceStandIn.setExecutor(Executors.newCachedThreadPool());
+        permissionServiceStandIn.start();
+    }
+
+    @AfterAll
+    void stopPermissionServiceStandIn() {
+        permissionServiceStandIn.stop(0);
+    }
+
+    @BeforeEach
+    void resetCache() {
+        restClient().invalidateCache();
+        remoteCalls.set(0);
+    }
+
     @Test
     void testPermissionIntegrationRestClient() {
         Assertions.assertNotNull(permissionIntegrationClient);
@@ -50,4 +115,332 @@ class PermissionIntegrationRestClientTest implements Service {
         Assertions.assertThrows(UnsupportedOperationException.class, () -> permissionIntegrationClient.checkOrCreatePermissionsSpecificToEntity(0, 0, list));
         Assertions.assertFalse(permissionIntegrationClient.permissionSpecificToEntityExists("", 0));
     }
+
+    @Test
+    void findersShouldBeResolvedByThePermissionService() {
+        Permission rolePermission = permissionIntegrationClient.findByRoleAndResourceName(10, RESOURCE);
+        Assertions.assertNotNull(rolePermission);
+        Assertions.assertEquals(3, rolePermission.getActionIds());
+        Permission roleSpecificPermission = permissionIntegrationClient.findByRoleAndResourceNameAndResourceId(10, RESOURCE, 5);
+        Assertions.assertEquals(1, roleSpecificPermission.getActionIds());
+        Permission userPermission = permissionIntegrationClient.findByUserAndResourceName(20, RESOURCE);
+        Assertions.assertEquals(2, userPermission.getActionIds());
+        Assertions.assertNull(permissionIntegrationClient.findByUserAndResourceName(10, RESOURCE));
+        Assertions.assertEquals(3, permissionIntegrationClient.findByRole(10).size());
+        Assertions.assertTrue(permissionIntegrationClient.permissionSpecificToEntityExists(RESOURCE, 5));
+        Assertions.assertFalse(permissionIntegrationClient.permissionSpecificToEntityExists(RESOURCE, 6));
+    }
+
+    @Test
+    void responsesShouldBeCached() {
+        permissionIntegrationClient.findByRoleAndResourceName(10, RESOURCE);
+        permissionIntegrationClient.findByUserAndResourceName(10, RESOURCE);
+        int callsAfterFirstLookup = remoteCalls.get();
+        Assertions.assertEquals(2, callsAfterFirstLookup);
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertNotNull(permissionIntegrationClient.findByRoleAndResourceName(10, RESOURCE));
+            //missing permissions are cached too
+            Assertions.assertNull(permissionIntegrationClient.findByUserAndResourceName(10, RESOURCE));
+        }
+        Assertions.assertEquals(callsAfterFirstLookup, remoteCalls.get());
+        restClient().invalidateCache();
+        permissionIntegrationClient.findByRoleAndResourceName(10, RESOURCE);
+        Assertions.assertEquals(callsAfterFirstLookup + 1, remoteCalls.get());
+    }
+
+    @Test
+    void expiredResponsesShouldBeRevalidated() {
+        //entries left by previous tests must not be confirmed
+        tableVersion.incrementAndGet();
+        long revalidatedBefore = restClient().getRevalidatedResponses();
+        Permission rolePermission = permissionIntegrationClient.findByRoleAndResourceName(10, RESOURCE);
+        Assertions.assertEquals(3, permissionIntegrationClient.findByRole(10).size());
+        //one call for the permission and two pages for the role
+        Assertions.assertEquals(3, remoteCalls.get());
+        restClient().invalidateCache();
+        Assertions.assertSame(rolePermission, permissionIntegrationClient.findByRoleAndResourceName(10, RESOURCE));
+        Assertions.assertEquals(3, permissionIntegrationClient.findByRole(10).size());
+        //only the first page of the role is revalidated
+        Assertions.assertEquals(5, remoteCalls.get());
+        Assertions.assertEquals(2, restClient().getRevalidatedResponses() - revalidatedBefore);
+        tableVersion.incrementAndGet();
+        restClient().invalidateCache();
+        Permission reloaded = permissionIntegrationClient.findByRoleAndResourceName(10, RESOURCE);
+        Assertions.assertNotSame(rolePermission, reloaded);
+        Assertions.assertEquals(3, reloaded.getActionIds());
+        Assertions.assertEquals(2, restClient().getRevalidatedResponses() - revalidatedBefore);
+    }
+
+    @Test
+    void asyncLookupsShouldOverlap() throws Exception {
+        int lookupsCount = 4;
+        slowResponse = new CountDownLatch(1);
+        List<CompletableFuture<Permission>> lookups = new ArrayList<>();
+        try {
+            for (long roleId = 1; roleId <= lookupsCount; roleId++) {
+                lookups.add(restClient().findByRoleAndResourceNameAsync(roleId, SLOW_RESOURCE));
+            }
+            //every lookup reaches the service while the others are still waiting for their response
+            long deadline = System.currentTimeMillis() + 5000;
+            while (remoteCalls.get() < lookupsCount && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(lookupsCount, remoteCalls.get());
+        } finally {
+            slowResponse.countDown();
+        }
+        for (CompletableFuture<Permission> lookup : lookups) {
+            Assertions.assertNull(lookup.get(5, TimeUnit.SECONDS));
+        }
+        //cached lookups complete on the caller thread
+        Assertions.assertTrue(restClient().findByRoleAndResourceNameAsync(1, SLOW_RESOURCE).isDone());
+    }
+
+    @Test
+    void staleValuesShouldBeServedWhileRevalidating() throws InterruptedException {
+        PermissionIntegrationRestClient client = configuredClient(Map.of(
+                PermissionIntegrationRestClient.CACHE_MODE_PROPERTY, PermissionIntegrationRestClient.CACHE_MODE_STALE_WHILE_REVALIDATE,
+                PermissionIntegrationRestClient.CACHE_TTL_PROPERTY, 1L));
+        Permission rolePermission = client.findByRoleAndResourceName(10, RESOURCE);
+        Assertions.assertEquals(1, remoteCalls.get());
+        Thread.sleep(5);
+        tableVersion.incrementAndGet();
+        //the expired value is returned at once while the refresh runs in background
+        Assertions.assertSame(rolePermission, client.findByRoleAndResourceName(10, RESOURCE));
+        Assertions.assertEquals(1, client.getStaleResponses());
+        Permission refreshed = rolePermission;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (refreshed == rolePermission && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            refreshed = client.findByRoleAndResourceName(10, RESOURCE);
+        }
+        Assertions.assertNotSame(rolePermission, refreshed);
+        Assertions.assertEquals(3, refreshed.getActionIds());
+    }
+
+    @Test
+    void invalidatedValuesShouldNotBeServedStale() {
+        PermissionIntegrationRestClient client = configuredClient(Map.of(
+                PermissionIntegrationRestClient.CACHE_MODE_PROPERTY, PermissionIntegrationRestClient.CACHE_MODE_STALE_WHILE_REVALIDATE));
+        client.findByRoleAndResourceName(10, RESOURCE);
+        Assertions.assertEquals(1, remoteCalls.get());
+        client.onInvalidation(new PermissionInvalidation(10, 0, RESOURCE, 0));
+        //the invalidated value may hold a revoked grant, the lookup waits for the revalidation
+        Assertions.assertEquals(3, client.findByRoleAndResourceName(10, RESOURCE).getActionIds());
+        Assertions.assertEquals(2, remoteCalls.get());
+        Assertions.assertEquals(0, client.getStaleResponses());
+    }
+
+    @Test
+    void binaryResponsesShouldBeNegotiated() {
+        long binaryResponses = restClient().getBinaryResponses();
+        Permission rolePermission = permissionIntegrationClient.findByRoleAndResourceName(10, RESOURCE);
+        Assertions.assertEquals(binaryResponses + 1, restClient().getBinaryResponses());
+        PermissionIntegrationRestClient jsonClient = configuredClient(Map.of(
+                PermissionIntegrationRestClient.PAYLOAD_FORMAT_PROPERTY, PermissionIntegrationRestClient.PAYLOAD_FORMAT_JSON));
+        Permission jsonRolePermission = jsonClient.findByRoleAndResourceName(10, RESOURCE);
+        Assertions.assertEquals(0, jsonClient.getBinaryResponses());
+        Assertions.assertEquals(rolePermission.getActionIds(), jsonRolePermission.getActionIds());
+        Assertions.assertEquals(3, restClient().findByRole(10).size());
+    }
+
+    @Test
+    void circuitBreakerShouldStopCallsToAFailingService() {
+        PermissionIntegrationRestClient client = configuredClient(Map.of(
+                PermissionIntegrationRestClient.PERMISSION_SERVICE_URL_PROPERTY, "http://localhost:" + STAND_IN_PORT + "/water/failing",
+                PermissionIntegrationRestClient.CIRCUIT_BREAKER_FAILURE_THRESHOLD_PROPERTY, 2L));
+        Assertions.assertThrows(WaterRuntimeException.class, () -> client.findByRoleAndResourceName(10, RESOURCE));
+        Assertions.assertFalse(client.isCircuitOpen());
+        Assertions.assertThrows(WaterRuntimeException.class, () -> client.findByUserAndResourceName(20, RESOURCE));
+        Assertions.assertTrue(client.isCircuitOpen());
+        Assertions.assertEquals(2, remoteCalls.get());
+        //further lookups fail fast without reaching the service
+        Assertions.assertThrows(WaterRuntimeException.class, () -> client.findByRole(10));
+        Assertions.assertEquals(2, remoteCalls.get());
+    }
+
+    @Test
+    void interruptedProbeShouldLetTheNextRequestProbe() throws InterruptedException {
+        PermissionIntegrationRestClient client = configuredClient(Map.of(
+                PermissionIntegrationRestClient.PERMISSION_SERVICE_URL_PROPERTY, "http://localhost:" + STAND_IN_PORT + "/water/failing",
+                PermissionIntegrationRestClient.CIRCUIT_BREAKER_FAILURE_THRESHOLD_PROPERTY, 1L,
+                PermissionIntegrationRestClient.CIRCUIT_BREAKER_OPEN_PROPERTY, 1L));
+        Assertions.assertThrows(WaterRuntimeException.class, () -> client.findByRoleAndResourceName(10, RESOURCE));
+        Assertions.assertTrue(client.isCircuitOpen());
+        Thread.sleep(5);
+        //the probe is interrupted while the service is still answering
+        slowResponse = new CountDownLatch(1);
+        Thread probe = new Thread(() -> Assertions.assertThrows(WaterRuntimeException.class, () -> client.findByRoleAndResourceName(10, SLOW_RESOURCE)));
+        probe.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (remoteCalls.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        probe.interrupt();
+        probe.join(5000);
+        slowResponse.countDown();
+        Assertions.assertTrue(client.isCircuitOpen());
+        //the next request probes the service instead of failing fast forever
+        Assertions.assertThrows(WaterRuntimeException.class, () -> client.findByUserAndResourceName(20, RESOURCE));
+        Assertions.assertEquals(3, remoteCalls.get());
+    }
+
+    @Test
+    void decisionDataShouldBeFetchedWithOneCall() {
+        PermissionDecisionData data = restClient().getDecisionData(20, List.of(10L), RESOURCE, List.of(5L));
+        Assertions.assertEquals(1, remoteCalls.get());
+        Assertions.assertEquals(List.of(10L), data.getRoleIds());
+        Assertions.assertEquals(3, data.getRoleActionIds().get(10L));
+        Assertions.assertEquals(2, data.getUserActionIds());
+        Assertions.assertEquals(1, data.getEntityGrants().get(5L).getRoleActionIds().get(10L));
+        Assertions.assertTrue(data.getEntityGrants().get(5L).isSpecificToEntityExists());
+    }
+
+    @Test
+    void resourceDecisionDataShouldBeFetchedWithOneCall() {
+        PermissionDecisionData data = restClient().getResourceDecisionData(20, List.of(10L), RESOURCE, List.of());
+        Assertions.assertEquals(1, remoteCalls.get());
+        Assertions.assertEquals(Set.of(5L), data.getEntityGrants().keySet());
+        Assertions.assertEquals(1, data.getEntityGrants().get(5L).getRoleActionIds().get(10L));
+    }
+
+    @Test
+    void concurrentLookupsShouldBeCoalesced() throws Exception {
+        int threads = 8;
+        long coalescedBefore = restClient().getCoalescedCalls();
+        slowResponse = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Permission>> lookups = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                lookups.add(executor.submit(() -> permissionIntegrationClient.findByRoleAndResourceName(10, SLOW_RESOURCE)));
+            }
+            //waits until every thread but the one performing the remote call is waiting for its result
+            long deadline = System.currentTimeMillis() + 5000;
+            while (restClient().getCoalescedCalls() - coalescedBefore < threads - 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            slowResponse.countDown();
+            for (Future<Permission> lookup : lookups) {
+                Assertions.assertNull(lookup.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            slowResponse.countDown();
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(1, remoteCalls.get());
+        Assertions.assertEquals(threads - 1, restClient().getCoalescedCalls() - coalescedBefore);
+    }
+
+    /**
+     * Components are injected through the test interceptors proxy, the real client exposes cache and decision data methods.
+     */
+    @SuppressWarnings("rawtypes")
+    private PermissionIntegrationRestClient restClient() {
+        if (Proxy.isProxyClass(permissionIntegrationClient.getClass()))
+            return (PermissionIntegrationRestClient) ((TestServiceProxy) Proxy.getInvocationHandler(permissionIntegrationClient)).getRealService();
+        return (PermissionIntegrationRestClient) permissionIntegrationClient;
+    }
+
+    /**
+     * Client reading the given properties, the stand-in url and the defaults for everything else.
+     */
+    private PermissionIntegrationRestClient configuredClient(Map<String, Object> properties) {
+        Map<String, Object> values = new HashMap<>(properties);
+        values.putIfAbsent(PermissionIntegrationRestClient.PERMISSION_SERVICE_URL_PROPERTY, "http://localhost:" + STAND_IN_PORT + "/water");
+        ApplicationProperties applicationProperties = Mockito.mock(ApplicationProperties.class,
+                invocation -> values.getOrDefault(invocation.getArgument(0), invocation.getArgument(1)));
+        PermissionIntegrationRestClient client = new PermissionIntegrationRestClient();
+        client.setApplicationProperties(applicationProperties);
+        return client;
+    }
+
+    private void unavailable(HttpExchange exchange) throws IOException {
+        remoteCalls.incrementAndGet();
+        if (exchange.getRequestURI().getQuery().contains(SLOW_RESOURCE))
+            awaitSlowResponse();
+        exchange.sendResponseHeaders(503, -1);
+        exchange.close();
+    }
+
+    /**
+     * Fixed GET /permissions/decision-data and /permissions/resource-decision-data response matching the stand-in rows for user 20 and role 10.
+     */
+    private void decisionData(HttpExchange exchange) throws IOException {
+        remoteCalls.incrementAndGet();
+        String json = "{\"userId\":20,\"entityResourceName\":\"" + RESOURCE + "\",\"roleIds\":[10],\"roleActionIds\":{\"10\":3},"
+                + "\"userActionIds\":2,\"impersonationActionIds\":{},"
+                + "\"entityGrants\":{\"5\":{\"roleActionIds\":{\"10\":1},\"userActionIds\":0,\"specificToEntityExists\":true}}}";
+        respond(exchange, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Minimal implementation of GET /permissions/search: exact match filters, offset based continuation token
+     * and ETags made of table version and query.
+     */
+    private void search(HttpExchange exchange) throws IOException {
+        remoteCalls.incrementAndGet();
+        if (exchange.getRequestURI().getRawQuery().contains("entityResourceName=" + SLOW_RESOURCE))
+            awaitSlowResponse();
+        String query = exchange.getRequestURI().getRawQuery();
+        String etag = "\"" + tableVersion.get() + "-" + query.hashCode() + "\"";
+        exchange.getResponseHeaders().add("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        Map<String, String> params = new HashMap<>();
+        for (String param : query.split("&")) {
+            String[] pair = param.split("=", 2);
+            params.put(pair[0], URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
+        }
+        List<Object[]> matching = rows.stream()
+                .filter(row -> matches(params.get("roleId"), row[5])
+                        && matches(params.get("userId"), row[6])
+                        && matches(params.get("entityResourceName"), row[3])
+                        && matches(params.get("resourceId"), row[4]))
+                .collect(Collectors.toList());
+        int offset = params.containsKey("continuationToken") ? Integer.parseInt(params.get("continuationToken")) : 0;
+        int pageSize = Math.min(Integer.parseInt(params.get("limit")), STAND_IN_PAGE_SIZE);
+        int end = Math.min(offset + pageSize, matching.size());
+        String results = matching.subList(offset, end).stream().map(PermissionIntegrationRestClientTest::toJson).collect(Collectors.joining(","));
+        String continuationToken = end < matching.size() ? "\"" + end + "\"" : "null";
+        byte[] body = ("{\"results\":[" + results + "],\"continuationToken\":" + continuationToken + "}").getBytes(StandardCharsets.UTF_8);
+        respond(exchange, body);
+    }
+
+    /**
+     * Answers in Smile when the client prefers it, as the permission service does with the binary provider installed.
+     */
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        if (accept != null && accept.startsWith(SMILE)) {
+            body = SMILE_MAPPER.writeValueAsBytes(JSON_MAPPER.readTree(body));
+            exchange.getResponseHeaders().add("Content-Type", SMILE);
+        } else {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void awaitSlowResponse() {
+        try {
+            slowResponse.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean matches(String filter, Object value) {
+        return filter == null || filter.equals(value.toString());
+    }
+
+    private static String toJson(Object[] row) {
+        return "{\"id\":" + row[0] + ",\"name\":\"" + row[1] + "\",\"actionIds\":" + row[2] + ",\"entityResourceName\":\"" + row[3]
+                + "\",\"resourceId\":" + row[4] + ",\"roleId\":" + row[5] + ",\"userId\":" + row[6] + "}";
+    }
 }
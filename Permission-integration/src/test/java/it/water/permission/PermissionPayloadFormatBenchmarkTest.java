@@ -0,0 +1,114 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.permission;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import it.water.permission.model.PermissionSearchPage;
+import it.water.permission.model.WaterPermission;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares payload size and encode/decode time of JSON and Smile on the payloads exchanged between services:
+ * a full search page of permissions and a permission map.
+ * Timings are logged rather than asserted, since they depend on the machine running the build.
+ */
+class PermissionPayloadFormatBenchmarkTest {
+    private static final Logger log = LoggerFactory.getLogger(PermissionPayloadFormatBenchmarkTest.class);
+    private static final int WARM_UP_ITERATIONS = 200;
+    private static final int MEASURED_ITERATIONS = 500;
+    private static final TypeReference<Map<String, Map<String, Map<String, Boolean>>>> PERMISSION_MAP = new TypeReference<>() {
+    };
+
+    private final ObjectMapper jsonMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory())
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Test
+    void permissionListShouldBeSmallerInSmile() throws IOException {
+        List<WaterPermission> permissions = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            permissions.add(new WaterPermission("permission" + i, i % 63, "it.water.example.Resource" + (i % 20), i % 7, 10 + i % 5, 0));
+        PermissionSearchPage page = new PermissionSearchPage(permissions, "continuation");
+        long jsonSize = benchmark("permission list", jsonMapper, page, PermissionSearchPage.class);
+        long smileSize = benchmark("permission list", smileMapper, page, PermissionSearchPage.class);
+        Assertions.assertTrue(smileSize < jsonSize);
+        PermissionSearchPage decoded = smileMapper.readValue(smileMapper.writeValueAsBytes(page), PermissionSearchPage.class);
+        Assertions.assertEquals(permissions.size(), decoded.getResults().size());
+        Assertions.assertEquals(permissions.get(999).getActionIds(), decoded.getResults().get(999).getActionIds());
+    }
+
+    @Test
+    void permissionMapShouldBeSmallerInSmile() throws IOException {
+        Map<String, Map<String, Map<String, Boolean>>> permissionMap = new HashMap<>();
+        for (int resource = 0; resource < 20; resource++) {
+            Map<String, Map<String, Boolean>> entities = new HashMap<>();
+            for (long id = 1; id <= 100; id++) {
+                Map<String, Boolean> actions = new HashMap<>();
+                for (String action : List.of("save", "update", "find", "find-all", "remove", "share"))
+                    actions.put(action, (id + action.length()) % 3 == 0);
+                entities.put(String.valueOf(id), actions);
+            }
+            permissionMap.put("it.water.example.Resource" + resource, entities);
+        }
+        long jsonSize = benchmark("permission map", jsonMapper, permissionMap, null);
+        long smileSize = benchmark("permission map", smileMapper, permissionMap, null);
+        Assertions.assertTrue(smileSize < jsonSize);
+        Assertions.assertEquals(permissionMap, smileMapper.readValue(smileMapper.writeValueAsBytes(permissionMap), PERMISSION_MAP));
+    }
+
+    /**
+     * @param type decoded type, null for permission maps
+     * @return encoded size in bytes
+     */
+    private long benchmark(String payloadName, ObjectMapper mapper, Object payload, Class<?> type) throws IOException {
+        byte[] encoded = mapper.writeValueAsBytes(payload);
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++)
+            decode(mapper, mapper.writeValueAsBytes(payload), type);
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            encoded = mapper.writeValueAsBytes(payload);
+            long encodedAt = System.nanoTime();
+            decode(mapper, encoded, type);
+            decodeNanos += System.nanoTime() - encodedAt;
+            encodeNanos += encodedAt - start;
+        }
+        log.info("{} in {}: {} bytes, encode {} us, decode {} us", payloadName, mapper.getFactory().getFormatName(), encoded.length,
+                encodeNanos / MEASURED_ITERATIONS / 1000, decodeNanos / MEASURED_ITERATIONS / 1000);
+        return encoded.length;
+    }
+
+    private static void decode(ObjectMapper mapper, byte[] encoded, Class<?> type) throws IOException {
+        if (type != null)
+            mapper.readValue(encoded, type);
+        else
+            mapper.readValue(encoded, PERMISSION_MAP);
+    }
+}
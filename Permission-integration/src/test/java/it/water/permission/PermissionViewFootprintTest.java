@@ -0,0 +1,85 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.permission;
+
+import it.water.permission.model.PermissionResourceNames;
+import it.water.permission.model.PermissionView;
+import it.water.permission.model.WaterPermission;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the heap retained by each cached permission, comparing the deserialized WaterPermission entities
+ * the client cache used to keep with the PermissionView copies it keeps now.
+ * Both are built from the same inputs, generated in the same way, and only the cached objects are kept reachable,
+ * so the difference is what the cache retains: the view keeps neither the name nor a copy of the resource name.
+ */
+class PermissionViewFootprintTest {
+    private static final Logger log = LoggerFactory.getLogger(PermissionViewFootprintTest.class);
+    private static final int PERMISSIONS = 100_000;
+
+    @Test
+    void viewsShouldRetainAFractionOfTheEntityFootprint() {
+        //resource names registered before measuring, as they are once per JVM
+        for (int i = 0; i < 20; i++)
+            PermissionResourceNames.idOf(resourceName(i));
+        long before = usedHeapAfterGc();
+        WaterPermission[] entities = new WaterPermission[PERMISSIONS];
+        for (int i = 0; i < PERMISSIONS; i++)
+            entities[i] = deserializedEntity(i);
+        long entityBytes = (usedHeapAfterGc() - before) / PERMISSIONS;
+        WaterPermission lastEntity = entities[PERMISSIONS - 1];
+        entities = null;
+
+        before = usedHeapAfterGc();
+        PermissionView[] views = new PermissionView[PERMISSIONS];
+        for (int i = 0; i < PERMISSIONS; i++)
+            views[i] = PermissionView.of(deserializedEntity(i));
+        long viewBytes = (usedHeapAfterGc() - before) / PERMISSIONS;
+        log.info("Retained bytes per cached permission: entity {}, view {}", entityBytes, viewBytes);
+        Assertions.assertTrue(viewBytes * 2 < entityBytes, "Retained bytes: entity " + entityBytes + ", view " + viewBytes);
+        Assertions.assertSame(views[0].getEntityResourceName(), views[20].getEntityResourceName());
+        Assertions.assertEquals(lastEntity.getActionIds(), views[PERMISSIONS - 1].getActionIds());
+        Assertions.assertEquals(lastEntity.getEntityResourceName(), views[PERMISSIONS - 1].getEntityResourceName());
+    }
+
+    /**
+     * Every deserialized entity owns its copy of the strings
+     */
+    private static WaterPermission deserializedEntity(int i) {
+        return new WaterPermission("Permission " + i, i % 63 + 1L, new String(resourceName(i % 20)), i % 7, 10 + i % 5, 0);
+    }
+
+    private static String resourceName(int index) {
+        return "it.water.example.model.ExampleResource" + index;
+    }
+
+    /**
+     * Used heap once garbage is collected, a few collections are requested since a single one may leave garbage behind.
+     */
+    private static long usedHeapAfterGc() {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
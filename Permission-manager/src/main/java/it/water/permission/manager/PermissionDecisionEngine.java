@@ -0,0 +1,165 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.manager;
+
+import it.water.permission.model.ActionSet;
+
+import java.util.Collection;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Entity permission decision which evaluates its inputs lazily.
+ * It applies the formula of PermissionDecisionEvaluator.calculatePermission to each role, OR-ed with the impersonation
+ * permission of the role, but looks inputs up only when the outcome still depends on them:
+ * permission rows first, then sharing, the existence of entity specific permissions and ownership, which may load entities
+ * or call other services. Inputs which don't depend on the role are looked up at most once per decision
+ * and the role loop stops at the first role granting the action.
+ * Permissions are given as action sets, null or empty when the permission doesn't exist, since a persisted permission
+ * always grants at least one action. Checked actions may go beyond the 64th.
+ * An engine instance serves a single decision and is not thread safe.
+ */
+final class PermissionDecisionEngine {
+
+    /**
+     * Lookups of the decision inputs, invoked only when needed.
+     */
+    interface Inputs {
+        ActionSet rolePermissionSpecific(long roleId);
+
+        ActionSet rolePermission(long roleId);
+
+        ActionSet roleImpersonationPermission(long roleId);
+
+        ActionSet userPermissionSpecific();
+
+        ActionSet userPermission();
+
+        boolean permissionSpecificToEntityExists();
+
+        boolean userOwnsResource();
+
+        boolean userSharesResource();
+    }
+
+    private final Inputs inputs;
+    private final ActionSet actions;
+    private final ActionSet impersonateActions;
+    private final Lazy<ActionSet> userPermissionSpecific;
+    private final Lazy<ActionSet> userPermission;
+    private final LazyBoolean permissionSpecificToEntityExists;
+    private final LazyBoolean userOwnsResource;
+    private final LazyBoolean userSharesResource;
+
+    /**
+     * @param inputs              lookups of the decision inputs
+     * @param actions             checked actions
+     * @param impersonateActionId id of the impersonate action on users, 0 if user actions are not registered
+     */
+    PermissionDecisionEngine(Inputs inputs, ActionSet actions, long impersonateActionId) {
+        this.inputs = inputs;
+        this.actions = actions;
+        this.impersonateActions = impersonateActionId != 0 ? ActionSet.ofActionId(impersonateActionId) : null;
+        this.userPermissionSpecific = new Lazy<>(inputs::userPermissionSpecific);
+        this.userPermission = new Lazy<>(inputs::userPermission);
+        this.permissionSpecificToEntityExists = new LazyBoolean(inputs::permissionSpecificToEntityExists);
+        this.userOwnsResource = new LazyBoolean(inputs::userOwnsResource);
+        this.userSharesResource = new LazyBoolean(inputs::userSharesResource);
+    }
+
+    /**
+     * @param roleIds roles of the user
+     * @return true if any role grants the action
+     */
+    boolean decide(Collection<Long> roleIds) {
+        for (long roleId : roleIds) {
+            if (roleGrants(roleId) || impersonationGrants(roleId))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean roleGrants(long roleId) {
+        ActionSet permissionSpecific = inputs.rolePermissionSpecific(roleId);
+        ActionSet userSpecific = userPermissionSpecific.get();
+        boolean specificPermissionExists = exists(permissionSpecific) || exists(userSpecific);
+        boolean hasEntityPermission = includes(permissionSpecific, actions) || includes(userSpecific, actions);
+        //an existing entity permission without the action can't be overridden by the general permission
+        if (specificPermissionExists && !hasEntityPermission)
+            return false;
+        LazyBoolean hasGeneralPermission = new LazyBoolean(() -> includes(inputs.rolePermission(roleId), actions) || includes(userPermission.get(), actions));
+        if (!hasEntityPermission && !hasGeneralPermission.get())
+            return false;
+        //the action is granted on the resource, ownership or sharing decide whether it is granted on the entity
+        if (userSharesResource.get()) {
+            if (hasEntityPermission)
+                return true;
+            if (hasGeneralPermission.get() && !permissionSpecificToEntityExists.get())
+                return true;
+        }
+        return userOwnsResource.get();
+    }
+
+    private boolean impersonationGrants(long roleId) {
+        return impersonateActions != null && includes(inputs.roleImpersonationPermission(roleId), impersonateActions);
+    }
+
+    private static boolean exists(ActionSet permission) {
+        return permission != null && !permission.isEmpty();
+    }
+
+    /**
+     * A missing permission never grants, a permission grants if it has all the action bits.
+     */
+    private static boolean includes(ActionSet permission, ActionSet actions) {
+        return exists(permission) && permission.containsAll(actions);
+    }
+
+    private static final class Lazy<T> {
+        private Supplier<T> supplier;
+        private T value;
+
+        private Lazy(Supplier<T> supplier) {
+            this.supplier = supplier;
+        }
+
+        private T get() {
+            if (supplier != null) {
+                value = supplier.get();
+                supplier = null;
+            }
+            return value;
+        }
+    }
+
+    private static final class LazyBoolean {
+        private BooleanSupplier supplier;
+        private boolean value;
+
+        private LazyBoolean(BooleanSupplier supplier) {
+            this.supplier = supplier;
+        }
+
+        private boolean get() {
+            if (supplier != null) {
+                value = supplier.getAsBoolean();
+                supplier = null;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.manager;
+
+import it.water.permission.model.ActionSet;
+import it.water.permission.model.AuthorizedResourceIds;
+import it.water.permission.model.EntityPermissionGrants;
+import it.water.permission.model.PermissionDecisionData;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Evaluates permission decisions on a PermissionDecisionData bundle, applying the same rules of PermissionManagerDefault.
+ * Remote services can fetch the bundle once and authorize every action and entity of the resource type locally.
+ * Admin checks, ownership and sharing depend on the calling service and must be resolved by the caller.
+ */
+public final class PermissionDecisionEvaluator {
+
+    private PermissionDecisionEvaluator() {
+    }
+
+    /**
+     * Resource type check, true if any role of the user grants the action on the resource type.
+     *
+     * @param data     decision data
+     * @param actionId action id
+     * @return true if the action is granted
+     */
+    public static boolean hasPermission(PermissionDecisionData data, long actionId) {
+        return hasPermission(data, ActionSet.ofActionId(actionId));
+    }
+
+    /**
+     * Resource type check, true if any role of the user grants all the actions on the resource type.
+     *
+     * @param data    decision data
+     * @param actions actions to check, they may go beyond the 64th
+     * @return true if the actions are granted
+     */
+    public static boolean hasPermission(PermissionDecisionData data, ActionSet actions) {
+        for (Long roleId : data.getRoleIds()) {
+            if (includesActions(data.getRoleActionIds().getOrDefault(roleId, 0L), data.roleExtendedActionIds(roleId), actions))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Entity check.
+     *
+     * @param data                decision data, it must include the entity id
+     * @param resourceId          entity id
+     * @param actionId            action id
+     * @param userOwnsResource    true if the user owns the entity or the entity is not owned
+     * @param userSharesResource  true if the entity is shared with the user
+     * @param impersonateActionId id of the impersonate action on users, 0 if user actions are not registered
+     * @return true if the action is granted
+     */
+    public static boolean hasPermission(PermissionDecisionData data, long resourceId, long actionId, boolean userOwnsResource, boolean userSharesResource, long impersonateActionId) {
+        return hasPermission(data, resourceId, ActionSet.ofActionId(actionId), userOwnsResource, userSharesResource, impersonateActionId);
+    }
+
+    /**
+     * Entity check of a set of actions, which may go beyond the 64th.
+     *
+     * @param data                decision data, it must include the entity id
+     * @param resourceId          entity id
+     * @param actions             actions to check
+     * @param userOwnsResource    true if the user owns the entity or the entity is not owned
+     * @param userSharesResource  true if the entity is shared with the user
+     * @param impersonateActionId id of the impersonate action on users, 0 if user actions are not registered
+     * @return true if all the actions are granted
+     */
+    public static boolean hasPermission(PermissionDecisionData data, long resourceId, ActionSet actions, boolean userOwnsResource, boolean userSharesResource, long impersonateActionId) {
+        EntityPermissionGrants grants = null;
+        Map<Long, Long> specificRoleActionIds;
+        long specificUserActionIds;
+        byte[] specificUserExtendedActionIds;
+        boolean specificToEntityExists;
+        if (resourceId == 0) {
+            //resource type permissions are stored with resource id 0
+            specificRoleActionIds = data.getRoleActionIds();
+            specificUserActionIds = data.getUserActionIds();
+            specificUserExtendedActionIds = data.getUserExtendedActionIds();
+            specificToEntityExists = false;
+        } else {
+            grants = data.getEntityGrants().get(resourceId);
+            if (grants == null)
+                throw new IllegalArgumentException("Decision data does not include resource id " + resourceId);
+            specificRoleActionIds = grants.getRoleActionIds();
+            specificUserActionIds = grants.getUserActionIds();
+            specificUserExtendedActionIds = grants.getUserExtendedActionIds();
+            specificToEntityExists = grants.isSpecificToEntityExists();
+        }
+        boolean userHasGeneralPermission = includesActions(data.getUserActionIds(), data.getUserExtendedActionIds(), actions);
+        boolean userHasEntityPermission = includesActions(specificUserActionIds, specificUserExtendedActionIds, actions);
+        boolean userSpecificPermissionExists = !ActionSet.isEmpty(specificUserActionIds, specificUserExtendedActionIds);
+        for (Long roleId : data.getRoleIds()) {
+            long roleSpecificActionIds = specificRoleActionIds.getOrDefault(roleId, 0L);
+            byte[] roleSpecificExtendedActionIds = grants != null ? grants.roleExtendedActionIds(roleId) : data.roleExtendedActionIds(roleId);
+            boolean specificPermissionExists = !ActionSet.isEmpty(roleSpecificActionIds, roleSpecificExtendedActionIds) || userSpecificPermissionExists;
+            boolean hasEntityPermission = includesActions(roleSpecificActionIds, roleSpecificExtendedActionIds, actions) || userHasEntityPermission;
+            boolean hasGeneralPermission = includesActions(data.getRoleActionIds().getOrDefault(roleId, 0L), data.roleExtendedActionIds(roleId), actions) || userHasGeneralPermission;
+            boolean hasImpersonationPermission = impersonateActionId != 0 && includesAction(data.getImpersonationActionIds().getOrDefault(roleId, 0L), impersonateActionId);
+            if (calculatePermission(specificPermissionExists, hasEntityPermission, hasGeneralPermission, userOwnsResource, userSharesResource, specificToEntityExists) || hasImpersonationPermission)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Entities of the resource type on which the action is granted, see authorizedIds with an action set.
+     */
+    public static AuthorizedResourceIds authorizedIds(PermissionDecisionData data, long actionId, Collection<Long> sharedIds, long impersonateActionId) {
+        return authorizedIds(data, ActionSet.ofActionId(actionId), sharedIds, impersonateActionId);
+    }
+
+    /**
+     * Entities of the resource type on which the actions are granted, without looking at each entity of the type.
+     * Owned entities without specific permissions of the user and of its roles follow the resource type permissions,
+     * so the result keeps a single rule for them and lists only the owned entities which are exceptions to it.
+     * Shared entities are evaluated on their own grants and listed when authorized, as owned and shared entities:
+     * the permission manager considers owned the entities shared with the user.
+     *
+     * @param data                decision data including the specific permissions of every entity the user or its roles
+     *                            have one on, and those of the shared entities, as returned by getResourceDecisionData
+     * @param actions             actions to check
+     * @param sharedIds           ids of the entities shared with the user
+     * @param impersonateActionId id of the impersonate action on users, 0 if user actions are not registered
+     * @return authorized entities
+     */
+    public static AuthorizedResourceIds authorizedIds(PermissionDecisionData data, ActionSet actions, Collection<Long> sharedIds, long impersonateActionId) {
+        boolean userHasGeneralPermission = includesActions(data.getUserActionIds(), data.getUserExtendedActionIds(), actions);
+        boolean ownedAuthorized = false;
+        for (Long roleId : data.getRoleIds()) {
+            //impersonation grants the action on every entity
+            if (impersonateActionId != 0 && includesAction(data.getImpersonationActionIds().getOrDefault(roleId, 0L), impersonateActionId))
+                return AuthorizedResourceIds.ALL;
+            ownedAuthorized = ownedAuthorized || userHasGeneralPermission || includesActions(data.getRoleActionIds().getOrDefault(roleId, 0L), data.roleExtendedActionIds(roleId), actions);
+        }
+        List<Long> ownedExceptionIds = new ArrayList<>();
+        for (Long resourceId : data.getEntityGrants().keySet()) {
+            if (hasPermission(data, resourceId, actions, true, false, 0) != ownedAuthorized)
+                ownedExceptionIds.add(resourceId);
+        }
+        List<Long> ids = new ArrayList<>();
+        for (Long resourceId : sharedIds) {
+            if (resourceId != null && resourceId != 0 && hasPermission(data, resourceId, actions, true, true, 0))
+                ids.add(resourceId);
+        }
+        return AuthorizedResourceIds.of(ids, ownedAuthorized, ownedExceptionIds);
+    }
+
+    /**
+     * The value is true only if an entity permission exists and contains the action,
+     * or if no entity permission exists and the general permission contains the action,
+     * AND the resource is owned by the user or shared with the user.
+     * Shared resources follow the general permission only if nobody has a permission specific to the entity.
+     */
+    static boolean calculatePermission(boolean specificPermissionExists, boolean hasEntityPermission, boolean hasGeneralPermission, boolean userOwnsResource, boolean userSharesResource, boolean existPermissionSpecificToEntity) {
+        return ((specificPermissionExists && hasEntityPermission) || (!specificPermissionExists && hasGeneralPermission))
+                && (userOwnsResource || (userSharesResource && !existPermissionSpecificToEntity && hasGeneralPermission) || (userSharesResource && specificPermissionExists && hasEntityPermission));
+    }
+
+    /**
+     * Entity decision when neither the user nor its roles have a permission specific to the entity,
+     * as taken on the effective permissions: calculatePermission reduces to the resource type grant and then
+     * ownership or, for shared entities, the absence of permissions specific to the entity.
+     * On resource id 0 the general permissions act as the specific ones, so sharing is enough.
+     * Ownership, sharing and the existence query are evaluated only when needed.
+     */
+    static boolean calculateGeneralPermission(boolean hasGeneralPermission, long resourceId, BooleanSupplier userOwnsResource,
+                                              BooleanSupplier userSharesResource, BooleanSupplier existPermissionSpecificToEntity) {
+        if (!hasGeneralPermission)
+            return false;
+        boolean shares = userSharesResource.getAsBoolean();
+        if (resourceId == 0)
+            return shares || userOwnsResource.getAsBoolean();
+        return (shares && !existPermissionSpecificToEntity.getAsBoolean()) || userOwnsResource.getAsBoolean();
+    }
+
+    /**
+     * @param actionIds action mask of a permission, 0 if the permission doesn't exist
+     * @param actionId  action id
+     * @return true if the mask contains all the bits of the action
+     */
+    public static boolean includesAction(long actionIds, long actionId) {
+        return actionIds != 0 && (actionIds & actionId) == actionId;
+    }
+
+    /**
+     * @param actionIds         action mask of a permission, 0 if the permission doesn't exist
+     * @param extendedActionIds actions beyond the 64th of the permission, null if there are none
+     * @param required          actions to check
+     * @return true if the permission exists and grants all the required actions
+     */
+    public static boolean includesActions(long actionIds, byte[] extendedActionIds, ActionSet required) {
+        return !ActionSet.isEmpty(actionIds, extendedActionIds) && ActionSet.includes(actionIds, extendedActionIds, required);
+    }
+}
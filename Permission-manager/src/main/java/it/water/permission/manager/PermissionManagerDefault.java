@@ -38,17 +38,33 @@ import it.water.core.api.service.integration.SharedEntityIntegrationClient;
 import it.water.core.api.service.integration.UserIntegrationClient;
 import it.water.core.interceptors.annotations.FrameworkComponent;
 import it.water.core.interceptors.annotations.Inject;
+import it.water.core.model.exceptions.WaterRuntimeException;
 import it.water.core.permission.action.ActionFactory;
 import it.water.core.permission.action.UserActions;
+import it.water.permission.api.ActionSetPermissionManager;
+import it.water.permission.api.AuthorizedIdsManager;
+import it.water.permission.api.integration.EffectivePermissionClient;
+import it.water.permission.api.integration.PermissionDecisionDataClient;
+import it.water.permission.api.integration.PermissionIntegrationAsyncClient;
+import it.water.permission.api.integration.ResourceDecisionDataClient;
+import it.water.permission.model.ActionSet;
+import it.water.permission.model.AuthorizedResourceIds;
+import it.water.permission.model.EntityPermissionGrants;
+import it.water.permission.model.PermissionDecisionData;
+import it.water.permission.model.PermissionView;
+import it.water.permission.model.WaterEffectivePermission;
+import it.water.permission.model.WaterPermission;
 import lombok.Getter;
 import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @FrameworkComponent(properties = {PermissionManagerComponentProperties.PERMISSION_MANAGER_IMPLEMENTATION_PROP + "=" + PermissionManagerComponentProperties.PERMISSION_MANAGER_DEFAILT_IMPLEMENTATION})
-public class PermissionManagerDefault implements PermissionManager {
+public class PermissionManagerDefault implements PermissionManager, AuthorizedIdsManager, ActionSetPermissionManager {
     private Logger log = LoggerFactory.getLogger(PermissionManagerDefault.class.getName());
 
     //supporting spring properties bind with bean properties
@@ -129,7 +145,7 @@ public class PermissionManagerDefault implements PermissionManager {
         // every protected entity is a base entity
         ProtectedEntity entityResource = (ProtectedEntity) entity;
 
-        return hasPermission(user, entityResource, action);
+        return hasPermission(user, entityResource, ActionSet.ofActionId(action.getActionId()));
     }
 
     /**
@@ -148,7 +164,7 @@ public class PermissionManagerDefault implements PermissionManager {
         if (!PermissionManager.isProtectedEntity(resourceName))
             return true;
 
-        return hasPermission(username, resourceName, action);
+        return hasPermission(username, resourceName, ActionSet.ofActionId(action.getActionId()));
     }
 
     /**
@@ -169,7 +185,48 @@ public class PermissionManagerDefault implements PermissionManager {
 
         log.debug(
                 "invoking checkPermission User {} Entity Resource Name: {} Action Name: {}  actionId: {}", username, resource.getName(), action.getActionName(), action.getActionId());
-        return hasPermission(username, resource.getName(), action);
+        return hasPermission(username, resource.getName(), ActionSet.ofActionId(action.getActionId()));
+    }
+
+    /**
+     * Checks actions which may go beyond the 64th, with the same rules of checkPermission.
+     *
+     * @param username     parameter that indicates the username of user
+     * @param resourceName parameter that indicates the resource name of the actions
+     * @param actions      actions to check
+     */
+    @Override
+    public boolean checkActions(String username, String resourceName, ActionSet actions) {
+        log.debug("invoking checkActions User {} Entity Resource Name: {} Actions: {} ", username, resourceName, actions);
+        if (username == null || resourceName == null || actions == null)
+            return false;
+
+        if (!PermissionManager.isProtectedEntity(resourceName))
+            return true;
+
+        return hasPermission(username, resourceName, actions);
+    }
+
+    /**
+     * Checks actions which may go beyond the 64th on an entity, with the same rules of checkPermission.
+     *
+     * @param username parameter that indicates the username of user
+     * @param entity   parameter that indicates the entity
+     * @param actions  actions to check
+     */
+    @Override
+    public boolean checkActions(String username, Resource entity, ActionSet actions) {
+        log.debug("invoking checkActions User {} Entity: {} Actions: {}", username, entity, actions);
+        if (entity != null && (!PermissionManager.isProtectedEntity(entity.getResourceName()) || !PermissionManager.isProtectedEntity(entity)))
+            return true;
+
+        if (username == null || entity == null || actions == null)
+            return false;
+
+        User user = this.userIntegrationClient.fetchUserByUsername(username);
+        if (user == null)
+            return false;
+        return hasPermission(user, (ProtectedEntity) entity, actions);
     }
 
     /**
@@ -253,16 +310,49 @@ public class PermissionManagerDefault implements PermissionManager {
         return hasPermission;
     }
 
+    /**
+     * Lists the entities of the resource type on which the user is granted the action, with a single call to the
+     * permission service and one to the sharing service, whatever the number of entities of the type.
+     *
+     * @param username      username
+     * @param resourceClass resource type
+     * @param action        action to check
+     * @return ids of the authorized entities, see AuthorizedResourceIds for the entities owned by the user
+     */
+    @Override
+    public AuthorizedResourceIds findAuthorizedIds(String username, Class<? extends Resource> resourceClass, Action action) {
+        if (username == null || resourceClass == null || action == null)
+            return AuthorizedResourceIds.NONE;
+        String resourceName = resourceClass.getName();
+        if (!PermissionManager.isProtectedEntity(resourceName))
+            return AuthorizedResourceIds.ALL;
+        User user = this.userIntegrationClient.fetchUserByUsername(username);
+        if (user == null)
+            return AuthorizedResourceIds.NONE;
+        if (user.isAdmin())
+            return AuthorizedResourceIds.ALL;
+        Collection<Role> userRoles = roleIntegrationClient.fetchUserRoles(user.getId());
+        if (userRoles.isEmpty())
+            return AuthorizedResourceIds.NONE;
+        if (!(permissionIntegrationClient instanceof ResourceDecisionDataClient resourceDecisionDataClient))
+            throw new WaterRuntimeException("Permission client does not support listing authorized entities");
+        Collection<Long> sharedIds = sharedEntityIntegrationClient != null && SharedEntity.class.isAssignableFrom(resourceClass)
+                ? sharedEntityIntegrationClient.fetchSharingUsersIds(resourceName, user.getId())
+                : Collections.emptyList();
+        PermissionDecisionData data = resourceDecisionDataClient.getResourceDecisionData(user.getId(), userRoles.stream().map(Role::getId).toList(), resourceName, sharedIds);
+        Action impersonateAction = impersonateAction();
+        return PermissionDecisionEvaluator.authorizedIds(data, action.getActionId(), sharedIds, impersonateAction != null ? impersonateAction.getActionId() : 0);
+    }
 
     /**
      * Find an existing user by username. Returns actions permission by user role.
      *
      * @param username     parameter required to find a user by his username
      * @param resourceName parameter that indicates the resource name
-     * @param action       interaction of the user with HyperIoT platform
+     * @param actions      actions to check
      * @return Actions permission by user
      */
-    private boolean hasPermission(String username, String resourceName, Action action) {
+    private boolean hasPermission(String username, String resourceName, ActionSet actions) {
         User user = this.userIntegrationClient.fetchUserByUsername(username);
         if (user == null) {
             return false;
@@ -276,13 +366,28 @@ public class PermissionManagerDefault implements PermissionManager {
         if (userRoles.isEmpty())
             return false;
 
+        //the effective store keeps actions 0-63 only
+        if (actions.isSingleWord() && permissionIntegrationClient instanceof EffectivePermissionClient effectiveClient && effectiveClient.isEffectivePermissionStoreEnabled()) {
+            //resource type checks consider role permissions only
+            return effectiveClient.findEffectivePermissions(user.getId(), userRoles.stream().map(Role::getId).toList(), resourceName, 0).stream()
+                    .anyMatch(effective -> effective.getResourceId() == 0 && hasPermission(effective.getRoleActionIds(), actions.getFirstWord()));
+        }
+
+        if (permissionIntegrationClient instanceof PermissionIntegrationAsyncClient asyncClient) {
+            List<CompletableFuture<Permission>> lookups = userRoles.stream()
+                    .map(r -> asyncClient.findByRoleAndResourceNameAsync(r.getId(), resourceName))
+                    .toList();
+            return lookups.stream()
+                    .map(PermissionManagerDefault::await)
+                    .anyMatch(permission -> includesActions(permission, actions));
+        }
+
         Iterator<? extends Role> it = userRoles.iterator();
 
         while (it.hasNext()) {
             Role r = it.next();
             Permission permission = permissionIntegrationClient.findByRoleAndResourceName(r.getId(), resourceName);
-            if (permission != null
-                    && hasPermission(permission.getActionIds(), action.getActionId()))
+            if (includesActions(permission, actions))
                 return true;
         }
         return false;
@@ -290,13 +395,15 @@ public class PermissionManagerDefault implements PermissionManager {
 
     /**
      * Find an existing user by username. Returns actions permission by user role.
+     * The decision is taken by a PermissionDecisionEngine, which looks inputs up only while the outcome depends on them
+     * and stops at the first role granting the action.
      *
-     * @param user   parameter required to find a user by his username
-     * @param action interaction of the user with HyperIoT platform
+     * @param user    parameter required to find a user by his username
+     * @param actions actions to check
      * @return Actions permission by user
      */
     private boolean hasPermission(User user, ProtectedEntity entity,
-                                  Action action) {
+                                  ActionSet actions) {
         if (user.isAdmin())
             return true;
 
@@ -305,56 +412,89 @@ public class PermissionManagerDefault implements PermissionManager {
         if (userRoles.isEmpty())
             return false;
 
-        Iterator<? extends Role> it = userRoles.iterator();
-        boolean hasPermission = false;
-        while (it.hasNext()) {
-            Role r = it.next();
-            Permission permissionSpecific = permissionIntegrationClient.findByRoleAndResourceNameAndResourceId(r.getId(),
-                    entity.getResourceName(), entity.getId());
-            Permission userPermissionSpecific = permissionIntegrationClient.findByUserAndResourceNameAndResourceId(user.getId(),
-                    entity.getResourceName(), entity.getId());
-            Permission permissionImpersonation = permissionIntegrationClient.findByRoleAndResourceName(r.getId(),
-                    User.class.getName());
-            // it initialize the value with the general value based on resource name
-            // general permission is : permission based on the role or permission based on user
-            boolean hasGeneralPermission = hasGeneralPermission(user, r, entity, action);
-            // entity permission is specific if it is found on role or user
-            boolean hasEntityPermission = hasEntityPermission(permissionSpecific, action, userPermissionSpecific);
-            boolean existPermissionSpecificToEntity = permissionIntegrationClient.permissionSpecificToEntityExists(entity.getResourceName(), entity.getId());
-            boolean userActionsAreRegistered = actionsManager.getActions().get(User.class.getName()) != null;
-            Action impersonateAction = (userActionsAreRegistered) ? actionsManager.getActions().get(User.class.getName()).getAction(UserActions.IMPERSONATE) : null;
-            boolean userOwnsResource = checkUserOwnsResource(user, entity);
-            boolean userSharesResource = checkUserSharesResource(user, entity);
-            boolean hasImpersonationPermission = impersonateAction != null && permissionImpersonation != null && hasPermission(
-                    permissionImpersonation.getActionIds(), impersonateAction.getActionId());
-            hasPermission = hasPermission || calculatePermission(permissionSpecific, userPermissionSpecific, hasEntityPermission, hasGeneralPermission, userOwnsResource, userSharesResource, existPermissionSpecificToEntity) || hasImpersonationPermission;
+        Action impersonateAction = impersonateAction();
+        List<Long> roleIds = userRoles.stream().map(Role::getId).toList();
+        //the effective store keeps actions 0-63 only
+        if (actions.isSingleWord() && permissionIntegrationClient instanceof EffectivePermissionClient effectiveClient && effectiveClient.isEffectivePermissionStoreEnabled()) {
+            Boolean decision = decideOnEffectivePermissions(effectiveClient, user, roleIds, entity, actions.getFirstWord(), impersonateAction);
+            if (decision != null)
+                return decision;
         }
-        return hasPermission;
+        PermissionDecisionEngine.Inputs inputs;
+        if (permissionIntegrationClient instanceof PermissionDecisionDataClient decisionDataClient)
+            inputs = new DecisionDataInputs(decisionDataClient, user, entity, roleIds);
+        else if (permissionIntegrationClient instanceof PermissionIntegrationAsyncClient asyncClient)
+            inputs = new AsyncEntityDecisionInputs(asyncClient, user, entity);
+        else
+            inputs = new EntityDecisionInputs(user, entity);
+        PermissionDecisionEngine engine = new PermissionDecisionEngine(inputs, actions, impersonateAction != null ? impersonateAction.getActionId() : 0);
+        return engine.decide(roleIds);
     }
 
-    private boolean calculatePermission(Permission permissionSpecific, Permission userPermissionSpecific, boolean hasEntityPermission, boolean hasGeneralPermission, boolean userOwnsResource, boolean userSharesResource, boolean existPermissionSpecificToEntity) {
-        // The value is true only if the entity permission exists and contains the
-        // actionId, or if
-        // the entity permission doesn't exists then the rule follow the
-        // generalPermission
-        // AND if the resource is an owned resource is accessed by the right user or the
-        // accessing user has the impersonation permission
-        return (
-                ((permissionSpecific != null || userPermissionSpecific != null) && hasEntityPermission) ||
-                        (permissionSpecific == null && userPermissionSpecific == null && hasGeneralPermission)) && (userOwnsResource || ((userSharesResource && !existPermissionSpecificToEntity && hasGeneralPermission) || (userSharesResource && (permissionSpecific != null || userPermissionSpecific != null) && hasEntityPermission)));
+    /**
+     * Decision taken on the effective permissions of the user, with the same outcome of the engine.
+     * When neither the user nor its roles have a permission specific to the entity the engine formula reduces to:
+     * the action is granted on the resource type and the user owns the entity or, sharing it, no other user or role
+     * has a permission specific to it. On resource id 0 the general permissions act as the specific ones, so sharing is enough.
+     *
+     * @return the decision, null if the user or its roles have permissions specific to the entity and the engine must decide
+     */
+    private Boolean decideOnEffectivePermissions(EffectivePermissionClient effectiveClient, User user, List<Long> roleIds, ProtectedEntity entity,
+                                                 long actionId, Action impersonateAction) {
+        long resourceId = entity.getId();
+        long generalActionIds = 0;
+        for (WaterEffectivePermission effective : effectiveClient.findEffectivePermissions(user.getId(), roleIds, entity.getResourceName(), resourceId)) {
+            if (effective.getResourceId() != 0)
+                return null;
+            generalActionIds = effective.getActionIds();
+        }
+        boolean granted = PermissionDecisionEvaluator.calculateGeneralPermission(generalActionIds != 0 && hasPermission(generalActionIds, actionId), resourceId,
+                () -> checkUserOwnsResource(user, entity), () -> checkUserSharesResource(user, entity),
+                () -> permissionIntegrationClient.permissionSpecificToEntityExists(entity.getResourceName(), resourceId));
+        if (granted || impersonateAction == null || impersonateAction.getActionId() == 0)
+            return granted;
+        return effectiveClient.findEffectivePermissions(user.getId(), roleIds, User.class.getName(), 0).stream()
+                .anyMatch(effective -> effective.getResourceId() == 0 && hasPermission(effective.getRoleActionIds(), impersonateAction.getActionId()));
     }
 
-    private boolean hasGeneralPermission(User user, Role r, ProtectedEntity entity, Action action) {
-        Permission permission = permissionIntegrationClient.findByRoleAndResourceName(r.getId(), entity.getResourceName());
-        Permission userPermission = permissionIntegrationClient.findByUserAndResourceName(user.getId(), entity.getResourceName());
-        return (permission != null
-                && hasPermission(permission.getActionIds(), action.getActionId())) || (userPermission != null && hasPermission(userPermission.getActionIds(), action.getActionId()));
+    /**
+     * @return the impersonate action on users, null if user actions are not registered
+     */
+    private Action impersonateAction() {
+        boolean userActionsAreRegistered = actionsManager.getActions().get(User.class.getName()) != null;
+        return (userActionsAreRegistered) ? actionsManager.getActions().get(User.class.getName()).getAction(UserActions.IMPERSONATE) : null;
     }
 
-    private boolean hasEntityPermission(Permission permissionSpecific, Action action, Permission userPermissionSpecific) {
-        return (permissionSpecific != null
-                && hasPermission(permissionSpecific.getActionIds(), action.getActionId())) || (userPermissionSpecific != null
-                && hasPermission(userPermissionSpecific.getActionIds(), action.getActionId()));
+    /**
+     * @return actions granted by the permission, null if the permission doesn't exist
+     */
+    private static ActionSet actionSet(Permission permission) {
+        if (permission instanceof WaterPermission waterPermission)
+            return waterPermission.getActionSet();
+        if (permission instanceof PermissionView view)
+            return view.getActionSet();
+        return permission != null ? ActionSet.ofWords(permission.getActionIds()) : null;
+    }
+
+    /**
+     * Checks the stored actions in place, other permission implementations carry actions 0-63 only.
+     */
+    private static boolean includesActions(Permission permission, ActionSet actions) {
+        if (permission instanceof WaterPermission waterPermission)
+            return waterPermission.isGrantingActions() && waterPermission.includesActions(actions);
+        if (permission instanceof PermissionView view)
+            return view.isGrantingActions() && view.includesActions(actions);
+        return permission != null && PermissionDecisionEvaluator.includesActions(permission.getActionIds(), null, actions);
+    }
+
+    private static <T> T await(CompletableFuture<T> lookup) {
+        try {
+            return lookup.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw e;
+        }
     }
 
     /**
@@ -493,4 +633,179 @@ public class PermissionManagerDefault implements PermissionManager {
         List<ResourceAction<?>> permissionList = Collections.singletonList(resourceAction);
         permissionIntegrationClient.checkOrCreatePermissions(role.getId(), permissionList);
     }
+
+    /**
+     * Inputs of an entity decision looked up one by one through the permission client.
+     */
+    private class EntityDecisionInputs implements PermissionDecisionEngine.Inputs {
+        protected final User user;
+        protected final ProtectedEntity entity;
+
+        private EntityDecisionInputs(User user, ProtectedEntity entity) {
+            this.user = user;
+            this.entity = entity;
+        }
+
+        @Override
+        public ActionSet rolePermissionSpecific(long roleId) {
+            return actionSet(permissionIntegrationClient.findByRoleAndResourceNameAndResourceId(roleId, entity.getResourceName(), entity.getId()));
+        }
+
+        @Override
+        public ActionSet rolePermission(long roleId) {
+            return actionSet(permissionIntegrationClient.findByRoleAndResourceName(roleId, entity.getResourceName()));
+        }
+
+        @Override
+        public ActionSet roleImpersonationPermission(long roleId) {
+            return actionSet(permissionIntegrationClient.findByRoleAndResourceName(roleId, User.class.getName()));
+        }
+
+        @Override
+        public ActionSet userPermissionSpecific() {
+            return actionSet(permissionIntegrationClient.findByUserAndResourceNameAndResourceId(user.getId(), entity.getResourceName(), entity.getId()));
+        }
+
+        @Override
+        public ActionSet userPermission() {
+            return actionSet(permissionIntegrationClient.findByUserAndResourceName(user.getId(), entity.getResourceName()));
+        }
+
+        @Override
+        public boolean permissionSpecificToEntityExists() {
+            return permissionIntegrationClient.permissionSpecificToEntityExists(entity.getResourceName(), entity.getId());
+        }
+
+        @Override
+        public boolean userOwnsResource() {
+            return checkUserOwnsResource(user, entity);
+        }
+
+        @Override
+        public boolean userSharesResource() {
+            return checkUserSharesResource(user, entity);
+        }
+    }
+
+    /**
+     * Inputs of an entity decision looked up through the asynchronous client.
+     * The user permissions, needed by almost every decision, are requested upfront,
+     * the permissions of a role are requested together the first time the role is evaluated, so their round trips overlap.
+     */
+    private final class AsyncEntityDecisionInputs extends EntityDecisionInputs {
+        private final PermissionIntegrationAsyncClient asyncClient;
+        private final CompletableFuture<Permission> userPermissionSpecific;
+        private final CompletableFuture<Permission> userPermission;
+        private final Map<Long, List<CompletableFuture<Permission>>> rolesLookups = new HashMap<>();
+
+        private AsyncEntityDecisionInputs(PermissionIntegrationAsyncClient asyncClient, User user, ProtectedEntity entity) {
+            super(user, entity);
+            this.asyncClient = asyncClient;
+            this.userPermissionSpecific = asyncClient.findByUserAndResourceNameAndResourceIdAsync(user.getId(), entity.getResourceName(), entity.getId());
+            this.userPermission = asyncClient.findByUserAndResourceNameAsync(user.getId(), entity.getResourceName());
+        }
+
+        @Override
+        public ActionSet rolePermissionSpecific(long roleId) {
+            return actionSet(await(roleLookups(roleId).get(0)));
+        }
+
+        @Override
+        public ActionSet rolePermission(long roleId) {
+            return actionSet(await(roleLookups(roleId).get(1)));
+        }
+
+        @Override
+        public ActionSet roleImpersonationPermission(long roleId) {
+            return actionSet(await(roleLookups(roleId).get(2)));
+        }
+
+        @Override
+        public ActionSet userPermissionSpecific() {
+            return actionSet(await(userPermissionSpecific));
+        }
+
+        @Override
+        public ActionSet userPermission() {
+            return actionSet(await(userPermission));
+        }
+
+        @Override
+        public boolean permissionSpecificToEntityExists() {
+            return await(asyncClient.permissionSpecificToEntityExistsAsync(entity.getResourceName(), entity.getId()));
+        }
+
+        private List<CompletableFuture<Permission>> roleLookups(long roleId) {
+            return rolesLookups.computeIfAbsent(roleId, id -> List.of(
+                    asyncClient.findByRoleAndResourceNameAndResourceIdAsync(id, entity.getResourceName(), entity.getId()),
+                    asyncClient.findByRoleAndResourceNameAsync(id, entity.getResourceName()),
+                    asyncClient.findByRoleAndResourceNameAsync(id, User.class.getName())));
+        }
+    }
+
+    /**
+     * Inputs of an entity decision taken from a PermissionDecisionData, fetched once for all the roles of the user.
+     * Only ownership and sharing, which don't depend on the roles, are still looked up one by one.
+     * On resource id 0 the general permissions act as the specific ones, as PermissionDecisionEvaluator does.
+     */
+    private final class DecisionDataInputs extends EntityDecisionInputs {
+        private final PermissionDecisionDataClient decisionDataClient;
+        private final List<Long> roleIds;
+        private PermissionDecisionData decisionData;
+
+        private DecisionDataInputs(PermissionDecisionDataClient decisionDataClient, User user, ProtectedEntity entity, List<Long> roleIds) {
+            super(user, entity);
+            this.decisionDataClient = decisionDataClient;
+            this.roleIds = roleIds;
+        }
+
+        @Override
+        public ActionSet rolePermissionSpecific(long roleId) {
+            if (entity.getId() == 0)
+                return rolePermission(roleId);
+            EntityPermissionGrants grants = entityGrants();
+            return grants != null ? ActionSet.fromStorage(grants.getRoleActionIds().getOrDefault(roleId, 0L), grants.roleExtendedActionIds(roleId)) : null;
+        }
+
+        @Override
+        public ActionSet rolePermission(long roleId) {
+            return ActionSet.fromStorage(decisionData().getRoleActionIds().getOrDefault(roleId, 0L), decisionData().roleExtendedActionIds(roleId));
+        }
+
+        @Override
+        public ActionSet roleImpersonationPermission(long roleId) {
+            return ActionSet.ofWords(decisionData().getImpersonationActionIds().getOrDefault(roleId, 0L));
+        }
+
+        @Override
+        public ActionSet userPermissionSpecific() {
+            if (entity.getId() == 0)
+                return userPermission();
+            EntityPermissionGrants grants = entityGrants();
+            return grants != null ? ActionSet.fromStorage(grants.getUserActionIds(), grants.getUserExtendedActionIds()) : null;
+        }
+
+        @Override
+        public ActionSet userPermission() {
+            return ActionSet.fromStorage(decisionData().getUserActionIds(), decisionData().getUserExtendedActionIds());
+        }
+
+        @Override
+        public boolean permissionSpecificToEntityExists() {
+            EntityPermissionGrants grants = entityGrants();
+            return grants != null && grants.isSpecificToEntityExists();
+        }
+
+        private EntityPermissionGrants entityGrants() {
+            return entity.getId() != 0 ? decisionData().getEntityGrants().get(entity.getId()) : null;
+        }
+
+        private PermissionDecisionData decisionData() {
+            if (decisionData == null) {
+                List<Long> resourceIds = entity.getId() != 0 ? List.of(entity.getId()) : Collections.emptyList();
+                decisionData = decisionDataClient.getDecisionData(user.getId(), roleIds, entity.getResourceName(), resourceIds);
+            }
+            return decisionData;
+        }
+    }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.permission.manager;
+
+import it.water.permission.model.ActionSet;
+import it.water.permission.model.WaterPermission;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares the single long check used by the permission manager with multi word action set checks.
+ * Timings are logged rather than asserted, since they depend on the machine running the build,
+ * while the absence of allocations on the check path is asserted.
+ */
+class ActionSetBenchmarkTest {
+    private static final Logger log = LoggerFactory.getLogger(ActionSetBenchmarkTest.class);
+    private static final int ITERATIONS = 5_000_000;
+
+    @Test
+    void multiWordSetsShouldBeEvaluatedWordWise() {
+        ActionSet granted = ActionSet.of(0, 3, 64, 130);
+        Assertions.assertEquals(3, granted.getWordCount());
+        Assertions.assertTrue(granted.containsAll(ActionSet.of(3, 130)));
+        Assertions.assertFalse(granted.containsAll(ActionSet.of(3, 131)));
+        Assertions.assertFalse(ActionSet.of(3).containsAll(granted));
+        Assertions.assertEquals(granted, ActionSet.fromStorage(granted.getFirstWord(), granted.getExtendedWords()));
+        Assertions.assertTrue(ActionSet.includes(granted.getFirstWord(), granted.getExtendedWords(), ActionSet.of(64)));
+        Assertions.assertFalse(ActionSet.includes(granted.getFirstWord(), granted.getExtendedWords(), ActionSet.of(200)));
+        Assertions.assertEquals(granted, ActionSet.of(0, 3).union(ActionSet.of(64, 130)));
+        //single word sets keep using the actionIds column only
+        Assertions.assertTrue(ActionSet.of(5, 63).isSingleWord());
+        Assertions.assertNull(ActionSet.of(5, 63).getExtendedWords());
+        WaterPermission permission = new WaterPermission("extended", 1, "it.water.example.Resource", 0, 10, 0);
+        permission.setActionSet(granted);
+        Assertions.assertEquals(9, permission.getActionIds());
+        Assertions.assertTrue(permission.includesActions(ActionSet.of(130)));
+        Assertions.assertTrue(permission.withAccumulateActions(16).includesActions(ActionSet.of(4, 130)));
+    }
+
+    @Test
+    void singleWordChecksShouldNotAllocate() {
+        long actionIds = 0b1011L;
+        ActionSet required = ActionSet.of(1, 3);
+        ActionSet extended = ActionSet.of(1, 70);
+        byte[] extendedActionIds = ActionSet.of(70, 140).getExtendedWords();
+        //warm up
+        measure(actionIds, required, null);
+        measure(actionIds, extended, extendedActionIds);
+        measureLong(actionIds, required.getFirstWord());
+        long longNanos = measureLong(actionIds, required.getFirstWord());
+        long singleWordNanos = measure(actionIds, required, null);
+        long allocatedBefore = allocatedBytes();
+        long multiWordNanos = measure(actionIds, extended, extendedActionIds);
+        long allocated = allocatedBytes() - allocatedBefore;
+        log.info("{} checks: long {} ms, single word action set {} ms, multi word action set {} ms, allocated {} bytes",
+                ITERATIONS, longNanos / 1_000_000, singleWordNanos / 1_000_000, multiWordNanos / 1_000_000, allocated);
+        //a few bytes may be allocated by the measurement itself
+        Assertions.assertTrue(allocated < 1024);
+    }
+
+    private static long measure(long actionIds, ActionSet required, byte[] extendedActionIds) {
+        long start = System.nanoTime();
+        int granted = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            if (ActionSet.includes(actionIds ^ (i & 1), extendedActionIds, required))
+                granted++;
+        }
+        Assertions.assertTrue(granted > 0);
+        return System.nanoTime() - start;
+    }
+
+    private static long measureLong(long actionIds, long actionId) {
+        long start = System.nanoTime();
+        int granted = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            if (PermissionDecisionEvaluator.includesAction(actionIds ^ (i & 1), actionId))
+                granted++;
+        }
+        Assertions.assertTrue(granted > 0);
+        return System.nanoTime() - start;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
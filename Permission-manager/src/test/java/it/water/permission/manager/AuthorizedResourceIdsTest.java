@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.manager;
+
+import it.water.permission.model.AuthorizedResourceIds;
+import it.water.permission.model.EntityPermissionGrants;
+import it.water.permission.model.PermissionDecisionData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks the authorized ids of a resource type against the entity checks of PermissionDecisionEvaluator.
+ * Every combination of resource type permissions is paired with entities covering every combination of
+ * specific permissions, each one both shared and not shared with the user, owned and not owned.
+ */
+class AuthorizedResourceIdsTest {
+    private static final long ACTION_ID = 4;
+    private static final long IMPERSONATE_ACTION_ID = 8;
+    //missing permission, permission granting the action, permission denying it
+    private static final long[] PERMISSIONS = {0, ACTION_ID, 1};
+    private static final long USER_ID = 1;
+    private static final List<Long> ROLE_IDS = List.of(10L, 20L);
+    //entity without any specific permission, left out of the decision data
+    private static final long UNKNOWN_ENTITY_ID = 100_000;
+
+    @Test
+    void authorizedIdsShouldMatchEntityChecks() {
+        for (long firstRole : PERMISSIONS) {
+            for (long secondRole : PERMISSIONS) {
+                for (long user : PERMISSIONS) {
+                    Map<Long, Long> roleActionIds = new HashMap<>();
+                    putPermission(roleActionIds, 10L, firstRole);
+                    putPermission(roleActionIds, 20L, secondRole);
+                    assertEquivalence(roleActionIds, user);
+                }
+            }
+        }
+    }
+
+    @Test
+    void impersonationShouldAuthorizeEveryEntity() {
+        PermissionDecisionData data = new PermissionDecisionData(USER_ID, "resource", ROLE_IDS, Map.of(), 0, Map.of(20L, IMPERSONATE_ACTION_ID), Map.of());
+        Assertions.assertTrue(PermissionDecisionEvaluator.authorizedIds(data, ACTION_ID, List.of(), IMPERSONATE_ACTION_ID).isAllAuthorized());
+        Assertions.assertFalse(PermissionDecisionEvaluator.authorizedIds(data, ACTION_ID, List.of(), 0).isAuthorized(UNKNOWN_ENTITY_ID, true));
+    }
+
+    private void assertEquivalence(Map<Long, Long> roleActionIds, long userActionIds) {
+        Map<Long, EntityPermissionGrants> entityGrants = new HashMap<>();
+        List<Long> sharedIds = new ArrayList<>();
+        long resourceId = 1;
+        for (long firstRole : PERMISSIONS) {
+            for (long secondRole : PERMISSIONS) {
+                for (long user : PERMISSIONS) {
+                    for (boolean otherSpecificPermissions : new boolean[]{false, true}) {
+                        Map<Long, Long> specificRoleActionIds = new HashMap<>();
+                        putPermission(specificRoleActionIds, 10L, firstRole);
+                        putPermission(specificRoleActionIds, 20L, secondRole);
+                        boolean specificToEntityExists = otherSpecificPermissions || !specificRoleActionIds.isEmpty() || user != 0;
+                        //the same grants on a shared and on a not shared entity
+                        entityGrants.put(resourceId, new EntityPermissionGrants(specificRoleActionIds, user, specificToEntityExists));
+                        entityGrants.put(resourceId + 1, new EntityPermissionGrants(specificRoleActionIds, user, specificToEntityExists));
+                        sharedIds.add(resourceId + 1);
+                        resourceId += 2;
+                    }
+                }
+            }
+        }
+        PermissionDecisionData data = new PermissionDecisionData(USER_ID, "resource", ROLE_IDS, roleActionIds, userActionIds, Map.of(), entityGrants);
+        AuthorizedResourceIds authorized = PermissionDecisionEvaluator.authorizedIds(data, ACTION_ID, sharedIds, 0);
+        Assertions.assertFalse(authorized.isAllAuthorized());
+        for (long id : entityGrants.keySet()) {
+            boolean shared = sharedIds.contains(id);
+            for (boolean owned : new boolean[]{false, true}) {
+                //the permission manager considers owned the entities shared with the user
+                boolean expected = PermissionDecisionEvaluator.hasPermission(data, id, ACTION_ID, owned || shared, shared, 0);
+                Assertions.assertEquals(expected, authorized.isAuthorized(id, owned), "entity " + id + " owned " + owned + " " + data);
+            }
+        }
+        //entities without specific permissions follow the resource type permissions
+        Assertions.assertEquals(PermissionDecisionEvaluator.hasPermission(data, 1, ACTION_ID, true, false, 0), authorized.isAuthorized(UNKNOWN_ENTITY_ID, true));
+        Assertions.assertFalse(authorized.isAuthorized(UNKNOWN_ENTITY_ID, false));
+    }
+
+    private static void putPermission(Map<Long, Long> actionIds, long roleId, long permission) {
+        if (permission != 0)
+            actionIds.put(roleId, permission);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.manager;
+
+import it.water.core.api.action.Action;
+import it.water.core.api.action.ActionsManager;
+import it.water.core.api.model.Role;
+import it.water.core.api.model.User;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.integration.PermissionIntegrationClient;
+import it.water.core.api.service.integration.RoleIntegrationClient;
+import it.water.core.api.service.integration.UserIntegrationClient;
+import it.water.permission.api.integration.PermissionDecisionDataClient;
+import it.water.permission.model.EntityPermissionGrants;
+import it.water.permission.model.PermissionDecisionData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that an entity decision fetches the permissions of all the user roles with a single call,
+ * so the number of calls to the permission client doesn't grow with the number of roles.
+ */
+class PermissionDecisionCallCountTest {
+    private static final long USER_ID = 7;
+    private static final long ENTITY_ID = 5;
+    private static final long ACTION_ID = 4;
+
+    @Test
+    void permissionClientCallsShouldNotGrowWithTheNumberOfRoles() {
+        List<Integer> callsByRoleCount = new ArrayList<>();
+        for (int roleCount : new int[]{1, 4, 16}) {
+            PermissionIntegrationClient permissionClient = Mockito.mock(PermissionIntegrationClient.class,
+                    Mockito.withSettings().extraInterfaces(PermissionDecisionDataClient.class));
+            //only the last role grants the action, so every role is evaluated
+            Mockito.when(((PermissionDecisionDataClient) permissionClient).getDecisionData(ArgumentMatchers.eq(USER_ID), ArgumentMatchers.anyCollection(),
+                            ArgumentMatchers.eq(TestResource.class.getName()), ArgumentMatchers.anyCollection()))
+                    .thenReturn(decisionData(roleCount));
+            PermissionManagerDefault permissionManager = permissionManager(permissionClient, roleCount);
+            TestResource entity = new TestResource();
+            entity.setId(ENTITY_ID);
+            entity.setOwnerUserId(USER_ID);
+            Assertions.assertTrue(permissionManager.checkPermission("owner", entity, action()));
+            callsByRoleCount.add(Mockito.mockingDetails(permissionClient).getInvocations().size());
+        }
+        Assertions.assertEquals(List.of(1, 1, 1), callsByRoleCount);
+    }
+
+    private static PermissionManagerDefault permissionManager(PermissionIntegrationClient permissionClient, int roleCount) {
+        User user = Mockito.mock(User.class);
+        Mockito.when(user.getId()).thenReturn(USER_ID);
+        UserIntegrationClient userClient = Mockito.mock(UserIntegrationClient.class);
+        Mockito.when(userClient.fetchUserByUsername("owner")).thenReturn(user);
+        List<Role> roles = new ArrayList<>();
+        for (long roleId = 1; roleId <= roleCount; roleId++) {
+            Role role = Mockito.mock(Role.class);
+            Mockito.when(role.getId()).thenReturn(roleId);
+            roles.add(role);
+        }
+        RoleIntegrationClient roleClient = Mockito.mock(RoleIntegrationClient.class);
+        Mockito.when(roleClient.fetchUserRoles(USER_ID)).thenReturn(roles);
+        //no user actions registered, so impersonation is not evaluated
+        ActionsManager actionsManager = Mockito.mock(ActionsManager.class);
+        PermissionManagerDefault permissionManager = new PermissionManagerDefault();
+        permissionManager.setPermissionIntegrationClient(permissionClient);
+        permissionManager.setUserIntegrationClient(userClient);
+        permissionManager.setRoleIntegrationClient(roleClient);
+        permissionManager.setActionsManager(actionsManager);
+        permissionManager.setComponentRegistry(Mockito.mock(ComponentRegistry.class));
+        return permissionManager;
+    }
+
+    private static PermissionDecisionData decisionData(long roleCount) {
+        List<Long> roleIds = new ArrayList<>();
+        for (long roleId = 1; roleId <= roleCount; roleId++)
+            roleIds.add(roleId);
+        EntityPermissionGrants noEntityGrants = new EntityPermissionGrants(Collections.emptyMap(), 0, false);
+        return new PermissionDecisionData(USER_ID, TestResource.class.getName(), roleIds, Map.of(roleCount, ACTION_ID), 0,
+                Collections.emptyMap(), Map.of(ENTITY_ID, noEntityGrants));
+    }
+
+    private static Action action() {
+        Action action = Mockito.mock(Action.class);
+        Mockito.when(action.getActionId()).thenReturn(ACTION_ID);
+        return action;
+    }
+}
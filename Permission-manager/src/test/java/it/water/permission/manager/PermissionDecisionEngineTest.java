@@ -0,0 +1,227 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.manager;
+
+import it.water.permission.model.ActionSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks the lazy decision engine against the eager formula on every combination of inputs with one and two roles.
+ * Every input is a missing permission, a permission granting the action or a permission denying it,
+ * ownership, sharing and the existence of entity specific permissions take both values.
+ */
+class PermissionDecisionEngineTest {
+    private static final long ACTION_ID = 4;
+    private static final long IMPERSONATE_ACTION_ID = 8;
+    //missing permission, permission granting the action, permission denying it
+    private static final long[] PERMISSIONS = {0, ACTION_ID | IMPERSONATE_ACTION_ID, 1};
+    private static final int ROLE_INPUTS = 3;
+    private static final int USER_INPUTS = 2;
+    private static final int FLAGS = 3;
+
+    @Test
+    void lazyDecisionsShouldMatchTheFormulaWithOneRole() {
+        assertEquivalence(List.of(10L));
+    }
+
+    @Test
+    void lazyDecisionsShouldMatchTheFormulaWithTwoRoles() {
+        assertEquivalence(List.of(10L, 20L));
+    }
+
+    private void assertEquivalence(List<Long> roleIds) {
+        int permissionInputs = ROLE_INPUTS * roleIds.size() + USER_INPUTS;
+        int permissionCombinations = (int) Math.pow(PERMISSIONS.length, permissionInputs);
+        long checked = 0;
+        for (int permissionCombination = 0; permissionCombination < permissionCombinations; permissionCombination++) {
+            for (int flags = 0; flags < (1 << FLAGS); flags++) {
+                for (long impersonateActionId : new long[]{0, IMPERSONATE_ACTION_ID}) {
+                    CountingInputs inputs = new CountingInputs(roleIds, permissionCombination, flags);
+                    boolean expected = eagerDecision(inputs, roleIds, impersonateActionId);
+                    inputs.calls.clear();
+                    boolean actual = new PermissionDecisionEngine(inputs, ActionSet.ofActionId(ACTION_ID), impersonateActionId).decide(roleIds);
+                    Assertions.assertEquals(expected, actual, inputs.toString());
+                    //inputs which don't depend on the role are looked up at most once
+                    for (String input : List.of("userPermissionSpecific", "userPermission", "permissionSpecificToEntityExists", "userOwnsResource", "userSharesResource"))
+                        Assertions.assertTrue(inputs.calls.getOrDefault(input, 0) <= 1, input + " looked up more than once " + inputs);
+                    checked++;
+                }
+            }
+        }
+        Assertions.assertEquals((long) permissionCombinations * (1 << FLAGS) * 2, checked);
+    }
+
+    /**
+     * Decisions taken on the effective permission store, which holds the union of the resource type permissions
+     * and is used only when neither the user nor its roles have a permission specific to the entity.
+     */
+    @Test
+    void effectiveStoreDecisionsShouldMatchTheFormula() {
+        List<Long> roleIds = List.of(10L, 20L);
+        int permissionCombinations = (int) Math.pow(PERMISSIONS.length, ROLE_INPUTS * roleIds.size() + USER_INPUTS);
+        long checked = 0;
+        for (int permissionCombination = 0; permissionCombination < permissionCombinations; permissionCombination++) {
+            for (int flags = 0; flags < (1 << FLAGS); flags++) {
+                CountingInputs inputs = new CountingInputs(roleIds, permissionCombination, flags);
+                if (roleIds.stream().anyMatch(roleId -> inputs.rolePermissionSpecific(roleId).getFirstWord() != 0) || inputs.userPermissionSpecific().getFirstWord() != 0)
+                    continue;
+                long effectiveActionIds = inputs.userPermission().getFirstWord();
+                for (long roleId : roleIds)
+                    effectiveActionIds |= inputs.rolePermission(roleId).getFirstWord();
+                boolean actual = PermissionDecisionEvaluator.calculateGeneralPermission(includes(effectiveActionIds, ACTION_ID), 1,
+                        inputs::userOwnsResource, inputs::userSharesResource, inputs::permissionSpecificToEntityExists);
+                Assertions.assertEquals(eagerDecision(inputs, roleIds, 0), actual, inputs.toString());
+                checked++;
+            }
+        }
+        Assertions.assertTrue(checked > 0);
+    }
+
+    @Test
+    void roleLoopShouldStopAtTheFirstGrant() {
+        //first role granting the action on the resource, entity owned by the user
+        CountingInputs inputs = new CountingInputs(List.of(10L, 20L), 0, 0b001);
+        inputs.rolePermissions.put("rolePermission10", PERMISSIONS[1]);
+        Assertions.assertTrue(new PermissionDecisionEngine(inputs, ActionSet.ofActionId(ACTION_ID), IMPERSONATE_ACTION_ID).decide(List.of(10L, 20L)));
+        Assertions.assertFalse(inputs.calls.containsKey("rolePermissionSpecific20"));
+        Assertions.assertFalse(inputs.calls.containsKey("roleImpersonationPermission10"));
+        //no permission at all: ownership, sharing and the existence query are never evaluated
+        inputs = new CountingInputs(List.of(10L, 20L), 0, 0b111);
+        Assertions.assertFalse(new PermissionDecisionEngine(inputs, ActionSet.ofActionId(ACTION_ID), 0).decide(List.of(10L, 20L)));
+        Assertions.assertFalse(inputs.calls.containsKey("userOwnsResource"));
+        Assertions.assertFalse(inputs.calls.containsKey("userSharesResource"));
+        Assertions.assertFalse(inputs.calls.containsKey("permissionSpecificToEntityExists"));
+    }
+
+    /**
+     * Decision of the permission manager before the engine: every input of every role is computed,
+     * then the formula is OR-ed across roles.
+     */
+    private static boolean eagerDecision(CountingInputs inputs, List<Long> roleIds, long impersonateActionId) {
+        boolean hasPermission = false;
+        for (long roleId : roleIds) {
+            long permissionSpecific = inputs.rolePermissionSpecific(roleId).getFirstWord();
+            long userPermissionSpecific = inputs.userPermissionSpecific().getFirstWord();
+            long permissionImpersonation = inputs.roleImpersonationPermission(roleId).getFirstWord();
+            boolean hasGeneralPermission = includes(inputs.rolePermission(roleId).getFirstWord(), ACTION_ID) || includes(inputs.userPermission().getFirstWord(), ACTION_ID);
+            boolean hasEntityPermission = includes(permissionSpecific, ACTION_ID) || includes(userPermissionSpecific, ACTION_ID);
+            boolean hasImpersonationPermission = impersonateActionId != 0 && includes(permissionImpersonation, impersonateActionId);
+            hasPermission = hasPermission || PermissionDecisionEvaluator.calculatePermission(permissionSpecific != 0 || userPermissionSpecific != 0,
+                    hasEntityPermission, hasGeneralPermission, inputs.userOwnsResource(), inputs.userSharesResource(), inputs.permissionSpecificToEntityExists())
+                    || hasImpersonationPermission;
+        }
+        return hasPermission;
+    }
+
+    private static boolean includes(long actionIds, long actionId) {
+        return actionIds != 0 && (actionIds & actionId) == actionId;
+    }
+
+    /**
+     * Inputs decoded from a combination number, counting the lookups.
+     */
+    private static final class CountingInputs implements PermissionDecisionEngine.Inputs {
+        private final Map<String, Long> rolePermissions = new HashMap<>();
+        private final long userPermissionSpecific;
+        private final long userPermission;
+        private final boolean userOwnsResource;
+        private final boolean userSharesResource;
+        private final boolean permissionSpecificToEntityExists;
+        private final Map<String, Integer> calls = new HashMap<>();
+
+        private CountingInputs(List<Long> roleIds, int permissionCombination, int flags) {
+            int remaining = permissionCombination;
+            for (long roleId : roleIds) {
+                for (String input : List.of("rolePermissionSpecific", "rolePermission", "roleImpersonationPermission")) {
+                    rolePermissions.put(input + roleId, PERMISSIONS[remaining % PERMISSIONS.length]);
+                    remaining /= PERMISSIONS.length;
+                }
+            }
+            userPermissionSpecific = PERMISSIONS[remaining % PERMISSIONS.length];
+            remaining /= PERMISSIONS.length;
+            userPermission = PERMISSIONS[remaining % PERMISSIONS.length];
+            userOwnsResource = (flags & 0b001) != 0;
+            userSharesResource = (flags & 0b010) != 0;
+            permissionSpecificToEntityExists = (flags & 0b100) != 0;
+        }
+
+        @Override
+        public ActionSet rolePermissionSpecific(long roleId) {
+            return rolePermission("rolePermissionSpecific" + roleId);
+        }
+
+        @Override
+        public ActionSet rolePermission(long roleId) {
+            return rolePermission("rolePermission" + roleId);
+        }
+
+        @Override
+        public ActionSet roleImpersonationPermission(long roleId) {
+            return rolePermission("roleImpersonationPermission" + roleId);
+        }
+
+        @Override
+        public ActionSet userPermissionSpecific() {
+            count("userPermissionSpecific");
+            return ActionSet.ofWords(userPermissionSpecific);
+        }
+
+        @Override
+        public ActionSet userPermission() {
+            count("userPermission");
+            return ActionSet.ofWords(userPermission);
+        }
+
+        @Override
+        public boolean permissionSpecificToEntityExists() {
+            count("permissionSpecificToEntityExists");
+            return permissionSpecificToEntityExists;
+        }
+
+        @Override
+        public boolean userOwnsResource() {
+            count("userOwnsResource");
+            return userOwnsResource;
+        }
+
+        @Override
+        public boolean userSharesResource() {
+            count("userSharesResource");
+            return userSharesResource;
+        }
+
+        private ActionSet rolePermission(String input) {
+            count(input);
+            return ActionSet.ofWords(rolePermissions.getOrDefault(input, 0L));
+        }
+
+        private void count(String input) {
+            calls.merge(input, 1, Integer::sum);
+        }
+
+        @Override
+        public String toString() {
+            return "roles " + rolePermissions + " user specific " + userPermissionSpecific + " user " + userPermission
+                    + " owns " + userOwnsResource + " shares " + userSharesResource + " specific exists " + permissionSpecificToEntityExists;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
@@ -15,12 +16,14 @@ import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestMethodOrder;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import it.water.core.api.action.Action;
 import it.water.core.api.action.ActionList;
 import it.water.core.api.action.ActionsManager;
 import it.water.core.api.bundle.Runtime;
 import it.water.core.api.model.Resource;
 import it.water.core.api.model.Role;
 import it.water.core.api.model.User;
+import it.water.core.api.permission.Permission;
 import it.water.core.api.permission.PermissionManager;
 import it.water.core.api.registry.ComponentRegistry;
 import it.water.core.api.role.RoleManager;
@@ -28,13 +31,21 @@ import it.water.core.api.service.Service;
 import it.water.core.api.service.integration.SharedEntityIntegrationClient;
 import it.water.core.interceptors.annotations.Inject;
 import it.water.core.permission.action.CrudActions;
+import it.water.core.permission.action.UserActions;
 import it.water.core.testing.utils.api.TestPermissionManager;
 import it.water.core.testing.utils.api.TestUserManager;
 import it.water.core.testing.utils.bundle.TestRuntimeInitializer;
 import it.water.core.testing.utils.interceptors.TestServiceProxy;
 import it.water.core.testing.utils.junit.WaterTestExtension;
+import it.water.core.model.exceptions.ValidationException;
+import it.water.permission.api.ActionSetPermissionManager;
+import it.water.permission.api.AuthorizedIdsManager;
 import it.water.permission.api.PermissionApi;
 import it.water.permission.api.PermissionSystemApi;
+import it.water.permission.api.integration.PermissionIntegrationAsyncClient;
+import it.water.permission.model.ActionSet;
+import it.water.permission.model.AuthorizedResourceIds;
+import it.water.permission.model.PermissionDecisionData;
 import it.water.permission.model.WaterPermission;
 import lombok.Setter;
 
@@ -66,6 +77,14 @@ class PermissionManagerDefaultTest implements Service {
     @Setter
     private PermissionManager permissionManager;
 
+    @Inject
+    @Setter
+    private AuthorizedIdsManager authorizedIdsManager;
+
+    @Inject
+    @Setter
+    private ActionSetPermissionManager actionSetPermissionManager;
+
     @Inject
     @Setter
     private PermissionApi permissionApi;
@@ -83,6 +102,10 @@ class PermissionManagerDefaultTest implements Service {
     @Setter
     private ActionsManager actionsManager;
 
+    @Inject
+    @Setter
+    private PermissionIntegrationAsyncClient permissionIntegrationAsyncClient;
+
     //admin user
     private it.water.core.api.model.User adminUser;
     private User viewerUser;
@@ -250,6 +273,96 @@ class PermissionManagerDefaultTest implements Service {
     }
 
 
+    @Test
+    @Order(8)
+    void decisionEvaluatorShouldMatchPermissionManager() {
+        TestRuntimeInitializer.getInstance().impersonate(adminUser, runtime);
+        ActionList<Resource> actions = actionsManager.getActions().get(TestResource.class.getName());
+        List<Long> viewerRoles = List.of(roleManager.getRole(TestResource.TEST_ROLE_VIEWER).getId());
+        PermissionDecisionData data = permissionSystemApi.getDecisionData(viewerUser.getId(), viewerRoles, TestResource.class.getName(), List.of(testResource.getId()));
+        boolean viewerOwnsResource = permissionManager.checkUserOwnsResource(viewerUser, testResource);
+        ActionList<?> userActions = actionsManager.getActions().get(User.class.getName());
+        Action impersonateAction = userActions != null ? userActions.getAction(UserActions.IMPERSONATE) : null;
+        long impersonateActionId = impersonateAction != null ? impersonateAction.getActionId() : 0;
+        actions.getList().forEach(resourceAction -> {
+            Action action = resourceAction.getAction();
+            Assertions.assertEquals(permissionManager.checkPermission(viewerUser.getUsername(), TestResource.class.getName(), action),
+                    PermissionDecisionEvaluator.hasPermission(data, action.getActionId()));
+            Assertions.assertEquals(permissionManager.checkPermission(viewerUser.getUsername(), testResource, action),
+                    PermissionDecisionEvaluator.hasPermission(data, testResource.getId(), action.getActionId(), viewerOwnsResource, false, impersonateActionId));
+        });
+    }
+
+    @Test
+    @Order(9)
+    void asyncLookupsShouldMatchBlockingLookups() {
+        TestRuntimeInitializer.getInstance().impersonate(adminUser, runtime);
+        long viewerRoleId = roleManager.getRole(TestResource.TEST_ROLE_VIEWER).getId();
+        String resourceName = TestResource.class.getName();
+        CompletableFuture<Permission> rolePermission = permissionIntegrationAsyncClient.findByRoleAndResourceNameAsync(viewerRoleId, resourceName);
+        CompletableFuture<Permission> roleSpecificPermission = permissionIntegrationAsyncClient.findByRoleAndResourceNameAndResourceIdAsync(viewerRoleId, resourceName, testResource.getId());
+        CompletableFuture<Boolean> specificToEntityExists = permissionIntegrationAsyncClient.permissionSpecificToEntityExistsAsync(resourceName, testResource.getId());
+        //local lookups complete on the caller thread
+        Assertions.assertTrue(rolePermission.isDone() && roleSpecificPermission.isDone() && specificToEntityExists.isDone());
+        Permission expected = permissionSystemApi.findByRoleAndResourceName(viewerRoleId, resourceName);
+        Assertions.assertNotNull(rolePermission.join());
+        Assertions.assertEquals(expected.getActionIds(), rolePermission.join().getActionIds());
+        Assertions.assertEquals(permissionSystemApi.findByRoleAndResourceNameAndResourceId(viewerRoleId, resourceName, testResource.getId()) != null,
+                roleSpecificPermission.join() != null);
+        Assertions.assertEquals(permissionSystemApi.permissionSpecificToEntityExists(resourceName, testResource.getId()), specificToEntityExists.join());
+        Assertions.assertEquals(permissionSystemApi.findByRole(viewerRoleId).size(), permissionIntegrationAsyncClient.findByRoleAsync(viewerRoleId).join().size());
+    }
+
+    @Test
+    @Order(10)
+    void authorizedIdsShouldMatchEntityChecks() {
+        TestRuntimeInitializer.getInstance().impersonate(adminUser, runtime);
+        ActionList<Resource> actions = actionsManager.getActions().get(TestResource.class.getName());
+        boolean viewerOwnsResource = permissionManager.checkUserOwnsResource(viewerUser, testResource);
+        actions.getList().forEach(resourceAction -> {
+            Action action = resourceAction.getAction();
+            AuthorizedResourceIds authorized = authorizedIdsManager.findAuthorizedIds(viewerUser.getUsername(), TestResource.class, action);
+            Assertions.assertEquals(permissionManager.checkPermission(viewerUser.getUsername(), testResource, action),
+                    authorized.isAuthorized(testResource.getId(), viewerOwnsResource));
+        });
+        Action find = actions.getAction(CrudActions.FIND);
+        Assertions.assertTrue(authorizedIdsManager.findAuthorizedIds(adminUser.getUsername(), TestResource.class, actions.getAction(CrudActions.REMOVE)).isAllAuthorized());
+        Assertions.assertTrue(authorizedIdsManager.findAuthorizedIds(viewerUser.getUsername(), NotProtectedTestResource.class, find).isAllAuthorized());
+        Assertions.assertFalse(authorizedIdsManager.findAuthorizedIds(noRoleUser.getUsername(), TestResource.class, find).isAuthorized(testResource.getId(), true));
+        Assertions.assertFalse(authorizedIdsManager.findAuthorizedIds("notExistingUser", TestResource.class, find).isAuthorized(testResource.getId(), true));
+    }
+
+    @Test
+    @Order(11)
+    void actionsBeyondThe64thShouldBeGranted() {
+        TestRuntimeInitializer.getInstance().impersonate(adminUser, runtime);
+        String resourceName = TestResource.class.getName();
+        long roleId = roleManager.getRole("noPermissionRole").getId();
+        WaterPermission empty = new WaterPermission("noActions", 0, resourceName, 0, roleId, 0);
+        Assertions.assertThrows(ValidationException.class, () -> permissionApi.save(empty));
+        //only an action beyond the 64th, the actionIds column stays 0
+        WaterPermission extended = new WaterPermission("extendedActions", 0, resourceName, 0, roleId, 0);
+        extended.setActionSet(ActionSet.of(70));
+        extended = permissionApi.save(extended);
+        TestResource ownedResource = new TestResource();
+        ownedResource.setOwnerUserId(noPermissionUser.getId());
+        ownedResource.setId(2);
+        Assertions.assertTrue(actionSetPermissionManager.checkActions(noPermissionUser.getUsername(), resourceName, ActionSet.of(70)));
+        Assertions.assertTrue(actionSetPermissionManager.checkActions(noPermissionUser.getUsername(), ownedResource, ActionSet.of(70)));
+        Assertions.assertFalse(actionSetPermissionManager.checkActions(noPermissionUser.getUsername(), resourceName, ActionSet.of(71)));
+        Assertions.assertFalse(actionSetPermissionManager.checkActions(noPermissionUser.getUsername(), ownedResource, ActionSet.of(3, 70)));
+        //not owned entities stay denied
+        Assertions.assertFalse(actionSetPermissionManager.checkActions(noPermissionUser.getUsername(), testResource, ActionSet.of(70)));
+        PermissionDecisionData data = permissionSystemApi.getDecisionData(noPermissionUser.getId(), List.of(roleId), resourceName, List.of(ownedResource.getId()));
+        Assertions.assertTrue(PermissionDecisionEvaluator.hasPermission(data, ActionSet.of(70)));
+        Assertions.assertTrue(PermissionDecisionEvaluator.hasPermission(data, ownedResource.getId(), ActionSet.of(70), true, false, 0));
+        Assertions.assertFalse(PermissionDecisionEvaluator.hasPermission(data, ownedResource.getId(), ActionSet.of(71), true, false, 0));
+        //core actions keep using the first word, which grants nothing
+        ActionList<Resource> actions = actionsManager.getActions().get(resourceName);
+        Assertions.assertFalse(permissionManager.checkPermission(noPermissionUser.getUsername(), ownedResource, actions.getAction(CrudActions.FIND)));
+        permissionApi.remove(extended.getId());
+    }
+
     @SuppressWarnings("unused")
     private WaterPermission createPermission(Long seed, long roleId, long userId) {
         return new WaterPermission("exampleName" + seed, 2, "entityResourceName" + seed, seed, (Long)roleId, (Long)userId);
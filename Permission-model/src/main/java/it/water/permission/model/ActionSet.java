@@ -0,0 +1,224 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.permission.model;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of actions addressed by bit index, for resources defining more than the 64 actions
+ * which fit in the actionIds column.
+ * Bits 0-63 are kept in the actionIds column as before, the following words are stored in a single binary column,
+ * eight little endian bytes per word, which stays null for the common single word case.
+ * Checks on stored permissions go through includes, which reads the words in place without allocating.
+ */
+public final class ActionSet {
+    public static final int WORD_SIZE = Long.SIZE;
+    private static final int WORD_BYTES = Long.BYTES;
+
+    public static final ActionSet EMPTY = new ActionSet(new long[]{0L});
+    private static final ActionSet[] SINGLE_ACTIONS = new ActionSet[WORD_SIZE];
+
+    static {
+        for (int i = 0; i < WORD_SIZE; i++)
+            SINGLE_ACTIONS[i] = new ActionSet(new long[]{1L << i});
+    }
+
+    private final long[] words;
+
+    private ActionSet(long[] words) {
+        this.words = words;
+    }
+
+    /**
+     * @param bitIndexes positions of the actions in the set
+     */
+    public static ActionSet of(int... bitIndexes) {
+        int maxIndex = 0;
+        for (int bitIndex : bitIndexes) {
+            if (bitIndex < 0)
+                throw new IllegalArgumentException("Action bit index must not be negative: " + bitIndex);
+            maxIndex = Math.max(maxIndex, bitIndex);
+        }
+        long[] words = new long[maxIndex / WORD_SIZE + 1];
+        for (int bitIndex : bitIndexes)
+            words[bitIndex / WORD_SIZE] |= 1L << (bitIndex % WORD_SIZE);
+        return new ActionSet(trim(words));
+    }
+
+    /**
+     * Set of a Water core action, whose id is a mask of actions 0-63.
+     * Single action ids, the common case, return shared instances so checks of core actions don't allocate.
+     *
+     * @param actionId action id
+     */
+    public static ActionSet ofActionId(long actionId) {
+        return Long.bitCount(actionId) == 1 ? SINGLE_ACTIONS[Long.numberOfTrailingZeros(actionId)] : ofWords(actionId);
+    }
+
+    /**
+     * @param words action words, the first one holds the actions 0-63
+     */
+    public static ActionSet ofWords(long... words) {
+        return words.length == 0 ? EMPTY : new ActionSet(trim(words.clone()));
+    }
+
+    /**
+     * @param actionIds         value of the actionIds column
+     * @param extendedActionIds value of the extendedActionIds column, null for single word sets
+     */
+    public static ActionSet fromStorage(long actionIds, byte[] extendedActionIds) {
+        int extendedWords = extendedActionIds == null ? 0 : extendedActionIds.length / WORD_BYTES;
+        long[] words = new long[1 + extendedWords];
+        words[0] = actionIds;
+        for (int i = 0; i < extendedWords; i++)
+            words[i + 1] = readWord(extendedActionIds, i);
+        return new ActionSet(trim(words));
+    }
+
+    /**
+     * Checks a stored permission without materializing its action set: word-wise AND of the required words,
+     * the single word case costs the same as a plain long comparison.
+     *
+     * @param actionIds         value of the actionIds column
+     * @param extendedActionIds value of the extendedActionIds column, null for single word sets
+     * @param required          actions to check
+     * @return true if all the required actions are granted
+     */
+    public static boolean includes(long actionIds, byte[] extendedActionIds, ActionSet required) {
+        long[] requiredWords = required.words;
+        if ((actionIds & requiredWords[0]) != requiredWords[0])
+            return false;
+        if (requiredWords.length == 1)
+            return true;
+        int extendedWords = extendedActionIds == null ? 0 : extendedActionIds.length / WORD_BYTES;
+        for (int i = 1; i < requiredWords.length; i++) {
+            long granted = i <= extendedWords ? readWord(extendedActionIds, i - 1) : 0L;
+            if ((granted & requiredWords[i]) != requiredWords[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param actionIds         value of the actionIds column
+     * @param extendedActionIds value of the extendedActionIds column, null for single word sets
+     * @return true if the stored columns grant no action
+     */
+    public static boolean isEmpty(long actionIds, byte[] extendedActionIds) {
+        if (actionIds != 0)
+            return false;
+        if (extendedActionIds != null) {
+            for (byte b : extendedActionIds) {
+                if (b != 0)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean containsAll(ActionSet required) {
+        long[] requiredWords = required.words;
+        if (requiredWords.length > words.length)
+            return false;
+        for (int i = 0; i < requiredWords.length; i++) {
+            if ((words[i] & requiredWords[i]) != requiredWords[i])
+                return false;
+        }
+        return true;
+    }
+
+    public boolean contains(int bitIndex) {
+        int word = bitIndex / WORD_SIZE;
+        return bitIndex >= 0 && word < words.length && (words[word] & (1L << (bitIndex % WORD_SIZE))) != 0;
+    }
+
+    /**
+     * @return a set holding the actions of both sets
+     */
+    public ActionSet union(ActionSet other) {
+        long[] longer = words.length >= other.words.length ? words : other.words;
+        long[] shorter = longer == words ? other.words : words;
+        long[] union = longer.clone();
+        for (int i = 0; i < shorter.length; i++)
+            union[i] |= shorter[i];
+        return new ActionSet(union);
+    }
+
+    /**
+     * @return actions 0-63, the value of the actionIds column
+     */
+    public long getFirstWord() {
+        return words[0];
+    }
+
+    /**
+     * @return value of the extendedActionIds column, null when all the actions fit in the first word
+     */
+    public byte[] getExtendedWords() {
+        if (words.length == 1)
+            return null;
+        byte[] extended = new byte[(words.length - 1) * WORD_BYTES];
+        for (int i = 1; i < words.length; i++) {
+            long word = words[i];
+            int offset = (i - 1) * WORD_BYTES;
+            for (int b = 0; b < WORD_BYTES; b++)
+                extended[offset + b] = (byte) (word >>> (b * 8));
+        }
+        return extended;
+    }
+
+    public int getWordCount() {
+        return words.length;
+    }
+
+    public boolean isEmpty() {
+        return words.length == 1 && words[0] == 0;
+    }
+
+    public boolean isSingleWord() {
+        return words.length == 1;
+    }
+
+    private static long readWord(byte[] extendedActionIds, int wordIndex) {
+        int offset = wordIndex * WORD_BYTES;
+        long word = 0;
+        for (int b = WORD_BYTES - 1; b >= 0; b--)
+            word = (word << 8) | (extendedActionIds[offset + b] & 0xFFL);
+        return word;
+    }
+
+    private static long[] trim(long[] words) {
+        int length = words.length;
+        while (length > 1 && words[length - 1] == 0)
+            length--;
+        return length == words.length ? words : Arrays.copyOf(words, length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ActionSet other && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString() {
+        return "ActionSet" + Arrays.toString(words);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.model;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Ids of the entities of a resource type on which a user is granted an action, kept as sorted long arrays
+ * so that services can push them into their own queries instead of checking each entity.
+ * Entities are split by ownership, since owners are known only by the service of the entity:
+ * an entity is authorized if it is listed in ids, or if the user owns it and the owned entities rules accept it.
+ * Owned means owned by the user, every entity of resource types which are not owned resources counts as owned.
+ * Entities shared with the user are evaluated by the permission service and listed in ids when authorized.
+ */
+public final class AuthorizedResourceIds {
+    private static final long[] NO_IDS = new long[0];
+
+    public static final AuthorizedResourceIds ALL = new AuthorizedResourceIds(true, NO_IDS, false, NO_IDS);
+    public static final AuthorizedResourceIds NONE = new AuthorizedResourceIds(false, NO_IDS, false, NO_IDS);
+
+    private final boolean allAuthorized;
+    private final long[] ids;
+    private final boolean ownedAuthorized;
+    private final long[] ownedExceptionIds;
+
+    private AuthorizedResourceIds(boolean allAuthorized, long[] ids, boolean ownedAuthorized, long[] ownedExceptionIds) {
+        this.allAuthorized = allAuthorized;
+        this.ids = ids;
+        this.ownedAuthorized = ownedAuthorized;
+        this.ownedExceptionIds = ownedExceptionIds;
+    }
+
+    /**
+     * @param ids               entities authorized whatever their owner
+     * @param ownedAuthorized   true if owned entities are authorized unless listed in ownedExceptionIds,
+     *                          false if only the owned entities listed in ownedExceptionIds are authorized
+     * @param ownedExceptionIds owned entities excluded from, or included in, the authorized ones
+     */
+    public static AuthorizedResourceIds of(Collection<Long> ids, boolean ownedAuthorized, Collection<Long> ownedExceptionIds) {
+        return new AuthorizedResourceIds(false, sorted(ids), ownedAuthorized, sorted(ownedExceptionIds));
+    }
+
+    /**
+     * @return true if every entity of the resource type is authorized, as for administrators
+     */
+    public boolean isAllAuthorized() {
+        return allAuthorized;
+    }
+
+    /**
+     * @return sorted ids of the entities authorized whatever their owner
+     */
+    public long[] getIds() {
+        return ids.clone();
+    }
+
+    /**
+     * @return true if owned entities are authorized unless listed among the owned exception ids
+     */
+    public boolean isOwnedAuthorized() {
+        return ownedAuthorized;
+    }
+
+    /**
+     * @return sorted ids of the owned entities which are not authorized when isOwnedAuthorized is true,
+     * or of the only owned entities which are authorized when it is false
+     */
+    public long[] getOwnedExceptionIds() {
+        return ownedExceptionIds.clone();
+    }
+
+    /**
+     * @param id    entity id
+     * @param owned true if the user owns the entity, see the class description
+     * @return true if the action is granted on the entity
+     */
+    public boolean isAuthorized(long id, boolean owned) {
+        if (allAuthorized || Arrays.binarySearch(ids, id) >= 0)
+            return true;
+        return owned && ownedAuthorized != Arrays.binarySearch(ownedExceptionIds, id) >= 0;
+    }
+
+    @Override
+    public String toString() {
+        if (allAuthorized)
+            return "AuthorizedResourceIds(all)";
+        return "AuthorizedResourceIds(ids=" + ids.length + ", ownedAuthorized=" + ownedAuthorized + ", ownedExceptionIds=" + ownedExceptionIds.length + ")";
+    }
+
+    private static long[] sorted(Collection<Long> ids) {
+        return ids.isEmpty() ? NO_IDS : ids.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonView;
+import it.water.core.api.service.rest.WaterJsonView;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Outcome of a rebuild or of a consistency check of the effective permission store.
+ * Rows are compared with the ones computed from the permission table and the recorded role membership.
+ */
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@AllArgsConstructor
+public class EffectivePermissionReport {
+    /**
+     * Users whose rows have been checked
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long users;
+
+    /**
+     * Rows computed from the permission table
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long expectedRows;
+
+    /**
+     * Expected rows not found in the store
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long missingRows;
+
+    /**
+     * Stored rows whose actions differ from the expected ones
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long staleRows;
+
+    /**
+     * Stored rows which are not expected anymore
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long orphanRows;
+
+    /**
+     * True if the differences have been fixed
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private boolean repaired;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private long elapsedMillis;
+
+    /**
+     * @return true if the store matches the permission table
+     */
+    @JsonIgnore
+    public boolean isConsistent() {
+        return missingRows == 0 && staleRows == 0 && orphanRows == 0;
+    }
+}
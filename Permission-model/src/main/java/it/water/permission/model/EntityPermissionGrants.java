@@ -0,0 +1,79 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.model;
+
+import com.fasterxml.jackson.annotation.JsonView;
+import it.water.core.api.service.rest.WaterJsonView;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.util.Map;
+
+/**
+ * Entity specific permissions of a single resource instance, part of a PermissionDecisionData.
+ * Action masks are 0 when no permission exists, since a persisted permission always grants at least one action.
+ * Actions beyond the 64th are carried apart as in PermissionDecisionData.
+ */
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@AllArgsConstructor
+public class EntityPermissionGrants {
+    /**
+     * Actions granted on the entity to each of the requested roles, roles without a specific permission are missing
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private Map<Long, Long> roleActionIds;
+
+    /**
+     * Actions granted on the entity directly to the user
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long userActionIds;
+
+    /**
+     * True if any role or user has a permission specific to this entity
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private boolean specificToEntityExists;
+
+    /**
+     * Actions beyond the 64th granted on the entity to each of the requested roles, null if no role has any
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private Map<Long, byte[]> roleExtendedActionIds;
+
+    /**
+     * Actions beyond the 64th granted on the entity directly to the user, null if there are none
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private byte[] userExtendedActionIds;
+
+    public EntityPermissionGrants(Map<Long, Long> roleActionIds, long userActionIds, boolean specificToEntityExists) {
+        this(roleActionIds, userActionIds, specificToEntityExists, null, null);
+    }
+
+    /**
+     * @return actions beyond the 64th granted on the entity to the role, null if there are none
+     */
+    public byte[] roleExtendedActionIds(long roleId) {
+        return roleExtendedActionIds != null ? roleExtendedActionIds.get(roleId) : null;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.model;
+
+import com.fasterxml.jackson.annotation.JsonView;
+import it.water.core.api.service.rest.WaterJsonView;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Outcome of a single item inside a batch operation on permissions.
+ * Batch operations return one result for each requested item, in the same order of the request.
+ */
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class PermissionBatchItemResult {
+    /**
+     * Id of the permission the result refers to, 0 if the permission has not been persisted
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long id;
+
+    /**
+     * True if the operation on the item has been completed
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private boolean success;
+
+    /**
+     * Reason of the failure, null on success
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private String error;
+
+    /**
+     * Persisted permission, null for remove operations or on failure
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private WaterPermission entity;
+
+    public static PermissionBatchItemResult succeeded(WaterPermission entity) {
+        return new PermissionBatchItemResult(entity.getId(), true, null, entity);
+    }
+
+    public static PermissionBatchItemResult removed(long id) {
+        return new PermissionBatchItemResult(id, true, null, null);
+    }
+
+    public static PermissionBatchItemResult failed(long id, String error) {
+        return new PermissionBatchItemResult(id, false, error, null);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.model;
+
+import com.fasterxml.jackson.annotation.JsonView;
+import it.water.core.api.service.rest.WaterJsonView;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Page of the permission change log.
+ * Clients keep lastSequence and pass it back to fetch the following changes, also once hasMore is false,
+ * in order to pull the changes recorded in the meantime.
+ */
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@AllArgsConstructor
+public class PermissionChangePage {
+    /**
+     * Changes ordered by sequence
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private List<WaterPermissionChange> changes;
+
+    /**
+     * Sequence of the last returned change, or the requested one when there are no changes
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long lastSequence;
+
+    /**
+     * True if further changes are available right away
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private boolean hasMore;
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.model;
+
+import com.fasterxml.jackson.annotation.JsonView;
+import it.water.core.api.service.rest.WaterJsonView;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything needed to evaluate the permissions of a user on a resource type, fetched in a single call.
+ * Action masks are 0 when no permission exists, since a persisted permission always grants at least one action.
+ * Actions beyond the 64th are carried apart, encoded as WaterPermission.extendedActionIds, and are missing
+ * for permissions granting only the first 64 actions.
+ */
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@AllArgsConstructor
+public class PermissionDecisionData {
+    @JsonView(WaterJsonView.Extended.class)
+    private long userId;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private String entityResourceName;
+
+    /**
+     * Roles of the user the data refers to
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private List<Long> roleIds;
+
+    /**
+     * Actions granted on the resource type to each role, roles without permission are missing
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private Map<Long, Long> roleActionIds;
+
+    /**
+     * Actions granted on the resource type directly to the user
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long userActionIds;
+
+    /**
+     * Actions granted on users to each role, used to evaluate impersonation
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private Map<Long, Long> impersonationActionIds;
+
+    /**
+     * Entity specific permissions for each requested resource id
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private Map<Long, EntityPermissionGrants> entityGrants;
+
+    /**
+     * Actions beyond the 64th granted on the resource type to each role, null if no role has any
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private Map<Long, byte[]> roleExtendedActionIds;
+
+    /**
+     * Actions beyond the 64th granted on the resource type directly to the user, null if there are none
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private byte[] userExtendedActionIds;
+
+    public PermissionDecisionData(long userId, String entityResourceName, List<Long> roleIds, Map<Long, Long> roleActionIds, long userActionIds,
+                                  Map<Long, Long> impersonationActionIds, Map<Long, EntityPermissionGrants> entityGrants) {
+        this(userId, entityResourceName, roleIds, roleActionIds, userActionIds, impersonationActionIds, entityGrants, null, null);
+    }
+
+    /**
+     * @return actions beyond the 64th granted on the resource type to the role, null if there are none
+     */
+    public byte[] roleExtendedActionIds(long roleId) {
+        return roleExtendedActionIds != null ? roleExtendedActionIds.get(roleId) : null;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.model;
+
+import com.fasterxml.jackson.annotation.JsonView;
+import it.water.core.api.service.rest.WaterJsonView;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Page of the roles and users whose permissions grant an action on an entity.
+ * Users come first, ordered by id, then roles, ordered by id.
+ * The continuation token is opaque to clients and must be sent back unchanged, together with the same filters,
+ * in order to fetch the next page. A null token means that there are no more results.
+ */
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@AllArgsConstructor
+public class PermissionGranteePage {
+    @JsonView(WaterJsonView.Extended.class)
+    private List<Long> userIds;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private List<Long> roleIds;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private String continuationToken;
+}
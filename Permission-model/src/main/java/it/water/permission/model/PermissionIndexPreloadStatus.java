@@ -0,0 +1,69 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.model;
+
+import com.fasterxml.jackson.annotation.JsonView;
+import it.water.core.api.service.rest.WaterJsonView;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Progress of the preload of the role grant index after a restart.
+ * Readiness probes can poll the ready flag while the preload runs.
+ */
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@AllArgsConstructor
+public class PermissionIndexPreloadStatus {
+    /**
+     * True if the preload has been started
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private boolean started;
+
+    /**
+     * True once the role grant index is loaded, or its load failed, or right away when the preload or the index is disabled.
+     * It stays false after the time budget expired, until the load going on in background completes
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private boolean ready;
+
+    /**
+     * True if the time budget expired before the role grant index was loaded
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private boolean timedOut;
+
+    /**
+     * Permissions of roles loaded in the role grant index
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long rolePermissions;
+
+    /**
+     * True if the load failed, the index is then built on first use
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private boolean failed;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private long elapsedMillis;
+}
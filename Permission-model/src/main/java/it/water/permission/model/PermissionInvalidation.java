@@ -0,0 +1,57 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.permission.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Compact notice that cached permissions may be outdated.
+ * It carries the coordinates of the changed permission, caches drop every entry which may depend on them.
+ * A change moving a permission is notified twice, with the new and with the previous coordinates.
+ * A notice without entity resource name invalidates everything, it is used when too many changes must be notified at once.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+public class PermissionInvalidation {
+    public static final PermissionInvalidation ALL = new PermissionInvalidation(0, 0, null, 0);
+
+    private final long roleId;
+    private final long userId;
+    private final String entityResourceName;
+    private final long resourceId;
+
+    /**
+     * @return the notice of the coordinates of the changed permission,
+     * followed by the one of its previous coordinates when the change moved the permission
+     */
+    public static List<PermissionInvalidation> forChange(WaterPermissionChange change) {
+        PermissionInvalidation current = new PermissionInvalidation(change.getRoleId(), change.getUserId(), change.getEntityResourceName(), change.getResourceId());
+        if (!change.isMoved())
+            return List.of(current);
+        return List.of(current, new PermissionInvalidation(change.getPreviousRoleId(), change.getPreviousUserId(), change.getPreviousEntityResourceName(), change.getPreviousResourceId()));
+    }
+
+    public boolean isAll() {
+        return entityResourceName == null;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.permission.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Flyweight of entity resource names: each distinct name is kept once per JVM and identified by a small int,
+ * so in-memory permission structures store four bytes instead of a reference to their own copy of the name.
+ * Resource names are class names, their number is bounded by the deployed entities, so names are never released.
+ * Ids are local to the JVM and must not be persisted or sent to other nodes.
+ */
+public final class PermissionResourceNames {
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[64];
+    private static int size;
+
+    private PermissionResourceNames() {
+    }
+
+    /**
+     * @param resourceName entity resource name
+     * @return id of the name, registering it on first use
+     */
+    public static int idOf(String resourceName) {
+        Integer id = ids.get(resourceName);
+        return id != null ? id : register(resourceName);
+    }
+
+    /**
+     * @param id id returned by idOf
+     * @return the canonical instance of the name
+     */
+    public static String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return the canonical instance of the given name
+     */
+    public static String canonical(String resourceName) {
+        return nameOf(idOf(resourceName));
+    }
+
+    private static synchronized int register(String resourceName) {
+        Integer id = ids.get(resourceName);
+        if (id != null)
+            return id;
+        String[] current = names;
+        if (size == current.length)
+            current = Arrays.copyOf(current, current.length * 2);
+        //the name is copied so that the flyweight never retains the buffer of a larger string
+        current[size] = new String(resourceName);
+        names = current;
+        ids.put(current[size], size);
+        return size++;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.model;
+
+import com.fasterxml.jackson.annotation.JsonView;
+import it.water.core.api.service.rest.WaterJsonView;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Outcome of the write of the permission snapshot file.
+ */
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@AllArgsConstructor
+public class PermissionSnapshotReport {
+    /**
+     * Change log sequence the snapshot is aligned to, later changes are applied when the snapshot is loaded
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long version;
+
+    /**
+     * Permissions of roles written to the snapshot
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long permissions;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private long sizeBytes;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private long elapsedMillis;
+}
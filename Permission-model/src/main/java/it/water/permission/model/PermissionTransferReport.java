@@ -0,0 +1,61 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.model;
+
+import com.fasterxml.jackson.annotation.JsonView;
+import it.water.core.api.service.rest.WaterJsonView;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Summary of a bulk permission import.
+ */
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@AllArgsConstructor
+public class PermissionTransferReport {
+    /**
+     * Rows inserted because no permission with the same role, user, resource name and resource id existed
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long inserted;
+
+    /**
+     * Rows which replaced the actions of an existing permission
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long updated;
+
+    /**
+     * Rows equal to the existing permission
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long unchanged;
+
+    /**
+     * Rows which could not be parsed or validated
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long rejected;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private long elapsedMillis;
+}
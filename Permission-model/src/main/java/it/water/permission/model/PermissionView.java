@@ -0,0 +1,137 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.permission.model;
+
+import it.water.core.api.permission.Permission;
+
+import java.util.Arrays;
+
+/**
+ * Compact immutable copy of a permission, stored by in-memory permission structures in place of WaterPermission.
+ * It keeps only what a decision needs as primitive fields and refers to the resource name through
+ * PermissionResourceNames, so a cached permission costs a fixed-size object instead of a JPA entity
+ * with its name, version, dates and per-instance strings.
+ * The permission name is not kept, actions beyond the 64th are kept only when granted.
+ */
+public final class PermissionView implements Permission {
+    private final long id;
+    private final long roleId;
+    private final long userId;
+    private final long resourceId;
+    private final long actionIds;
+    private final byte[] extendedActionIds;
+    private final int resourceNameId;
+
+    public PermissionView(long id, long roleId, long userId, String entityResourceName, long resourceId, long actionIds) {
+        this(id, roleId, userId, entityResourceName, resourceId, actionIds, null);
+    }
+
+    /**
+     * @param extendedActionIds actions beyond the 64th as stored by WaterPermission, null if there are none
+     */
+    public PermissionView(long id, long roleId, long userId, String entityResourceName, long resourceId, long actionIds, byte[] extendedActionIds) {
+        this.id = id;
+        this.roleId = roleId;
+        this.userId = userId;
+        this.resourceNameId = PermissionResourceNames.idOf(entityResourceName);
+        this.resourceId = resourceId;
+        this.actionIds = actionIds;
+        this.extendedActionIds = extendedActionIds == null || ActionSet.isEmpty(0, extendedActionIds) ? null : extendedActionIds.clone();
+    }
+
+    public static PermissionView of(WaterPermission permission) {
+        return new PermissionView(permission.getId(), permission.getRoleId(), permission.getUserId(), permission.getEntityResourceName(),
+                permission.getResourceId() != null ? permission.getResourceId() : 0, permission.getActionIds(), permission.getExtendedActionIds());
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return null, views do not keep the permission name
+     */
+    public String getName() {
+        return null;
+    }
+
+    @Override
+    public long getActionIds() {
+        return actionIds;
+    }
+
+    /**
+     * @return all the granted actions, including the ones beyond the 64th
+     */
+    public ActionSet getActionSet() {
+        return ActionSet.fromStorage(actionIds, extendedActionIds);
+    }
+
+    /**
+     * @return true if the permission grants at least one action
+     */
+    public boolean isGrantingActions() {
+        return !ActionSet.isEmpty(actionIds, extendedActionIds);
+    }
+
+    /**
+     * Checks the granted actions in place, without allocating.
+     *
+     * @param required actions to check
+     * @return true if all the required actions are granted
+     */
+    public boolean includesActions(ActionSet required) {
+        return ActionSet.includes(actionIds, extendedActionIds, required);
+    }
+
+    public String getEntityResourceName() {
+        return PermissionResourceNames.nameOf(resourceNameId);
+    }
+
+    public int getResourceNameId() {
+        return resourceNameId;
+    }
+
+    public Long getResourceId() {
+        return resourceId;
+    }
+
+    public long getRoleId() {
+        return roleId;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PermissionView other && id == other.id && roleId == other.roleId && userId == other.userId
+                && resourceId == other.resourceId && actionIds == other.actionIds && resourceNameId == other.resourceNameId
+                && Arrays.equals(extendedActionIds, other.extendedActionIds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id) * 31 + Long.hashCode(actionIds);
+    }
+
+    @Override
+    public String toString() {
+        return "PermissionView{id=" + id + ", roleId=" + roleId + ", userId=" + userId + ", entityResourceName=" + getEntityResourceName()
+                + ", resourceId=" + resourceId + ", actionIds=" + actionIds + "}";
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonView;
+import it.water.core.api.service.rest.WaterJsonView;
+import jakarta.persistence.*;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Row of the materialized effective permission store.
+ * It holds, for a user and a resource, the OR of the actions granted by the permissions of the user roles
+ * and by the permissions of the user, so a decision reads one row instead of combining the permission rows of every role.
+ * Rows are derived data: they are written only by the permission repository, following the permission change log
+ * and the role membership recorded in WaterEffectivePermissionUser, and can be rebuilt at any time.
+ * A row exists only if at least one action is granted.
+ * The store is maintained and read only when ENABLED_PROPERTY is true.
+ */
+//JPA
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "effective_permission_key", columnNames = {"userId", "resourceNameId", "resourceId"}))
+@Access(AccessType.FIELD)
+//Lombok
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class WaterEffectivePermission {
+    public static final String ENABLED_PROPERTY = "water.permission.effective.enabled";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @JsonView(WaterJsonView.Extended.class)
+    private long id;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private long userId;
+
+    /**
+     * Resolved from the resource name dictionary when the row is loaded
+     */
+    @Transient
+    @JsonView(WaterJsonView.Extended.class)
+    private String entityResourceName;
+
+    @JsonIgnore
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    @ManyToOne(fetch = FetchType.EAGER, optional = false)
+    @JoinColumn(name = "resourceNameId", nullable = false)
+    private WaterPermissionResourceName resourceName;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private long resourceId;
+
+    /**
+     * Actions granted by the user roles and by the user permissions
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long actionIds;
+
+    /**
+     * Actions granted by the user roles only, used where user permissions do not count, as for impersonation
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long roleActionIds;
+
+    public WaterEffectivePermission(long userId, WaterPermissionResourceName resourceName, long resourceId, long actionIds, long roleActionIds) {
+        this.userId = userId;
+        this.resourceName = resourceName;
+        this.entityResourceName = resourceName.getName();
+        this.resourceId = resourceId;
+        this.actionIds = actionIds;
+        this.roleActionIds = roleActionIds;
+    }
+
+    public void updateActions(long actionIds, long roleActionIds) {
+        this.actionIds = actionIds;
+        this.roleActionIds = roleActionIds;
+    }
+
+    @PostLoad
+    private void resolveEntityResourceName() {
+        this.entityResourceName = resourceName.getName();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.model;
+
+import jakarta.persistence.*;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Role membership of a user as known by the effective permission store.
+ * Users are added the first time one of their decisions reads the store, and their effective permissions
+ * are materialized again whenever the role ids given by the caller differ from the recorded ones.
+ * The role index lets a change on a role permission find the users whose rows must be updated.
+ */
+//JPA
+@Entity
+@Access(AccessType.FIELD)
+//Lombok
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class WaterEffectivePermissionUser {
+    @Id
+    private long userId;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "WaterEffectivePermissionUserRole", joinColumns = @JoinColumn(name = "userId"),
+            indexes = @Index(name = "effective_permission_role_idx", columnList = "roleId"))
+    @Column(name = "roleId")
+    private Set<Long> roleIds = new HashSet<>();
+
+    public WaterEffectivePermissionUser(long userId, Collection<Long> roleIds) {
+        this.userId = userId;
+        this.roleIds.addAll(roleIds);
+    }
+
+    /**
+     * @return true if the recorded membership is exactly the given one
+     */
+    public boolean hasRoles(Collection<Long> roleIds) {
+        return this.roleIds.equals(new HashSet<>(roleIds));
+    }
+
+    public void replaceRoles(Collection<Long> roleIds) {
+        this.roleIds.clear();
+        this.roleIds.addAll(roleIds);
+    }
+}
@@ -1,5 +1,6 @@
 package it.water.permission.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonView;
 import it.water.core.api.permission.Permission;
 import it.water.core.api.permission.ProtectedEntity;
@@ -22,7 +23,16 @@ import lombok.*;
  */
 //JPA
 @Entity
-@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"roleId", "userId", "entityResourceName", "resourceId"}))
+//resource names are stored in the WaterPermissionResourceName dictionary, constraints and indexes use its int key
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"roleId", "userId", "resourceNameId", "resourceId"}),
+        //indexes ending with id let keyset pagination seek directly to the first row of each page
+        indexes = {
+                @Index(name = "permission_role_keyset_idx", columnList = "roleId, id"),
+                @Index(name = "permission_user_keyset_idx", columnList = "userId, id"),
+                @Index(name = "permission_resource_keyset_idx", columnList = "resourceNameId, resourceId, id"),
+                //grantee searches scan the rows of a resource ordered by role and user
+                @Index(name = "permission_grantee_idx", columnList = "resourceNameId, roleId, userId, resourceId")
+        })
 @Access(AccessType.FIELD)
 //Lombok
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
@@ -60,18 +70,29 @@ public class WaterPermission extends AbstractJpaEntity implements Permission,Pro
     @NotNullOnPersist
     private String name;
     /**
-     * int actionIds for Permission
+     * int actionIds for Permission, actions 0-63.
+     * It may be 0 when only actions beyond the 64th are granted, see isGrantingActions.
      */
     @JsonView(WaterJsonView.Extended.class)
     @Column
-    @Positive
     @Setter(AccessLevel.PUBLIC)
     private long actionIds;
     /**
-     * String entityResourceName for Permission
+     * Actions beyond the 64th, null for resources with at most 64 actions.
+     * See ActionSet for the encoding.
      */
     @JsonView(WaterJsonView.Extended.class)
     @Column
+    @Setter(AccessLevel.PUBLIC)
+    private byte[] extendedActionIds;
+    /**
+     * String entityResourceName for Permission.
+     * Not stored in the permission table: it is resolved from the resource name dictionary when the permission is loaded
+     * and bound to it by the repository when the permission is written.
+     * Hence generic findAll queries can neither filter nor order on it, search filters on it through the dictionary.
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    @Transient
     @NotNullOnPersist
     @NotEmpty
     @Size(max = 255)
@@ -79,6 +100,15 @@ public class WaterPermission extends AbstractJpaEntity implements Permission,Pro
     @NonNull
     @NotNull
     private String entityResourceName;
+    /**
+     * Dictionary entry of the entity resource name
+     */
+    @JsonIgnore
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    @ManyToOne(fetch = FetchType.EAGER, optional = false)
+    @JoinColumn(name = "resourceNameId", nullable = false)
+    private WaterPermissionResourceName resourceName;
     /**
      * long resourceId for Permission
      */
@@ -106,6 +136,62 @@ public class WaterPermission extends AbstractJpaEntity implements Permission,Pro
         this.userId = userId;
     }
 
+    /**
+     * Binds the permission to the dictionary entry of its resource name, must be invoked before writing the permission.
+     *
+     * @param resourceName dictionary entry whose name is the entity resource name of this permission
+     */
+    public void bindResourceName(WaterPermissionResourceName resourceName) {
+        if (!resourceName.getName().equals(this.entityResourceName))
+            throw new IllegalArgumentException("Resource name " + resourceName.getName() + " does not match " + this.entityResourceName);
+        this.resourceName = resourceName;
+    }
+
+    /**
+     * @return key of the resource name in the dictionary, 0 if the permission has not been bound to it yet
+     */
+    @JsonIgnore
+    public int getResourceNameId() {
+        return resourceName != null ? resourceName.getId() : 0;
+    }
+
+    @PostLoad
+    private void resolveEntityResourceName() {
+        this.entityResourceName = resourceName.getName();
+    }
+
+    /**
+     * @return all the granted actions, including the ones beyond the 64th
+     */
+    @JsonIgnore
+    public ActionSet getActionSet() {
+        return ActionSet.fromStorage(actionIds, extendedActionIds);
+    }
+
+    /**
+     * A permission must grant at least one action, in the actionIds column or in the extended words.
+     */
+    @JsonIgnore
+    @AssertTrue(message = "Permission must grant at least one action")
+    public boolean isGrantingActions() {
+        return !ActionSet.isEmpty(actionIds, extendedActionIds);
+    }
+
+    public void setActionSet(ActionSet actionSet) {
+        this.actionIds = actionSet.getFirstWord();
+        this.extendedActionIds = actionSet.getExtendedWords();
+    }
+
+    /**
+     * Checks the granted actions in place, without allocating.
+     *
+     * @param required actions to check
+     * @return true if all the required actions are granted
+     */
+    public boolean includesActions(ActionSet required) {
+        return ActionSet.includes(actionIds, extendedActionIds, required);
+    }
+
     /**
      * Accumulates new actions without removing existing ones and returns
      * a new WaterPermission instance if there are changes.
@@ -131,6 +217,8 @@ public class WaterPermission extends AbstractJpaEntity implements Permission,Pro
                 this.roleId,
                 this.userId
         );
+        permissionWithNewActions.setExtendedActionIds(this.extendedActionIds);
+        permissionWithNewActions.resourceName = this.resourceName;
         permissionWithNewActions.setId(this.getId());
         permissionWithNewActions.setEntityVersion(this.getEntityVersion());
         return permissionWithNewActions;
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonView;
+import it.water.core.api.service.rest.WaterJsonView;
+import jakarta.persistence.*;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Entry of the permission change log.
+ * Every insert, update and delete of a WaterPermission is recorded, in the same transaction, with a monotonically
+ * increasing sequence number. The entry keeps the state of the permission after the change,
+ * or before it for deletions, so clients can apply the change without reading the permission again.
+ * Updates may move a permission to another role, user, resource name or resource id:
+ * the previous coordinates are kept as well, so the state bound to them can be updated too.
+ * They match the current ones for inserts, deletions and updates changing only the actions.
+ */
+//JPA
+@Entity
+@Access(AccessType.FIELD)
+//Lombok
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class WaterPermissionChange {
+    /**
+     * Position of the change in the log
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @JsonView(WaterJsonView.Extended.class)
+    private long sequence;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    @JsonView(WaterJsonView.Extended.class)
+    private PermissionChangeType changeType;
+
+    /**
+     * Id of the changed permission
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long permissionId;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private String name;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private long actionIds;
+
+    /**
+     * Actions beyond the 64th, null for resources with at most 64 actions.
+     * See ActionSet for the encoding.
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    @Column
+    private byte[] extendedActionIds;
+
+    @Column(nullable = false)
+    @JsonView(WaterJsonView.Extended.class)
+    private String entityResourceName;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private long resourceId;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private long roleId;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private long userId;
+
+    @Column(nullable = false)
+    @JsonView(WaterJsonView.Extended.class)
+    private String previousEntityResourceName;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private long previousResourceId;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private long previousRoleId;
+
+    @JsonView(WaterJsonView.Extended.class)
+    private long previousUserId;
+
+    /**
+     * Time of the change in milliseconds since epoch
+     */
+    @JsonView(WaterJsonView.Extended.class)
+    private long changeDate;
+
+    public WaterPermissionChange(PermissionChangeType changeType, WaterPermission permission) {
+        this(changeType, permission, permission.getRoleId(), permission.getUserId(), permission.getEntityResourceName(),
+                permission.getResourceId() != null ? permission.getResourceId() : 0);
+    }
+
+    /**
+     * @param permission state of the permission after the change
+     */
+    public WaterPermissionChange(PermissionChangeType changeType, WaterPermission permission, long previousRoleId, long previousUserId,
+                                 String previousEntityResourceName, long previousResourceId) {
+        this.changeType = changeType;
+        this.permissionId = permission.getId();
+        this.name = permission.getName();
+        this.actionIds = permission.getActionIds();
+        this.extendedActionIds = permission.getExtendedActionIds();
+        this.entityResourceName = permission.getEntityResourceName();
+        this.resourceId = permission.getResourceId() != null ? permission.getResourceId() : 0;
+        this.roleId = permission.getRoleId();
+        this.userId = permission.getUserId();
+        this.previousEntityResourceName = previousEntityResourceName;
+        this.previousResourceId = previousResourceId;
+        this.previousRoleId = previousRoleId;
+        this.previousUserId = previousUserId;
+        this.changeDate = System.currentTimeMillis();
+    }
+
+    /**
+     * @return all the actions of the permission, including the ones beyond the 64th
+     */
+    @JsonIgnore
+    public ActionSet getActionSet() {
+        return ActionSet.fromStorage(actionIds, extendedActionIds);
+    }
+
+    /**
+     * @return true if the change moved the permission away from its previous coordinates
+     */
+    @JsonIgnore
+    public boolean isMoved() {
+        return roleId != previousRoleId || userId != previousUserId || resourceId != previousResourceId
+                || !entityResourceName.equals(previousEntityResourceName);
+    }
+}
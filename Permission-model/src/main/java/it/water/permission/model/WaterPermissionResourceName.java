@@ -0,0 +1,49 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.model;
+
+import jakarta.persistence.*;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Dictionary of entity resource names.
+ * Each distinct resource name is stored once and permissions reference it through its int id,
+ * so the permission table and its indexes hold a four bytes key instead of a class name of up to 255 characters.
+ * Rows are never updated nor removed: resource names are class names, their number is bounded by the deployed entities.
+ */
+//JPA
+@Entity
+@Access(AccessType.FIELD)
+//Lombok
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class WaterPermissionResourceName {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private int id;
+
+    @Column(nullable = false, unique = true, length = 255)
+    private String name;
+
+    public WaterPermissionResourceName(String name) {
+        this.name = name;
+    }
+}
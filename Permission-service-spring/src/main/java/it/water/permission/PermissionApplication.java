@@ -6,6 +6,7 @@ import it.water.repository.jpa.spring.RepositoryFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 
@@ -15,8 +16,13 @@ import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 @EntityScan({"it.water"})
 @ComponentScan({"it.water"})
 public class PermissionApplication {
+    //startup steps kept for the startup timeline report, a regular startup records a few hundred steps
+    private static final int STARTUP_STEPS_CAPACITY = 4096;
+
     public static void main(String[] args) {
-        SpringApplication.run(PermissionApplication.class, args);
+        SpringApplication application = new SpringApplication(PermissionApplication.class);
+        application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEPS_CAPACITY));
+        application.run(args);
     }
 
 }
@@ -21,11 +21,23 @@ import it.water.core.api.model.PaginableResult;
 import it.water.core.api.service.rest.FrameworkRestApi;
 import it.water.core.api.service.rest.WaterJsonView;
 import it.water.permission.api.rest.PermissionRestApi;
+import it.water.permission.model.EffectivePermissionReport;
+import it.water.permission.model.PermissionBatchItemResult;
+import it.water.permission.model.PermissionChangePage;
+import it.water.permission.model.PermissionDecisionData;
+import it.water.permission.model.PermissionGranteePage;
+import it.water.permission.model.PermissionIndexPreloadStatus;
+import it.water.permission.model.PermissionSearchPage;
+import it.water.permission.model.PermissionSnapshotReport;
+import it.water.permission.model.PermissionTransferReport;
 import it.water.permission.model.WaterPermission;
 import it.water.service.rest.api.security.LoggedIn;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -84,4 +96,87 @@ public interface PermissionSpringRestApi extends PermissionRestApi {
     @PostMapping("/map")
     @JsonView(WaterJsonView.Compact.class)
     Map<String, Map<String, Map<String, Boolean>>> elaboratePermissionMap(@RequestBody Map<String, List<Long>> entityPks);
+
+    @PostMapping("/batch")
+    @JsonView(WaterJsonView.Public.class)
+    List<PermissionBatchItemResult> saveAll(@RequestBody List<WaterPermission> permissions);
+
+    @PutMapping("/batch")
+    @JsonView(WaterJsonView.Public.class)
+    List<PermissionBatchItemResult> updateAll(@RequestBody List<WaterPermission> permissions);
+
+    @DeleteMapping("/batch")
+    @JsonView(WaterJsonView.Public.class)
+    List<PermissionBatchItemResult> removeAll(@RequestParam("id") List<Long> ids);
+
+    @GetMapping("/batch")
+    @JsonView(WaterJsonView.Public.class)
+    List<WaterPermission> findByIds(@RequestParam("id") List<Long> ids);
+
+    @GetMapping("/search")
+    @JsonView(WaterJsonView.Public.class)
+    PermissionSearchPage search(@RequestParam(value = "roleId", required = false) Long roleId,
+                                @RequestParam(value = "userId", required = false) Long userId,
+                                @RequestParam(value = "entityResourceName", required = false) String entityResourceName,
+                                @RequestParam(value = "resourceId", required = false) Long resourceId,
+                                @RequestParam(value = "limit", defaultValue = "100") int limit,
+                                @RequestParam(value = "continuationToken", required = false) String continuationToken);
+
+    @GetMapping("/grantees")
+    @JsonView(WaterJsonView.Public.class)
+    PermissionGranteePage findGrantees(@RequestParam("entityResourceName") String entityResourceName,
+                                       @RequestParam(value = "resourceId", defaultValue = "0") long resourceId,
+                                       @RequestParam("actionId") long actionId,
+                                       @RequestParam(value = "limit", defaultValue = "100") int limit,
+                                       @RequestParam(value = "continuationToken", required = false) String continuationToken);
+
+    @GetMapping("/changes")
+    @JsonView(WaterJsonView.Public.class)
+    PermissionChangePage getChanges(@RequestParam(value = "after", defaultValue = "0") long after,
+                                    @RequestParam(value = "limit", defaultValue = "100") int limit);
+
+    /**
+     * Spring variant of exportPermissions: rows are written directly to the servlet response
+     * on the request thread, since spring mvc does not handle jaxrs StreamingOutput.
+     */
+    @GetMapping(value = "/export", produces = "text/csv")
+    void exportPermissionsCsv(HttpServletResponse response) throws IOException;
+
+    @PostMapping(value = "/import", consumes = "text/csv")
+    @JsonView(WaterJsonView.Public.class)
+    PermissionTransferReport importPermissions(InputStream csv);
+
+    @GetMapping("/decision-data")
+    @JsonView(WaterJsonView.Public.class)
+    PermissionDecisionData getDecisionData(@RequestParam("userId") long userId,
+                                           @RequestParam(value = "roleId", required = false) List<Long> roleIds,
+                                           @RequestParam("entityResourceName") String entityResourceName,
+                                           @RequestParam(value = "resourceId", required = false) List<Long> resourceIds);
+
+    @GetMapping("/resource-decision-data")
+    @JsonView(WaterJsonView.Public.class)
+    PermissionDecisionData getResourceDecisionData(@RequestParam("userId") long userId,
+                                                   @RequestParam(value = "roleId", required = false) List<Long> roleIds,
+                                                   @RequestParam("entityResourceName") String entityResourceName,
+                                                   @RequestParam(value = "resourceId", required = false) List<Long> resourceIds);
+
+    @PostMapping("/effective/rebuild")
+    @JsonView(WaterJsonView.Public.class)
+    EffectivePermissionReport rebuildEffectivePermissions();
+
+    @PostMapping("/effective/check")
+    @JsonView(WaterJsonView.Public.class)
+    EffectivePermissionReport checkEffectivePermissions(@RequestParam(value = "repair", defaultValue = "false") boolean repair);
+
+    @PostMapping("/snapshot")
+    @JsonView(WaterJsonView.Public.class)
+    PermissionSnapshotReport writePermissionSnapshot();
+
+    @PostMapping("/index/preload")
+    @JsonView(WaterJsonView.Public.class)
+    PermissionIndexPreloadStatus preloadIndex();
+
+    @GetMapping("/index/preload")
+    @JsonView(WaterJsonView.Public.class)
+    PermissionIndexPreloadStatus getIndexPreloadStatus();
 }
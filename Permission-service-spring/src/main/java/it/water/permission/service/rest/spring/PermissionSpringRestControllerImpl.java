@@ -5,9 +5,28 @@ import it.water.core.api.model.PaginableResult;
 import it.water.core.api.repository.query.Query;
 import it.water.core.api.repository.query.QueryOrder;
 import it.water.permission.api.rest.spring.PermissionSpringRestApi;
+import it.water.permission.model.EffectivePermissionReport;
+import it.water.permission.model.PermissionBatchItemResult;
+import it.water.permission.model.PermissionChangePage;
+import it.water.permission.model.PermissionDecisionData;
+import it.water.permission.model.PermissionGranteePage;
+import it.water.permission.model.PermissionIndexPreloadStatus;
+import it.water.permission.model.PermissionSearchPage;
+import it.water.permission.model.PermissionSnapshotReport;
+import it.water.permission.model.PermissionTransferReport;
 import it.water.permission.model.WaterPermission;
+import it.water.permission.service.rest.PermissionETags;
 import it.water.permission.service.rest.PermissionRestControllerImpl;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 
 
 /**
@@ -45,4 +64,114 @@ public class PermissionSpringRestControllerImpl extends PermissionRestController
     public PaginableResult<WaterPermission> findAll() {
         return super.findAll();
     }
+
+    @Override
+    public List<PermissionBatchItemResult> saveAll(List<WaterPermission> permissions) {
+        return super.saveAll(permissions);
+    }
+
+    @Override
+    public List<PermissionBatchItemResult> updateAll(List<WaterPermission> permissions) {
+        return super.updateAll(permissions);
+    }
+
+    @Override
+    public List<PermissionBatchItemResult> removeAll(List<Long> ids) {
+        return super.removeAll(ids);
+    }
+
+    @Override
+    public List<WaterPermission> findByIds(List<Long> ids) {
+        return super.findByIds(ids);
+    }
+
+    @Override
+    public PermissionSearchPage search(Long roleId, Long userId, String entityResourceName, Long resourceId, int limit, String continuationToken) {
+        return super.search(roleId, userId, entityResourceName, resourceId, limit, continuationToken);
+    }
+
+    @Override
+    public PermissionGranteePage findGrantees(String entityResourceName, long resourceId, long actionId, int limit, String continuationToken) {
+        return super.findGrantees(entityResourceName, resourceId, actionId, limit, continuationToken);
+    }
+
+    @Override
+    public PermissionChangePage getChanges(long after, int limit) {
+        return super.getChanges(after, limit);
+    }
+
+    @Override
+    public void exportPermissionsCsv(HttpServletResponse response) throws IOException {
+        response.setContentType("text/csv");
+        super.exportPermissions().write(response.getOutputStream());
+    }
+
+    @Override
+    public PermissionTransferReport importPermissions(InputStream csv) {
+        return super.importPermissions(csv);
+    }
+
+    @Override
+    public PermissionDecisionData getDecisionData(long userId, List<Long> roleIds, String entityResourceName, List<Long> resourceIds) {
+        return super.getDecisionData(userId, roleIds, entityResourceName, resourceIds);
+    }
+
+    @Override
+    public PermissionDecisionData getResourceDecisionData(long userId, List<Long> roleIds, String entityResourceName, List<Long> resourceIds) {
+        return super.getResourceDecisionData(userId, roleIds, entityResourceName, resourceIds);
+    }
+
+    @Override
+    public EffectivePermissionReport rebuildEffectivePermissions() {
+        return super.rebuildEffectivePermissions();
+    }
+
+    @Override
+    public EffectivePermissionReport checkEffectivePermissions(boolean repair) {
+        return super.checkEffectivePermissions(repair);
+    }
+
+    @Override
+    public PermissionSnapshotReport writePermissionSnapshot() {
+        return super.writePermissionSnapshot();
+    }
+
+    @Override
+    public PermissionIndexPreloadStatus preloadIndex() {
+        return super.preloadIndex();
+    }
+
+    @Override
+    public PermissionIndexPreloadStatus getIndexPreloadStatus() {
+        return super.getIndexPreloadStatus();
+    }
+
+    /**
+     * On match the status is set to 304 and the caller returns no body, which spring writes as an empty response.
+     */
+    @Override
+    protected boolean notModified(String etag, String cacheControl) {
+        ServletRequestAttributes attributes = currentRequestAttributes();
+        HttpServletResponse response = attributes.getResponse();
+        if (response != null) {
+            response.setHeader(HttpHeaders.ETAG, etag);
+            if (cacheControl != null)
+                response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        }
+        if (!PermissionETags.matches(attributes.getRequest().getHeader(HttpHeaders.IF_NONE_MATCH), etag))
+            return false;
+        if (response != null)
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return response != null;
+    }
+
+    @Override
+    protected String getRequestQuery() {
+        HttpServletRequest request = currentRequestAttributes().getRequest();
+        return request.getQueryString();
+    }
+
+    private ServletRequestAttributes currentRequestAttributes() {
+        return (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
+    }
 }
@@ -0,0 +1,125 @@
+package it.water.permission.service.spring;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.integration.PermissionIntegrationClient;
+import it.water.permission.service.PermissionIntegrationLocalClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.metrics.ApplicationStartup;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Support of the fast-start profile.
+ * With spring.main.lazy-initialization=true beans are created on first use, except the ones needed to serve
+ * the first /permissions request: the permission components and rest controller, the component registry,
+ * the data source and the jpa infrastructure.
+ * When water.permission.bootstrap.deferred is true, default permissions are created while the rest of the context starts,
+ * an application runner waits for them so the readiness state moves to ACCEPTING_TRAFFIC only once they exist.
+ * A failed or late bootstrap fails the startup.
+ * When water.permission.startup.timeline.enabled is true, the slowest startup steps are logged once the application is ready.
+ * When water.permission.cds.training is true, the application exits once ready, as needed by the cdsArchive training run.
+ */
+@Configuration
+public class PermissionFastStartConfiguration {
+    public static final String TIMELINE_ENABLED_PROPERTY = "water.permission.startup.timeline.enabled";
+    public static final String CDS_TRAINING_PROPERTY = "water.permission.cds.training";
+    public static final String BOOTSTRAP_TIMEOUT_PROPERTY = "water.permission.bootstrap.timeout.millis";
+    private static final long DEFAULT_BOOTSTRAP_TIMEOUT_MILLIS = 60000;
+    private static final String PERMISSION_PACKAGE = "it.water.permission.";
+
+    /**
+     * Keeps the critical beans eager, static so it is available before any bean is created.
+     * Other Water components are lazy like any other bean: they are created when first used.
+     */
+    @Bean
+    public static LazyInitializationExcludeFilter permissionCriticalBeansExcludeFilter() {
+        return (beanName, beanDefinition, beanType) -> beanType.getName().startsWith(PERMISSION_PACKAGE)
+                || ComponentRegistry.class.isAssignableFrom(beanType)
+                || DataSource.class.isAssignableFrom(beanType)
+                || beanType.getName().startsWith("org.springframework.orm.jpa.");
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = PermissionIntegrationLocalClient.DEFERRED_BOOTSTRAP_PROPERTY, havingValue = "true")
+    public ApplicationRunner permissionBootstrapRunner(ComponentRegistry componentRegistry, Environment environment) {
+        long timeoutMillis = environment.getProperty(BOOTSTRAP_TIMEOUT_PROPERTY, Long.class, DEFAULT_BOOTSTRAP_TIMEOUT_MILLIS);
+        return args -> {
+            if (componentRegistry.findComponent(PermissionIntegrationClient.class, null) instanceof PermissionIntegrationLocalClient localClient
+                    && !localClient.awaitBootstrap(timeoutMillis, TimeUnit.MILLISECONDS))
+                throw new IllegalStateException("Default permissions were not created within " + timeoutMillis + " ms");
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = TIMELINE_ENABLED_PROPERTY, havingValue = "true")
+    public PermissionStartupTimeline permissionStartupTimeline() {
+        return new PermissionStartupTimeline();
+    }
+
+    /**
+     * Ends the class data sharing training run once the application is ready, the JVM writes the archive on exit.
+     * The whole startup, runners included, is recorded in the archive.
+     */
+    @Bean
+    @ConditionalOnProperty(name = CDS_TRAINING_PROPERTY, havingValue = "true")
+    public ApplicationListener<ApplicationReadyEvent> permissionCdsTrainingExit() {
+        return event -> System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+
+    /**
+     * Logs the time needed to become ready and, when the application records its startup steps
+     * through a BufferingApplicationStartup, the slowest of them.
+     */
+    public static class PermissionStartupTimeline implements ApplicationListener<ApplicationReadyEvent> {
+        private static final Logger log = LoggerFactory.getLogger(PermissionStartupTimeline.class);
+        private static final int REPORTED_STEPS = 15;
+        private Duration readyTime;
+        private List<String> slowestSteps = List.of();
+
+        @Override
+        public void onApplicationEvent(ApplicationReadyEvent event) {
+            readyTime = event.getTimeTaken();
+            log.info("Permission service ready in {} ms", readyTime != null ? readyTime.toMillis() : -1);
+            ApplicationStartup applicationStartup = event.getSpringApplication().getApplicationStartup();
+            if (!(applicationStartup instanceof BufferingApplicationStartup bufferingStartup))
+                return;
+            StartupTimeline timeline = bufferingStartup.getBufferedTimeline();
+            slowestSteps = timeline.getEvents().stream()
+                    .sorted(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed())
+                    .limit(REPORTED_STEPS)
+                    .map(step -> step.getDuration().toMillis() + " ms " + step.getStartupStep().getName())
+                    .toList();
+            slowestSteps.forEach(step -> log.info("Startup step: {}", step));
+        }
+
+        /**
+         * @return time taken to become ready, null until the application is ready
+         */
+        public Duration getReadyTime() {
+            return readyTime;
+        }
+
+        /**
+         * @return slowest startup steps, empty if startup steps are not recorded
+         */
+        public List<String> getSlowestSteps() {
+            return slowestSteps;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package it.water.permission.service.spring;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.permission.api.PermissionSystemApi;
+import it.water.permission.service.PermissionSystemServiceImpl;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Preload of the role grant index at startup, enabled with water.permission.grant.index.preload.enabled=true.
+ * Application runners complete before spring boot reports the application ready,
+ * so the readiness state moves to ACCEPTING_TRAFFIC only once the preload is over or its time budget expired.
+ * After a timeout the preload status is not ready until the index is loaded, probes which must wait
+ * for it read the ready flag of the preload status instead of the spring readiness state.
+ */
+@Configuration
+@ConditionalOnProperty(name = PermissionSystemServiceImpl.INDEX_PRELOAD_PROPERTY, havingValue = "true")
+public class PermissionIndexPreloadConfiguration {
+
+    @Bean
+    public ApplicationRunner permissionIndexPreloadRunner(ComponentRegistry componentRegistry) {
+        return args -> componentRegistry.findComponent(PermissionSystemApi.class, null).preloadIndex();
+    }
+}
@@ -0,0 +1,34 @@
+package it.water.permission.service.spring;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.permission.api.PermissionSystemApi;
+import it.water.permission.service.PermissionSystemServiceImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextClosedEvent;
+
+/**
+ * Writes the permission snapshot when the application stops, so the next start loads the role grant index
+ * from water.permission.snapshot.file instead of scanning the permission table.
+ * A failure is logged and doesn't block the shutdown, the next start scans the table as usual.
+ */
+@Configuration
+@ConditionalOnProperty(name = PermissionSystemServiceImpl.SNAPSHOT_FILE_PROPERTY)
+public class PermissionSnapshotConfiguration {
+    private static final Logger log = LoggerFactory.getLogger(PermissionSnapshotConfiguration.class);
+
+    @Bean
+    public ApplicationListener<ContextClosedEvent> permissionSnapshotWriter(ComponentRegistry componentRegistry) {
+        return event -> {
+            try {
+                componentRegistry.findComponent(PermissionSystemApi.class, null).writePermissionSnapshot();
+            } catch (RuntimeException e) {
+                log.warn("Unable to write the permission snapshot on shutdown: {}", e.getMessage());
+            }
+        };
+    }
+}
@@ -0,0 +1,77 @@
+package it.water.permission.service.spring;
+
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual thread execution mode of the permission service, enabled with water.permission.virtual-threads.enabled=true.
+ * Each http request runs on its own virtual thread, so requests waiting on jdbc or on remote integrations
+ * do not hold a platform thread of the servlet container.
+ * Since the number of concurrent requests is no longer bounded by the container pool,
+ * jdbc connections are handed out through a PermissionJdbcConcurrencyLimiter.
+ * Virtual threads require Java 21, the module keeps compiling on older releases and the application fails at startup
+ * if the mode is enabled on a runtime without virtual threads.
+ */
+@Configuration
+@ConditionalOnProperty(name = PermissionVirtualThreadsConfiguration.ENABLED_PROPERTY, havingValue = "true")
+public class PermissionVirtualThreadsConfiguration {
+    private static final Logger log = LoggerFactory.getLogger(PermissionVirtualThreadsConfiguration.class);
+    public static final String ENABLED_PROPERTY = "water.permission.virtual-threads.enabled";
+    public static final String JDBC_MAX_CONCURRENCY_PROPERTY = "water.permission.jdbc.max-concurrency";
+    public static final String JDBC_ACQUIRE_TIMEOUT_PROPERTY = "water.permission.jdbc.acquire-timeout-millis";
+    //defaults of the hikari pool used by spring boot
+    private static final String POOL_SIZE_PROPERTY = "spring.datasource.hikari.maximum-pool-size";
+    private static final int DEFAULT_POOL_SIZE = 10;
+    private static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 30000;
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadsProtocolHandlerCustomizer() {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        log.info("Permission service requests run on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    /**
+     * Static so that data sources created before this configuration is processed are wrapped as well.
+     */
+    @Bean
+    public static BeanPostProcessor permissionJdbcConcurrencyLimiterPostProcessor(Environment environment) {
+        int maxConcurrency = environment.getProperty(JDBC_MAX_CONCURRENCY_PROPERTY, Integer.class,
+                environment.getProperty(POOL_SIZE_PROPERTY, Integer.class, DEFAULT_POOL_SIZE));
+        long acquireTimeoutMillis = environment.getProperty(JDBC_ACQUIRE_TIMEOUT_PROPERTY, Long.class, DEFAULT_ACQUIRE_TIMEOUT_MILLIS);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof PermissionJdbcConcurrencyLimiter)) {
+                    log.info("Limiting data source {} to {} concurrent connections", beanName, maxConcurrency);
+                    return new PermissionJdbcConcurrencyLimiter(dataSource, maxConcurrency, acquireTimeoutMillis);
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * Looked up reflectively since the module is compiled for releases without virtual threads.
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads require Java 21 or later, disable " + ENABLED_PROPERTY, e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create the virtual thread executor", e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package it.water.permission;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.integration.PermissionIntegrationClient;
+import it.water.core.testing.utils.runtime.TestRuntimeUtils;
+import it.water.permission.service.PermissionIntegrationLocalClient;
+import it.water.permission.service.spring.PermissionFastStartConfiguration;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the time from the start of PermissionApplication, in the fast-start profile,
+ * to the first successful response of /permissions, failing when it exceeds the budget.
+ * The first request must also be served shortly after the application is ready: beans it needs are kept eager,
+ * so it must not pay for their creation. Set water.permission.startup.budget.millis to tighten the budget on a known machine.
+ */
+class PermissionStartupTimeTest {
+    private static final Logger log = LoggerFactory.getLogger(PermissionStartupTimeTest.class);
+    private static final long STARTUP_BUDGET_MILLIS = Long.getLong("water.permission.startup.budget.millis", 20000);
+    //time the first request may take once the application is ready, lazy beans created by it included
+    private static final long FIRST_REQUEST_BUDGET_MILLIS = Long.getLong("water.permission.startup.firstRequest.budget.millis", 2000);
+
+    @Test
+    void firstRequestShouldBeServedWithinTheStartupBudget() throws Exception {
+        long startedAt = System.nanoTime();
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(PermissionApplication.class)
+                .applicationStartup(new BufferingApplicationStartup(4096))
+                .profiles("fast-start")
+                .properties("server.port=0",
+                        "water.rest.security.jwt.validate=false",
+                        "water.testMode=true",
+                        "spring.datasource.url=jdbc:hsqldb:mem:faststart")
+                .run()) {
+            long readyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            TestRuntimeUtils.impersonateAdmin(context.getBean(ComponentRegistry.class));
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            HttpClient httpClient = HttpClient.newHttpClient();
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/water/permissions"))
+                    .header("Accept", "application/json")
+                    .GET()
+                    .build();
+            int status = 0;
+            long deadline = startedAt + TimeUnit.MILLISECONDS.toNanos(STARTUP_BUDGET_MILLIS);
+            while (status != 200 && System.nanoTime() - deadline < 0) {
+                status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                if (status != 200)
+                    Thread.sleep(10);
+            }
+            long firstResponseMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            log.info("Fast start: ready after {} ms, first successful /permissions response after {} ms", readyMillis, firstResponseMillis);
+            Assertions.assertEquals(200, status);
+            Assertions.assertTrue(firstResponseMillis <= STARTUP_BUDGET_MILLIS, "First response after " + firstResponseMillis + " ms");
+            Assertions.assertTrue(firstResponseMillis - readyMillis <= FIRST_REQUEST_BUDGET_MILLIS,
+                    "First response " + (firstResponseMillis - readyMillis) + " ms after the application was ready");
+
+            PermissionFastStartConfiguration.PermissionStartupTimeline timeline = context.getBean(PermissionFastStartConfiguration.PermissionStartupTimeline.class);
+            Assertions.assertNotNull(timeline.getReadyTime());
+            Assertions.assertFalse(timeline.getSlowestSteps().isEmpty());
+            //the application is reported ready only once the deferred default permissions exist
+            Assertions.assertNotNull(context.getBean("permissionBootstrapRunner"));
+            PermissionIntegrationClient client = context.getBean(ComponentRegistry.class).findComponent(PermissionIntegrationClient.class, null);
+            if (client instanceof PermissionIntegrationLocalClient localClient)
+                Assertions.assertFalse(localClient.isBootstrapPending());
+        }
+    }
+}
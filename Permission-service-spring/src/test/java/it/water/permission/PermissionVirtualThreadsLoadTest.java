@@ -0,0 +1,118 @@
+package it.water.permission;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.testing.utils.runtime.TestRuntimeUtils;
+import it.water.permission.model.WaterPermission;
+import it.water.permission.service.spring.PermissionVirtualThreadsConfiguration;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the throughput of the permission map endpoint on platform and on virtual threads with 1000 concurrent clients.
+ * Each mode runs in its own application context and database. The virtual thread mode must serve every request,
+ * with a throughput not lower than the platform one beyond the tolerance, since absolute numbers depend on the machine.
+ * The tolerance is the fraction of the platform throughput which may be lost, set it with water.permission.loadTest.tolerance.
+ * Run with -Dwater.permission.loadTest=true on Java 21 or later.
+ */
+@EnabledIfSystemProperty(named = "water.permission.loadTest", matches = "true")
+class PermissionVirtualThreadsLoadTest {
+    private static final Logger log = LoggerFactory.getLogger(PermissionVirtualThreadsLoadTest.class);
+    private static final int CLIENTS = 1000;
+    private static final int REQUESTS_PER_CLIENT = 5;
+    private static final double THROUGHPUT_TOLERANCE = Double.parseDouble(System.getProperty("water.permission.loadTest.tolerance", "0.2"));
+
+    @Test
+    void virtualThreadsShouldServeOneThousandConcurrentClients() throws Exception {
+        Assumptions.assumeTrue(Runtime.version().feature() >= 21, "Virtual threads require Java 21");
+        LoadResult platform = run(false);
+        LoadResult virtual = run(true);
+        log.info("{} clients x {} requests: platform threads {} req/s ({} failed), virtual threads {} req/s ({} failed)",
+                CLIENTS, REQUESTS_PER_CLIENT, platform.throughput(), platform.failed, virtual.throughput(), virtual.failed);
+        Assertions.assertEquals(0, virtual.failed);
+        Assertions.assertEquals(CLIENTS * REQUESTS_PER_CLIENT, virtual.succeeded);
+        Assertions.assertTrue(virtual.throughput() >= platform.throughput() * (1 - THROUGHPUT_TOLERANCE),
+                "Virtual threads throughput " + virtual.throughput() + " req/s is lower than platform threads throughput "
+                        + platform.throughput() + " req/s beyond the tolerance of " + THROUGHPUT_TOLERANCE);
+    }
+
+    private LoadResult run(boolean virtualThreads) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(PermissionApplication.class)
+                .properties("server.port=0",
+                        "water.rest.security.jwt.validate=false",
+                        "water.testMode=true",
+                        "spring.datasource.url=jdbc:hsqldb:mem:load" + (virtualThreads ? "virtual" : "platform"),
+                        PermissionVirtualThreadsConfiguration.ENABLED_PROPERTY + "=" + virtualThreads)
+                .run()) {
+            TestRuntimeUtils.impersonateAdmin(context.getBean(ComponentRegistry.class));
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/water/permissions/map"))
+                    .header("Content-Type", "application/json")
+                    .header("Accept", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"" + WaterPermission.class.getName() + "\":[1,2,3]}"))
+                    .build();
+            ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+            HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(clients).build();
+            AtomicInteger succeeded = new AtomicInteger();
+            AtomicInteger failed = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> running = new ArrayList<>(CLIENTS);
+            try {
+                for (int i = 0; i < CLIENTS; i++) {
+                    running.add(clients.submit(() -> {
+                        start.await();
+                        for (int r = 0; r < REQUESTS_PER_CLIENT; r++) {
+                            try {
+                                int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                                (status == 200 ? succeeded : failed).incrementAndGet();
+                            } catch (Exception e) {
+                                failed.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                long startedAt = System.nanoTime();
+                start.countDown();
+                for (Future<?> client : running)
+                    client.get();
+                return new LoadResult(succeeded.get(), failed.get(), System.nanoTime() - startedAt);
+            } finally {
+                clients.shutdownNow();
+            }
+        }
+    }
+
+    private static final class LoadResult {
+        private final int succeeded;
+        private final int failed;
+        private final long elapsedNanos;
+
+        private LoadResult(int succeeded, int failed, long elapsedNanos) {
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        private long throughput() {
+            return succeeded * 1_000_000_000L / Math.max(1, elapsedNanos);
+        }
+    }
+}
@@ -1,17 +1,35 @@
 package it.water.permission.repository;
 
 import it.water.core.api.action.ResourceAction;
+import it.water.core.api.bundle.ApplicationProperties;
 import it.water.core.api.model.Resource;
 import it.water.core.interceptors.annotations.FrameworkComponent;
+import it.water.core.interceptors.annotations.Inject;
 import it.water.permission.api.PermissionRepository;
+import it.water.permission.model.EffectivePermissionReport;
+import it.water.permission.model.PermissionBatchItemResult;
+import it.water.permission.model.PermissionChangeType;
+import it.water.permission.model.PermissionTransferReport;
+import it.water.permission.model.WaterEffectivePermission;
+import it.water.permission.model.WaterEffectivePermissionUser;
 import it.water.permission.model.WaterPermission;
+import it.water.permission.model.WaterPermissionChange;
+import it.water.permission.model.WaterPermissionResourceName;
 import it.water.repository.entity.model.exceptions.NoResultException;
 import it.water.repository.jpa.WaterJpaRepositoryImpl;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.FlushModeType;
+import jakarta.persistence.TypedQuery;
 import jakarta.transaction.Transactional;
+import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 /**
@@ -23,12 +41,68 @@ public class PermissionRepositoryImpl extends WaterJpaRepositoryImpl<WaterPermis
     private static Logger log = LoggerFactory.getLogger(PermissionRepositoryImpl.class);
     private static final String PERMISSION_PERSISTENCE_UNIT = "permission-persistence-unit";
     private static final String ENTITY_RESOURCE_FIELD_NAME = "entityResourceName";
+    //resource names are matched on the dictionary, the permission table is then accessed through the int key
+    private static final String ENTITY_RESOURCE_PATH = "resourceName.name";
     private static final String ROLE_ID_FIELD_NAME = "roleId";
+    //aligned with hibernate.jdbc.batch_size: updates and deletes of a chunk are sent as full jdbc batches, inserts only when ids are not IDENTITY generated
+    private static final int BATCH_FLUSH_SIZE = 50;
+    //keeps "in" clauses below the limits of the most common databases
+    private static final int MAX_IN_CLAUSE_SIZE = 1000;
+    //rows fetched per round trip while exporting, the persistence context is cleared at the same pace
+    private static final int EXPORT_FETCH_SIZE = 1000;
+    //rows fetched per round trip while looking for grantees, rows not granting the action are skipped in memory
+    private static final int GRANTEE_FETCH_SIZE = 500;
+
+    @Inject
+    @Setter
+    private ApplicationProperties applicationProperties;
 
     public PermissionRepositoryImpl() {
         super(WaterPermission.class, PERMISSION_PERSISTENCE_UNIT);
     }
 
+    /**
+     * Persists the permission and records the insert in the change log, inside the same transaction.
+     */
+    @Override
+    public WaterPermission persist(WaterPermission entity) {
+        return tx(Transactional.TxType.REQUIRED, entityManager -> {
+            bindResourceName(entityManager, entity);
+            WaterPermission persisted = super.persist(entity);
+            applyRecordedChanges(entityManager, List.of(recordChange(entityManager, PermissionChangeType.INSERT, persisted)));
+            return persisted;
+        });
+    }
+
+    /**
+     * Updates the permission and records the update in the change log, inside the same transaction.
+     * The change keeps the coordinates the permission had before the update, in case it has been moved.
+     */
+    @Override
+    public WaterPermission update(WaterPermission entity) {
+        return tx(Transactional.TxType.REQUIRED, entityManager -> {
+            WaterPermission persisted = entityManager.find(WaterPermission.class, entity.getId());
+            Coordinates previous = persisted != null ? Coordinates.of(persisted) : null;
+            bindResourceName(entityManager, entity);
+            WaterPermission updated = super.update(entity);
+            applyRecordedChanges(entityManager, List.of(recordChange(entityManager, PermissionChangeType.UPDATE, updated, previous)));
+            return updated;
+        });
+    }
+
+    /**
+     * Removes the permission and records the deletion, with the last state of the permission, in the change log.
+     */
+    @Override
+    public void remove(long id) {
+        txExpr(Transactional.TxType.REQUIRED, entityManager -> {
+            WaterPermission removed = entityManager.find(WaterPermission.class, id);
+            super.remove(id);
+            if (removed != null)
+                applyRecordedChanges(entityManager, List.of(recordChange(entityManager, PermissionChangeType.DELETE, removed)));
+        });
+    }
+
     /**
      * Find a permission by a specific user and resource
      *
@@ -56,7 +130,7 @@ public class PermissionRepositoryImpl extends WaterJpaRepositoryImpl<WaterPermis
             WaterPermission p = null;
             try {
                 p = entityManager.createQuery(
-                                "from WaterPermission p where p.userId = :userId and roleId = 0 and p.entityResourceName = :entityResourceName and p.resourceId = 0",
+                                "from WaterPermission p where p.userId = :userId and roleId = 0 and p.resourceName.name = :entityResourceName and p.resourceId = 0",
                                 WaterPermission.class).setParameter("userId", userId)
                         .setParameter(ENTITY_RESOURCE_FIELD_NAME, entityResourceName).getSingleResult();
             } catch (NoResultException e) {
@@ -80,7 +154,7 @@ public class PermissionRepositoryImpl extends WaterJpaRepositoryImpl<WaterPermis
         log.debug("invoking findByUserAndResourceNameAndResourceId User: {}", userId);
         return tx(Transactional.TxType.REQUIRED, entityManager ->
                 entityManager.createQuery(
-                                "from WaterPermission p where p.userId = :userId and roleId = 0 and p.entityResourceName = :entityResourceName and p.resourceId = :id",
+                                "from WaterPermission p where p.userId = :userId and roleId = 0 and p.resourceName.name = :entityResourceName and p.resourceId = :id",
                                 WaterPermission.class).setParameter("userId", userId)
                         .setParameter(ENTITY_RESOURCE_FIELD_NAME, entityResourceName).setParameter("id", id)
                         .getSingleResult()
@@ -114,7 +188,7 @@ public class PermissionRepositoryImpl extends WaterJpaRepositoryImpl<WaterPermis
             WaterPermission p = null;
             try {
                 p = entityManager.createQuery(
-                                "from WaterPermission p where p.roleId = :roleId and userId = 0 and p.entityResourceName = :entityResourceName and p.resourceId = 0",
+                                "from WaterPermission p where p.roleId = :roleId and userId = 0 and p.resourceName.name = :entityResourceName and p.resourceId = 0",
                                 WaterPermission.class).setParameter(ROLE_ID_FIELD_NAME, roleId)
                         .setParameter(ENTITY_RESOURCE_FIELD_NAME, entityResourceName).getSingleResult();
             } catch (NoResultException | jakarta.persistence.NoResultException e) {
@@ -154,7 +228,7 @@ public class PermissionRepositoryImpl extends WaterJpaRepositoryImpl<WaterPermis
     public WaterPermission findByRoleAndResourceNameAndResourceId(long roleId,
                                                                   String entityResourceName, long id) {
         log.debug("invoking findByRoleAndResourceNameAndResourceId Role: {}", roleId);
-        return tx(Transactional.TxType.REQUIRED, entityManager -> entityManager.createQuery("from WaterPermission p where p.roleId = :roleId and userId = 0 and p.entityResourceName = :entityResourceName and p.resourceId = :id", WaterPermission.class).setParameter(ROLE_ID_FIELD_NAME, roleId).setParameter(ENTITY_RESOURCE_FIELD_NAME, entityResourceName).setParameter("id", id).getSingleResult());
+        return tx(Transactional.TxType.REQUIRED, entityManager -> entityManager.createQuery("from WaterPermission p where p.roleId = :roleId and userId = 0 and p.resourceName.name = :entityResourceName and p.resourceId = :id", WaterPermission.class).setParameter(ROLE_ID_FIELD_NAME, roleId).setParameter(ENTITY_RESOURCE_FIELD_NAME, entityResourceName).setParameter("id", id).getSingleResult());
     }
 
     /**
@@ -221,7 +295,7 @@ public class PermissionRepositoryImpl extends WaterJpaRepositoryImpl<WaterPermis
             return false;
         }
         return tx(Transactional.TxType.REQUIRED, entityManager -> {
-            String query = "SELECT COUNT(p) from WaterPermission p where p.entityResourceName = :entityResourceName and p.resourceId = :resourceId";
+            String query = "SELECT COUNT(p) from WaterPermission p where p.resourceName.name = :entityResourceName and p.resourceId = :resourceId";
             Number number = (Number) entityManager
                     .createQuery(query)
                     .setParameter(ENTITY_RESOURCE_FIELD_NAME, resourceName)
@@ -246,7 +320,7 @@ public class PermissionRepositoryImpl extends WaterJpaRepositoryImpl<WaterPermis
             WaterPermission p = null;
             try {
                 p = entityManager.createQuery(
-                                "from WaterPermission p where p.roleId = :roleId and p.entityResourceName = :entityResourceName and p.resourceId = :id",
+                                "from WaterPermission p where p.roleId = :roleId and p.resourceName.name = :entityResourceName and p.resourceId = :id",
                                 WaterPermission.class).setParameter(ROLE_ID_FIELD_NAME, roleId)
                         .setParameter(ENTITY_RESOURCE_FIELD_NAME, entityResourceName).setParameter("id", id)
                         .getSingleResult();
@@ -299,6 +373,817 @@ public class PermissionRepositoryImpl extends WaterJpaRepositoryImpl<WaterPermis
         });
     }
 
+    /**
+     * Persists all the given permissions inside a single transaction.
+     * Permissions are processed in chunks of BATCH_FLUSH_SIZE items: for each chunk the dictionary entries and the
+     * already persisted unique keys are loaded with one query each, then the chunk is flushed at once.
+     * Items which would break the unique constraint, either against persisted rows or against other items
+     * of the same batch, are not persisted and are reported as failed.
+     *
+     * @param permissions permissions to persist
+     * @return one result for each permission, in the same order of the input list
+     */
+    @Override
+    public List<PermissionBatchItemResult> persistAll(List<WaterPermission> permissions) {
+        log.debug("invoking persistAll on {} permissions", permissions.size());
+        return tx(Transactional.TxType.REQUIRED, entityManager -> inChunks(entityManager, permissions, (chunk, changes) -> {
+            List<PermissionBatchItemResult> results = new ArrayList<>(chunk.size());
+            Map<String, WaterPermissionResourceName> resourceNames = findOrCreateResourceNames(entityManager, chunk);
+            Set<String> persistedKeys = findPersistedUniqueKeys(entityManager, chunk);
+            for (WaterPermission permission : chunk) {
+                String uniqueKey = uniqueKey(permission);
+                //earlier chunks are already flushed and found by the query, duplicates inside this chunk are found here
+                if (!persistedKeys.add(uniqueKey)) {
+                    results.add(PermissionBatchItemResult.failed(0, "Duplicated permission: " + uniqueKey));
+                    continue;
+                }
+                permission.bindResourceName(resourceNames.get(permission.getEntityResourceName()));
+                WaterPermission persisted = super.persist(permission);
+                changes.add(recordChange(entityManager, PermissionChangeType.INSERT, persisted));
+                results.add(PermissionBatchItemResult.succeeded(persisted));
+            }
+            return results;
+        }));
+    }
+
+    /**
+     * Updates all the given permissions inside a single transaction.
+     * Permissions are processed in chunks of BATCH_FLUSH_SIZE items, each chunk loads the persisted rows with one query.
+     * Items which do not exist or whose entity version differs from the persisted one are not updated
+     * and are reported as failed.
+     *
+     * @param permissions permissions to update
+     * @return one result for each permission, in the same order of the input list
+     */
+    @Override
+    public List<PermissionBatchItemResult> updateAll(List<WaterPermission> permissions) {
+        log.debug("invoking updateAll on {} permissions", permissions.size());
+        return tx(Transactional.TxType.REQUIRED, entityManager -> inChunks(entityManager, permissions, (chunk, changes) -> {
+            List<PermissionBatchItemResult> results = new ArrayList<>(chunk.size());
+            Map<Long, WaterPermission> persistedById = findByIdIn(entityManager, chunk.stream().map(WaterPermission::getId).toList());
+            Map<String, WaterPermissionResourceName> resourceNames = findOrCreateResourceNames(entityManager, chunk);
+            for (WaterPermission permission : chunk) {
+                WaterPermission persisted = persistedById.get(permission.getId());
+                if (persisted == null) {
+                    results.add(PermissionBatchItemResult.failed(permission.getId(), "Permission not found"));
+                    continue;
+                }
+                if (!Objects.equals(persisted.getEntityVersion(), permission.getEntityVersion())) {
+                    results.add(PermissionBatchItemResult.failed(permission.getId(), "Entity version mismatch"));
+                    continue;
+                }
+                Coordinates previous = Coordinates.of(persisted);
+                permission.bindResourceName(resourceNames.get(permission.getEntityResourceName()));
+                WaterPermission updated = super.update(permission);
+                changes.add(recordChange(entityManager, PermissionChangeType.UPDATE, updated, previous));
+                results.add(PermissionBatchItemResult.succeeded(updated));
+            }
+            return results;
+        }));
+    }
+
+    /**
+     * Removes all the permissions with the given ids inside a single transaction.
+     * Ids are processed in chunks of BATCH_FLUSH_SIZE items, each chunk loads the persisted rows with one query.
+     * Ids which do not match any permission are reported as failed.
+     *
+     * @param ids ids of the permissions to remove
+     * @return one result for each id, in the same order of the input list
+     */
+    @Override
+    public List<PermissionBatchItemResult> removeAll(List<Long> ids) {
+        log.debug("invoking removeAll on {} permissions", ids.size());
+        return tx(Transactional.TxType.REQUIRED, entityManager -> inChunks(entityManager, ids, (chunk, changes) -> {
+            List<PermissionBatchItemResult> results = new ArrayList<>(chunk.size());
+            Map<Long, WaterPermission> persistedById = findByIdIn(entityManager, chunk);
+            for (Long id : chunk) {
+                WaterPermission persisted = id != null ? persistedById.remove(id) : null;
+                if (persisted == null) {
+                    results.add(PermissionBatchItemResult.failed(id != null ? id : 0, "Permission not found"));
+                    continue;
+                }
+                entityManager.remove(persisted);
+                changes.add(recordChange(entityManager, PermissionChangeType.DELETE, persisted));
+                results.add(PermissionBatchItemResult.removed(id));
+            }
+            return results;
+        }));
+    }
+
+    /**
+     * Find all the permissions with the given ids, splitting the lookup in chunks of MAX_IN_CLAUSE_SIZE ids.
+     *
+     * @param ids ids of the permissions
+     * @return found permissions ordered by id, missing ids are ignored
+     */
+    @Override
+    public List<WaterPermission> findByIds(List<Long> ids) {
+        log.debug("invoking findByIds on {} ids", ids.size());
+        List<Long> distinctIds = ids.stream().filter(Objects::nonNull).distinct().toList();
+        if (distinctIds.isEmpty())
+            return Collections.emptyList();
+        return tx(Transactional.TxType.REQUIRED, entityManager -> {
+            List<WaterPermission> found = new ArrayList<>(distinctIds.size());
+            for (int i = 0; i < distinctIds.size(); i += MAX_IN_CLAUSE_SIZE) {
+                List<Long> chunk = distinctIds.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, distinctIds.size()));
+                found.addAll(entityManager
+                        .createQuery("from WaterPermission p where p.id in :ids order by p.id", WaterPermission.class)
+                        .setParameter("ids", chunk)
+                        .getResultList());
+            }
+            return found;
+        });
+    }
+
+    /**
+     * Keyset paginated search ordered by id. Filters with null value are ignored.
+     * Since pages start from the last returned id, the cost of a page does not depend on its position.
+     */
+    @Override
+    public List<WaterPermission> search(Long roleId, Long userId, String entityResourceName, Long resourceId, long afterId, int maxResults) {
+        log.debug("invoking search Role: {} User: {} Resource: {} ResourceId: {} after id: {}", roleId, userId, entityResourceName, resourceId, afterId);
+        StringBuilder query = new StringBuilder("from WaterPermission p where p.id > :afterId");
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("afterId", afterId);
+        appendSearchFilter(query, parameters, ROLE_ID_FIELD_NAME, ROLE_ID_FIELD_NAME, roleId);
+        appendSearchFilter(query, parameters, "userId", "userId", userId);
+        appendSearchFilter(query, parameters, ENTITY_RESOURCE_PATH, ENTITY_RESOURCE_FIELD_NAME, entityResourceName);
+        appendSearchFilter(query, parameters, "resourceId", "resourceId", resourceId);
+        query.append(" order by p.id");
+        return tx(Transactional.TxType.REQUIRED, entityManager -> {
+            TypedQuery<WaterPermission> typedQuery = entityManager.createQuery(query.toString(), WaterPermission.class);
+            parameters.forEach(typedQuery::setParameter);
+            return typedQuery.setMaxResults(maxResults).getResultList();
+        });
+    }
+
+    /**
+     * Streams all permissions through a forward only cursor.
+     * The persistence context is cleared every EXPORT_FETCH_SIZE rows so already exported rows can be garbage collected.
+     */
+    @Override
+    public long exportAll(Consumer<WaterPermission> consumer) {
+        log.debug("invoking exportAll");
+        return tx(Transactional.TxType.REQUIRED, entityManager -> {
+            long exported = 0;
+            try (Stream<WaterPermission> rows = entityManager
+                    .createQuery("from WaterPermission p order by p.id", WaterPermission.class)
+                    .setHint("org.hibernate.fetchSize", EXPORT_FETCH_SIZE)
+                    .setHint("org.hibernate.readOnly", true)
+                    .getResultStream()) {
+                Iterator<WaterPermission> it = rows.iterator();
+                while (it.hasNext()) {
+                    consumer.accept(it.next());
+                    exported++;
+                    if (exported % EXPORT_FETCH_SIZE == 0)
+                        entityManager.clear();
+                }
+            }
+            return exported;
+        });
+    }
+
+    /**
+     * Upserts permissions matching them on the unique constraint columns.
+     * Existing permissions get the imported actions, so an import restores exactly the exported state.
+     * Permissions are processed in chunks of BATCH_FLUSH_SIZE items: for each chunk the dictionary entries and the
+     * already persisted permissions are loaded with one query each, then the chunk is flushed at once.
+     */
+    @Override
+    public PermissionTransferReport upsertAll(List<WaterPermission> permissions) {
+        log.debug("invoking upsertAll on {} permissions", permissions.size());
+        List<PermissionChangeType> outcomes = tx(Transactional.TxType.REQUIRED, entityManager -> inChunks(entityManager, permissions, (chunk, changes) -> {
+            //the change type of each item, null when the item is unchanged
+            List<PermissionChangeType> results = new ArrayList<>(chunk.size());
+            Map<String, WaterPermissionResourceName> resourceNames = findOrCreateResourceNames(entityManager, chunk);
+            Map<String, WaterPermission> persistedByKey = findPersistedByUniqueKey(entityManager, chunk);
+            for (WaterPermission permission : chunk) {
+                String uniqueKey = uniqueKey(permission);
+                WaterPermission existing = persistedByKey.get(uniqueKey);
+                if (existing == null) {
+                    permission.bindResourceName(resourceNames.get(permission.getEntityResourceName()));
+                    WaterPermission persisted = super.persist(permission);
+                    //later items of the same chunk with the same key update the inserted permission
+                    persistedByKey.put(uniqueKey, persisted);
+                    changes.add(recordChange(entityManager, PermissionChangeType.INSERT, persisted));
+                    results.add(PermissionChangeType.INSERT);
+                } else if (existing.getActionIds() != permission.getActionIds()
+                        || !Arrays.equals(existing.getExtendedActionIds(), permission.getExtendedActionIds())) {
+                    existing.setActionIds(permission.getActionIds());
+                    existing.setExtendedActionIds(permission.getExtendedActionIds());
+                    WaterPermission updated = super.update(existing);
+                    persistedByKey.put(uniqueKey, updated);
+                    changes.add(recordChange(entityManager, PermissionChangeType.UPDATE, updated));
+                    results.add(PermissionChangeType.UPDATE);
+                } else {
+                    results.add(null);
+                }
+            }
+            return results;
+        }));
+        long inserted = outcomes.stream().filter(PermissionChangeType.INSERT::equals).count();
+        long updated = outcomes.stream().filter(PermissionChangeType.UPDATE::equals).count();
+        return new PermissionTransferReport(inserted, updated, outcomes.size() - inserted - updated, 0, 0);
+    }
+
+    @Override
+    public List<WaterPermission> findDecisionRows(long userId, List<Long> roleIds, List<String> entityResourceNames, List<Long> resourceIds) {
+        log.debug("invoking findDecisionRows User: {} Roles: {} Resources: {}", userId, roleIds, entityResourceNames);
+        List<Long> distinctResourceIds = new ArrayList<>();
+        distinctResourceIds.add(0L);
+        resourceIds.stream().filter(id -> id != null && id != 0).distinct().forEach(distinctResourceIds::add);
+        String ownerFilter = roleIds.isEmpty()
+                ? "p.roleId = 0 and p.userId = :userId"
+                : "((p.userId = 0 and p.roleId in :roleIds) or (p.roleId = 0 and p.userId = :userId))";
+        return tx(Transactional.TxType.REQUIRED, entityManager -> {
+            List<WaterPermission> found = new ArrayList<>();
+            for (int i = 0; i < distinctResourceIds.size(); i += MAX_IN_CLAUSE_SIZE) {
+                List<Long> chunk = distinctResourceIds.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, distinctResourceIds.size()));
+                TypedQuery<WaterPermission> query = entityManager
+                        .createQuery("from WaterPermission p where p.resourceName.name in :entityResourceNames and p.resourceId in :resourceIds and " + ownerFilter, WaterPermission.class)
+                        .setParameter("entityResourceNames", entityResourceNames)
+                        .setParameter("resourceIds", chunk)
+                        .setParameter("userId", userId);
+                if (!roleIds.isEmpty())
+                    query.setParameter("roleIds", roleIds);
+                found.addAll(query.getResultList());
+            }
+            return found;
+        });
+    }
+
+    @Override
+    public Set<Long> findResourceIdsWithSpecificPermissions(String entityResourceName, List<Long> resourceIds) {
+        log.debug("invoking findResourceIdsWithSpecificPermissions Resource: {} on {} ids", entityResourceName, resourceIds.size());
+        List<Long> distinctIds = resourceIds.stream().filter(id -> id != null && id != 0).distinct().toList();
+        if (distinctIds.isEmpty())
+            return Collections.emptySet();
+        return tx(Transactional.TxType.REQUIRED, entityManager -> {
+            Set<Long> found = new HashSet<>();
+            for (int i = 0; i < distinctIds.size(); i += MAX_IN_CLAUSE_SIZE) {
+                List<Long> chunk = distinctIds.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, distinctIds.size()));
+                found.addAll(entityManager
+                        .createQuery("select distinct p.resourceId from WaterPermission p where p.resourceName.name = :entityResourceName and p.resourceId in :resourceIds", Long.class)
+                        .setParameter(ENTITY_RESOURCE_FIELD_NAME, entityResourceName)
+                        .setParameter("resourceIds", chunk)
+                        .getResultList());
+            }
+            return found;
+        });
+    }
+
+    /**
+     * Rows of the same role or user are adjacent and the entity specific one comes first, so a single ordered scan
+     * of permission_grantee_idx finds the deciding row of each grantee. Action masks are checked in memory
+     * since bitwise operators are not portable across databases.
+     */
+    @Override
+    public List<WaterPermission> findGrantingPermissions(String entityResourceName, long resourceId, long actionId, long afterRoleId, long afterUserId, int maxResults) {
+        log.debug("invoking findGrantingPermissions Resource: {} with id: {} Action: {}", entityResourceName, resourceId, actionId);
+        List<Long> resourceIds = resourceId == 0 ? List.of(0L) : List.of(resourceId, 0L);
+        return tx(Transactional.TxType.REQUIRED, entityManager -> {
+            List<WaterPermission> granting = new ArrayList<>();
+            long lastRoleId = afterRoleId;
+            long lastUserId = afterUserId;
+            boolean exhausted = false;
+            while (granting.size() < maxResults && !exhausted) {
+                List<WaterPermission> rows = entityManager
+                        .createQuery("from WaterPermission p where p.resourceName.name = :entityResourceName and p.resourceId in :resourceIds"
+                                + " and ((p.roleId = 0 and p.userId <> 0) or (p.userId = 0 and p.roleId <> 0))"
+                                + " and (p.roleId > :afterRoleId or (p.roleId = :afterRoleId and p.userId > :afterUserId))"
+                                + " order by p.roleId, p.userId, p.resourceId desc", WaterPermission.class)
+                        .setParameter(ENTITY_RESOURCE_FIELD_NAME, entityResourceName)
+                        .setParameter("resourceIds", resourceIds)
+                        .setParameter("afterRoleId", lastRoleId)
+                        .setParameter("afterUserId", lastUserId)
+                        .setMaxResults(GRANTEE_FETCH_SIZE)
+                        .getResultList();
+                exhausted = rows.size() < GRANTEE_FETCH_SIZE;
+                for (int i = 0; i < rows.size() && granting.size() < maxResults; i++) {
+                    WaterPermission row = rows.get(i);
+                    //the resource type row of a grantee whose entity specific row has been seen is ignored
+                    boolean decidedGrantee = row.getRoleId() == lastRoleId && row.getUserId() == lastUserId;
+                    if (!decidedGrantee && (row.getActionIds() & actionId) == actionId)
+                        granting.add(row);
+                    lastRoleId = row.getRoleId();
+                    lastUserId = row.getUserId();
+                }
+            }
+            return granting;
+        });
+    }
+
+    @Override
+    public Set<Long> findResourceIdsWithUserSpecificPermissions(long userId, List<Long> roleIds, String entityResourceName) {
+        log.debug("invoking findResourceIdsWithUserSpecificPermissions User: {} Roles: {} Resource: {}", userId, roleIds, entityResourceName);
+        String ownerFilter = roleIds.isEmpty()
+                ? "p.roleId = 0 and p.userId = :userId"
+                : "((p.userId = 0 and p.roleId in :roleIds) or (p.roleId = 0 and p.userId = :userId))";
+        return tx(Transactional.TxType.REQUIRED, entityManager -> {
+            TypedQuery<Long> query = entityManager
+                    .createQuery("select distinct p.resourceId from WaterPermission p where p.resourceName.name = :entityResourceName and p.resourceId <> 0 and " + ownerFilter, Long.class)
+                    .setParameter(ENTITY_RESOURCE_FIELD_NAME, entityResourceName)
+                    .setParameter("userId", userId);
+            if (!roleIds.isEmpty())
+                query.setParameter("roleIds", roleIds);
+            return new HashSet<>(query.getResultList());
+        });
+    }
+
+    @Override
+    public List<WaterPermissionChange> findChangesAfter(long sequence, int maxResults) {
+        log.debug("invoking findChangesAfter sequence: {}", sequence);
+        return tx(Transactional.TxType.REQUIRED, entityManager -> entityManager
+                .createQuery("from WaterPermissionChange c where c.sequence > :sequence order by c.sequence", WaterPermissionChange.class)
+                .setParameter("sequence", sequence)
+                .setMaxResults(maxResults)
+                .getResultList());
+    }
+
+    @Override
+    public List<WaterPermissionChange> findChanges(Collection<Long> sequences) {
+        if (sequences.isEmpty())
+            return Collections.emptyList();
+        return tx(Transactional.TxType.REQUIRED, entityManager -> entityManager
+                .createQuery("from WaterPermissionChange c where c.sequence in :sequences order by c.sequence", WaterPermissionChange.class)
+                .setParameter("sequences", new ArrayList<>(sequences))
+                .getResultList());
+    }
+
+    @Override
+    public long getLastChangeSequence() {
+        return tx(Transactional.TxType.REQUIRED, entityManager -> {
+            Long last = entityManager
+                    .createQuery("select max(c.sequence) from WaterPermissionChange c", Long.class)
+                    .getSingleResult();
+            return last != null ? last : 0L;
+        });
+    }
+
+    @Override
+    public long countResourceNames() {
+        return tx(Transactional.TxType.REQUIRED, entityManager -> entityManager
+                .createQuery("select count(r) from WaterPermissionResourceName r", Long.class)
+                .getSingleResult());
+    }
+
+    @Override
+    public Map<String, Integer> findResourceNameIds(Collection<String> names) {
+        if (names == null || names.isEmpty())
+            return Collections.emptyMap();
+        return tx(Transactional.TxType.REQUIRED, entityManager -> {
+            Map<String, Integer> ids = new HashMap<>();
+            List<String> distinctNames = new ArrayList<>(new HashSet<>(names));
+            for (int from = 0; from < distinctNames.size(); from += MAX_IN_CLAUSE_SIZE) {
+                entityManager.createQuery("from WaterPermissionResourceName r where r.name in :names", WaterPermissionResourceName.class)
+                        .setParameter("names", distinctNames.subList(from, Math.min(from + MAX_IN_CLAUSE_SIZE, distinctNames.size())))
+                        .getResultList()
+                        .forEach(resourceName -> ids.put(resourceName.getName(), resourceName.getId()));
+            }
+            return ids;
+        });
+    }
+
+    @Override
+    public boolean hasEffectivePermissionUserRoles(long userId, Collection<Long> roleIds) {
+        return tx(Transactional.TxType.REQUIRED, entityManager -> {
+            WaterEffectivePermissionUser user = entityManager.find(WaterEffectivePermissionUser.class, userId);
+            return user != null && user.hasRoles(roleIds);
+        });
+    }
+
+    @Override
+    public boolean updateEffectivePermissionUser(long userId, Collection<Long> roleIds) {
+        return tx(Transactional.TxType.REQUIRED, entityManager -> {
+            WaterEffectivePermissionUser user = entityManager.find(WaterEffectivePermissionUser.class, userId);
+            if (user != null && user.hasRoles(roleIds))
+                return false;
+            log.debug("Materializing effective permissions of user {} with roles {}", userId, roleIds);
+            if (user == null) {
+                user = new WaterEffectivePermissionUser(userId, roleIds);
+                entityManager.persist(user);
+            } else {
+                user.replaceRoles(roleIds);
+            }
+            reconcileUser(entityManager, user, true, new long[4], new HashMap<>());
+            return true;
+        });
+    }
+
+    @Override
+    public List<WaterEffectivePermission> findEffectivePermissions(long userId, String entityResourceName, long resourceId) {
+        List<Long> resourceIds = resourceId == 0 ? List.of(0L) : List.of(0L, resourceId);
+        return tx(Transactional.TxType.REQUIRED, entityManager -> entityManager
+                .createQuery("from WaterEffectivePermission e where e.userId = :userId and e.resourceName.name = :entityResourceName and e.resourceId in :resourceIds", WaterEffectivePermission.class)
+                .setParameter("userId", userId)
+                .setParameter(ENTITY_RESOURCE_FIELD_NAME, entityResourceName)
+                .setParameter("resourceIds", resourceIds)
+                .getResultList());
+    }
+
+    /**
+     * Role permissions of the changed resource are read once, user permissions and stored rows once per chunk of users,
+     * so the cost depends on the number of members of the role and not on the size of the permission table.
+     * An update moving a permission recomputes the rows of its previous coordinates as well,
+     * so the actions it granted there are revoked in the same transaction.
+     */
+    @Override
+    public void applyToEffectivePermissions(WaterPermissionChange change) {
+        txExpr(Transactional.TxType.REQUIRED, entityManager -> {
+            recomputeEffectivePermissions(entityManager, change.getRoleId(), change.getUserId(), change.getEntityResourceName(), change.getResourceId());
+            if (change.isMoved()) {
+                entityManager.flush();
+                recomputeEffectivePermissions(entityManager, change.getPreviousRoleId(), change.getPreviousUserId(), change.getPreviousEntityResourceName(), change.getPreviousResourceId());
+            }
+        });
+    }
+
+    /**
+     * Computes again the rows of the given resource for the users reached by the role, or for the user when roleId is 0.
+     */
+    private void recomputeEffectivePermissions(EntityManager entityManager, long roleId, long userId, String entityResourceName, long resourceId) {
+        List<WaterEffectivePermissionUser> users;
+        if (roleId != 0) {
+            users = entityManager
+                    .createQuery("select u from WaterEffectivePermissionUser u where :roleId member of u.roleIds", WaterEffectivePermissionUser.class)
+                    .setParameter(ROLE_ID_FIELD_NAME, roleId)
+                    .getResultList();
+        } else {
+            WaterEffectivePermissionUser user = entityManager.find(WaterEffectivePermissionUser.class, userId);
+            users = user != null ? List.of(user) : Collections.emptyList();
+        }
+        if (users.isEmpty())
+            return;
+        Map<Long, Long> roleActionIds = actionIdsByOwner(entityManager
+                .createQuery("select p.roleId, p.actionIds from WaterPermission p where p.resourceName.name = :entityResourceName and p.resourceId = :resourceId and p.userId = 0 and p.roleId <> 0", Object[].class)
+                .setParameter(ENTITY_RESOURCE_FIELD_NAME, entityResourceName)
+                .setParameter("resourceId", resourceId)
+                .getResultList());
+        Map<String, WaterPermissionResourceName> resourceNames = new HashMap<>();
+        for (int i = 0; i < users.size(); i += MAX_IN_CLAUSE_SIZE) {
+            List<WaterEffectivePermissionUser> chunk = users.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, users.size()));
+            List<Long> userIds = chunk.stream().map(WaterEffectivePermissionUser::getUserId).toList();
+            Map<Long, Long> userActionIds = actionIdsByOwner(entityManager
+                    .createQuery("select p.userId, p.actionIds from WaterPermission p where p.resourceName.name = :entityResourceName and p.resourceId = :resourceId and p.roleId = 0 and p.userId in :userIds", Object[].class)
+                    .setParameter(ENTITY_RESOURCE_FIELD_NAME, entityResourceName)
+                    .setParameter("resourceId", resourceId)
+                    .setParameter("userIds", userIds)
+                    .getResultList());
+            Map<Long, WaterEffectivePermission> stored = new HashMap<>();
+            entityManager
+                    .createQuery("from WaterEffectivePermission e where e.resourceName.name = :entityResourceName and e.resourceId = :resourceId and e.userId in :userIds", WaterEffectivePermission.class)
+                    .setParameter(ENTITY_RESOURCE_FIELD_NAME, entityResourceName)
+                    .setParameter("resourceId", resourceId)
+                    .setParameter("userIds", userIds)
+                    .getResultList()
+                    .forEach(row -> stored.put(row.getUserId(), row));
+            for (WaterEffectivePermissionUser user : chunk) {
+                long fromRoles = 0;
+                for (Long memberRoleId : user.getRoleIds())
+                    fromRoles |= roleActionIds.getOrDefault(memberRoleId, 0L);
+                long actionIds = fromRoles | userActionIds.getOrDefault(user.getUserId(), 0L);
+                writeEffectivePermission(entityManager, stored.get(user.getUserId()), user.getUserId(), entityResourceName, resourceId, actionIds, fromRoles, resourceNames);
+            }
+        }
+    }
+
+    @Override
+    public List<Long> findEffectivePermissionUserIds(long afterUserId, int maxResults) {
+        return tx(Transactional.TxType.REQUIRED, entityManager -> entityManager
+                .createQuery("select u.userId from WaterEffectivePermissionUser u where u.userId > :afterUserId order by u.userId", Long.class)
+                .setParameter("afterUserId", afterUserId)
+                .setMaxResults(maxResults)
+                .getResultList());
+    }
+
+    /**
+     * The persistence context is cleared every BATCH_FLUSH_SIZE users, so memory usage does not depend on the number of users.
+     */
+    @Override
+    public EffectivePermissionReport reconcileEffectivePermissions(List<Long> userIds, boolean repair) {
+        log.debug("invoking reconcileEffectivePermissions on {} users, repair: {}", userIds.size(), repair);
+        return tx(Transactional.TxType.REQUIRED, entityManager -> {
+            //expected, missing, stale and orphan rows
+            long[] counters = new long[4];
+            long users = 0;
+            Map<String, WaterPermissionResourceName> resourceNames = new HashMap<>();
+            for (Long userId : userIds) {
+                WaterEffectivePermissionUser user = entityManager.find(WaterEffectivePermissionUser.class, userId);
+                if (user == null)
+                    continue;
+                reconcileUser(entityManager, user, repair, counters, resourceNames);
+                users++;
+                if (users % BATCH_FLUSH_SIZE == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                    resourceNames.clear();
+                }
+            }
+            entityManager.flush();
+            return new EffectivePermissionReport(users, counters[0], counters[1], counters[2], counters[3], repair, 0);
+        });
+    }
+
+    @Override
+    public long removeOrphanEffectivePermissions() {
+        return tx(Transactional.TxType.REQUIRED, entityManager -> (long) entityManager
+                .createQuery("delete from WaterEffectivePermission e where e.userId not in (select u.userId from WaterEffectivePermissionUser u)")
+                .executeUpdate());
+    }
+
+    /**
+     * Every modification appends a row to the change log, so the last sequence identifies the current table content
+     * and is read through the primary key index.
+     */
+    @Override
+    public String getVersionToken() {
+        return String.valueOf(getLastChangeSequence());
+    }
+
+    private void appendSearchFilter(StringBuilder query, Map<String, Object> parameters, String path, String parameterName, Object value) {
+        if (value == null)
+            return;
+        query.append(" and p.").append(path).append(" = :").append(parameterName);
+        parameters.put(parameterName, value);
+    }
+
+    /**
+     * Binds the permission to the dictionary entry of its resource name, creating the entry on first use.
+     */
+    private void bindResourceName(EntityManager entityManager, WaterPermission permission) {
+        permission.bindResourceName(findOrCreateResourceName(entityManager, permission.getEntityResourceName()));
+    }
+
+    private WaterPermissionResourceName findOrCreateResourceName(EntityManager entityManager, String name) {
+        WaterPermissionResourceName resourceName = entityManager
+                .createQuery("from WaterPermissionResourceName r where r.name = :name", WaterPermissionResourceName.class)
+                .setParameter("name", name)
+                .getResultStream().findFirst().orElse(null);
+        if (resourceName == null) {
+            log.debug("Adding resource name {} to the dictionary", name);
+            resourceName = new WaterPermissionResourceName(name);
+            entityManager.persist(resourceName);
+        }
+        return resourceName;
+    }
+
+    /**
+     * Computes the effective permissions of the user from its role and user permissions and compares them with the stored ones.
+     *
+     * @param counters expected, missing, stale and orphan rows, incremented by this user
+     */
+    private void reconcileUser(EntityManager entityManager, WaterEffectivePermissionUser user, boolean repair, long[] counters, Map<String, WaterPermissionResourceName> resourceNames) {
+        List<Long> roleIds = new ArrayList<>(user.getRoleIds());
+        String ownerFilter = roleIds.isEmpty()
+                ? "p.roleId = 0 and p.userId = :userId"
+                : "((p.userId = 0 and p.roleId in :roleIds) or (p.roleId = 0 and p.userId = :userId))";
+        TypedQuery<WaterPermission> query = entityManager
+                .createQuery("from WaterPermission p where " + ownerFilter, WaterPermission.class)
+                .setParameter("userId", user.getUserId());
+        if (!roleIds.isEmpty())
+            query.setParameter("roleIds", roleIds);
+        Map<String, EffectiveActions> expected = new HashMap<>();
+        for (WaterPermission permission : query.getResultList()) {
+            EffectiveActions actions = expected.computeIfAbsent(effectiveKey(permission.getEntityResourceName(), permission.getResourceId()),
+                    key -> new EffectiveActions(permission.getEntityResourceName(), permission.getResourceId()));
+            actions.actionIds |= permission.getActionIds();
+            if (permission.getRoleId() != 0)
+                actions.roleActionIds |= permission.getActionIds();
+        }
+        expected.values().removeIf(actions -> actions.actionIds == 0);
+        counters[0] += expected.size();
+        List<WaterEffectivePermission> storedRows = entityManager
+                .createQuery("from WaterEffectivePermission e where e.userId = :userId", WaterEffectivePermission.class)
+                .setParameter("userId", user.getUserId())
+                .getResultList();
+        for (WaterEffectivePermission stored : storedRows) {
+            EffectiveActions actions = expected.remove(effectiveKey(stored.getEntityResourceName(), stored.getResourceId()));
+            if (actions == null)
+                counters[3]++;
+            else if (actions.actionIds != stored.getActionIds() || actions.roleActionIds != stored.getRoleActionIds())
+                counters[2]++;
+            else
+                continue;
+            if (repair)
+                writeEffectivePermission(entityManager, stored, user.getUserId(), stored.getEntityResourceName(), stored.getResourceId(),
+                        actions != null ? actions.actionIds : 0, actions != null ? actions.roleActionIds : 0, resourceNames);
+        }
+        counters[1] += expected.size();
+        if (repair)
+            expected.values().forEach(actions -> writeEffectivePermission(entityManager, null, user.getUserId(), actions.entityResourceName, actions.resourceId,
+                    actions.actionIds, actions.roleActionIds, resourceNames));
+    }
+
+    /**
+     * Inserts, updates or removes a row of the effective permission store, rows granting nothing are not kept.
+     */
+    private void writeEffectivePermission(EntityManager entityManager, WaterEffectivePermission stored, long userId, String entityResourceName, long resourceId,
+                                          long actionIds, long roleActionIds, Map<String, WaterPermissionResourceName> resourceNames) {
+        if (actionIds == 0) {
+            if (stored != null)
+                entityManager.remove(stored);
+        } else if (stored == null) {
+            WaterPermissionResourceName resourceName = resourceNames.computeIfAbsent(entityResourceName, name -> findOrCreateResourceName(entityManager, name));
+            entityManager.persist(new WaterEffectivePermission(userId, resourceName, resourceId, actionIds, roleActionIds));
+        } else if (stored.getActionIds() != actionIds || stored.getRoleActionIds() != roleActionIds) {
+            stored.updateActions(actionIds, roleActionIds);
+        }
+    }
+
+    private Map<Long, Long> actionIdsByOwner(List<Object[]> rows) {
+        Map<Long, Long> actionIds = new HashMap<>();
+        for (Object[] row : rows)
+            actionIds.merge(((Number) row[0]).longValue(), ((Number) row[1]).longValue(), (existing, toAdd) -> existing | toAdd);
+        return actionIds;
+    }
+
+    private String effectiveKey(String entityResourceName, long resourceId) {
+        return resourceId + ":" + entityResourceName;
+    }
+
+    private String uniqueKey(WaterPermission permission) {
+        return permission.getRoleId() + ":" + permission.getUserId() + ":" + permission.getEntityResourceName() + ":" + permission.getResourceId();
+    }
+
+    /**
+     * Runs the batch operation on chunks of BATCH_FLUSH_SIZE items, flushing and clearing the persistence context
+     * after each chunk so memory usage stays constant on large batches.
+     * The operation adds the changes it records to the given list, they are applied to the effective permission store
+     * once the chunk is flushed.
+     * The flush mode is set to COMMIT for the whole batch: the lookups of a chunk must not flush the pending
+     * statements one by one, otherwise the provider could not group them in jdbc batches.
+     *
+     * @return the results of all the chunks, in the same order of the input list
+     */
+    private <T, R> List<R> inChunks(EntityManager entityManager, List<T> items, BiFunction<List<T>, List<WaterPermissionChange>, List<R>> operation) {
+        FlushModeType flushMode = entityManager.getFlushMode();
+        entityManager.setFlushMode(FlushModeType.COMMIT);
+        try {
+            List<R> results = new ArrayList<>(items.size());
+            for (int from = 0; from < items.size(); from += BATCH_FLUSH_SIZE) {
+                List<WaterPermissionChange> changes = new ArrayList<>();
+                results.addAll(operation.apply(items.subList(from, Math.min(from + BATCH_FLUSH_SIZE, items.size())), changes));
+                applyRecordedChanges(entityManager, changes);
+                entityManager.flush();
+                entityManager.clear();
+            }
+            return results;
+        } finally {
+            entityManager.setFlushMode(flushMode);
+        }
+    }
+
+    /**
+     * Loads the dictionary entries of the resource names used by the given permissions with one query,
+     * creating the missing ones.
+     */
+    private Map<String, WaterPermissionResourceName> findOrCreateResourceNames(EntityManager entityManager, List<WaterPermission> permissions) {
+        List<String> names = permissions.stream().map(WaterPermission::getEntityResourceName).filter(Objects::nonNull).distinct().toList();
+        Map<String, WaterPermissionResourceName> resourceNames = new HashMap<>();
+        if (names.isEmpty())
+            return resourceNames;
+        entityManager.createQuery("from WaterPermissionResourceName r where r.name in :names", WaterPermissionResourceName.class)
+                .setParameter("names", names)
+                .getResultList()
+                .forEach(resourceName -> resourceNames.put(resourceName.getName(), resourceName));
+        for (String name : names) {
+            if (!resourceNames.containsKey(name)) {
+                log.debug("Adding resource name {} to the dictionary", name);
+                WaterPermissionResourceName resourceName = new WaterPermissionResourceName(name);
+                entityManager.persist(resourceName);
+                resourceNames.put(name, resourceName);
+            }
+        }
+        return resourceNames;
+    }
+
+    /**
+     * Loads with one query the unique keys of the persisted permissions matching the given ones.
+     */
+    private Set<String> findPersistedUniqueKeys(EntityManager entityManager, List<WaterPermission> permissions) {
+        Set<String> keys = new HashSet<>();
+        TypedQuery<Object[]> query = uniqueKeyQuery(entityManager, "select p.roleId, p.userId, p.resourceName.name, p.resourceId", Object[].class, permissions);
+        if (query == null)
+            return keys;
+        Set<String> requestedKeys = permissions.stream().map(this::uniqueKey).collect(Collectors.toSet());
+        query.getResultList()
+                .stream()
+                .map(row -> row[0] + ":" + row[1] + ":" + row[2] + ":" + row[3])
+                .filter(requestedKeys::contains)
+                .forEach(keys::add);
+        return keys;
+    }
+
+    /**
+     * Loads with one query the persisted permissions matching the given ones, by unique key.
+     */
+    private Map<String, WaterPermission> findPersistedByUniqueKey(EntityManager entityManager, List<WaterPermission> permissions) {
+        Map<String, WaterPermission> permissionsByKey = new HashMap<>();
+        TypedQuery<WaterPermission> query = uniqueKeyQuery(entityManager, "select p", WaterPermission.class, permissions);
+        if (query == null)
+            return permissionsByKey;
+        Set<String> requestedKeys = permissions.stream().map(this::uniqueKey).collect(Collectors.toSet());
+        query.getResultList()
+                .stream()
+                .filter(permission -> requestedKeys.contains(uniqueKey(permission)))
+                .forEach(permission -> permissionsByKey.put(uniqueKey(permission), permission));
+        return permissionsByKey;
+    }
+
+    /**
+     * Query matching each unique key column on its own, so it may return more rows than needed: callers filter them in memory.
+     *
+     * @return null if no permission can match
+     */
+    private <R> TypedQuery<R> uniqueKeyQuery(EntityManager entityManager, String select, Class<R> resultClass, List<WaterPermission> permissions) {
+        List<String> names = permissions.stream().map(WaterPermission::getEntityResourceName).filter(Objects::nonNull).distinct().toList();
+        List<Long> resourceIds = permissions.stream().map(WaterPermission::getResourceId).filter(Objects::nonNull).distinct().toList();
+        List<Long> roleIds = permissions.stream().map(WaterPermission::getRoleId).distinct().toList();
+        List<Long> userIds = permissions.stream().map(WaterPermission::getUserId).distinct().toList();
+        if (names.isEmpty() || resourceIds.isEmpty())
+            return null;
+        return entityManager.createQuery(
+                        select + " from WaterPermission p where p.resourceName.name in :names and p.resourceId in :resourceIds and p.roleId in :roleIds and p.userId in :userIds",
+                        resultClass)
+                .setParameter("names", names)
+                .setParameter("resourceIds", resourceIds)
+                .setParameter("roleIds", roleIds)
+                .setParameter("userIds", userIds);
+    }
+
+    /**
+     * Loads with one query the permissions with the given ids, ids must be at most MAX_IN_CLAUSE_SIZE.
+     */
+    private Map<Long, WaterPermission> findByIdIn(EntityManager entityManager, List<Long> ids) {
+        List<Long> distinctIds = ids.stream().filter(Objects::nonNull).distinct().toList();
+        Map<Long, WaterPermission> permissionsById = new HashMap<>();
+        if (distinctIds.isEmpty())
+            return permissionsById;
+        entityManager.createQuery("from WaterPermission p where p.id in :ids", WaterPermission.class)
+                .setParameter("ids", distinctIds)
+                .getResultList()
+                .forEach(permission -> permissionsById.put(permission.getId(), permission));
+        return permissionsById;
+    }
+
+    private WaterPermissionChange recordChange(EntityManager entityManager, PermissionChangeType changeType, WaterPermission permission) {
+        return recordChange(entityManager, changeType, permission, null);
+    }
+
+    /**
+     * @param previous coordinates of the permission before the change, null if they are the current ones
+     */
+    private WaterPermissionChange recordChange(EntityManager entityManager, PermissionChangeType changeType, WaterPermission permission, Coordinates previous) {
+        WaterPermissionChange change = previous == null
+                ? new WaterPermissionChange(changeType, permission)
+                : new WaterPermissionChange(changeType, permission, previous.roleId(), previous.userId(), previous.entityResourceName(), previous.resourceId());
+        entityManager.persist(change);
+        return change;
+    }
+
+    /**
+     * Applies the recorded changes to the effective permission store, when enabled, inside the transaction of the write,
+     * so the store commits or rolls back together with the permissions.
+     * Roles and users without materialized effective permissions are found with one query each,
+     * only the changes reaching some of them are applied.
+     */
+    private void applyRecordedChanges(EntityManager entityManager, List<WaterPermissionChange> changes) {
+        if (changes.isEmpty() || !isEffectivePermissionStoreEnabled())
+            return;
+        List<Long> roleIds = changes.stream().flatMap(change -> Stream.of(change.getRoleId(), change.getPreviousRoleId())).filter(roleId -> roleId != 0).distinct().toList();
+        List<Long> userIds = changes.stream().flatMap(change -> Stream.of(change.getRoleId() == 0 ? change.getUserId() : null, change.getPreviousRoleId() == 0 ? change.getPreviousUserId() : null))
+                .filter(Objects::nonNull).distinct().toList();
+        Set<Long> materializedRoleIds = new HashSet<>();
+        Set<Long> materializedUserIds = new HashSet<>();
+        if (!roleIds.isEmpty())
+            materializedRoleIds.addAll(entityManager
+                    .createQuery("select distinct r from WaterEffectivePermissionUser u join u.roleIds r where r in :roleIds", Long.class)
+                    .setParameter("roleIds", roleIds)
+                    .getResultList());
+        if (!userIds.isEmpty())
+            materializedUserIds.addAll(entityManager
+                    .createQuery("select u.userId from WaterEffectivePermissionUser u where u.userId in :userIds", Long.class)
+                    .setParameter("userIds", userIds)
+                    .getResultList());
+        for (WaterPermissionChange change : changes) {
+            boolean reachesUsers = reachesUsers(change.getRoleId(), change.getUserId(), materializedRoleIds, materializedUserIds)
+                    || reachesUsers(change.getPreviousRoleId(), change.getPreviousUserId(), materializedRoleIds, materializedUserIds);
+            if (reachesUsers) {
+                //rows written for the previous change must be visible to the queries of this one
+                entityManager.flush();
+                applyToEffectivePermissions(change);
+            }
+        }
+    }
+
+    private static boolean reachesUsers(long roleId, long userId, Set<Long> materializedRoleIds, Set<Long> materializedUserIds) {
+        return roleId != 0 ? materializedRoleIds.contains(roleId) : materializedUserIds.contains(userId);
+    }
+
+    private boolean isEffectivePermissionStoreEnabled() {
+        return applicationProperties != null && Boolean.parseBoolean(applicationProperties.getPropertyOrDefault(WaterEffectivePermission.ENABLED_PROPERTY, "false"));
+    }
+
     private void saveOrUpdatePermission(boolean isUnchanged, boolean mustUpdate, WaterPermission p) {
         if (!isUnchanged) {
             // save or update
@@ -313,5 +1198,27 @@ public class PermissionRepositoryImpl extends WaterJpaRepositoryImpl<WaterPermis
         }
     }
 
+    /**
+     * Role, user, resource name and resource id of a permission, taken before an update which may change them
+     */
+    private record Coordinates(long roleId, long userId, String entityResourceName, long resourceId) {
+        private static Coordinates of(WaterPermission permission) {
+            return new Coordinates(permission.getRoleId(), permission.getUserId(), permission.getEntityResourceName(), permission.getResourceId());
+        }
+    }
+
+    /**
+     * Actions a user gets on a resource while effective permissions are computed
+     */
+    private static final class EffectiveActions {
+        private final String entityResourceName;
+        private final long resourceId;
+        private long actionIds;
+        private long roleActionIds;
 
+        private EffectiveActions(String entityResourceName, long resourceId) {
+            this.entityResourceName = entityResourceName;
+            this.resourceId = resourceId;
+        }
+    }
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.service;
+
+import it.water.permission.api.PermissionRepository;
+import it.water.permission.model.PermissionInvalidation;
+import it.water.permission.model.WaterPermissionChange;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * Position of a node in the change log: every change up to it has been published by the node.
+ * The cursor starts at the end of the log on first use and only moves forward, so each change is published once per node.
+ * Sequence numbers are assigned before commit, so a change may become visible after later ones:
+ * the numbers skipped by the cursor are looked up again on the next moves, until they are GAP_WINDOW numbers behind it.
+ * Numbers left by rolled back writes never show up and simply leave the window.
+ * A backlog longer than the limit, left by imports or by the writes of other nodes while this node did not write,
+ * is not replayed change by change: it is skipped and replaced by PermissionInvalidation.ALL.
+ */
+final class PermissionChangeCursor {
+    //skipped sequence numbers are looked up again while they are less than this far behind the cursor
+    static final long GAP_WINDOW = 1000;
+
+    private final PermissionRepository repository;
+    private final int backlogLimit;
+    private final TreeSet<Long> gaps = new TreeSet<>();
+    private long position = -1;
+
+    /**
+     * @param backlogLimit maximum number of changes published one by one on each move, at most 1000
+     */
+    PermissionChangeCursor(PermissionRepository repository, int backlogLimit) {
+        this.repository = repository;
+        this.backlogLimit = backlogLimit;
+    }
+
+    /**
+     * Places the cursor at the end of the change log, if not placed yet.
+     * Must be invoked before the writes whose changes are published by the next move.
+     */
+    synchronized void start() {
+        if (position < 0)
+            position = repository.getLastChangeSequence();
+    }
+
+    /**
+     * Hands the invalidations of the changes not published yet by this node to the publisher, in sequence order,
+     * and moves the cursor past them.
+     *
+     * @param publisher receives the invalidations of each change once, or PermissionInvalidation.ALL for a backlog longer than the limit
+     * @return number of changes published one by one, 0 when the backlog has been replaced by PermissionInvalidation.ALL
+     */
+    synchronized int publishNewChanges(Consumer<PermissionInvalidation> publisher) {
+        start();
+        gaps.headSet(position - GAP_WINDOW, true).clear();
+        List<WaterPermissionChange> visible = new ArrayList<>();
+        if (!gaps.isEmpty())
+            visible.addAll(repository.findChanges(gaps));
+        List<WaterPermissionChange> page = repository.findChangesAfter(position, backlogLimit + 1);
+        if (visible.size() + page.size() > backlogLimit) {
+            skipTo(repository.getLastChangeSequence());
+            publisher.accept(PermissionInvalidation.ALL);
+            return 0;
+        }
+        visible.forEach(change -> gaps.remove(change.getSequence()));
+        for (WaterPermissionChange change : page) {
+            long sequence = change.getSequence();
+            for (long skipped = Math.max(position + 1, sequence - GAP_WINDOW + 1); skipped < sequence; skipped++)
+                gaps.add(skipped);
+            position = sequence;
+        }
+        visible.addAll(page);
+        visible.forEach(change -> PermissionInvalidation.forChange(change).forEach(publisher));
+        return visible.size();
+    }
+
+    /**
+     * Moves the cursor to the given sequence without publishing the changes it skips,
+     * the caller publishes PermissionInvalidation.ALL right after.
+     * Changes already visible are covered by that invalidation, the numbers not visible yet are kept as gaps
+     * so the changes of writes still in progress are published when they commit.
+     */
+    synchronized void skipTo(long sequence) {
+        start();
+        if (sequence <= position)
+            return;
+        for (long skipped = Math.max(position + 1, sequence - GAP_WINDOW + 1); skipped <= sequence; skipped++)
+            gaps.add(skipped);
+        position = sequence;
+        gaps.headSet(position - GAP_WINDOW, true).clear();
+        repository.findChanges(gaps).forEach(change -> gaps.remove(change.getSequence()));
+    }
+
+    /**
+     * @return last sequence published by this node, -1 if the cursor has not been placed yet
+     */
+    synchronized long getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.service;
+
+import it.water.permission.model.WaterPermission;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * CSV format used by permission export and import, one permission per line.
+ * Text fields are quoted only when they contain separators, quotes or line breaks, quotes are escaped by doubling them.
+ * A line break inside a quoted field belongs to the field, so a record may span more lines.
+ * Actions beyond the 64th are written in hex in the last column, which is empty for most permissions;
+ * files written before that column existed are still accepted.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class PermissionCsvFormat {
+    static final String MEDIA_TYPE = "text/csv";
+    static final String HEADER = "name,entityResourceName,resourceId,roleId,userId,actionIds,extendedActionIds";
+    private static final String LEGACY_HEADER = "name,entityResourceName,resourceId,roleId,userId,actionIds";
+    private static final int COLUMNS = 7;
+    private static final int LEGACY_COLUMNS = 6;
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+
+    static void writeHeader(Writer writer) throws IOException {
+        writer.write(HEADER);
+        writer.write('\n');
+    }
+
+    static void write(Writer writer, WaterPermission permission) throws IOException {
+        writeText(writer, permission.getName());
+        writer.write(SEPARATOR);
+        writeText(writer, permission.getEntityResourceName());
+        writer.write(SEPARATOR);
+        writer.write(Long.toString(permission.getResourceId()));
+        writer.write(SEPARATOR);
+        writer.write(Long.toString(permission.getRoleId()));
+        writer.write(SEPARATOR);
+        writer.write(Long.toString(permission.getUserId()));
+        writer.write(SEPARATOR);
+        writer.write(Long.toString(permission.getActionIds()));
+        writer.write(SEPARATOR);
+        if (permission.getExtendedActionIds() != null)
+            writer.write(HexFormat.of().formatHex(permission.getExtendedActionIds()));
+        writer.write('\n');
+    }
+
+    /**
+     * Reads the next record, line breaks inside quoted fields are kept.
+     * Records end with \n, \r\n or \r, like the lines read by BufferedReader.readLine.
+     *
+     * @param reader source reader
+     * @return the record without its line terminator, null at the end of the stream
+     */
+    static String readRecord(BufferedReader reader) throws IOException {
+        StringBuilder record = new StringBuilder();
+        boolean quoted = false;
+        int c;
+        while ((c = reader.read()) >= 0) {
+            if (!quoted && c == '\n')
+                return record.toString();
+            if (!quoted && c == '\r') {
+                reader.mark(1);
+                if (reader.read() != '\n')
+                    reader.reset();
+                return record.toString();
+            }
+            //escaped quotes switch the state twice
+            if (c == QUOTE)
+                quoted = !quoted;
+            record.append((char) c);
+        }
+        return record.length() > 0 ? record.toString() : null;
+    }
+
+    static boolean isHeader(String line) {
+        return HEADER.equals(line) || LEGACY_HEADER.equals(line);
+    }
+
+    /**
+     * @param line csv record, as returned by readRecord
+     * @return the permission described by the record
+     * @throws IllegalArgumentException if the record is malformed
+     */
+    static WaterPermission parse(String line) {
+        List<String> fields = split(line);
+        if (fields.size() != COLUMNS && fields.size() != LEGACY_COLUMNS)
+            throw new IllegalArgumentException("Expected " + COLUMNS + " columns but found " + fields.size());
+        WaterPermission permission = new WaterPermission(fields.get(0), Long.parseLong(fields.get(5)), fields.get(1),
+                Long.parseLong(fields.get(2)), Long.parseLong(fields.get(3)), Long.parseLong(fields.get(4)));
+        if (fields.size() == COLUMNS && !fields.get(6).isEmpty())
+            permission.setExtendedActionIds(HexFormat.of().parseHex(fields.get(6)));
+        return permission;
+    }
+
+    private static void writeText(Writer writer, String value) throws IOException {
+        if (value.indexOf(SEPARATOR) < 0 && value.indexOf(QUOTE) < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write(QUOTE);
+        writer.write(value.replace("\"", "\"\""));
+        writer.write(QUOTE);
+    }
+
+    private static List<String> split(String line) {
+        List<String> fields = new ArrayList<>(COLUMNS);
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == QUOTE && i + 1 < line.length() && line.charAt(i + 1) == QUOTE) {
+                    current.append(QUOTE);
+                    i++;
+                } else if (c == QUOTE) {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == QUOTE) {
+                quoted = true;
+            } else if (c == SEPARATOR) {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted)
+            throw new IllegalArgumentException("Unterminated quoted field");
+        fields.add(current.toString());
+        return fields;
+    }
+}
@@ -17,25 +17,63 @@
 package it.water.permission.service;
 
 import it.water.core.api.action.ResourceAction;
+import it.water.core.api.bundle.ApplicationProperties;
 import it.water.core.api.model.Resource;
 import it.water.core.api.permission.Permission;
 import it.water.core.api.service.integration.PermissionIntegrationClient;
 import it.water.core.interceptors.annotations.FrameworkComponent;
 import it.water.core.interceptors.annotations.Inject;
+import it.water.core.model.exceptions.WaterRuntimeException;
 import it.water.permission.api.PermissionSystemApi;
+import it.water.permission.api.integration.EffectivePermissionClient;
+import it.water.permission.api.integration.PermissionDecisionDataClient;
+import it.water.permission.api.integration.PermissionIntegrationAsyncClient;
+import it.water.permission.api.integration.ResourceDecisionDataClient;
+import it.water.permission.model.PermissionDecisionData;
+import it.water.permission.model.WaterEffectivePermission;
 import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * Permission client for services hosting the permission service.
+ * Asynchronous lookups complete on the caller thread: they are local queries which are cheaper than a thread hop
+ * and must run inside the caller transaction.
+ * All client interfaces are declared so the component is registered under each of them.
+ * When water.permission.bootstrap.deferred is true, default permissions registered at startup are created
+ * by a background thread, in registration order, so their creation overlaps with the rest of the startup.
+ * The runtime must then wait for them through awaitBootstrap before reporting the service ready,
+ * as the fast-start profile of the spring module does, and must fail the startup when the bootstrap fails.
+ */
 @FrameworkComponent
-public class PermissionIntegrationLocalClient implements PermissionIntegrationClient {
+public class PermissionIntegrationLocalClient implements PermissionIntegrationClient, PermissionIntegrationAsyncClient, PermissionDecisionDataClient, ResourceDecisionDataClient, EffectivePermissionClient {
+    private static final Logger log = LoggerFactory.getLogger(PermissionIntegrationLocalClient.class);
+
+    public static final String DEFERRED_BOOTSTRAP_PROPERTY = "water.permission.bootstrap.deferred";
 
     @Inject
     @Setter
     private PermissionSystemApi permissionSystemApi;
 
+    @Inject
+    @Setter
+    private ApplicationProperties applicationProperties;
+
+    //completes once every deferred task submitted so far is over, exceptionally if any of them failed
+    private CompletableFuture<Void> bootstrap = CompletableFuture.completedFuture(null);
+    private ExecutorService bootstrapExecutor;
+
     @Override
     public Permission findByUserAndResource(long userId, Resource resource) {
         return permissionSystemApi.findByUserAndResource(userId, resource);
@@ -68,7 +106,66 @@ public class PermissionIntegrationLocalClient implements PermissionIntegrationCl
 
     @Override
     public void checkOrCreatePermissions(long roleId, List<ResourceAction<?>> list) {
-        permissionSystemApi.checkOrCreatePermissions(roleId, list);
+        if (!isBootstrapDeferred()) {
+            permissionSystemApi.checkOrCreatePermissions(roleId, list);
+            return;
+        }
+        synchronized (this) {
+            CompletableFuture<Void> task = CompletableFuture.runAsync(() -> permissionSystemApi.checkOrCreatePermissions(roleId, list), getBootstrapExecutor())
+                    .whenComplete((result, e) -> {
+                        if (e != null)
+                            log.error("Deferred creation of default permissions for role {} failed: {}", roleId, e.getMessage(), e);
+                    });
+            bootstrap = CompletableFuture.allOf(bootstrap, task);
+        }
+    }
+
+    @Override
+    public PermissionDecisionData getDecisionData(long userId, Collection<Long> roleIds, String entityResourceName, Collection<Long> resourceIds) {
+        return permissionSystemApi.getDecisionData(userId, new ArrayList<>(roleIds), entityResourceName, new ArrayList<>(resourceIds));
+    }
+
+    @Override
+    public PermissionDecisionData getResourceDecisionData(long userId, Collection<Long> roleIds, String entityResourceName, Collection<Long> resourceIds) {
+        return permissionSystemApi.getResourceDecisionData(userId, new ArrayList<>(roleIds), entityResourceName, new ArrayList<>(resourceIds));
+    }
+
+    @Override
+    public boolean isEffectivePermissionStoreEnabled() {
+        return permissionSystemApi.isEffectivePermissionStoreEnabled();
+    }
+
+    @Override
+    public List<WaterEffectivePermission> findEffectivePermissions(long userId, Collection<Long> roleIds, String entityResourceName, long resourceId) {
+        return permissionSystemApi.findEffectivePermissions(userId, new ArrayList<>(roleIds), entityResourceName, resourceId);
+    }
+
+    /**
+     * @return true while deferred default permissions are still being created
+     */
+    public synchronized boolean isBootstrapPending() {
+        return !bootstrap.isDone();
+    }
+
+    /**
+     * Waits for the deferred default permissions submitted so far.
+     *
+     * @return true if the bootstrap completed within the timeout
+     * @throws WaterRuntimeException if the creation of some default permissions failed
+     */
+    public boolean awaitBootstrap(long timeout, TimeUnit unit) throws InterruptedException {
+        CompletableFuture<Void> submitted;
+        synchronized (this) {
+            submitted = bootstrap;
+        }
+        try {
+            submitted.get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            throw new WaterRuntimeException("Deferred creation of default permissions failed: " + e.getCause().getMessage());
+        }
     }
 
     @Override
@@ -80,4 +177,20 @@ public class PermissionIntegrationLocalClient implements PermissionIntegrationCl
     public boolean permissionSpecificToEntityExists(String resourceName, long resourceId) {
         return permissionSystemApi.permissionSpecificToEntityExists(resourceName, resourceId);
     }
+
+    private boolean isBootstrapDeferred() {
+        return applicationProperties != null && Boolean.parseBoolean(applicationProperties.getPropertyOrDefault(DEFERRED_BOOTSTRAP_PROPERTY, "false"));
+    }
+
+    private synchronized ExecutorService getBootstrapExecutor() {
+        if (bootstrapExecutor == null) {
+            //a single thread keeps the registration order, a daemon one never blocks shutdown
+            bootstrapExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "water-permission-bootstrap");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return bootstrapExecutor;
+    }
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.service;
+
+import it.water.core.model.exceptions.WaterRuntimeException;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Encodes and decodes the opaque continuation token of permission searches.
+ * The token carries the last returned id and a fingerprint of the filters,
+ * so a token can't be reused with filters different from the ones that generated it.
+ * Grantee searches page on a role and user pair, their tokens have their own version.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class PermissionSearchToken {
+    private static final String VERSION = "1";
+    private static final String KEY_VERSION = "2";
+    private static final String SEPARATOR = ":";
+
+    static String fingerprint(Long roleId, Long userId, String entityResourceName, Long resourceId) {
+        return Integer.toHexString(Objects.hash(roleId, userId, entityResourceName, resourceId));
+    }
+
+    static String granteeFingerprint(String entityResourceName, long resourceId, long actionId) {
+        return Integer.toHexString(Objects.hash("grantees", entityResourceName, resourceId, actionId));
+    }
+
+    static String encode(long lastId, String fingerprint) {
+        String token = VERSION + SEPARATOR + lastId + SEPARATOR + fingerprint;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String encode(long lastRoleId, long lastUserId, String fingerprint) {
+        String token = KEY_VERSION + SEPARATOR + lastRoleId + SEPARATOR + lastUserId + SEPARATOR + fingerprint;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param token       continuation token, null or empty for the first page
+     * @param fingerprint fingerprint of the current filters
+     * @return the last id returned by the previous page, 0 for the first page
+     */
+    static long decode(String token, String fingerprint) {
+        if (token == null || token.isBlank())
+            return 0;
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(SEPARATOR);
+            if (parts.length == 3 && VERSION.equals(parts[0]) && fingerprint.equals(parts[2]))
+                return Long.parseLong(parts[1]);
+        } catch (IllegalArgumentException e) {
+            //falling through invalid token
+        }
+        throw new WaterRuntimeException("Invalid continuation token");
+    }
+
+    /**
+     * @param token       continuation token of a grantee search, null or empty for the first page
+     * @param fingerprint fingerprint of the current filters
+     * @return role id and user id of the last grantee returned by the previous page, both 0 for the first page
+     */
+    static long[] decodeKey(String token, String fingerprint) {
+        if (token == null || token.isBlank())
+            return new long[]{0, 0};
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(SEPARATOR);
+            if (parts.length == 4 && KEY_VERSION.equals(parts[0]) && fingerprint.equals(parts[3]))
+                return new long[]{Long.parseLong(parts[1]), Long.parseLong(parts[2])};
+        } catch (IllegalArgumentException e) {
+            //falling through invalid token
+        }
+        throw new WaterRuntimeException("Invalid continuation token");
+    }
+}
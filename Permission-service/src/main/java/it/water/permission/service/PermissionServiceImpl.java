@@ -1,20 +1,38 @@
 package it.water.permission.service;
 
 import it.water.core.api.bundle.Runtime;
+import it.water.core.api.model.Role;
+import it.water.core.api.model.User;
 import it.water.core.api.permission.PermissionManager;
 import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.integration.RoleIntegrationClient;
+import it.water.core.api.service.integration.UserIntegrationClient;
 import it.water.core.interceptors.annotations.FrameworkComponent;
 import it.water.core.interceptors.annotations.Inject;
+import it.water.core.permission.action.CrudActions;
+import it.water.core.permission.annotations.AllowGenericPermissions;
 import it.water.core.permission.annotations.AllowLoggedUser;
 import it.water.permission.api.PermissionApi;
 import it.water.permission.api.PermissionSystemApi;
+import it.water.permission.model.EffectivePermissionReport;
+import it.water.permission.model.PermissionBatchItemResult;
+import it.water.permission.model.PermissionChangePage;
+import it.water.permission.model.PermissionDecisionData;
+import it.water.permission.model.PermissionGranteePage;
+import it.water.permission.model.PermissionIndexPreloadStatus;
+import it.water.permission.model.PermissionSearchPage;
+import it.water.permission.model.PermissionSnapshotReport;
+import it.water.permission.model.PermissionTransferReport;
 import it.water.permission.model.WaterPermission;
 import it.water.repository.service.BaseEntityServiceImpl;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 
 /**
@@ -38,6 +56,14 @@ public class PermissionServiceImpl extends BaseEntityServiceImpl<WaterPermission
     @Setter
     private Runtime currentRuntime;
 
+    @Inject
+    @Setter
+    private UserIntegrationClient userIntegrationClient;
+
+    @Inject
+    @Setter
+    private RoleIntegrationClient roleIntegrationClient;
+
     @Inject
     @Getter
     @Setter
@@ -52,4 +78,127 @@ public class PermissionServiceImpl extends BaseEntityServiceImpl<WaterPermission
     public Map<String, Map<String, Map<String, Boolean>>> entityPermissionMap(Map<String, List<Long>> entityPks) {
         return permissionManager.entityPermissionMap(currentRuntime.getSecurityContext().getLoggedUsername(), entityPks);
     }
+
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.SAVE)
+    public List<PermissionBatchItemResult> saveAll(List<WaterPermission> permissions) {
+        return systemService.saveAll(permissions);
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.UPDATE)
+    public List<PermissionBatchItemResult> updateAll(List<WaterPermission> permissions) {
+        return systemService.updateAll(permissions);
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.REMOVE)
+    public List<PermissionBatchItemResult> removeAll(List<Long> ids) {
+        return systemService.removeAll(ids);
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND)
+    public List<WaterPermission> findByIds(List<Long> ids) {
+        return systemService.findByIds(ids);
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND_ALL)
+    public PermissionSearchPage search(Long roleId, Long userId, String entityResourceName, Long resourceId, int limit, String continuationToken) {
+        return systemService.search(roleId, userId, entityResourceName, resourceId, limit, continuationToken);
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND_ALL)
+    public PermissionGranteePage findGrantees(String entityResourceName, long resourceId, long actionId, int limit, String continuationToken) {
+        return systemService.findGrantees(entityResourceName, resourceId, actionId, limit, continuationToken);
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND_ALL)
+    public long exportPermissions(OutputStream output) {
+        return systemService.exportPermissions(output);
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = {CrudActions.SAVE, CrudActions.UPDATE})
+    public PermissionTransferReport importPermissions(InputStream input) {
+        return systemService.importPermissions(input);
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND_ALL)
+    public PermissionDecisionData getDecisionData(long userId, List<Long> roleIds, String entityResourceName, List<Long> resourceIds) {
+        return systemService.getDecisionData(userId, roleIds, entityResourceName, resourceIds);
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND_ALL)
+    public PermissionDecisionData getResourceDecisionData(long userId, List<Long> roleIds, String entityResourceName, List<Long> resourceIds) {
+        return systemService.getResourceDecisionData(userId, roleIds, entityResourceName, resourceIds);
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND_ALL)
+    public String getVersionToken() {
+        return systemService.getVersionToken();
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND_ALL)
+    public String getCallerVersionToken() {
+        String username = currentRuntime.getSecurityContext().getLoggedUsername();
+        User user = username != null ? userIntegrationClient.fetchUserByUsername(username) : null;
+        String roleIds = user != null ? roleIntegrationClient.fetchUserRoles(user.getId()).stream()
+                .map(Role::getId).sorted().map(String::valueOf).collect(Collectors.joining(",")) : "";
+        return systemService.getVersionToken() + ":" + username + ":" + roleIds;
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND_ALL)
+    public PermissionChangePage getChangesAfter(long sequence, int limit) {
+        return systemService.getChangesAfter(sequence, limit);
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = {CrudActions.SAVE, CrudActions.UPDATE})
+    public EffectivePermissionReport rebuildEffectivePermissions() {
+        return systemService.rebuildEffectivePermissions();
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND_ALL)
+    public EffectivePermissionReport checkEffectivePermissions() {
+        return systemService.checkEffectivePermissions(false);
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = {CrudActions.SAVE, CrudActions.UPDATE})
+    public EffectivePermissionReport repairEffectivePermissions() {
+        return systemService.checkEffectivePermissions(true);
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = {CrudActions.SAVE, CrudActions.UPDATE})
+    public PermissionSnapshotReport writePermissionSnapshot() {
+        return systemService.writePermissionSnapshot();
+    }
+
+    /**
+     * The preload scans the whole permission table, it requires the same permissions of writePermissionSnapshot.
+     */
+    @Override
+    @AllowGenericPermissions(actions = {CrudActions.SAVE, CrudActions.UPDATE})
+    public PermissionIndexPreloadStatus preloadIndex() {
+        return systemService.preloadIndex();
+    }
+
+    /**
+     * The status holds only counters, it is readable without permissions so readiness probes can poll it.
+     */
+    @Override
+    public PermissionIndexPreloadStatus getIndexPreloadStatus() {
+        return systemService.getIndexPreloadStatus();
+    }
 }
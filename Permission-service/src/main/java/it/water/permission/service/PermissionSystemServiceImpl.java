@@ -1,28 +1,78 @@
 package it.water.permission.service;
 
 import it.water.core.api.action.ResourceAction;
+import it.water.core.api.bundle.ApplicationProperties;
 import it.water.core.api.model.Resource;
+import it.water.core.api.model.User;
 import it.water.core.api.registry.filter.ComponentFilterBuilder;
 import it.water.core.interceptors.annotations.FrameworkComponent;
 import it.water.core.interceptors.annotations.Inject;
+import it.water.core.model.exceptions.WaterRuntimeException;
 import it.water.permission.api.PermissionRepository;
 import it.water.permission.api.PermissionSystemApi;
+import it.water.permission.api.invalidation.PermissionInvalidationBus;
+import it.water.permission.model.EffectivePermissionReport;
+import it.water.permission.model.EntityPermissionGrants;
+import it.water.permission.model.PermissionBatchItemResult;
+import it.water.permission.model.PermissionChangePage;
+import it.water.permission.model.PermissionDecisionData;
+import it.water.permission.model.PermissionInvalidation;
+import it.water.permission.model.PermissionGranteePage;
+import it.water.permission.model.PermissionSearchPage;
+import it.water.permission.model.PermissionSnapshotReport;
+import it.water.permission.model.PermissionTransferReport;
+import it.water.permission.model.PermissionIndexPreloadStatus;
+import it.water.permission.model.WaterEffectivePermission;
 import it.water.permission.model.WaterPermission;
+import it.water.permission.model.WaterPermissionChange;
+import it.water.repository.entity.model.exceptions.DuplicateEntityException;
 import it.water.repository.entity.model.exceptions.NoResultException;
 import it.water.repository.service.BaseEntitySystemServiceImpl;
+import jakarta.persistence.EntityExistsException;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.validator.messageinterpolation.ParameterMessageInterpolator;
 
-import java.util.Collection;
-import java.util.List;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 
 /**
  * @Generated by Water Generator
  * System Service Api Class for Permission entity.
+ * When water.permission.effective.enabled is true every write is applied to the effective permission store
+ * by the repository, inside the transaction of the write.
+ * When water.permission.grant.index.enabled is true the permissions of roles are kept
+ * in an in-memory index, built on first use, or by preloadIndex, and updated by the invalidations.
+ * When water.permission.grant.index.preload.enabled is true the service is ready only once preloadIndex has loaded the index.
+ * When water.permission.snapshot.file is set the index can be written to that file and is built from it, when valid.
  */
 @FrameworkComponent
 public class PermissionSystemServiceImpl extends BaseEntitySystemServiceImpl<WaterPermission> implements PermissionSystemApi {
+    public static final String GRANT_INDEX_PROPERTY = "water.permission.grant.index.enabled";
+    public static final String SNAPSHOT_FILE_PROPERTY = "water.permission.snapshot.file";
+    public static final String INDEX_PRELOAD_PROPERTY = "water.permission.grant.index.preload.enabled";
+    public static final String INDEX_PRELOAD_BUDGET_PROPERTY = "water.permission.grant.index.preload.budget.millis";
+
+    private static final int DEFAULT_SEARCH_LIMIT = 100;
+    private static final int MAX_SEARCH_LIMIT = 1000;
+    //rows written in each import transaction
+    private static final int IMPORT_CHUNK_SIZE = 500;
+    //users reconciled in each transaction of a rebuild or of a consistency check
+    private static final int EFFECTIVE_PERMISSIONS_CHUNK_SIZE = 500;
+    private static final long DEFAULT_INDEX_PRELOAD_BUDGET_MILLIS = 30000;
+
     @Inject
     @Getter
     @Setter
@@ -32,10 +82,42 @@ public class PermissionSystemServiceImpl extends BaseEntitySystemServiceImpl<Wat
     @Setter
     private ComponentFilterBuilder componentFilterBuilder;
 
+    @Inject
+    @Setter
+    private PermissionInvalidationBus invalidationBus;
+
+    @Inject
+    @Setter
+    private ApplicationProperties applicationProperties;
+
+    private Validator batchValidator;
+    private volatile RoleGrantIndex grantIndex;
+    private volatile RoleGrantIndexPreload indexPreload;
+    //position of this node in the change log, created on the first write
+    private volatile PermissionChangeCursor changeCursor;
+
     public PermissionSystemServiceImpl() {
         super(WaterPermission.class);
     }
 
+    @Override
+    public WaterPermission save(WaterPermission entity) {
+        return publishingChanges(() -> super.save(entity));
+    }
+
+    @Override
+    public WaterPermission update(WaterPermission entity) {
+        return publishingChanges(() -> super.update(entity));
+    }
+
+    @Override
+    public void remove(long id) {
+        publishingChanges(() -> {
+            super.remove(id);
+            return null;
+        });
+    }
+
     /**
      * Find a permission by a specific user and resource
      *
@@ -103,7 +185,7 @@ public class PermissionSystemServiceImpl extends BaseEntitySystemServiceImpl<Wat
     public WaterPermission findByRoleAndResource(long roleId, Resource resource) {
         getLog().debug("invoking findByRoleAndResource role: {} Resource: {}"
                 , roleId, resource.getResourceName());
-        return repository.findByRoleAndResource(roleId, resource);
+        return findByRoleAndResourceName(roleId, resource.getResourceName());
     }
 
     /**
@@ -116,6 +198,9 @@ public class PermissionSystemServiceImpl extends BaseEntitySystemServiceImpl<Wat
     public WaterPermission findByRoleAndResourceName(long roleId, String resourceName) {
         getLog().debug("invoking findByRoleAndResourceName role: {} Resource: {}"
                 , roleId, resourceName);
+        RoleGrantIndex index = grantIndex();
+        if (index != null && roleId != 0 && !index.mayHavePermission(roleId, resourceName, 0))
+            return null;
         return repository.findByRoleAndResourceName(roleId, resourceName);
     }
 
@@ -131,6 +216,10 @@ public class PermissionSystemServiceImpl extends BaseEntitySystemServiceImpl<Wat
                                                                   long id) {
         getLog().debug("invoking findByRoleAndResourceNameAndResourceId role: {} Resource: {}"
                 , roleId, resourceName);
+        //most entities have no permission specific to a role, the index answers those lookups without a query
+        RoleGrantIndex index = grantIndex();
+        if (index != null && roleId != 0 && !index.mayHavePermission(roleId, resourceName, id))
+            return null;
         try {
             return repository.findByRoleAndResourceNameAndResourceId(roleId, resourceName, id);
         } catch (NoResultException | jakarta.persistence.NoResultException e) {
@@ -157,7 +246,10 @@ public class PermissionSystemServiceImpl extends BaseEntitySystemServiceImpl<Wat
      */
     @Override
     public void checkOrCreatePermissions(long roleId, List<ResourceAction<?>> actions) {
-        this.repository.checkOrCreatePermissions(roleId, actions);
+        publishingChanges(() -> {
+            this.repository.checkOrCreatePermissions(roleId, actions);
+            return null;
+        });
     }
 
     /**
@@ -167,7 +259,10 @@ public class PermissionSystemServiceImpl extends BaseEntitySystemServiceImpl<Wat
      */
     @Override
     public void checkOrCreatePermissionsSpecificToEntity(long roleId, long entityId, List<ResourceAction<?>> actions) {
-        this.repository.checkOrCreatePermissionsSpecificToEntity(roleId, entityId, actions);
+        publishingChanges(() -> {
+            this.repository.checkOrCreatePermissionsSpecificToEntity(roleId, entityId, actions);
+            return null;
+        });
     }
 
     /**
@@ -180,4 +275,558 @@ public class PermissionSystemServiceImpl extends BaseEntitySystemServiceImpl<Wat
         return this.repository.permissionSpecificToEntityExists(resourceName, resourceId);
     }
 
-}
\ No newline at end of file
+    /**
+     * Saves all the given permissions inside a single transaction.
+     * Items failing validation are reported as failed and are not sent to the persistence layer.
+     *
+     * @param permissions permissions to save
+     * @return one result for each permission, in the same order of the input list
+     */
+    @Override
+    public List<PermissionBatchItemResult> saveAll(List<WaterPermission> permissions) {
+        getLog().debug("invoking saveAll on {} permissions", permissions.size());
+        return publishingChanges(() -> executeOnValidPermissions(permissions, repository::persistAll));
+    }
+
+    /**
+     * Updates all the given permissions inside a single transaction.
+     * Items failing validation are reported as failed and are not sent to the persistence layer.
+     *
+     * @param permissions permissions to update
+     * @return one result for each permission, in the same order of the input list
+     */
+    @Override
+    public List<PermissionBatchItemResult> updateAll(List<WaterPermission> permissions) {
+        getLog().debug("invoking updateAll on {} permissions", permissions.size());
+        return publishingChanges(() -> executeOnValidPermissions(permissions, repository::updateAll));
+    }
+
+    /**
+     * Removes all the permissions with the given ids inside a single transaction.
+     *
+     * @param ids ids of the permissions to remove
+     * @return one result for each id, in the same order of the input list
+     */
+    @Override
+    public List<PermissionBatchItemResult> removeAll(List<Long> ids) {
+        getLog().debug("invoking removeAll on {} permissions", ids.size());
+        return publishingChanges(() -> repository.removeAll(ids));
+    }
+
+    /**
+     * @param ids ids of the permissions
+     * @return found permissions, missing ids are ignored
+     */
+    @Override
+    public List<WaterPermission> findByIds(List<Long> ids) {
+        getLog().debug("invoking findByIds on {} ids", ids.size());
+        return repository.findByIds(ids);
+    }
+
+    /**
+     * Keyset paginated search. One more row than the page size is fetched in order to know
+     * if a next page exists without counting.
+     *
+     * @param limit             page size, values out of range are replaced by the default or the maximum page size
+     * @param continuationToken token returned by the previous page, null for the first page
+     * @return page of results with the token for the next one
+     */
+    @Override
+    public PermissionSearchPage search(Long roleId, Long userId, String entityResourceName, Long resourceId, int limit, String continuationToken) {
+        int pageSize = limit <= 0 ? DEFAULT_SEARCH_LIMIT : Math.min(limit, MAX_SEARCH_LIMIT);
+        String fingerprint = PermissionSearchToken.fingerprint(roleId, userId, entityResourceName, resourceId);
+        long afterId = PermissionSearchToken.decode(continuationToken, fingerprint);
+        List<WaterPermission> results = repository.search(roleId, userId, entityResourceName, resourceId, afterId, pageSize + 1);
+        String nextToken = null;
+        if (results.size() > pageSize) {
+            results = new ArrayList<>(results.subList(0, pageSize));
+            nextToken = PermissionSearchToken.encode(results.get(pageSize - 1).getId(), fingerprint);
+        }
+        return new PermissionSearchPage(results, nextToken);
+    }
+
+    /**
+     * Paginated like search, one more grantee than the page size is fetched in order to know if a next page exists.
+     */
+    @Override
+    public PermissionGranteePage findGrantees(String entityResourceName, long resourceId, long actionId, int limit, String continuationToken) {
+        if (entityResourceName == null || entityResourceName.isBlank())
+            throw new WaterRuntimeException("Entity resource name is required");
+        if (actionId == 0)
+            throw new WaterRuntimeException("Action id is required");
+        int pageSize = limit <= 0 ? DEFAULT_SEARCH_LIMIT : Math.min(limit, MAX_SEARCH_LIMIT);
+        String fingerprint = PermissionSearchToken.granteeFingerprint(entityResourceName, resourceId, actionId);
+        long[] after = PermissionSearchToken.decodeKey(continuationToken, fingerprint);
+        List<WaterPermission> granting = repository.findGrantingPermissions(entityResourceName, resourceId, actionId, after[0], after[1], pageSize + 1);
+        String nextToken = null;
+        if (granting.size() > pageSize) {
+            granting = granting.subList(0, pageSize);
+            WaterPermission last = granting.get(pageSize - 1);
+            nextToken = PermissionSearchToken.encode(last.getRoleId(), last.getUserId(), fingerprint);
+        }
+        List<Long> userIds = new ArrayList<>();
+        List<Long> roleIds = new ArrayList<>();
+        granting.forEach(permission -> {
+            if (permission.getRoleId() == 0)
+                userIds.add(permission.getUserId());
+            else
+                roleIds.add(permission.getRoleId());
+        });
+        return new PermissionGranteePage(userIds, roleIds, nextToken);
+    }
+
+    /**
+     * Writes all permissions in CSV format. Rows are streamed from the database and written as they arrive.
+     *
+     * @param output destination stream, flushed but not closed
+     * @return number of exported permissions
+     */
+    @Override
+    public long exportPermissions(OutputStream output) {
+        getLog().debug("invoking exportPermissions");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        try {
+            PermissionCsvFormat.writeHeader(writer);
+            long exported = repository.exportAll(permission -> writeCsvRow(writer, permission));
+            writer.flush();
+            return exported;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads permissions in CSV format and upserts them in chunks of IMPORT_CHUNK_SIZE rows.
+     * Malformed or invalid rows are skipped and counted as rejected.
+     * The effective permission store is updated by the upserts, like by any other batch write.
+     *
+     * @param input source stream, not closed
+     * @return import summary
+     */
+    @Override
+    public PermissionTransferReport importPermissions(InputStream input) {
+        getLog().debug("invoking importPermissions");
+        long start = System.currentTimeMillis();
+        //inserted, updated, unchanged
+        long[] totals = new long[3];
+        long rejected = 0;
+        List<WaterPermission> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = PermissionCsvFormat.readRecord(reader)) != null) {
+                if (line.isBlank() || PermissionCsvFormat.isHeader(line))
+                    continue;
+                WaterPermission permission = parseCsvRow(line);
+                if (permission == null) {
+                    rejected++;
+                    continue;
+                }
+                chunk.add(permission);
+                if (chunk.size() == IMPORT_CHUNK_SIZE)
+                    upsertChunk(chunk, totals);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        upsertChunk(chunk, totals);
+        //imports may touch any permission, caches are dropped entirely instead of notifying each row,
+        //the cursor is moved past the imported changes first so the next write does not publish them again
+        if (totals[0] + totals[1] > 0) {
+            changeCursor().skipTo(repository.getLastChangeSequence());
+            invalidationBus.publish(PermissionInvalidation.ALL);
+        }
+        return new PermissionTransferReport(totals[0], totals[1], totals[2], rejected, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Builds the decision data with two queries, whatever the number of roles and entities.
+     */
+    @Override
+    public PermissionDecisionData getDecisionData(long userId, List<Long> roleIds, String entityResourceName, List<Long> resourceIds) {
+        getLog().debug("invoking getDecisionData user: {} roles: {} Resource: {}", userId, roleIds, entityResourceName);
+        if (entityResourceName == null || entityResourceName.isBlank())
+            throw new WaterRuntimeException("Entity resource name is required");
+        List<Long> roles = roleIds == null ? Collections.emptyList() : roleIds.stream().filter(Objects::nonNull).distinct().toList();
+        List<Long> ids = resourceIds == null ? Collections.emptyList() : resourceIds.stream().filter(id -> id != null && id != 0).distinct().toList();
+        String impersonationResourceName = User.class.getName();
+        List<String> resourceNames = entityResourceName.equals(impersonationResourceName) ? List.of(entityResourceName) : List.of(entityResourceName, impersonationResourceName);
+        Map<Long, Long> roleActionIds = new HashMap<>();
+        Map<Long, Long> impersonationActionIds = new HashMap<>();
+        Map<Long, Map<Long, Long>> specificRoleActionIds = new HashMap<>();
+        Map<Long, Long> specificUserActionIds = new HashMap<>();
+        long userActionIds = 0;
+        //actions beyond the 64th, only for the permissions granting any
+        Map<Long, byte[]> roleExtendedActionIds = new HashMap<>();
+        Map<Long, Map<Long, byte[]>> specificRoleExtendedActionIds = new HashMap<>();
+        Map<Long, byte[]> specificUserExtendedActionIds = new HashMap<>();
+        byte[] userExtendedActionIds = null;
+        for (WaterPermission permission : repository.findDecisionRows(userId, roles, resourceNames, ids)) {
+            long resourceId = permission.getResourceId();
+            boolean rolePermission = permission.getRoleId() != 0;
+            byte[] extendedActionIds = permission.getExtendedActionIds();
+            if (impersonationResourceName.equals(permission.getEntityResourceName()) && resourceId == 0 && rolePermission)
+                impersonationActionIds.put(permission.getRoleId(), permission.getActionIds());
+            if (!entityResourceName.equals(permission.getEntityResourceName()))
+                continue;
+            if (resourceId == 0 && rolePermission) {
+                roleActionIds.put(permission.getRoleId(), permission.getActionIds());
+                if (extendedActionIds != null)
+                    roleExtendedActionIds.put(permission.getRoleId(), extendedActionIds);
+            } else if (resourceId == 0) {
+                userActionIds = permission.getActionIds();
+                userExtendedActionIds = extendedActionIds;
+            } else if (rolePermission) {
+                specificRoleActionIds.computeIfAbsent(resourceId, key -> new HashMap<>()).put(permission.getRoleId(), permission.getActionIds());
+                if (extendedActionIds != null)
+                    specificRoleExtendedActionIds.computeIfAbsent(resourceId, key -> new HashMap<>()).put(permission.getRoleId(), extendedActionIds);
+            } else {
+                specificUserActionIds.put(resourceId, permission.getActionIds());
+                if (extendedActionIds != null)
+                    specificUserExtendedActionIds.put(resourceId, extendedActionIds);
+            }
+        }
+        Set<Long> idsWithSpecificPermissions = repository.findResourceIdsWithSpecificPermissions(entityResourceName, ids);
+        Map<Long, EntityPermissionGrants> entityGrants = new HashMap<>();
+        ids.forEach(id -> entityGrants.put(id, new EntityPermissionGrants(
+                specificRoleActionIds.getOrDefault(id, Collections.emptyMap()),
+                specificUserActionIds.getOrDefault(id, 0L),
+                idsWithSpecificPermissions.contains(id),
+                specificRoleExtendedActionIds.get(id),
+                specificUserExtendedActionIds.get(id))));
+        return new PermissionDecisionData(userId, entityResourceName, roles, roleActionIds, userActionIds, impersonationActionIds, entityGrants,
+                roleExtendedActionIds.isEmpty() ? null : roleExtendedActionIds, userExtendedActionIds);
+    }
+
+    /**
+     * Adds to the requested ids those of the user and role specific permissions, found with one more query.
+     */
+    @Override
+    public PermissionDecisionData getResourceDecisionData(long userId, List<Long> roleIds, String entityResourceName, List<Long> resourceIds) {
+        if (entityResourceName == null || entityResourceName.isBlank())
+            throw new WaterRuntimeException("Entity resource name is required");
+        List<Long> roles = roleIds == null ? Collections.emptyList() : roleIds.stream().filter(Objects::nonNull).distinct().toList();
+        Set<Long> ids = new HashSet<>(repository.findResourceIdsWithUserSpecificPermissions(userId, roles, entityResourceName));
+        if (resourceIds != null)
+            resourceIds.stream().filter(Objects::nonNull).forEach(ids::add);
+        return getDecisionData(userId, roles, entityResourceName, new ArrayList<>(ids));
+    }
+
+    /**
+     * Uses the role grant index when enabled and built, otherwise a transient index of the permissions of the roles.
+     */
+    @Override
+    public long[] findResourceIdsGrantedToRoles(List<Long> roleIds, String entityResourceName, long actionId) {
+        if (entityResourceName == null || entityResourceName.isBlank())
+            throw new WaterRuntimeException("Entity resource name is required");
+        if (actionId == 0)
+            throw new WaterRuntimeException("Action id is required");
+        List<Long> roles = roleIds == null ? Collections.emptyList() : roleIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (roles.isEmpty())
+            return new long[0];
+        RoleGrantIndex index = grantIndex();
+        long[] granted = index != null ? index.grantedResourceIds(roles, entityResourceName, actionId) : null;
+        if (granted != null)
+            return granted;
+        //index disabled or still being built
+        List<WaterPermission> rolePermissions = new ArrayList<>();
+        roles.forEach(roleId -> rolePermissions.addAll(repository.findByRole(roleId)));
+        return RoleGrantIndex.of(rolePermissions).grantedResourceIds(roles, entityResourceName, actionId);
+    }
+
+    @Override
+    public String getVersionToken() {
+        return repository.getVersionToken();
+    }
+
+    /**
+     * One more change than the page size is fetched in order to know if further changes are available.
+     */
+    @Override
+    public PermissionChangePage getChangesAfter(long sequence, int limit) {
+        int pageSize = limit <= 0 ? DEFAULT_SEARCH_LIMIT : Math.min(limit, MAX_SEARCH_LIMIT);
+        long after = Math.max(sequence, 0);
+        List<WaterPermissionChange> changes = repository.findChangesAfter(after, pageSize + 1);
+        boolean hasMore = changes.size() > pageSize;
+        if (hasMore)
+            changes = new ArrayList<>(changes.subList(0, pageSize));
+        long lastSequence = changes.isEmpty() ? after : changes.get(changes.size() - 1).getSequence();
+        return new PermissionChangePage(changes, lastSequence, hasMore);
+    }
+
+    @Override
+    public boolean isEffectivePermissionStoreEnabled() {
+        return applicationProperties != null && Boolean.parseBoolean(applicationProperties.getPropertyOrDefault(WaterEffectivePermission.ENABLED_PROPERTY, "false"));
+    }
+
+    /**
+     * The index registers itself on the invalidation bus when created, so it follows the changes of every node.
+     *
+     * @return role grant index, null when disabled
+     */
+    private RoleGrantIndex grantIndex() {
+        RoleGrantIndex index = grantIndex;
+        if (index != null || applicationProperties == null || !Boolean.parseBoolean(applicationProperties.getPropertyOrDefault(GRANT_INDEX_PROPERTY, "false")))
+            return index;
+        synchronized (this) {
+            if (grantIndex == null) {
+                String snapshotFile = applicationProperties.getPropertyOrDefault(SNAPSHOT_FILE_PROPERTY, "");
+                RoleGrantIndex created = new RoleGrantIndex(repository, snapshotFile.isBlank() ? null : Paths.get(snapshotFile));
+                invalidationBus.addListener(created);
+                grantIndex = created;
+            }
+            return grantIndex;
+        }
+    }
+
+    /**
+     * The membership is recorded only when the roles differ from the stored ones, so decisions of known users only read.
+     * Two concurrent first decisions of a user may both try to record its membership: the loser fails on the unique key
+     * or on the entity version, and finds the membership recorded by the other one when the update is retried.
+     * Any other failure is propagated.
+     */
+    @Override
+    public List<WaterEffectivePermission> findEffectivePermissions(long userId, List<Long> roleIds, String entityResourceName, long resourceId) {
+        if (!isEffectivePermissionStoreEnabled())
+            throw new WaterRuntimeException("Effective permission store is disabled");
+        if (!repository.hasEffectivePermissionUserRoles(userId, roleIds)) {
+            try {
+                repository.updateEffectivePermissionUser(userId, roleIds);
+            } catch (RuntimeException e) {
+                if (!isConcurrentWriteConflict(e))
+                    throw e;
+                getLog().debug("Retrying the update of the effective permissions of user {}: {}", userId, e.getMessage());
+                repository.updateEffectivePermissionUser(userId, roleIds);
+            }
+        }
+        return repository.findEffectivePermissions(userId, entityResourceName, resourceId);
+    }
+
+    @Override
+    public void updateEffectivePermissionRoles(long userId, List<Long> roleIds) {
+        if (isEffectivePermissionStoreEnabled())
+            repository.updateEffectivePermissionUser(userId, roleIds);
+    }
+
+    /**
+     * Rows are fixed in place, user by user, so decisions keep reading the store while it is rebuilt.
+     */
+    @Override
+    public EffectivePermissionReport rebuildEffectivePermissions() {
+        getLog().info("Rebuilding effective permissions");
+        long start = System.currentTimeMillis();
+        EffectivePermissionReport report = reconcileEffectivePermissions(true);
+        long orphanRows = repository.removeOrphanEffectivePermissions();
+        return new EffectivePermissionReport(report.getUsers(), report.getExpectedRows(), report.getMissingRows(), report.getStaleRows(),
+                report.getOrphanRows() + orphanRows, true, System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public EffectivePermissionReport checkEffectivePermissions(boolean repair) {
+        long start = System.currentTimeMillis();
+        EffectivePermissionReport report = reconcileEffectivePermissions(repair);
+        if (!report.isConsistent())
+            getLog().warn("Effective permission store differs from the permission table: {}", report);
+        return new EffectivePermissionReport(report.getUsers(), report.getExpectedRows(), report.getMissingRows(), report.getStaleRows(),
+                report.getOrphanRows(), repair, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Reconciles every known user, EFFECTIVE_PERMISSIONS_CHUNK_SIZE users per transaction.
+     */
+    private EffectivePermissionReport reconcileEffectivePermissions(boolean repair) {
+        //users, expected, missing, stale and orphan rows
+        long[] totals = new long[5];
+        long afterUserId = Long.MIN_VALUE;
+        List<Long> userIds;
+        do {
+            userIds = repository.findEffectivePermissionUserIds(afterUserId, EFFECTIVE_PERMISSIONS_CHUNK_SIZE);
+            if (userIds.isEmpty())
+                break;
+            EffectivePermissionReport chunkReport = repository.reconcileEffectivePermissions(userIds, repair);
+            totals[0] += chunkReport.getUsers();
+            totals[1] += chunkReport.getExpectedRows();
+            totals[2] += chunkReport.getMissingRows();
+            totals[3] += chunkReport.getStaleRows();
+            totals[4] += chunkReport.getOrphanRows();
+            afterUserId = userIds.get(userIds.size() - 1);
+        } while (userIds.size() == EFFECTIVE_PERMISSIONS_CHUNK_SIZE);
+        return new EffectivePermissionReport(totals[0], totals[1], totals[2], totals[3], totals[4], repair, 0);
+    }
+
+    /**
+     * @return true if the failure, or one of its causes, is a unique constraint violation or an optimistic lock failure
+     */
+    private static boolean isConcurrentWriteConflict(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DuplicateEntityException || cause instanceof EntityExistsException
+                    || cause instanceof OptimisticLockException || cause instanceof SQLIntegrityConstraintViolationException)
+                return true;
+            //integrity constraint violation class, for drivers not using the dedicated exception
+            if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null && sqlException.getSQLState().startsWith("23"))
+                return true;
+        }
+        return false;
+    }
+
+    private void upsertChunk(List<WaterPermission> chunk, long[] totals) {
+        if (chunk.isEmpty())
+            return;
+        PermissionTransferReport chunkReport = repository.upsertAll(chunk);
+        totals[0] += chunkReport.getInserted();
+        totals[1] += chunkReport.getUpdated();
+        totals[2] += chunkReport.getUnchanged();
+        chunk.clear();
+    }
+
+    private WaterPermission parseCsvRow(String line) {
+        try {
+            WaterPermission permission = PermissionCsvFormat.parse(line);
+            String validationErrors = validationErrors(permission);
+            if (validationErrors == null)
+                return permission;
+            getLog().warn("Rejecting imported permission {}: {}", line, validationErrors);
+        } catch (IllegalArgumentException e) {
+            getLog().warn("Rejecting malformed permission row {}: {}", line, e.getMessage());
+        }
+        return null;
+    }
+
+    private void writeCsvRow(Writer writer, WaterPermission permission) {
+        try {
+            PermissionCsvFormat.write(writer, permission);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public PermissionSnapshotReport writePermissionSnapshot() {
+        RoleGrantIndex index = grantIndex();
+        if (index == null)
+            throw new WaterRuntimeException("Role grant index is disabled");
+        if (applicationProperties.getPropertyOrDefault(SNAPSHOT_FILE_PROPERTY, "").isBlank())
+            throw new WaterRuntimeException("Permission snapshot file is not configured");
+        try {
+            PermissionSnapshotReport report = index.writeSnapshot();
+            getLog().info("Permission snapshot written: {}", report);
+            return report;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public PermissionIndexPreloadStatus preloadIndex() {
+        RoleGrantIndexPreload current = indexPreload();
+        if (current != null)
+            return current.run();
+        if (isIndexPreloadEnabled())
+            getLog().warn("{} is set but the role grant index is disabled, there is nothing to preload", INDEX_PRELOAD_PROPERTY);
+        return new PermissionIndexPreloadStatus(false, true, false, 0, false, 0);
+    }
+
+    @Override
+    public PermissionIndexPreloadStatus getIndexPreloadStatus() {
+        RoleGrantIndexPreload current = indexPreload();
+        return current != null ? current.status() : new PermissionIndexPreloadStatus(false, true, false, 0, false, 0);
+    }
+
+    private boolean isIndexPreloadEnabled() {
+        return applicationProperties != null && Boolean.parseBoolean(applicationProperties.getPropertyOrDefault(INDEX_PRELOAD_PROPERTY, "false"));
+    }
+
+    /**
+     * @return preload of the role grant index, null when the preload or the index is disabled
+     */
+    private RoleGrantIndexPreload indexPreload() {
+        RoleGrantIndexPreload current = indexPreload;
+        if (current != null || !isIndexPreloadEnabled())
+            return current;
+        RoleGrantIndex index = grantIndex();
+        if (index == null)
+            return null;
+        synchronized (this) {
+            if (indexPreload == null) {
+                long budgetMillis = applicationProperties.getPropertyOrDefault(INDEX_PRELOAD_BUDGET_PROPERTY, DEFAULT_INDEX_PRELOAD_BUDGET_MILLIS);
+                indexPreload = new RoleGrantIndexPreload(index, budgetMillis);
+            }
+            return indexPreload;
+        }
+    }
+
+    /**
+     * Runs a write and publishes an invalidation for each change of the change log this node has not published yet.
+     * The effective permission store is updated by the repository inside the transaction of the write.
+     * Changes recorded by other nodes are published as well: invalidations are idempotent,
+     * and this covers writers which stopped between their commit and their publication.
+     * A backlog longer than MAX_SEARCH_LIMIT changes is published as a single PermissionInvalidation.ALL,
+     * so a write never replays a large number of changes inside its request.
+     */
+    private <T> T publishingChanges(Supplier<T> write) {
+        PermissionChangeCursor cursor = changeCursor();
+        cursor.start();
+        T result = write.get();
+        cursor.publishNewChanges(invalidationBus::publish);
+        return result;
+    }
+
+    private PermissionChangeCursor changeCursor() {
+        PermissionChangeCursor cursor = changeCursor;
+        if (cursor != null)
+            return cursor;
+        synchronized (this) {
+            if (changeCursor == null)
+                changeCursor = new PermissionChangeCursor(repository, MAX_SEARCH_LIMIT);
+            return changeCursor;
+        }
+    }
+
+    /**
+     * Validates every permission and runs the batch operation only on the valid ones,
+     * merging the outcome with validation failures so that results keep the order of the input list.
+     */
+    private List<PermissionBatchItemResult> executeOnValidPermissions(List<WaterPermission> permissions, Function<List<WaterPermission>, List<PermissionBatchItemResult>> batchOperation) {
+        PermissionBatchItemResult[] results = new PermissionBatchItemResult[permissions.size()];
+        List<WaterPermission> validPermissions = new ArrayList<>(permissions.size());
+        List<Integer> validPositions = new ArrayList<>(permissions.size());
+        for (int i = 0; i < permissions.size(); i++) {
+            WaterPermission permission = permissions.get(i);
+            String validationErrors = permission != null ? validationErrors(permission) : "Missing permission";
+            if (validationErrors == null) {
+                validPermissions.add(permission);
+                validPositions.add(i);
+            } else {
+                results[i] = PermissionBatchItemResult.failed(permission != null ? permission.getId() : 0, validationErrors);
+            }
+        }
+        if (!validPermissions.isEmpty()) {
+            List<PermissionBatchItemResult> executed = batchOperation.apply(validPermissions);
+            for (int i = 0; i < executed.size(); i++) {
+                results[validPositions.get(i)] = executed.get(i);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private String validationErrors(WaterPermission permission) {
+        Set<ConstraintViolation<WaterPermission>> violations = getBatchValidator().validate(permission);
+        if (violations.isEmpty())
+            return null;
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    private Validator getBatchValidator() {
+        if (batchValidator == null) {
+            batchValidator = Validation.byDefaultProvider()
+                    .configure()
+                    .messageInterpolator(new ParameterMessageInterpolator())
+                    .buildValidatorFactory()
+                    .getValidator();
+        }
+        return batchValidator;
+    }
+}
@@ -0,0 +1,534 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.service;
+
+import it.water.permission.api.PermissionRepository;
+import it.water.permission.api.invalidation.PermissionInvalidationListener;
+import it.water.permission.model.PermissionChangeType;
+import it.water.permission.model.PermissionInvalidation;
+import it.water.permission.model.PermissionResourceNames;
+import it.water.permission.model.PermissionSnapshotReport;
+import it.water.permission.model.WaterPermission;
+import it.water.permission.model.WaterPermissionChange;
+import it.water.repository.entity.model.exceptions.NoResultException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * In-memory index of the permissions of roles: for each role, resource name and action bit
+ * it keeps the sorted array of the resource ids on which the action is granted,
+ * along with the sorted ids of every entity with a permission. Only the bits of actionIds, actions 0-63, are indexed:
+ * a specific permission granting only actions beyond the 64th is in the entity ids, so lookups still find it,
+ * but in no action array. Resource type permissions are kept under resource id 0.
+ * Entity lookups are answered with a binary search, the entities granted to a set of roles
+ * are computed merging the arrays, intersecting the bits of the action and joining the roles.
+ * Entries are immutable and replaced on every change, so lookups never lock.
+ * The index is built into a local map outside the lock and published at once: until then lookups report
+ * that they can't tell, so callers query the database, and invalidations are buffered and replayed on the new index.
+ * The index follows the invalidations of the whole cluster reloading the changed permission,
+ * moved permissions are invalidated, and so reloaded, under both their previous and their current key,
+ * PermissionInvalidation.ALL drops it and it is built again in background on next use.
+ * When a snapshot file is configured the index is built from the snapshot, if valid, catching up on the changes
+ * recorded after it, instead of scanning the permission table.
+ */
+final class RoleGrantIndex implements PermissionInvalidationListener {
+    private static final Logger log = LoggerFactory.getLogger(RoleGrantIndex.class);
+    static final long[] NO_IDS = new long[0];
+    //beyond this number of changes scanning the table is cheaper than catching up
+    private static final long MAX_CATCH_UP_CHANGES = 100000;
+    //changes before the snapshot sequence applied again, covering transactions which committed after the snapshot was taken
+    private static final long CATCH_UP_OVERLAP = 1000;
+    private static final int CATCH_UP_PAGE_SIZE = 1000;
+
+    private final PermissionRepository repository;
+    private final Path snapshotFile;
+    private volatile Map<Key, RoleGrants> grants;
+    //build in progress, guarded by this
+    private CompletableFuture<Map<Key, RoleGrants>> building;
+    //invalidations received while the index is built, null when no build is running, guarded by this
+    private List<PermissionInvalidation> pendingInvalidations;
+
+    /**
+     * @param repository   repository the index is built from, null for indexes of a fixed set of permissions
+     * @param snapshotFile snapshot the index is built from when valid, null to always scan the permission table
+     */
+    RoleGrantIndex(PermissionRepository repository, Path snapshotFile) {
+        this.repository = repository;
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * @param permissions permissions to index, permissions of users are ignored
+     * @return index of the given permissions, it does not follow invalidations
+     */
+    static RoleGrantIndex of(Collection<WaterPermission> permissions) {
+        RoleGrantIndex index = new RoleGrantIndex(null, null);
+        index.grants = build(permissions::forEach);
+        return index;
+    }
+
+    /**
+     * Starts building the index in background when not built yet.
+     *
+     * @return false if the role has neither a permission specific to the entity nor, when resourceId is 0,
+     * a resource type permission, true if it has one or the index is still being built
+     */
+    boolean mayHavePermission(long roleId, String entityResourceName, long resourceId) {
+        Map<Key, RoleGrants> current = current();
+        if (current == null)
+            return true;
+        RoleGrants roleGrants = current.get(new Key(roleId, PermissionResourceNames.idOf(entityResourceName)));
+        return roleGrants != null && Arrays.binarySearch(roleGrants.resourceIds, resourceId) >= 0;
+    }
+
+    /**
+     * Starts building the index in background when not built yet.
+     *
+     * @param actionId bits of the action among actions 0-63
+     * @return new sorted array with the ids of the entities on which any of the roles is granted the action by a specific permission,
+     * null while the index is being built
+     */
+    long[] grantedResourceIds(Collection<Long> roleIds, String entityResourceName, long actionId) {
+        //actions beyond the 64th are not indexed, they can't be asked as a single word either
+        Map<Key, RoleGrants> current = current();
+        if (current == null)
+            return null;
+        int resourceNameId = PermissionResourceNames.idOf(entityResourceName);
+        long[] granted = NO_IDS;
+        for (Long roleId : roleIds) {
+            RoleGrants roleGrants = current.get(new Key(roleId, resourceNameId));
+            if (roleGrants != null)
+                granted = union(granted, roleGrants.resourceIds(actionId));
+        }
+        //the resource type permission is not an entity
+        granted = remove(granted, 0);
+        return granted == NO_IDS ? new long[0] : granted;
+    }
+
+    @Override
+    public void onInvalidation(PermissionInvalidation invalidation) {
+        if (repository == null)
+            return;
+        synchronized (this) {
+            //the running build replays it on the index it is loading
+            if (pendingInvalidations != null) {
+                pendingInvalidations.add(invalidation);
+                return;
+            }
+            if (invalidation.isAll()) {
+                grants = null;
+                return;
+            }
+            //only permissions of roles are indexed, an index not built yet will read the change
+            if (grants == null || !isIndexed(invalidation))
+                return;
+            try {
+                reload(grants, invalidation);
+            } catch (RuntimeException e) {
+                //an index which missed a change can't be trusted anymore
+                log.warn("Dropping the role grant index, unable to reload the permission of role {} on {} {}: {}", invalidation.getRoleId(), invalidation.getEntityResourceName(), invalidation.getResourceId(), e.getMessage());
+                grants = null;
+            }
+        }
+    }
+
+    /**
+     * Writes the index to the snapshot file.
+     * The sequence is read before the index, changes applied meanwhile are applied again by the catch-up.
+     *
+     * @return snapshot summary
+     */
+    PermissionSnapshotReport writeSnapshot() throws IOException {
+        long start = System.currentTimeMillis();
+        long sequence = repository.getLastChangeSequence();
+        Map<Key, RoleGrants> current = startBuild(false).join();
+        long sizeBytes = RoleGrantSnapshot.write(snapshotFile, sequence, current);
+        return new PermissionSnapshotReport(sequence, count(current), sizeBytes, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Builds the index on the calling thread, if not built yet, or waits for the build in progress.
+     *
+     * @return number of indexed permissions
+     */
+    long build() {
+        return count(startBuild(false).join());
+    }
+
+    private static long count(Map<Key, RoleGrants> grants) {
+        long permissions = 0;
+        for (RoleGrants roleGrants : grants.values())
+            permissions += roleGrants.resourceIds.length;
+        return permissions;
+    }
+
+    /**
+     * @return the index, null if it is not built yet, in which case a background build is started
+     */
+    private Map<Key, RoleGrants> current() {
+        Map<Key, RoleGrants> current = grants;
+        if (current == null)
+            startBuild(true);
+        return current;
+    }
+
+    /**
+     * Starts a build unless the index is built or being built.
+     * Invalidations received from now on are buffered, so the scan can't miss a change committed while it runs.
+     *
+     * @param background true to build on a dedicated thread, false to build on the calling thread
+     * @return the index, when built
+     */
+    private CompletableFuture<Map<Key, RoleGrants>> startBuild(boolean background) {
+        CompletableFuture<Map<Key, RoleGrants>> started;
+        synchronized (this) {
+            if (grants != null)
+                return CompletableFuture.completedFuture(grants);
+            if (building != null)
+                return building;
+            started = new CompletableFuture<>();
+            building = started;
+            pendingInvalidations = new ArrayList<>();
+        }
+        Runnable task = () -> {
+            try {
+                started.complete(load());
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    building = null;
+                    pendingInvalidations = null;
+                }
+                log.warn("Unable to build the role grant index: {}", e.getMessage());
+                started.completeExceptionally(e);
+            }
+        };
+        if (background) {
+            Thread thread = new Thread(task, "permission-grant-index-build");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            task.run();
+        }
+        return started;
+    }
+
+    /**
+     * Loads the index outside the lock, then replays the invalidations buffered meanwhile
+     * until none is left and publishes the index.
+     */
+    private Map<Key, RoleGrants> load() {
+        long start = System.currentTimeMillis();
+        Map<Key, RoleGrants> loaded = snapshotFile != null ? loadSnapshot() : null;
+        while (true) {
+            if (loaded == null)
+                loaded = build(repository::exportAll);
+            List<PermissionInvalidation> buffered;
+            synchronized (this) {
+                buffered = pendingInvalidations;
+                if (buffered.isEmpty()) {
+                    grants = loaded;
+                    building = null;
+                    pendingInvalidations = null;
+                    log.info("Role grant index built with {} entries in {} ms", loaded.size(), System.currentTimeMillis() - start);
+                    return loaded;
+                }
+                pendingInvalidations = new ArrayList<>();
+            }
+            if (buffered.stream().anyMatch(PermissionInvalidation::isAll)) {
+                loaded = null;
+                continue;
+            }
+            for (PermissionInvalidation invalidation : buffered) {
+                if (isIndexed(invalidation))
+                    reload(loaded, invalidation);
+            }
+        }
+    }
+
+    /**
+     * @return content of the snapshot aligned to the last change, null if the snapshot is missing, corrupt or outdated
+     */
+    private Map<Key, RoleGrants> loadSnapshot() {
+        try {
+            RoleGrantSnapshot.Content snapshot = RoleGrantSnapshot.read(snapshotFile);
+            if (snapshot == null)
+                return null;
+            long lastSequence = repository.getLastChangeSequence();
+            //a snapshot ahead of the change log has been written against another database
+            if (snapshot.sequence() > lastSequence || lastSequence - snapshot.sequence() > MAX_CATCH_UP_CHANGES) {
+                log.warn("Ignoring outdated role grant snapshot {} at change {}, last change is {}", snapshotFile, snapshot.sequence(), lastSequence);
+                return null;
+            }
+            long applied = catchUp(snapshot.grants(), Math.max(snapshot.sequence() - CATCH_UP_OVERLAP, 0));
+            log.info("Role grant index loaded from snapshot {} at change {}, {} changes applied", snapshotFile, snapshot.sequence(), applied);
+            return snapshot.grants();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring role grant snapshot {}: {}", snapshotFile, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Applies the changes of role permissions recorded after the given sequence, in order,
+     * so each permission ends with the state of its last change.
+     * Updates which moved a permission also remove it from the key it had before.
+     *
+     * @return number of applied changes
+     */
+    private long catchUp(Map<Key, RoleGrants> target, long afterSequence) {
+        long applied = 0;
+        List<WaterPermissionChange> changes;
+        do {
+            changes = repository.findChangesAfter(afterSequence, CATCH_UP_PAGE_SIZE);
+            for (WaterPermissionChange change : changes) {
+                boolean indexed = change.getRoleId() != 0 && change.getUserId() == 0;
+                boolean previousIndexed = change.isMoved() && change.getPreviousRoleId() != 0 && change.getPreviousUserId() == 0;
+                //a permission moved away from a role or an entity is removed from its previous key first
+                if (previousIndexed)
+                    apply(target, new Key(change.getPreviousRoleId(), PermissionResourceNames.idOf(change.getPreviousEntityResourceName())), change.getPreviousResourceId(), null);
+                if (indexed) {
+                    Long actionIds = change.getChangeType() != PermissionChangeType.DELETE ? change.getActionIds() : null;
+                    apply(target, new Key(change.getRoleId(), PermissionResourceNames.idOf(change.getEntityResourceName())), change.getResourceId(), actionIds);
+                }
+                if (indexed || previousIndexed)
+                    applied++;
+                afterSequence = change.getSequence();
+            }
+        } while (changes.size() == CATCH_UP_PAGE_SIZE);
+        return applied;
+    }
+
+    /**
+     * @param actionIds actions of the permission, null if the permission doesn't exist anymore
+     */
+    private static void apply(Map<Key, RoleGrants> target, Key key, long resourceId, Long actionIds) {
+        target.compute(key, (k, roleGrants) -> {
+            RoleGrants current = roleGrants != null ? roleGrants : RoleGrants.EMPTY;
+            RoleGrants updated = actionIds != null ? current.with(resourceId, actionIds) : current.without(resourceId);
+            return updated.resourceIds.length == 0 ? null : updated;
+        });
+    }
+
+    private static boolean isIndexed(PermissionInvalidation invalidation) {
+        return invalidation.getRoleId() != 0 && invalidation.getUserId() == 0;
+    }
+
+    /**
+     * Reads again the permission of the invalidation and applies it to the target.
+     */
+    private void reload(Map<Key, RoleGrants> target, PermissionInvalidation invalidation) {
+        WaterPermission permission;
+        try {
+            permission = repository.findByRoleAndResourceNameAndResourceId(invalidation.getRoleId(), invalidation.getEntityResourceName(), invalidation.getResourceId());
+        } catch (NoResultException | jakarta.persistence.NoResultException e) {
+            permission = null;
+        }
+        apply(target, new Key(invalidation.getRoleId(), PermissionResourceNames.idOf(invalidation.getEntityResourceName())), invalidation.getResourceId(), permission != null ? permission.getActionIds() : null);
+    }
+
+    private static Map<Key, RoleGrants> build(Consumer<Consumer<WaterPermission>> scan) {
+        Map<Key, RoleGrantsBuilder> builders = new HashMap<>();
+        scan.accept(permission -> {
+            if (permission.getRoleId() != 0 && permission.getUserId() == 0)
+                builders.computeIfAbsent(new Key(permission.getRoleId(), PermissionResourceNames.idOf(permission.getEntityResourceName())), key -> new RoleGrantsBuilder())
+                        .add(permission.getResourceId(), permission.getActionIds());
+        });
+        Map<Key, RoleGrants> built = new ConcurrentHashMap<>();
+        builders.forEach((key, builder) -> built.put(key, builder.build()));
+        return built;
+    }
+
+    /**
+     * @return a new sorted array with the ids of both arrays
+     */
+    private static long[] union(long[] first, long[] second) {
+        long[] merged = new long[first.length + second.length];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < first.length || j < second.length) {
+            if (j == second.length || (i < first.length && first[i] < second[j]))
+                merged[size++] = first[i++];
+            else if (i == first.length || second[j] < first[i])
+                merged[size++] = second[j++];
+            else {
+                merged[size++] = first[i++];
+                j++;
+            }
+        }
+        return size == merged.length ? merged : Arrays.copyOf(merged, size);
+    }
+
+    /**
+     * @return a new sorted array with the ids present in both arrays
+     */
+    private static long[] intersection(long[] first, long[] second) {
+        long[] common = new long[Math.min(first.length, second.length)];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j])
+                i++;
+            else if (second[j] < first[i])
+                j++;
+            else {
+                common[size++] = first[i++];
+                j++;
+            }
+        }
+        return size == common.length ? common : Arrays.copyOf(common, size);
+    }
+
+    /**
+     * @return the sorted ids with the given one, the same array if already present
+     */
+    private static long[] insert(long[] ids, long id) {
+        int position = Arrays.binarySearch(ids, id);
+        if (position >= 0)
+            return ids;
+        int insertAt = -position - 1;
+        long[] inserted = new long[ids.length + 1];
+        System.arraycopy(ids, 0, inserted, 0, insertAt);
+        inserted[insertAt] = id;
+        System.arraycopy(ids, insertAt, inserted, insertAt + 1, ids.length - insertAt);
+        return inserted;
+    }
+
+    /**
+     * @return the sorted ids without the given one, the same array if missing
+     */
+    private static long[] remove(long[] ids, long id) {
+        int position = Arrays.binarySearch(ids, id);
+        if (position < 0)
+            return ids;
+        if (ids.length == 1)
+            return NO_IDS;
+        long[] removed = new long[ids.length - 1];
+        System.arraycopy(ids, 0, removed, 0, position);
+        System.arraycopy(ids, position + 1, removed, position, ids.length - position - 1);
+        return removed;
+    }
+
+    record Key(long roleId, int resourceNameId) {
+    }
+
+    /**
+     * Permissions of a role on a resource type.
+     */
+    static final class RoleGrants {
+        private static final RoleGrants EMPTY = new RoleGrants(NO_IDS, emptyBits());
+
+        //sorted ids of the entities with a permission
+        final long[] resourceIds;
+        //sorted ids of the entities on which each action bit is granted
+        final long[][] idsByBit;
+
+        RoleGrants(long[] resourceIds, long[][] idsByBit) {
+            this.resourceIds = resourceIds;
+            this.idsByBit = idsByBit;
+        }
+
+        private static long[][] emptyBits() {
+            long[][] idsByBit = new long[Long.SIZE][];
+            Arrays.fill(idsByBit, NO_IDS);
+            return idsByBit;
+        }
+
+        /**
+         * @return sorted ids of the entities on which every bit of the action is granted, it must not be modified
+         */
+        private long[] resourceIds(long actionId) {
+            long[] ids = null;
+            for (int bit = 0; bit < Long.SIZE && (ids == null || ids.length > 0); bit++) {
+                if ((actionId & (1L << bit)) != 0)
+                    ids = ids == null ? idsByBit[bit] : intersection(ids, idsByBit[bit]);
+            }
+            return ids == null ? NO_IDS : ids;
+        }
+
+        private RoleGrants with(long resourceId, long actionIds) {
+            long[][] updated = idsByBit.clone();
+            for (int bit = 0; bit < Long.SIZE; bit++)
+                updated[bit] = (actionIds & (1L << bit)) != 0 ? insert(updated[bit], resourceId) : remove(updated[bit], resourceId);
+            return new RoleGrants(insert(resourceIds, resourceId), updated);
+        }
+
+        private RoleGrants without(long resourceId) {
+            long[][] updated = idsByBit.clone();
+            for (int bit = 0; bit < Long.SIZE; bit++)
+                updated[bit] = remove(updated[bit], resourceId);
+            return new RoleGrants(remove(resourceIds, resourceId), updated);
+        }
+    }
+
+    /**
+     * Collects the permissions of a role on a resource type while the index is built.
+     */
+    private static final class RoleGrantsBuilder {
+        private long[] resourceIds = new long[8];
+        private long[] actionIds = new long[8];
+        private int size;
+
+        private void add(long resourceId, long permissionActionIds) {
+            if (size == resourceIds.length) {
+                resourceIds = Arrays.copyOf(resourceIds, size * 2);
+                actionIds = Arrays.copyOf(actionIds, size * 2);
+            }
+            resourceIds[size] = resourceId;
+            actionIds[size] = permissionActionIds;
+            size++;
+        }
+
+        private RoleGrants build() {
+            int[] counts = new int[Long.SIZE];
+            for (int i = 0; i < size; i++) {
+                for (int bit = 0; bit < Long.SIZE; bit++) {
+                    if ((actionIds[i] & (1L << bit)) != 0)
+                        counts[bit]++;
+                }
+            }
+            long[][] idsByBit = new long[Long.SIZE][];
+            for (int bit = 0; bit < Long.SIZE; bit++)
+                idsByBit[bit] = counts[bit] > 0 ? new long[counts[bit]] : NO_IDS;
+            int[] filled = new int[Long.SIZE];
+            for (int i = 0; i < size; i++) {
+                for (int bit = 0; bit < Long.SIZE; bit++) {
+                    if ((actionIds[i] & (1L << bit)) != 0)
+                        idsByBit[bit][filled[bit]++] = resourceIds[i];
+                }
+            }
+            for (long[] ids : idsByBit)
+                Arrays.sort(ids);
+            long[] sortedResourceIds = Arrays.copyOf(resourceIds, size);
+            Arrays.sort(sortedResourceIds);
+            return new RoleGrants(sortedResourceIds, idsByBit);
+        }
+    }
+}
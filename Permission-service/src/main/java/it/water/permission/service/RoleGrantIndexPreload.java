@@ -0,0 +1,124 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.service;
+
+import it.water.permission.model.PermissionIndexPreloadStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Preloads the role grant index after a restart, with the resource type and the entity specific permissions of roles,
+ * so the first decisions don't wait for it. Nothing else is preloaded: the index is the only in-memory permission data
+ * of the service.
+ * The caller waits until the index is loaded or the time budget expires. In the latter case the status reports
+ * the timeout and is not ready: the load goes on in background and the status becomes ready once it completes.
+ * A failed load makes the status ready as well, the index is then built on first use as usual.
+ * The preload runs once, concurrent callers wait for the same run.
+ */
+final class RoleGrantIndexPreload {
+    private static final Logger log = LoggerFactory.getLogger(RoleGrantIndexPreload.class);
+
+    private final RoleGrantIndex grantIndex;
+    private final long budgetMillis;
+
+    private volatile long rolePermissions;
+    private volatile boolean failed;
+    private volatile boolean started;
+    private volatile boolean ready;
+    private volatile boolean timedOut;
+    private volatile long startedAt;
+    private volatile long elapsedMillis;
+
+    /**
+     * @param grantIndex index to load
+     */
+    RoleGrantIndexPreload(RoleGrantIndex grantIndex, long budgetMillis) {
+        this.grantIndex = grantIndex;
+        this.budgetMillis = budgetMillis;
+    }
+
+    /**
+     * Runs the preload, if not run yet, waiting until it completes or the time budget expires.
+     *
+     * @return status at the end of the preload, or when the budget expired
+     */
+    synchronized PermissionIndexPreloadStatus run() {
+        if (started)
+            return status();
+        startedAt = System.nanoTime();
+        started = true;
+        ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "permission-grant-index-preload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletableFuture<Void> load = CompletableFuture.runAsync(() -> rolePermissions = grantIndex.build(), executor)
+                    .whenComplete((result, e) -> {
+                        if (e != null) {
+                            failed = true;
+                            log.warn("Unable to preload the role grant index: {}", e.getMessage());
+                        }
+                        complete();
+                    });
+            await(load);
+        } finally {
+            //the running load completes in background
+            executor.shutdown();
+        }
+        PermissionIndexPreloadStatus status = status();
+        log.info("Role grant index preload {}: {}", timedOut ? "time budget expired" : "completed", status);
+        return status;
+    }
+
+    /**
+     * @return current progress, it can be read while the preload runs
+     */
+    PermissionIndexPreloadStatus status() {
+        long elapsed = 0;
+        if (ready)
+            elapsed = elapsedMillis;
+        else if (started)
+            elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        return new PermissionIndexPreloadStatus(started, ready, timedOut, rolePermissions, failed, elapsed);
+    }
+
+    private void complete() {
+        elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        ready = true;
+    }
+
+    private void await(CompletableFuture<Void> load) {
+        try {
+            load.get(budgetMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            //already logged by the completion callback
+        } catch (TimeoutException e) {
+            timedOut = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            timedOut = true;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.service;
+
+import it.water.permission.model.PermissionResourceNames;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot of the role grant index, big endian:
+ * magic, format version, change sequence the snapshot is aligned to and number of entries, then for each entry
+ * role id, resource name as UTF-8, ids of the entities with a permission, the mask of the action bits granted
+ * on at least one entity and, for each bit of the mask, the ids of the entities on which it is granted.
+ * Id arrays are written with their length before them, the file ends with the CRC32 of the previous bytes.
+ * Files are memory-mapped for reading and written to a temporary file which replaces the previous one,
+ * so readers never see a partial snapshot.
+ */
+final class RoleGrantSnapshot {
+    private static final int MAGIC = 0x57505253;
+    private static final int FORMAT_VERSION = 1;
+    private static final int CHECKSUM_BYTES = Long.BYTES;
+
+    private RoleGrantSnapshot() {
+    }
+
+    /**
+     * Content of a snapshot file.
+     *
+     * @param sequence change sequence the snapshot is aligned to
+     * @param grants   indexed permissions
+     */
+    record Content(long sequence, Map<RoleGrantIndex.Key, RoleGrantIndex.RoleGrants> grants) {
+    }
+
+    /**
+     * @return size of the written file in bytes
+     */
+    static long write(Path file, long sequence, Map<RoleGrantIndex.Key, RoleGrantIndex.RoleGrants> grants) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            //the map may change while it is written, entries are copied first so the count matches
+            Map<RoleGrantIndex.Key, RoleGrantIndex.RoleGrants> entries = new HashMap<>(grants);
+            try (OutputStream fileOutput = Files.newOutputStream(temporary)) {
+                CheckedOutputStream checkedOutput = new CheckedOutputStream(fileOutput, new CRC32());
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(checkedOutput));
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                output.writeLong(sequence);
+                output.writeInt(entries.size());
+                for (Map.Entry<RoleGrantIndex.Key, RoleGrantIndex.RoleGrants> entry : entries.entrySet())
+                    writeEntry(output, entry.getKey(), entry.getValue());
+                output.flush();
+                //the checksum is not part of the checked bytes
+                new DataOutputStream(fileOutput).writeLong(checkedOutput.getChecksum().getValue());
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return Files.size(file);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @return content of the file, null if the file doesn't exist
+     * @throws IOException if the file can't be read, is corrupt or has been written with another format version
+     */
+    static Content read(Path file) throws IOException {
+        if (!Files.exists(file))
+            return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 3 * Integer.BYTES + Long.BYTES + CHECKSUM_BYTES || size > Integer.MAX_VALUE)
+                throw new IOException("Unexpected snapshot size " + size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            int contentSize = (int) size - CHECKSUM_BYTES;
+            CRC32 checksum = new CRC32();
+            checksum.update(buffer.slice(0, contentSize));
+            if (checksum.getValue() != buffer.getLong(contentSize))
+                throw new IOException("Snapshot checksum mismatch");
+            ByteBuffer content = buffer.slice(0, contentSize);
+            if (content.getInt() != MAGIC)
+                throw new IOException("Not a permission snapshot");
+            int formatVersion = content.getInt();
+            if (formatVersion != FORMAT_VERSION)
+                throw new IOException("Unsupported snapshot format version " + formatVersion);
+            long sequence = content.getLong();
+            int entries = content.getInt();
+            if (entries < 0)
+                throw new IOException("Corrupt snapshot entry count " + entries);
+            Map<RoleGrantIndex.Key, RoleGrantIndex.RoleGrants> grants = new ConcurrentHashMap<>();
+            for (int i = 0; i < entries; i++)
+                readEntry(content, grants);
+            if (content.hasRemaining())
+                throw new IOException("Unexpected bytes after the last snapshot entry");
+            return new Content(sequence, grants);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated snapshot", e);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream output, RoleGrantIndex.Key key, RoleGrantIndex.RoleGrants roleGrants) throws IOException {
+        output.writeLong(key.roleId());
+        byte[] name = PermissionResourceNames.nameOf(key.resourceNameId()).getBytes(StandardCharsets.UTF_8);
+        output.writeInt(name.length);
+        output.write(name);
+        writeIds(output, roleGrants.resourceIds);
+        long bits = 0;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (roleGrants.idsByBit[bit].length > 0)
+                bits |= 1L << bit;
+        }
+        output.writeLong(bits);
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if ((bits & (1L << bit)) != 0)
+                writeIds(output, roleGrants.idsByBit[bit]);
+        }
+    }
+
+    private static void writeIds(DataOutputStream output, long[] ids) throws IOException {
+        output.writeInt(ids.length);
+        for (long id : ids)
+            output.writeLong(id);
+    }
+
+    private static void readEntry(ByteBuffer content, Map<RoleGrantIndex.Key, RoleGrantIndex.RoleGrants> grants) throws IOException {
+        long roleId = content.getLong();
+        byte[] name = new byte[length(content, Byte.BYTES)];
+        content.get(name);
+        long[] resourceIds = readIds(content);
+        long bits = content.getLong();
+        long[][] idsByBit = new long[Long.SIZE][];
+        for (int bit = 0; bit < Long.SIZE; bit++)
+            idsByBit[bit] = (bits & (1L << bit)) != 0 ? readIds(content) : RoleGrantIndex.NO_IDS;
+        grants.put(new RoleGrantIndex.Key(roleId, PermissionResourceNames.idOf(new String(name, StandardCharsets.UTF_8))), new RoleGrantIndex.RoleGrants(resourceIds, idsByBit));
+    }
+
+    /**
+     * Ids are copied out of the mapping with a bulk read.
+     */
+    private static long[] readIds(ByteBuffer content) throws IOException {
+        long[] ids = new long[length(content, Long.BYTES)];
+        content.asLongBuffer().get(ids);
+        content.position(content.position() + ids.length * Long.BYTES);
+        return ids;
+    }
+
+    private static int length(ByteBuffer content, int elementBytes) throws IOException {
+        int length = content.getInt();
+        if (length < 0 || (long) length * elementBytes > content.remaining())
+            throw new IOException("Corrupt snapshot length " + length);
+        return length;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.permission.service.invalidation;
+
+import it.water.core.interceptors.annotations.FrameworkComponent;
+import it.water.permission.api.invalidation.PermissionInvalidationTransport;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Transport connecting the nodes which live in the same JVM, used by single node deployments and by tests
+ * simulating a cluster. Transports created on the same channel receive each other's frames synchronously.
+ * Cluster deployments register a transport backed by a message broker with a higher priority.
+ */
+@FrameworkComponent(services = PermissionInvalidationTransport.class)
+public class InJvmPermissionInvalidationTransport implements PermissionInvalidationTransport {
+    public static final String DEFAULT_CHANNEL = "default";
+
+    private static final Map<String, Set<InJvmPermissionInvalidationTransport>> channels = new ConcurrentHashMap<>();
+
+    private final Set<InJvmPermissionInvalidationTransport> members;
+    private final List<Consumer<byte[]>> receivers = new CopyOnWriteArrayList<>();
+
+    public InJvmPermissionInvalidationTransport() {
+        this(DEFAULT_CHANNEL);
+    }
+
+    public InJvmPermissionInvalidationTransport(String channel) {
+        this.members = channels.computeIfAbsent(channel, name -> ConcurrentHashMap.newKeySet());
+        this.members.add(this);
+    }
+
+    @Override
+    public void send(byte[] frame) {
+        for (InJvmPermissionInvalidationTransport member : members) {
+            if (member != this)
+                member.receivers.forEach(receiver -> receiver.accept(frame));
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<byte[]> receiver) {
+        receivers.add(receiver);
+    }
+
+    /**
+     * Detaches the transport from its channel.
+     */
+    public void close() {
+        members.remove(this);
+    }
+}
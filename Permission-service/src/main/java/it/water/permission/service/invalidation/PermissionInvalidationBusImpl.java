@@ -0,0 +1,190 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.permission.service.invalidation;
+
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.interceptors.annotations.FrameworkComponent;
+import it.water.core.interceptors.annotations.Inject;
+import it.water.permission.api.invalidation.PermissionInvalidationBus;
+import it.water.permission.api.invalidation.PermissionInvalidationListener;
+import it.water.permission.api.invalidation.PermissionInvalidationTransport;
+import it.water.permission.model.PermissionInvalidation;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Invalidation bus which coalesces bursts of invalidations before sending them to other nodes.
+ * Local listeners are notified synchronously, so the node which changed a permission never reads its previous value.
+ * Invalidations for other nodes are collected for a short window, duplicates are dropped and the remaining ones
+ * are sent as a single binary frame. When more than the allowed number of invalidations is pending, as during imports,
+ * they are replaced by a single PermissionInvalidation.ALL.
+ * Listeners are the ones added explicitly plus every component registered as PermissionInvalidationListener.
+ */
+@FrameworkComponent(services = PermissionInvalidationBus.class)
+public class PermissionInvalidationBusImpl implements PermissionInvalidationBus {
+    private static final Logger log = LoggerFactory.getLogger(PermissionInvalidationBusImpl.class);
+
+    public static final String COALESCE_WINDOW_PROPERTY = "water.permission.invalidation.coalesce.millis";
+    public static final String MAX_PENDING_PROPERTY = "water.permission.invalidation.max.pending";
+
+    private static final long DEFAULT_COALESCE_WINDOW_MILLIS = 50;
+    private static final long DEFAULT_MAX_PENDING = 1000;
+
+    @Inject
+    @Setter
+    private ApplicationProperties applicationProperties;
+
+    @Inject
+    @Setter
+    private ComponentRegistry componentRegistry;
+
+    @Inject
+    private PermissionInvalidationTransport transport;
+    private PermissionInvalidationTransport subscribedTransport;
+
+    private final List<PermissionInvalidationListener> listeners = new CopyOnWriteArrayList<>();
+    private final Set<PermissionInvalidation> pending = new LinkedHashSet<>();
+    private final LongAdder sentFrames = new LongAdder();
+    private final LongAdder receivedInvalidations = new LongAdder();
+    private ScheduledExecutorService flusher;
+    private long coalesceWindowMillis;
+    private int maxPending;
+    private boolean flushScheduled;
+
+    @Override
+    public void publish(PermissionInvalidation invalidation) {
+        notifyListeners(invalidation);
+        synchronized (pending) {
+            start();
+            pending.add(invalidation);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                flusher.schedule(this::flush, coalesceWindowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void addListener(PermissionInvalidationListener listener) {
+        subscribe();
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(PermissionInvalidationListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Frames coming from other nodes are received as soon as the transport is injected.
+     */
+    public synchronized void setTransport(PermissionInvalidationTransport transport) {
+        this.transport = transport;
+        subscribe();
+    }
+
+    /**
+     * Sends the pending invalidations right away.
+     */
+    public void flush() {
+        List<PermissionInvalidation> frame;
+        synchronized (pending) {
+            flushScheduled = false;
+            if (pending.isEmpty())
+                return;
+            frame = pending.size() > maxPending || pending.contains(PermissionInvalidation.ALL)
+                    ? List.of(PermissionInvalidation.ALL)
+                    : new ArrayList<>(pending);
+            pending.clear();
+        }
+        try {
+            transport.send(PermissionInvalidationCodec.encode(frame));
+            sentFrames.increment();
+        } catch (RuntimeException e) {
+            log.warn("Unable to send {} permission invalidations: {}", frame.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * @return number of frames sent to other nodes
+     */
+    public long getSentFrames() {
+        return sentFrames.sum();
+    }
+
+    /**
+     * @return number of invalidations received from other nodes
+     */
+    public long getReceivedInvalidations() {
+        return receivedInvalidations.sum();
+    }
+
+    /**
+     * Configuration is read on first use, when application properties are available.
+     */
+    private void start() {
+        subscribe();
+        if (flusher != null)
+            return;
+        coalesceWindowMillis = applicationProperties.getPropertyOrDefault(COALESCE_WINDOW_PROPERTY, DEFAULT_COALESCE_WINDOW_MILLIS);
+        maxPending = (int) applicationProperties.getPropertyOrDefault(MAX_PENDING_PROPERTY, DEFAULT_MAX_PENDING);
+        flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "permission-invalidation-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private synchronized void subscribe() {
+        if (transport == null || transport == subscribedTransport)
+            return;
+        transport.subscribe(this::receive);
+        subscribedTransport = transport;
+    }
+
+    private void receive(byte[] frame) {
+        try {
+            for (PermissionInvalidation invalidation : PermissionInvalidationCodec.decode(frame)) {
+                receivedInvalidations.increment();
+                notifyListeners(invalidation);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Discarding permission invalidation frame: {}", e.getMessage());
+        }
+    }
+
+    private void notifyListeners(PermissionInvalidation invalidation) {
+        Set<PermissionInvalidationListener> targets = new LinkedHashSet<>(listeners);
+        if (componentRegistry != null)
+            targets.addAll(componentRegistry.findComponents(PermissionInvalidationListener.class, null));
+        for (PermissionInvalidationListener listener : targets) {
+            try {
+                listener.onInvalidation(invalidation);
+            } catch (RuntimeException e) {
+                log.warn("Permission invalidation listener {} failed: {}", listener.getClass().getName(), e.getMessage());
+            }
+        }
+    }
+}
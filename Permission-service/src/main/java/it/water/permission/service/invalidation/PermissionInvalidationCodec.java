@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.permission.service.invalidation;
+
+import it.water.core.model.exceptions.WaterRuntimeException;
+import it.water.permission.model.PermissionInvalidation;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Binary encoding of invalidation frames.
+ * A frame starts with a format version followed by the number of invalidations, each invalidation is written as
+ * role id, user id and resource id in unsigned LEB128 varint format, followed by the length of the
+ * entity resource name (0 for null, length + 1 otherwise) and its UTF-8 bytes.
+ * Ids are small positive numbers, so a typical invalidation takes a few bytes plus the resource name.
+ */
+public final class PermissionInvalidationCodec {
+    static final int FORMAT_VERSION = 1;
+
+    private PermissionInvalidationCodec() {
+    }
+
+    public static byte[] encode(Collection<PermissionInvalidation> invalidations) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + invalidations.size() * 48);
+        out.write(FORMAT_VERSION);
+        writeVarLong(out, invalidations.size());
+        for (PermissionInvalidation invalidation : invalidations) {
+            writeVarLong(out, invalidation.getRoleId());
+            writeVarLong(out, invalidation.getUserId());
+            writeVarLong(out, invalidation.getResourceId());
+            if (invalidation.getEntityResourceName() == null) {
+                writeVarLong(out, 0);
+            } else {
+                byte[] name = invalidation.getEntityResourceName().getBytes(StandardCharsets.UTF_8);
+                writeVarLong(out, name.length + 1L);
+                out.write(name, 0, name.length);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static List<PermissionInvalidation> decode(byte[] frame) {
+        Reader reader = new Reader(frame);
+        int version = reader.readByte();
+        if (version != FORMAT_VERSION)
+            throw new WaterRuntimeException("Unsupported invalidation frame version: " + version);
+        int count = (int) reader.readVarLong();
+        List<PermissionInvalidation> invalidations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long roleId = reader.readVarLong();
+            long userId = reader.readVarLong();
+            long resourceId = reader.readVarLong();
+            int nameLength = (int) reader.readVarLong();
+            String name = nameLength == 0 ? null : reader.readString(nameLength - 1);
+            invalidations.add(new PermissionInvalidation(roleId, userId, name, resourceId));
+        }
+        return invalidations;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static final class Reader {
+        private final byte[] frame;
+        private int position;
+
+        private Reader(byte[] frame) {
+            this.frame = frame;
+        }
+
+        private int readByte() {
+            if (position >= frame.length)
+                throw new WaterRuntimeException("Truncated invalidation frame");
+            return frame[position++] & 0xFF;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new WaterRuntimeException("Malformed varint in invalidation frame");
+        }
+
+        private String readString(int length) {
+            if (length < 0 || position + length > frame.length)
+                throw new WaterRuntimeException("Truncated invalidation frame");
+            String value = new String(frame, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.service.rest;
+
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.apache.cxf.transport.http.AbstractHTTPDestination;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Sets headers on the response of the request served by the current thread.
+ * Kept apart from the rest controller so servlet and cxf classes are loaded only when the controller
+ * runs inside the JAX-RS stack.
+ */
+final class JaxRsResponseHeaders {
+
+    private JaxRsResponseHeaders() {
+    }
+
+    static void setHeader(String name, String value) {
+        Message message = PhaseInterceptorChain.getCurrentMessage();
+        if (message == null)
+            return;
+        HttpServletResponse response = (HttpServletResponse) message.get(AbstractHTTPDestination.HTTP_RESPONSE);
+        if (response != null)
+            response.setHeader(name, value);
+    }
+}
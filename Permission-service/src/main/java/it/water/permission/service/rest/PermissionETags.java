@@ -0,0 +1,98 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.service.rest;
+
+import it.water.permission.model.WaterPermission;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Strong entity tags for permission responses.
+ * Single permissions are tagged with their id and entity version, listings with the version token
+ * and the request parameters, so a listing can be validated without running its query.
+ * Listings filtered on the caller must use a token including the logged user and its roles.
+ * Permission maps depend on ownership and sharing of other entities, hence they are tagged by content.
+ */
+public final class PermissionETags {
+
+    private PermissionETags() {
+    }
+
+    public static String ofPermission(WaterPermission permission) {
+        return quote(permission.getId() + "-" + permission.getEntityVersion());
+    }
+
+    public static String ofListing(String versionToken, Object... requestParameters) {
+        StringBuilder content = new StringBuilder(versionToken);
+        for (Object parameter : requestParameters)
+            content.append('\n').append(parameter);
+        return quote(digest(content.toString()));
+    }
+
+    public static String ofPermissionMap(Map<String, Map<String, Map<String, Boolean>>> permissionMap) {
+        //sorted copies make the digest independent from the iteration order of the maps
+        StringBuilder content = new StringBuilder();
+        new TreeMap<>(permissionMap).forEach((resourceName, entities) -> {
+            content.append(resourceName).append('{');
+            new TreeMap<>(entities).forEach((entityId, actions) ->
+                    content.append(entityId).append(new TreeMap<>(actions)));
+            content.append('}');
+        });
+        return quote(digest(content.toString()));
+    }
+
+    /**
+     * @param ifNoneMatch value of the If-None-Match header, may be null
+     * @param etag        current entity tag
+     * @return true if the client copy is still current, weak comparison is used as required for If-None-Match
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank())
+            return false;
+        if (ifNoneMatch.trim().equals("*"))
+            return true;
+        String opaqueTag = stripWeakPrefix(etag);
+        return Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .map(PermissionETags::stripWeakPrefix)
+                .anyMatch(opaqueTag::equals);
+    }
+
+    private static String stripWeakPrefix(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static String quote(String value) {
+        return "\"" + value + "\"";
+    }
+
+    private static String digest(String content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            //128 bits are more than enough to tell versions apart
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
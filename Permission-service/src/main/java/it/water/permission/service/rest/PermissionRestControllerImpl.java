@@ -1,17 +1,37 @@
 
 package it.water.permission.service.rest;
 
+import it.water.core.api.model.PaginableResult;
 import it.water.core.api.service.BaseEntityApi;
 import it.water.core.api.service.rest.FrameworkRestController;
 import it.water.core.interceptors.annotations.Inject;
+import it.water.core.model.exceptions.WaterRuntimeException;
 import it.water.permission.api.PermissionApi;
 import it.water.permission.api.rest.PermissionRestApi;
+import it.water.permission.model.EffectivePermissionReport;
+import it.water.permission.model.PermissionBatchItemResult;
+import it.water.permission.model.PermissionChangePage;
+import it.water.permission.model.PermissionDecisionData;
+import it.water.permission.model.PermissionGranteePage;
+import it.water.permission.model.PermissionIndexPreloadStatus;
+import it.water.permission.model.PermissionSearchPage;
+import it.water.permission.model.PermissionSnapshotReport;
+import it.water.permission.model.PermissionTransferReport;
 import it.water.permission.model.WaterPermission;
 import it.water.service.rest.persistence.BaseEntityRestApi;
 import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 
@@ -19,23 +39,193 @@ import java.util.Map;
 /**
  * @Generated by Water Generator
  * Rest Api Class for Permission entity.
+ * Reads of single permissions, listings and permission maps carry a strong ETag,
+ * requests whose If-None-Match still matches are answered with 304 Not Modified.
+ * Responses filtered on the logged user are marked as private, so shared caches never store them.
  */
 @FrameworkRestController(referredRestApi = PermissionRestApi.class)
 public class PermissionRestControllerImpl extends BaseEntityRestApi<WaterPermission> implements PermissionRestApi {
     private static Logger log = LoggerFactory.getLogger(PermissionRestControllerImpl.class.getName());
+    protected static final String PRIVATE_CACHE_CONTROL = "private";
+    private static final String ENTITY_RESOURCE_NAME_FIELD = "entityResourceName";
 
     @Inject
     @Setter
     private PermissionApi permissionApi;
 
+    @Context
+    private HttpHeaders requestHeaders;
+
+    @Context
+    private UriInfo uriInfo;
+
     @Override
     protected BaseEntityApi<WaterPermission> getEntityService() {
         return permissionApi;
     }
 
+    @Override
+    public WaterPermission find(long id) {
+        WaterPermission permission = super.find(id);
+        return notModified(PermissionETags.ofPermission(permission)) ? null : permission;
+    }
+
+    /**
+     * The listing only contains what the logged user can see, so it is validated against the version token
+     * of the caller, which includes the user and its roles, before running the query.
+     * entityResourceName is not a column of the permission table, so requests filtering or ordering on it are rejected
+     * up front with a message pointing to search, instead of failing while the query is translated.
+     */
+    @Override
+    public PaginableResult<WaterPermission> findAll() {
+        String requestQuery = getRequestQuery();
+        if (requestQuery != null && URLDecoder.decode(requestQuery, StandardCharsets.UTF_8).contains(ENTITY_RESOURCE_NAME_FIELD))
+            throw new WaterRuntimeException(ENTITY_RESOURCE_NAME_FIELD + " can't be used to filter or order the listing, use /search instead");
+        String etag = PermissionETags.ofListing(permissionApi.getCallerVersionToken(), "findAll", requestQuery);
+        return notModified(etag, PRIVATE_CACHE_CONTROL) ? null : super.findAll();
+    }
+
+    /**
+     * The map also depends on ownership and sharing of other entities, which do not change the permission version token,
+     * so it is computed on every request and tagged by content: a matching ETag only saves the transfer of the body.
+     */
     @Override
     public Map<String, Map<String, Map<String, Boolean>>> elaboratePermissionMap(Map<String, List<Long>> entityPks) {
         log.debug("Invoking elaboratePermissionMap from rest service for {}", this.getEntityService().getEntityType().getSimpleName());
-        return permissionApi.entityPermissionMap(entityPks);
+        Map<String, Map<String, Map<String, Boolean>>> permissionMap = permissionApi.entityPermissionMap(entityPks);
+        return notModified(PermissionETags.ofPermissionMap(permissionMap), PRIVATE_CACHE_CONTROL) ? null : permissionMap;
+    }
+
+    @Override
+    public List<PermissionBatchItemResult> saveAll(List<WaterPermission> permissions) {
+        log.debug("Invoking saveAll from rest service on {} permissions", permissions.size());
+        return permissionApi.saveAll(permissions);
+    }
+
+    @Override
+    public List<PermissionBatchItemResult> updateAll(List<WaterPermission> permissions) {
+        log.debug("Invoking updateAll from rest service on {} permissions", permissions.size());
+        return permissionApi.updateAll(permissions);
+    }
+
+    @Override
+    public List<PermissionBatchItemResult> removeAll(List<Long> ids) {
+        log.debug("Invoking removeAll from rest service on {} permissions", ids.size());
+        return permissionApi.removeAll(ids);
+    }
+
+    @Override
+    public List<WaterPermission> findByIds(List<Long> ids) {
+        log.debug("Invoking findByIds from rest service on {} ids", ids.size());
+        return permissionApi.findByIds(ids);
+    }
+
+    @Override
+    public PermissionSearchPage search(Long roleId, Long userId, String entityResourceName, Long resourceId, int limit, String continuationToken) {
+        log.debug("Invoking search from rest service");
+        String etag = PermissionETags.ofListing(permissionApi.getVersionToken(), "search", roleId, userId, entityResourceName, resourceId, limit, continuationToken);
+        if (notModified(etag))
+            return null;
+        return permissionApi.search(roleId, userId, entityResourceName, resourceId, limit, continuationToken);
+    }
+
+    @Override
+    public PermissionGranteePage findGrantees(String entityResourceName, long resourceId, long actionId, int limit, String continuationToken) {
+        log.debug("Invoking findGrantees from rest service");
+        return permissionApi.findGrantees(entityResourceName, resourceId, actionId, limit, continuationToken);
+    }
+
+    @Override
+    public PermissionChangePage getChanges(long after, int limit) {
+        log.debug("Invoking getChanges from rest service after sequence {}", after);
+        return permissionApi.getChangesAfter(after, limit);
+    }
+
+    @Override
+    public StreamingOutput exportPermissions() {
+        log.debug("Invoking exportPermissions from rest service");
+        return output -> permissionApi.exportPermissions(output);
+    }
+
+    @Override
+    public PermissionTransferReport importPermissions(InputStream csv) {
+        log.debug("Invoking importPermissions from rest service");
+        return permissionApi.importPermissions(csv);
+    }
+
+    @Override
+    public PermissionDecisionData getDecisionData(long userId, List<Long> roleIds, String entityResourceName, List<Long> resourceIds) {
+        log.debug("Invoking getDecisionData from rest service");
+        return permissionApi.getDecisionData(userId, roleIds, entityResourceName, resourceIds);
+    }
+
+    @Override
+    public PermissionDecisionData getResourceDecisionData(long userId, List<Long> roleIds, String entityResourceName, List<Long> resourceIds) {
+        log.debug("Invoking getResourceDecisionData from rest service");
+        return permissionApi.getResourceDecisionData(userId, roleIds, entityResourceName, resourceIds);
+    }
+
+    @Override
+    public EffectivePermissionReport rebuildEffectivePermissions() {
+        log.debug("Invoking rebuildEffectivePermissions from rest service");
+        return permissionApi.rebuildEffectivePermissions();
+    }
+
+    @Override
+    public EffectivePermissionReport checkEffectivePermissions(boolean repair) {
+        log.debug("Invoking checkEffectivePermissions from rest service");
+        return repair ? permissionApi.repairEffectivePermissions() : permissionApi.checkEffectivePermissions();
+    }
+
+    @Override
+    public PermissionSnapshotReport writePermissionSnapshot() {
+        log.debug("Invoking writePermissionSnapshot from rest service");
+        return permissionApi.writePermissionSnapshot();
+    }
+
+    @Override
+    public PermissionIndexPreloadStatus preloadIndex() {
+        log.debug("Invoking preloadIndex from rest service");
+        return permissionApi.preloadIndex();
+    }
+
+    @Override
+    public PermissionIndexPreloadStatus getIndexPreloadStatus() {
+        return permissionApi.getIndexPreloadStatus();
+    }
+
+    /**
+     * Publishes the given ETag and compares it with the If-None-Match header of the current request.
+     * When the client copy is still current the request is answered with 304 Not Modified,
+     * the JAX-RS implementation aborts the invocation while other stacks may return true and let the caller
+     * return an empty body.
+     *
+     * @param etag current entity tag of the response
+     * @return true if the response body must not be sent
+     */
+    protected boolean notModified(String etag) {
+        return notModified(etag, null);
+    }
+
+    /**
+     * @param etag         current entity tag of the response
+     * @param cacheControl value of the Cache-Control header sent with the response, null to omit it
+     * @return true if the response body must not be sent
+     */
+    protected boolean notModified(String etag, String cacheControl) {
+        String ifNoneMatch = requestHeaders != null ? requestHeaders.getHeaderString(HttpHeaders.IF_NONE_MATCH) : null;
+        if (PermissionETags.matches(ifNoneMatch, etag))
+            throw new WebApplicationException(Response.notModified().header(HttpHeaders.ETAG, etag).header(HttpHeaders.CACHE_CONTROL, cacheControl).build());
+        JaxRsResponseHeaders.setHeader(HttpHeaders.ETAG, etag);
+        if (cacheControl != null)
+            JaxRsResponseHeaders.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        return false;
+    }
+
+    /**
+     * @return raw query string of the current request, part of listing ETags
+     */
+    protected String getRequestQuery() {
+        return uriInfo != null ? uriInfo.getRequestUri().getRawQuery() : null;
     }
 }
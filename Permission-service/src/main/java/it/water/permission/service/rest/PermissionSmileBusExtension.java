@@ -0,0 +1,41 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission.service.rest;
+
+import org.apache.cxf.Bus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registers {@link PermissionSmileProvider} among the providers of every JAX-RS server created on a cxf bus.
+ * Cxf instantiates it when the bus is created, before any server, since it is declared in META-INF/cxf/bus-extensions.txt;
+ * runtimes without cxf never read that file, so cxf classes are not needed outside the JAX-RS stack.
+ */
+public class PermissionSmileBusExtension {
+    static final String BUS_PROVIDERS_PROPERTY = "org.apache.cxf.jaxrs.bus.providers";
+
+    public PermissionSmileBusExtension(Bus bus) {
+        List<Object> providers = new ArrayList<>();
+        Object registered = bus.getProperty(BUS_PROVIDERS_PROPERTY);
+        if (registered instanceof List<?> registeredProviders)
+            providers.addAll(registeredProviders);
+        if (providers.stream().noneMatch(PermissionSmileProvider.class::isInstance))
+            providers.add(new PermissionSmileProvider());
+        bus.setProperty(BUS_PROVIDERS_PROPERTY, providers);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.permission.service.rest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import it.water.permission.api.rest.PermissionRestApi;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.Providers;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * JAX-RS provider of the Smile binary representation offered by the permission endpoints.
+ * Entities are serialized by the JSON provider of the runtime, so the object mapper and the view resolution
+ * are exactly the ones of the JSON responses, and the resulting tokens are transcoded to Smile:
+ * field names are encoded once per payload and numbers in binary, so permission lists and maps are smaller
+ * and faster to parse than their JSON counterpart. Request bodies follow the opposite path.
+ * The provider is registered with the cxf bus by {@link PermissionSmileBusExtension};
+ * runtimes without it keep answering JSON, which clients accept as a fallback.
+ */
+@Provider
+@Consumes(PermissionRestApi.APPLICATION_SMILE)
+@Produces(PermissionRestApi.APPLICATION_SMILE)
+public class PermissionSmileProvider implements MessageBodyWriter<Object>, MessageBodyReader<Object> {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    private static final SmileFactory SMILE_FACTORY = (SmileFactory) new SmileFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    @Context
+    private Providers providers;
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return jsonWriter(type, genericType, annotations) != null;
+    }
+
+    @Override
+    public void writeTo(Object entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        //headers set by the json writer must not leak into the smile response
+        jsonWriter(type, genericType, annotations).writeTo(entity, type, genericType, annotations, MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<>(), json);
+        transcode(JSON_FACTORY.createParser(json.toByteArray()), SMILE_FACTORY.createGenerator(entityStream));
+    }
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return jsonReader(type, genericType, annotations) != null;
+    }
+
+    @Override
+    public Object readFrom(Class<Object> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        transcode(SMILE_FACTORY.createParser(entityStream), JSON_FACTORY.createGenerator(json));
+        return jsonReader(type, genericType, annotations).readFrom(type, genericType, annotations, MediaType.APPLICATION_JSON_TYPE, httpHeaders, new ByteArrayInputStream(json.toByteArray()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private MessageBodyWriter<Object> jsonWriter(Class<?> type, Type genericType, Annotation[] annotations) {
+        if (providers == null)
+            return null;
+        return (MessageBodyWriter<Object>) providers.getMessageBodyWriter(type, genericType, annotations, MediaType.APPLICATION_JSON_TYPE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private MessageBodyReader<Object> jsonReader(Class<?> type, Type genericType, Annotation[] annotations) {
+        if (providers == null)
+            return null;
+        return providers.getMessageBodyReader((Class<Object>) type, genericType, annotations, MediaType.APPLICATION_JSON_TYPE);
+    }
+
+    private static void transcode(JsonParser parser, JsonGenerator generator) throws IOException {
+        try (parser; generator) {
+            if (parser.nextToken() != null)
+                generator.copyCurrentStructure(parser);
+        }
+    }
+}
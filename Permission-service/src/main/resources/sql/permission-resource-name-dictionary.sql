@@ -0,0 +1,64 @@
+--
+-- Copyright 2024 Aristide Cittadino
+--
+-- Licensed under the Apache License, Version 2.0 (the "License")
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+-- Moves entity resource names of existing permissions to the WaterPermissionResourceName dictionary,
+-- on databases created before the dictionary was introduced, with the permission service stopped.
+-- The migration runs in three steps, in order. Steps 1 and 3 run as they are. Step 2 drops the old unique
+-- constraint, whose name was generated by the database, so its statement must be completed with that name.
+-- Statements use ANSI SQL, the syntax of identity columns and of "alter column" may need to be adapted to the target database.
+
+-- Step 1: fill the dictionary and bind every permission to its entry.
+
+CREATE TABLE WaterPermissionResourceName (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    CONSTRAINT permission_resource_name_uk UNIQUE (name)
+);
+
+INSERT INTO WaterPermissionResourceName (name)
+SELECT DISTINCT entityResourceName FROM WaterPermission;
+
+ALTER TABLE WaterPermission ADD COLUMN resourceNameId INTEGER;
+
+UPDATE WaterPermission SET resourceNameId =
+    (SELECT r.id FROM WaterPermissionResourceName r WHERE r.name = WaterPermission.entityResourceName);
+
+ALTER TABLE WaterPermission ALTER COLUMN resourceNameId SET NOT NULL;
+
+ALTER TABLE WaterPermission ADD CONSTRAINT permission_resource_name_fk
+    FOREIGN KEY (resourceNameId) REFERENCES WaterPermissionResourceName (id);
+
+-- Step 2: drop the unique constraint on (roleId, userId, entityResourceName, resourceId).
+-- Some databases drop it together with the column, others shrink it to the remaining columns,
+-- which would reject permissions differing only by resource name, so it is dropped explicitly.
+-- Its name is the single unique constraint of the table returned by:
+
+SELECT tc.constraint_name
+FROM information_schema.table_constraints tc
+WHERE UPPER(tc.table_name) = 'WATERPERMISSION' AND tc.constraint_type = 'UNIQUE';
+
+-- then, replacing <constraint_name> with the returned name (on MySQL use DROP INDEX instead of DROP CONSTRAINT):
+-- ALTER TABLE WaterPermission DROP CONSTRAINT <constraint_name>;
+
+-- Step 3: replace the name column with the dictionary key in the unique constraint and in the resource index.
+
+DROP INDEX permission_resource_keyset_idx;
+
+ALTER TABLE WaterPermission DROP COLUMN entityResourceName;
+
+ALTER TABLE WaterPermission ADD CONSTRAINT permission_unique_key UNIQUE (roleId, userId, resourceNameId, resourceId);
+
+CREATE INDEX permission_resource_keyset_idx ON WaterPermission (resourceNameId, resourceId, id);
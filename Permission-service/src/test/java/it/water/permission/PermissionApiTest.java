@@ -1,9 +1,15 @@
 package it.water.permission;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
@@ -13,12 +19,15 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestMethodOrder;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
 
 import it.water.core.api.action.ActionsManager;
 import it.water.core.api.action.ResourceAction;
+import it.water.core.api.bundle.ApplicationProperties;
 import it.water.core.api.bundle.Runtime;
 import it.water.core.api.model.PaginableResult;
 import it.water.core.api.model.Role;
+import it.water.core.api.model.User;
 import it.water.core.api.registry.ComponentRegistry;
 import it.water.core.api.repository.query.Query;
 import it.water.core.api.role.RoleManager;
@@ -37,9 +46,27 @@ import it.water.core.testing.utils.runtime.TestRuntimeUtils;
 import it.water.permission.api.PermissionApi;
 import it.water.permission.api.PermissionRepository;
 import it.water.permission.api.PermissionSystemApi;
+import it.water.permission.api.invalidation.PermissionInvalidationBus;
+import it.water.permission.model.ActionSet;
+import it.water.permission.model.PermissionBatchItemResult;
+import it.water.permission.model.PermissionChangePage;
+import it.water.permission.model.PermissionChangeType;
+import it.water.permission.model.PermissionDecisionData;
+import it.water.permission.model.PermissionGranteePage;
+import it.water.permission.model.PermissionIndexPreloadStatus;
+import it.water.permission.model.PermissionInvalidation;
+import it.water.permission.model.PermissionSearchPage;
+import it.water.permission.model.PermissionTransferReport;
 import it.water.permission.model.WaterPermission;
+import it.water.permission.model.WaterPermissionChange;
+import it.water.permission.service.invalidation.InJvmPermissionInvalidationTransport;
+import it.water.permission.service.invalidation.PermissionInvalidationBusImpl;
+import it.water.permission.service.invalidation.PermissionInvalidationCodec;
+import it.water.permission.service.rest.PermissionETags;
 import it.water.repository.entity.model.exceptions.DuplicateEntityException;
 import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Generated with Water Generator.
@@ -51,6 +78,7 @@ import lombok.Setter;
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
 class PermissionApiTest implements Service {
+    private static final Logger log = LoggerFactory.getLogger(PermissionApiTest.class);
 
     @Inject
     @Setter
@@ -132,6 +160,11 @@ class PermissionApiTest implements Service {
         Assertions.assertNotNull(this.componentRegistry.findComponent(PermissionSystemApi.class, null));
         this.permissionRepository = this.componentRegistry.findComponent(PermissionRepository.class, null);
         Assertions.assertNotNull(this.permissionRepository);
+        //optional features are off in the test configuration, PermissionFeaturesApiTest covers them
+        Assertions.assertFalse(this.componentRegistry.findComponent(PermissionSystemApi.class, null).isEffectivePermissionStoreEnabled());
+        PermissionIndexPreloadStatus preloadStatus = this.permissionApi.getIndexPreloadStatus();
+        Assertions.assertFalse(preloadStatus.isStarted());
+        Assertions.assertTrue(preloadStatus.isReady());
     }
 
     /**
@@ -273,6 +306,10 @@ class PermissionApiTest implements Service {
         long foundId = found.getId();
         Assertions.assertThrows(UnauthorizedException.class, () -> this.permissionApi.update(entity));
         Assertions.assertThrows(UnauthorizedException.class, () -> this.permissionApi.remove(foundId));
+        //viewer can check the effective permission store, but neither repair it nor scan the permission table
+        Assertions.assertDoesNotThrow(() -> this.permissionApi.checkEffectivePermissions());
+        Assertions.assertThrows(UnauthorizedException.class, () -> this.permissionApi.repairEffectivePermissions());
+        Assertions.assertThrows(UnauthorizedException.class, () -> this.permissionApi.preloadIndex());
     }
 
     @Order(12)
@@ -335,6 +372,468 @@ class PermissionApiTest implements Service {
         Assertions.assertDoesNotThrow(() -> permissionIntegrationClient.checkOrCreatePermissionsSpecificToEntity(permissionViewerId, 0, createActions));
     }
 
+    /**
+     * Testing batch operations, every item gets its own result and failing items do not stop the batch
+     */
+    @Order(14)
+    @Test
+    void batchOperationsShouldReturnPerItemResults() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        List<WaterPermission> toSave = new ArrayList<>();
+        toSave.add(createPermission(20001, 0, 0));
+        toSave.add(createPermission(20002, 0, 0));
+        //duplicated inside the same batch
+        toSave.add(createPermission(20002, 0, 0));
+        //breaks validation
+        toSave.add(new WaterPermission("<script>function(){alert('ciao')!}</script>", 2, "entityResourceName20003", 0l, 0, 0));
+        List<PermissionBatchItemResult> saved = permissionApi.saveAll(toSave);
+        Assertions.assertEquals(4, saved.size());
+        Assertions.assertTrue(saved.get(0).isSuccess());
+        Assertions.assertTrue(saved.get(1).isSuccess());
+        Assertions.assertFalse(saved.get(2).isSuccess());
+        Assertions.assertFalse(saved.get(3).isSuccess());
+        Assertions.assertNotNull(saved.get(3).getError());
+
+        List<Long> ids = List.of(saved.get(0).getId(), saved.get(1).getId(), -1L);
+        List<WaterPermission> found = permissionApi.findByIds(ids);
+        Assertions.assertEquals(2, found.size());
+
+        found.forEach(permission -> permission.setActionIds(4));
+        List<PermissionBatchItemResult> updated = permissionApi.updateAll(found);
+        Assertions.assertEquals(2, updated.size());
+        updated.forEach(result -> {
+            Assertions.assertTrue(result.isSuccess());
+            Assertions.assertEquals(4, result.getEntity().getActionIds());
+            Assertions.assertEquals(2, result.getEntity().getEntityVersion());
+        });
+        WaterPermission stale = updated.get(0).getEntity();
+        stale.setEntityVersion(1);
+        Assertions.assertFalse(permissionApi.updateAll(List.of(stale)).get(0).isSuccess());
+
+        List<PermissionBatchItemResult> removed = permissionApi.removeAll(ids);
+        Assertions.assertEquals(3, removed.size());
+        Assertions.assertTrue(removed.get(0).isSuccess());
+        Assertions.assertTrue(removed.get(1).isSuccess());
+        Assertions.assertFalse(removed.get(2).isSuccess());
+        Assertions.assertTrue(permissionApi.findByIds(ids).isEmpty());
+    }
+
+    /**
+     * Testing keyset pagination, every page continues from the token of the previous one
+     */
+    @Order(15)
+    @Test
+    void searchShouldPaginateWithContinuationToken() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        long roleId = 777;
+        List<WaterPermission> toSave = new ArrayList<>();
+        for (int i = 30001; i <= 30005; i++) {
+            toSave.add(createPermission(i, roleId, 0));
+        }
+        permissionApi.saveAll(toSave);
+        PermissionSearchPage firstPage = permissionApi.search(roleId, null, null, null, 2, null);
+        Assertions.assertEquals(2, firstPage.getResults().size());
+        Assertions.assertNotNull(firstPage.getContinuationToken());
+        PermissionSearchPage secondPage = permissionApi.search(roleId, null, null, null, 2, firstPage.getContinuationToken());
+        Assertions.assertEquals(2, secondPage.getResults().size());
+        Assertions.assertTrue(secondPage.getResults().get(0).getId() > firstPage.getResults().get(1).getId());
+        PermissionSearchPage lastPage = permissionApi.search(roleId, null, null, null, 2, secondPage.getContinuationToken());
+        Assertions.assertEquals(1, lastPage.getResults().size());
+        Assertions.assertNull(lastPage.getContinuationToken());
+        PermissionSearchPage filtered = permissionApi.search(roleId, 0L, "entityResourceName30003", 30003L, 10, null);
+        Assertions.assertEquals(1, filtered.getResults().size());
+        String token = firstPage.getContinuationToken();
+        //token can't be used with different filters
+        Assertions.assertThrows(WaterRuntimeException.class, () -> permissionApi.search(roleId + 1, null, null, null, 2, token));
+        Assertions.assertThrows(WaterRuntimeException.class, () -> permissionApi.search(roleId, null, null, null, 2, "not-a-token"));
+    }
+
+    @Order(16)
+    @Test
+    void exportedPermissionsShouldBeReimportedWithUpsertSemantics() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        long total = permissionApi.countAll(null);
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        Assertions.assertEquals(total, permissionApi.exportPermissions(exported));
+        String csv = exported.toString(StandardCharsets.UTF_8);
+        //header plus one line per permission
+        Assertions.assertEquals(total + 1, csv.lines().count());
+        PermissionTransferReport sameData = permissionApi.importPermissions(new ByteArrayInputStream(exported.toByteArray()));
+        Assertions.assertEquals(total, sameData.getUnchanged());
+        Assertions.assertEquals(0, sameData.getInserted());
+        Assertions.assertEquals(0, sameData.getUpdated());
+        String changes = "exampleName40001,entityResourceName40001,40001,888,0,2\n"
+                + "exampleName30001,entityResourceName30001,30001,777,0,6\n"
+                + "not,a,valid,row\n";
+        PermissionTransferReport report = permissionApi.importPermissions(new ByteArrayInputStream(changes.getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals(1, report.getInserted());
+        Assertions.assertEquals(1, report.getUpdated());
+        Assertions.assertEquals(1, report.getRejected());
+        Assertions.assertEquals(6, permissionSystemApi.findByRoleAndResourceNameAndResourceId(777, "entityResourceName30001", 30001).getActionIds());
+        //quoted fields may contain line breaks, the record goes on over the next lines
+        String lineBreaks = "\"line\nbreak, \"\"quoted\"\"\r\nname\",csvLineBreakResource,0,889,0,1\r\n";
+        Assertions.assertEquals(1, permissionApi.importPermissions(new ByteArrayInputStream(lineBreaks.getBytes(StandardCharsets.UTF_8))).getInserted());
+        Assertions.assertEquals("line\nbreak, \"quoted\"\r\nname", permissionSystemApi.findByRoleAndResourceNameAndResourceId(889, "csvLineBreakResource", 0).getName());
+        ByteArrayOutputStream reexported = new ByteArrayOutputStream();
+        permissionApi.exportPermissions(reexported);
+        PermissionTransferReport reimported = permissionApi.importPermissions(new ByteArrayInputStream(reexported.toByteArray()));
+        Assertions.assertEquals(0, reimported.getRejected());
+        Assertions.assertEquals(permissionApi.countAll(null), reimported.getUnchanged());
+    }
+
+    @Order(17)
+    @Test
+    void decisionDataShouldContainRoleUserAndEntityPermissions() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        String resourceName = "decisionResource";
+        permissionApi.saveAll(List.of(
+                new WaterPermission("roleGeneral", 3, resourceName, 0L, 901, 0),
+                new WaterPermission("roleSpecific", 1, resourceName, 5L, 901, 0),
+                new WaterPermission("otherRoleSpecific", 4, resourceName, 6L, 903, 0),
+                new WaterPermission("userGeneral", 8, resourceName, 0L, 0, 950),
+                new WaterPermission("userSpecific", 2, resourceName, 6L, 0, 950),
+                new WaterPermission("roleImpersonation", 16, User.class.getName(), 0L, 902, 0)));
+        PermissionDecisionData data = permissionApi.getDecisionData(950, List.of(901L, 902L), resourceName, List.of(5L, 6L, 7L));
+        Assertions.assertEquals(List.of(901L, 902L), data.getRoleIds());
+        Assertions.assertEquals(Map.of(901L, 3L), data.getRoleActionIds());
+        Assertions.assertEquals(8, data.getUserActionIds());
+        Assertions.assertEquals(Map.of(902L, 16L), data.getImpersonationActionIds());
+        Assertions.assertEquals(3, data.getEntityGrants().size());
+        Assertions.assertEquals(Map.of(901L, 1L), data.getEntityGrants().get(5L).getRoleActionIds());
+        Assertions.assertTrue(data.getEntityGrants().get(5L).isSpecificToEntityExists());
+        //role 903 is not a role of the user but its permission makes the entity specific
+        Assertions.assertTrue(data.getEntityGrants().get(6L).getRoleActionIds().isEmpty());
+        Assertions.assertEquals(2, data.getEntityGrants().get(6L).getUserActionIds());
+        Assertions.assertTrue(data.getEntityGrants().get(6L).isSpecificToEntityExists());
+        Assertions.assertFalse(data.getEntityGrants().get(7L).isSpecificToEntityExists());
+        Assertions.assertThrows(WaterRuntimeException.class, () -> permissionApi.getDecisionData(950, List.of(901L), null, List.of()));
+    }
+
+    @Order(18)
+    @Test
+    void versionTokenShouldChangeOnEveryModification() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        String initialToken = permissionApi.getVersionToken();
+        Assertions.assertEquals(initialToken, permissionApi.getVersionToken());
+        WaterPermission permission = permissionApi.save(new WaterPermission("versioned", 1, "versionedResource", 0L, 960, 0));
+        String savedToken = permissionApi.getVersionToken();
+        Assertions.assertNotEquals(initialToken, savedToken);
+        String permissionEtag = PermissionETags.ofPermission(permission);
+        permission.setActionIds(3);
+        permission = permissionApi.update(permission);
+        String updatedToken = permissionApi.getVersionToken();
+        Assertions.assertNotEquals(savedToken, updatedToken);
+        Assertions.assertNotEquals(permissionEtag, PermissionETags.ofPermission(permission));
+        Assertions.assertTrue(PermissionETags.matches("W/" + PermissionETags.ofPermission(permission) + ", \"other\"", PermissionETags.ofPermission(permission)));
+        Assertions.assertFalse(PermissionETags.matches(permissionEtag, PermissionETags.ofPermission(permission)));
+        Assertions.assertNotEquals(PermissionETags.ofListing(savedToken, "search", 960L), PermissionETags.ofListing(updatedToken, "search", 960L));
+        //listings filtered on the caller are tagged per user
+        String adminToken = permissionApi.getCallerVersionToken();
+        Assertions.assertEquals(adminToken, permissionApi.getCallerVersionToken());
+        TestRuntimeInitializer.getInstance().impersonate(permissionManagerUser, runtime);
+        Assertions.assertNotEquals(PermissionETags.ofListing(adminToken, "findAll", null), PermissionETags.ofListing(permissionApi.getCallerVersionToken(), "findAll", null));
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        permissionApi.remove(permission.getId());
+        Assertions.assertNotEquals(updatedToken, permissionApi.getVersionToken());
+    }
+
+    @Order(19)
+    @Test
+    void changeLogShouldReturnModificationsInOrder() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        long start = permissionRepository.getLastChangeSequence();
+        WaterPermission permission = permissionApi.save(new WaterPermission("changed", 1, "changedResource", 0L, 970, 0));
+        permission.setActionIds(7);
+        permission = permissionApi.update(permission);
+        permissionApi.remove(permission.getId());
+        PermissionChangePage firstPage = permissionApi.getChangesAfter(start, 2);
+        Assertions.assertEquals(2, firstPage.getChanges().size());
+        Assertions.assertTrue(firstPage.isHasMore());
+        Assertions.assertEquals(PermissionChangeType.INSERT, firstPage.getChanges().get(0).getChangeType());
+        Assertions.assertEquals(PermissionChangeType.UPDATE, firstPage.getChanges().get(1).getChangeType());
+        Assertions.assertEquals(7, firstPage.getChanges().get(1).getActionIds());
+        Assertions.assertTrue(firstPage.getChanges().get(0).getSequence() < firstPage.getChanges().get(1).getSequence());
+        PermissionChangePage secondPage = permissionApi.getChangesAfter(firstPage.getLastSequence(), 2);
+        Assertions.assertEquals(1, secondPage.getChanges().size());
+        Assertions.assertFalse(secondPage.isHasMore());
+        WaterPermissionChange deletion = secondPage.getChanges().get(0);
+        Assertions.assertEquals(PermissionChangeType.DELETE, deletion.getChangeType());
+        Assertions.assertEquals(permission.getId(), deletion.getPermissionId());
+        Assertions.assertEquals("changedResource", deletion.getEntityResourceName());
+        PermissionChangePage emptyPage = permissionApi.getChangesAfter(secondPage.getLastSequence(), 2);
+        Assertions.assertTrue(emptyPage.getChanges().isEmpty());
+        Assertions.assertEquals(secondPage.getLastSequence(), emptyPage.getLastSequence());
+        Assertions.assertEquals(String.valueOf(secondPage.getLastSequence()), permissionApi.getVersionToken());
+    }
+
+    @Order(20)
+    @Test
+    void permissionWritesShouldBeBroadcastToOtherNodes() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        PermissionInvalidationBus localBus = componentRegistry.findComponent(PermissionInvalidationBus.class, null);
+        List<PermissionInvalidation> localInvalidations = Collections.synchronizedList(new ArrayList<>());
+        localBus.addListener(localInvalidations::add);
+        WaterPermission permission = permissionApi.save(new WaterPermission("broadcast", 1, "broadcastResource", 0L, 980, 0));
+        Assertions.assertTrue(localInvalidations.contains(new PermissionInvalidation(980, 0, "broadcastResource", 0)));
+        permissionApi.remove(permission.getId());
+        //changes committed outside the service are published once by the next write on this node
+        localInvalidations.clear();
+        WaterPermission direct = permissionRepository.persist(new WaterPermission("broadcastDirect", 1, "broadcastDirectResource", 0L, 982, 0));
+        WaterPermission next = permissionApi.save(new WaterPermission("broadcastNext", 1, "broadcastNextResource", 0L, 983, 0));
+        Assertions.assertEquals(1, Collections.frequency(localInvalidations, new PermissionInvalidation(982, 0, "broadcastDirectResource", 0)));
+        Assertions.assertTrue(localInvalidations.contains(new PermissionInvalidation(983, 0, "broadcastNextResource", 0)));
+        permissionApi.remove(next.getId());
+        permissionApi.remove(direct.getId());
+        //imported changes are covered by the full invalidation of the import and are not published again by the next write
+        localInvalidations.clear();
+        permissionApi.importPermissions(new ByteArrayInputStream("broadcastImported,broadcastImportedResource,0,984,0,1\n".getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals(List.of(PermissionInvalidation.ALL), localInvalidations);
+        WaterPermission imported = permissionSystemApi.findByRoleAndResourceName(984, "broadcastImportedResource");
+        permissionApi.remove(imported.getId());
+        //only the removal is published, the imported insert is not replayed
+        Assertions.assertEquals(1, Collections.frequency(localInvalidations, new PermissionInvalidation(984, 0, "broadcastImportedResource", 0)));
+        //a backlog longer than the publishing limit is replaced by a single full invalidation
+        List<WaterPermission> backlog = new ArrayList<>();
+        for (int i = 1; i <= 1001; i++)
+            backlog.add(new WaterPermission("broadcastBacklog" + i, 1, "broadcastBacklogResource", (long) i, 986, 0));
+        List<Long> backlogIds = permissionRepository.persistAll(backlog).stream().map(PermissionBatchItemResult::getId).toList();
+        localInvalidations.clear();
+        WaterPermission afterBacklog = permissionApi.save(new WaterPermission("broadcastAfterBacklog", 1, "broadcastAfterBacklogResource", 0L, 987, 0));
+        Assertions.assertEquals(List.of(PermissionInvalidation.ALL), localInvalidations);
+        permissionApi.remove(afterBacklog.getId());
+        permissionApi.removeAll(backlogIds);
+
+        PermissionInvalidation roleInvalidation = new PermissionInvalidation(981, 0, "clusterResource", 0);
+        PermissionInvalidation userInvalidation = new PermissionInvalidation(0, 1L << 40, "clusterResource", 12);
+        List<PermissionInvalidation> decoded = PermissionInvalidationCodec.decode(PermissionInvalidationCodec.encode(List.of(roleInvalidation, userInvalidation, PermissionInvalidation.ALL)));
+        Assertions.assertEquals(List.of(roleInvalidation, userInvalidation, PermissionInvalidation.ALL), decoded);
+
+        PermissionInvalidationBusImpl nodeA = clusterNode("permission-test-cluster", 3);
+        PermissionInvalidationBusImpl nodeB = clusterNode("permission-test-cluster", 3);
+        List<PermissionInvalidation> received = Collections.synchronizedList(new ArrayList<>());
+        nodeB.addListener(received::add);
+        nodeA.publish(roleInvalidation);
+        nodeA.publish(roleInvalidation);
+        nodeA.publish(userInvalidation);
+        nodeA.flush();
+        Assertions.assertEquals(1, nodeA.getSentFrames());
+        Assertions.assertEquals(List.of(roleInvalidation, userInvalidation), received);
+        //bursts larger than the allowed pending invalidations collapse into a single full invalidation
+        received.clear();
+        for (int i = 1; i <= 10; i++)
+            nodeA.publish(new PermissionInvalidation(i, 0, "clusterResource", 0));
+        nodeA.flush();
+        Assertions.assertEquals(List.of(PermissionInvalidation.ALL), received);
+    }
+
+    @Order(21)
+    @Test
+    void actionsBeyondTheSixtyFourthShouldBePersisted() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        WaterPermission permission = new WaterPermission("extendedActions", 1, "extendedResource", 0L, 990, 0);
+        permission.setActionSet(ActionSet.of(0, 65, 140));
+        long beforeSave = permissionRepository.getLastChangeSequence();
+        permission = permissionApi.save(permission);
+        //change log consumers receive the actions beyond the 64th too
+        Assertions.assertEquals(ActionSet.of(0, 65, 140), permissionApi.getChangesAfter(beforeSave, 1).getChanges().get(0).getActionSet());
+        WaterPermission persisted = permissionSystemApi.find(permission.getId());
+        Assertions.assertEquals(ActionSet.of(0, 65, 140), persisted.getActionSet());
+        Assertions.assertTrue(persisted.includesActions(ActionSet.of(140)));
+        Assertions.assertFalse(persisted.includesActions(ActionSet.of(141)));
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        permissionApi.exportPermissions(exported);
+        persisted.setActionSet(ActionSet.of(0));
+        permissionApi.update(persisted);
+        PermissionTransferReport report = permissionApi.importPermissions(new ByteArrayInputStream(exported.toByteArray()));
+        Assertions.assertEquals(1, report.getUpdated());
+        Assertions.assertEquals(ActionSet.of(0, 65, 140), permissionSystemApi.find(permission.getId()).getActionSet());
+        //a specific permission granting only actions beyond the 64th is found, but grants none of the indexed actions
+        WaterPermission extendedOnly = new WaterPermission("extendedOnly", 0, "extendedResource", 4L, 990, 0);
+        extendedOnly.setActionSet(ActionSet.of(65));
+        permissionApi.save(extendedOnly);
+        Assertions.assertNotNull(permissionSystemApi.findByRoleAndResourceNameAndResourceId(990, "extendedResource", 4));
+        Assertions.assertEquals(0, permissionSystemApi.findResourceIdsGrantedToRoles(List.of(990L), "extendedResource", 1).length);
+    }
+
+    /**
+     * Every distinct resource name is stored once in the dictionary and all the permissions of a resource
+     * reference the same dictionary row.
+     */
+    @Order(22)
+    @Test
+    void resourceNamesShouldBeStoredOnceInTheDictionary() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        int resources = 8;
+        int rowsPerResource = 25;
+        long namesBefore = permissionRepository.countResourceNames();
+        List<String> resourceNames = new ArrayList<>();
+        List<WaterPermission> toSave = new ArrayList<>();
+        for (int r = 0; r < resources; r++) {
+            String resourceName = "it.water.permission.dictionary.SomeRatherLongEntityResourceName" + r;
+            resourceNames.add(resourceName);
+            for (int i = 1; i <= rowsPerResource; i++)
+                toSave.add(new WaterPermission("dictionary" + r + "_" + i, 2, resourceName, (long) i, 1000 + r, 0));
+        }
+        Assertions.assertTrue(permissionApi.saveAll(toSave).stream().allMatch(PermissionBatchItemResult::isSuccess));
+        //one dictionary row per distinct name, whatever the number of permissions
+        Assertions.assertEquals(namesBefore + resources, permissionRepository.countResourceNames());
+        Map<String, Integer> resourceNameIds = permissionRepository.findResourceNameIds(resourceNames);
+        Assertions.assertEquals(resources, resourceNameIds.size());
+        Assertions.assertEquals(resources, new HashSet<>(resourceNameIds.values()).size());
+        //saving again a known name doesn't add dictionary rows
+        permissionApi.save(new WaterPermission("dictionaryAgain", 2, resourceNames.get(0), 0L, 1100, 0));
+        Assertions.assertEquals(namesBefore + resources, permissionRepository.countResourceNames());
+        //stored rows reference the dictionary row of their name and resolve it back on load
+        for (int r = 0; r < resources; r++) {
+            String resourceName = resourceNames.get(r);
+            for (int i = 1; i <= rowsPerResource; i++) {
+                WaterPermission found = permissionSystemApi.findByRoleAndResourceNameAndResourceId(1000 + r, resourceName, i);
+                Assertions.assertEquals(resourceNameIds.get(resourceName), found.getResourceNameId());
+                Assertions.assertEquals(resourceName, found.getEntityResourceName());
+            }
+        }
+        Assertions.assertNull(permissionSystemApi.findByRoleAndResourceName(1003, "it.water.permission.dictionary.Missing"));
+        Assertions.assertTrue(permissionRepository.findResourceNameIds(List.of("it.water.permission.dictionary.Missing")).isEmpty());
+        //the name is not a column of the permission table: generic filters can't use it, search matches it through the dictionary
+        Query byResourceName = permissionRepository.getQueryBuilderInstance().createQueryFilter("entityResourceName=decisionResource");
+        Assertions.assertThrows(RuntimeException.class, () -> permissionApi.findAll(byResourceName, -1, -1, null));
+        Assertions.assertFalse(permissionApi.search(null, null, "decisionResource", null, 10, null).getResults().isEmpty());
+    }
+
+    /**
+     * Resource decision data covers the entities with specific permissions of the user or of its roles, plus the requested ones,
+     * data of order 17 is reused.
+     */
+    @Order(23)
+    @Test
+    void resourceDecisionDataShouldContainEveryEntityOfTheUserAndItsRoles() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        String resourceName = "decisionResource";
+        permissionApi.save(new WaterPermission("otherRoleOnly", 4, resourceName, 8L, 903, 0));
+        PermissionDecisionData data = permissionApi.getResourceDecisionData(950, List.of(901L, 902L), resourceName, List.of(7L));
+        Assertions.assertEquals(Set.of(5L, 6L, 7L), data.getEntityGrants().keySet());
+        Assertions.assertEquals(Map.of(901L, 3L), data.getRoleActionIds());
+        Assertions.assertEquals(2, data.getEntityGrants().get(6L).getUserActionIds());
+        Assertions.assertFalse(data.getEntityGrants().get(7L).isSpecificToEntityExists());
+        Assertions.assertEquals(Set.of(5L), permissionApi.getResourceDecisionData(951, List.of(901L), resourceName, List.of()).getEntityGrants().keySet());
+    }
+
+    /**
+     * Grantees are found following the rules of the permission manager: specific permissions hide the resource type ones.
+     */
+    @Order(24)
+    @Test
+    void granteesShouldBeFoundFromRoleAndEntityPermissions() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        String resourceName = "granteeResource";
+        permissionApi.saveAll(List.of(
+                new WaterPermission("granteeRole", 3, resourceName, 0L, 1001, 0),
+                new WaterPermission("deniedOnEntityRole", 1, resourceName, 0L, 1002, 0),
+                new WaterPermission("deniedOnEntityRoleSpecific", 2, resourceName, 7L, 1002, 0),
+                new WaterPermission("entityRole", 1, resourceName, 7L, 1003, 0),
+                new WaterPermission("otherEntityRole", 1, resourceName, 8L, 1004, 0),
+                new WaterPermission("otherActionUser", 2, resourceName, 0L, 0, 1101),
+                new WaterPermission("entityUser", 5, resourceName, 7L, 0, 1102),
+                new WaterPermission("granteeUser", 1, resourceName, 0L, 0, 1103)));
+        PermissionGranteePage firstPage = permissionApi.findGrantees(resourceName, 7, 1, 2, null);
+        Assertions.assertEquals(List.of(1102L, 1103L), firstPage.getUserIds());
+        Assertions.assertTrue(firstPage.getRoleIds().isEmpty());
+        Assertions.assertNotNull(firstPage.getContinuationToken());
+        PermissionGranteePage secondPage = permissionApi.findGrantees(resourceName, 7, 1, 2, firstPage.getContinuationToken());
+        Assertions.assertTrue(secondPage.getUserIds().isEmpty());
+        Assertions.assertEquals(List.of(1001L, 1003L), secondPage.getRoleIds());
+        Assertions.assertNull(secondPage.getContinuationToken());
+        PermissionGranteePage resourceTypePage = permissionApi.findGrantees(resourceName, 0, 1, 100, null);
+        Assertions.assertEquals(List.of(1103L), resourceTypePage.getUserIds());
+        Assertions.assertEquals(List.of(1001L, 1002L), resourceTypePage.getRoleIds());
+        String token = firstPage.getContinuationToken();
+        Assertions.assertThrows(WaterRuntimeException.class, () -> permissionApi.findGrantees(resourceName, 8, 1, 2, token));
+        Assertions.assertThrows(WaterRuntimeException.class, () -> permissionApi.findGrantees(resourceName, 7, 0, 2, null));
+    }
+
+    /**
+     * Batch operations look up persisted rows and dictionary entries once per chunk, not once per item
+     */
+    @Order(25)
+    @Test
+    void batchOperationsShouldNotQueryOncePerItem() {
+        int items = 150;
+        List<WaterPermission> toSave = new ArrayList<>();
+        for (int i = 0; i < items; i++)
+            toSave.add(new WaterPermission("batchLookup" + i, 1, "batchLookupResource" + (i % 5), (long) i, 1501, 0));
+        long selects = SelectStatementCounter.count();
+        List<PermissionBatchItemResult> saved = permissionRepository.persistAll(toSave);
+        long persistSelects = SelectStatementCounter.count() - selects;
+        Assertions.assertTrue(saved.stream().allMatch(PermissionBatchItemResult::isSuccess));
+        //one row per item was queried before, 3 chunks now need 2 queries each
+        Assertions.assertTrue(persistSelects < items / 10, "Selects issued by persistAll: " + persistSelects);
+
+        List<WaterPermission> duplicates = new ArrayList<>();
+        for (int i = 0; i < items; i++)
+            duplicates.add(new WaterPermission("batchLookup" + i, 1, "batchLookupResource" + (i % 5), (long) i, 1501, 0));
+        Assertions.assertTrue(permissionRepository.persistAll(duplicates).stream().noneMatch(PermissionBatchItemResult::isSuccess));
+
+        List<Long> ids = saved.stream().map(PermissionBatchItemResult::getId).toList();
+        List<WaterPermission> found = permissionRepository.findByIds(ids);
+        found.forEach(permission -> permission.setActionIds(3));
+        selects = SelectStatementCounter.count();
+        List<PermissionBatchItemResult> updated = permissionRepository.updateAll(found);
+        long updateSelects = SelectStatementCounter.count() - selects;
+        Assertions.assertTrue(updated.stream().allMatch(PermissionBatchItemResult::isSuccess));
+        Assertions.assertTrue(updateSelects < items / 10, "Selects issued by updateAll: " + updateSelects);
+        Assertions.assertTrue(permissionRepository.findByIds(ids).stream().allMatch(permission -> permission.getActionIds() == 3));
+
+        selects = SelectStatementCounter.count();
+        List<PermissionBatchItemResult> removed = permissionRepository.removeAll(ids);
+        long removeSelects = SelectStatementCounter.count() - selects;
+        Assertions.assertTrue(removed.stream().allMatch(PermissionBatchItemResult::isSuccess));
+        Assertions.assertTrue(removeSelects < items / 10, "Selects issued by removeAll: " + removeSelects);
+        Assertions.assertTrue(permissionRepository.findByIds(ids).isEmpty());
+    }
+
+    /**
+     * Imports look up persisted rows once per chunk, so statements grow with the chunks and not with the rows.
+     * Throughput is logged rather than asserted, since it depends on the machine running the build.
+     */
+    @Order(26)
+    @Test
+    void importShouldScaleWithChunksNotRows() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        for (int rows : new int[]{1000, 4000}) {
+            StringBuilder csv = new StringBuilder();
+            for (int i = 0; i < rows; i++)
+                csv.append("importScale").append(i).append(",importScaleResource").append(i % 10).append(',').append(i).append(',').append(1600 + rows).append(",0,1\n");
+            byte[] content = csv.toString().getBytes(StandardCharsets.UTF_8);
+            long selects = SelectStatementCounter.count();
+            long start = System.nanoTime();
+            PermissionTransferReport inserted = permissionApi.importPermissions(new ByteArrayInputStream(content));
+            long insertNanos = System.nanoTime() - start;
+            long insertSelects = SelectStatementCounter.count() - selects;
+            selects = SelectStatementCounter.count();
+            start = System.nanoTime();
+            PermissionTransferReport unchanged = permissionApi.importPermissions(new ByteArrayInputStream(content));
+            long unchangedNanos = System.nanoTime() - start;
+            long unchangedSelects = SelectStatementCounter.count() - selects;
+            log.info("Import of {} rows: inserted at {} rows/s with {} selects, unchanged at {} rows/s with {} selects",
+                    rows, rows * 1_000_000_000L / insertNanos, insertSelects, rows * 1_000_000_000L / unchangedNanos, unchangedSelects);
+            Assertions.assertEquals(rows, inserted.getInserted());
+            Assertions.assertEquals(rows, unchanged.getUnchanged());
+            //one row per item was queried before, each chunk of 50 rows now needs 2 queries
+            Assertions.assertTrue(insertSelects < rows / 10, "Selects issued by the import: " + insertSelects);
+            Assertions.assertTrue(unchangedSelects < rows / 10, "Selects issued by the unchanged import: " + unchangedSelects);
+        }
+    }
+
+    private PermissionInvalidationBusImpl clusterNode(String channel, long maxPending) {
+        Map<String, Object> values = Map.of(PermissionInvalidationBusImpl.COALESCE_WINDOW_PROPERTY, 60000L, PermissionInvalidationBusImpl.MAX_PENDING_PROPERTY, maxPending);
+        ApplicationProperties applicationProperties = Mockito.mock(ApplicationProperties.class,
+                invocation -> values.getOrDefault(invocation.getArgument(0), invocation.getArgument(1)));
+        PermissionInvalidationBusImpl bus = new PermissionInvalidationBusImpl();
+        bus.setApplicationProperties(applicationProperties);
+        bus.setTransport(new InJvmPermissionInvalidationTransport(channel));
+        return bus;
+    }
+
     private WaterPermission createPermission(int seed,Class<?> resourceClass, long roleId, long userId,long resourceId) {
         WaterPermission entity = new WaterPermission("exampleName" + seed, 2, resourceClass.getName(), resourceId, roleId, userId);
         return entity;
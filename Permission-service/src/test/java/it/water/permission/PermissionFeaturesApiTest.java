@@ -0,0 +1,266 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.Service;
+import it.water.core.interceptors.annotations.Inject;
+import it.water.core.testing.utils.junit.WaterTestExtension;
+import it.water.core.testing.utils.runtime.TestRuntimeUtils;
+import it.water.permission.api.PermissionApi;
+import it.water.permission.api.PermissionRepository;
+import it.water.permission.api.PermissionSystemApi;
+import it.water.permission.api.invalidation.PermissionInvalidationBus;
+import it.water.permission.model.EffectivePermissionReport;
+import it.water.permission.model.PermissionBatchItemResult;
+import it.water.permission.model.PermissionIndexPreloadStatus;
+import it.water.permission.model.PermissionInvalidation;
+import it.water.permission.model.PermissionSnapshotReport;
+import it.water.permission.model.PermissionTransferReport;
+import it.water.permission.model.WaterEffectivePermission;
+import it.water.permission.model.WaterPermission;
+import it.water.permission.model.WaterPermissionChange;
+import lombok.Setter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Tests of the optional features of the permission service: the effective permission store, the role grant index,
+ * its preload and the snapshot. They are off in the test configuration, the featuresTest task runs this class
+ * with src/featuresTest/resources/it.water.application.properties, which enables them.
+ */
+@Tag("features")
+@ExtendWith(WaterTestExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class PermissionFeaturesApiTest implements Service {
+
+    @Inject
+    @Setter
+    private ComponentRegistry componentRegistry;
+
+    @Inject
+    @Setter
+    private PermissionApi permissionApi;
+
+    @Inject
+    @Setter
+    private PermissionSystemApi permissionSystemApi;
+
+    @Inject
+    @Setter
+    private PermissionRepository permissionRepository;
+
+    /**
+     * The effective permission store follows permission writes and role membership changes.
+     */
+    @Order(1)
+    @Test
+    void effectivePermissionsShouldFollowPermissionAndMembershipChanges() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        Assertions.assertTrue(permissionSystemApi.isEffectivePermissionStoreEnabled());
+        String resourceName = "effectiveResource";
+        long userId = 9001;
+        WaterPermission rolePermission = permissionApi.save(new WaterPermission("effectiveRole", 1, resourceName, 0L, 9101, 0));
+        permissionApi.save(new WaterPermission("effectiveOtherRole", 4, resourceName, 0L, 9102, 0));
+        WaterEffectivePermission effective = effectivePermission(userId, List.of(9101L), resourceName);
+        Assertions.assertEquals(1, effective.getActionIds());
+        Assertions.assertEquals(1, effective.getRoleActionIds());
+        //user permissions are not part of the role actions
+        WaterPermission userPermission = permissionApi.save(new WaterPermission("effectiveUser", 2, resourceName, 0L, 0, userId));
+        effective = effectivePermission(userId, List.of(9101L), resourceName);
+        Assertions.assertEquals(3, effective.getActionIds());
+        Assertions.assertEquals(1, effective.getRoleActionIds());
+        //membership changes are detected from the given roles
+        effective = effectivePermission(userId, List.of(9101L, 9102L), resourceName);
+        Assertions.assertEquals(7, effective.getActionIds());
+        Assertions.assertEquals(5, effective.getRoleActionIds());
+        //the membership is recorded once, later decisions with the same roles only read it
+        Assertions.assertTrue(permissionRepository.hasEffectivePermissionUserRoles(userId, List.of(9102L, 9101L)));
+        Assertions.assertFalse(permissionRepository.hasEffectivePermissionUserRoles(userId, List.of(9101L)));
+        Assertions.assertFalse(permissionRepository.updateEffectivePermissionUser(userId, List.of(9102L, 9101L)));
+        permissionApi.save(new WaterPermission("effectiveSpecific", 8, resourceName, 42L, 9102, 0));
+        List<WaterEffectivePermission> rows = permissionSystemApi.findEffectivePermissions(userId, List.of(9101L, 9102L), resourceName, 42);
+        Assertions.assertEquals(2, rows.size());
+        Assertions.assertTrue(rows.stream().anyMatch(row -> row.getResourceId() == 42 && row.getActionIds() == 8));
+        rolePermission.setActionIds(16);
+        permissionApi.update(rolePermission);
+        Assertions.assertEquals(22, effectivePermission(userId, List.of(9101L, 9102L), resourceName).getActionIds());
+        permissionApi.remove(userPermission.getId());
+        Assertions.assertEquals(20, effectivePermission(userId, List.of(9101L, 9102L), resourceName).getActionIds());
+
+        //writes made straight through the repository update the store inside their own transaction
+        permissionRepository.persist(new WaterPermission("effectiveHidden", 32, "effectiveHiddenResource", 0L, 9101, 0));
+        Assertions.assertEquals(32, effectivePermission(userId, List.of(9101L, 9102L), "effectiveHiddenResource").getActionIds());
+        EffectivePermissionReport check = permissionApi.checkEffectivePermissions();
+        Assertions.assertTrue(check.isConsistent());
+        Assertions.assertEquals(0, check.getMissingRows());
+        Assertions.assertTrue(permissionApi.repairEffectivePermissions().isConsistent());
+        //moving a permission to another role revokes its actions from the members of the previous role in the same transaction
+        WaterPermission moving = permissionApi.save(new WaterPermission("effectiveMoving", 64, "effectiveMovingResource", 0L, 9101, 0));
+        Assertions.assertEquals(64, effectivePermission(userId, List.of(9101L, 9102L), "effectiveMovingResource").getActionIds());
+        WaterPermission moved = new WaterPermission("effectiveMoving", 64, "effectiveMovingResource", 0L, 9103, 0);
+        moved.setId(moving.getId());
+        moved.setEntityVersion(moving.getEntityVersion());
+        long beforeMove = permissionRepository.getLastChangeSequence();
+        permissionApi.update(moved);
+        WaterPermissionChange move = permissionRepository.findChangesAfter(beforeMove, 1).get(0);
+        Assertions.assertTrue(move.isMoved());
+        Assertions.assertEquals(9101, move.getPreviousRoleId());
+        Assertions.assertEquals(9103, move.getRoleId());
+        //caches drop the grant under both roles
+        Assertions.assertEquals(List.of(new PermissionInvalidation(9103, 0, "effectiveMovingResource", 0), new PermissionInvalidation(9101, 0, "effectiveMovingResource", 0)),
+                PermissionInvalidation.forChange(move));
+        Assertions.assertNull(effectivePermission(userId, List.of(9101L, 9102L), "effectiveMovingResource"));
+        Assertions.assertTrue(permissionApi.checkEffectivePermissions().isConsistent());
+        //imports update the store through the upserts, without rebuilding it
+        String imported = "effectiveImported,effectiveImportedResource,0,9101,0,128\n"
+                + "effectiveRole," + resourceName + ",0,9101,0,48\n";
+        PermissionTransferReport importReport = permissionApi.importPermissions(new ByteArrayInputStream(imported.getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals(1, importReport.getInserted());
+        Assertions.assertEquals(1, importReport.getUpdated());
+        Assertions.assertEquals(128, effectivePermission(userId, List.of(9101L, 9102L), "effectiveImportedResource").getActionIds());
+        Assertions.assertEquals(52, effectivePermission(userId, List.of(9101L, 9102L), resourceName).getActionIds());
+        Assertions.assertTrue(permissionApi.checkEffectivePermissions().isConsistent());
+        EffectivePermissionReport rebuild = permissionApi.rebuildEffectivePermissions();
+        Assertions.assertTrue(rebuild.isConsistent());
+        Assertions.assertTrue(rebuild.getUsers() >= 1);
+    }
+
+    /**
+     * The role grant index follows saves, updates and removals of specific permissions.
+     */
+    @Order(2)
+    @Test
+    void roleGrantIndexShouldFollowEntitySpecificPermissionChanges() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        String resourceName = "grantIndexResource";
+        List<PermissionBatchItemResult> saved = permissionApi.saveAll(List.of(
+                new WaterPermission("grantIndexRole", 1, resourceName, 0L, 1201, 0),
+                new WaterPermission("grantIndexFirst", 3, resourceName, 5L, 1201, 0),
+                new WaterPermission("grantIndexSecond", 1, resourceName, 9L, 1201, 0),
+                new WaterPermission("grantIndexOtherRole", 3, resourceName, 2L, 1202, 0),
+                new WaterPermission("grantIndexUser", 3, resourceName, 4L, 0, 1301)));
+        Assertions.assertTrue(saved.stream().allMatch(PermissionBatchItemResult::isSuccess));
+        Assertions.assertArrayEquals(new long[]{5, 9}, permissionSystemApi.findResourceIdsGrantedToRoles(List.of(1201L), resourceName, 1));
+        Assertions.assertArrayEquals(new long[]{5}, permissionSystemApi.findResourceIdsGrantedToRoles(List.of(1201L), resourceName, 3));
+        Assertions.assertArrayEquals(new long[]{2, 5}, permissionSystemApi.findResourceIdsGrantedToRoles(List.of(1201L, 1202L), resourceName, 2));
+        Assertions.assertEquals(0, permissionSystemApi.findResourceIdsGrantedToRoles(List.of(1201L), resourceName, 4).length);
+        //entities without a specific permission are answered by the index
+        Assertions.assertNotNull(permissionSystemApi.findByRoleAndResourceNameAndResourceId(1201, resourceName, 9));
+        Assertions.assertNull(permissionSystemApi.findByRoleAndResourceNameAndResourceId(1201, resourceName, 12));
+
+        WaterPermission second = saved.get(2).getEntity();
+        second.setActionIds(2);
+        permissionApi.update(second);
+        Assertions.assertArrayEquals(new long[]{5}, permissionSystemApi.findResourceIdsGrantedToRoles(List.of(1201L), resourceName, 1));
+        Assertions.assertArrayEquals(new long[]{5, 9}, permissionSystemApi.findResourceIdsGrantedToRoles(List.of(1201L), resourceName, 2));
+        permissionApi.remove(saved.get(1).getId());
+        Assertions.assertArrayEquals(new long[]{9}, permissionSystemApi.findResourceIdsGrantedToRoles(List.of(1201L), resourceName, 2));
+        Assertions.assertNull(permissionSystemApi.findByRoleAndResourceNameAndResourceId(1201, resourceName, 5));
+        permissionApi.save(new WaterPermission("grantIndexThird", 2, resourceName, 7L, 1201, 0));
+        Assertions.assertArrayEquals(new long[]{7, 9}, permissionSystemApi.findResourceIdsGrantedToRoles(List.of(1201L), resourceName, 2));
+        Assertions.assertEquals(2, permissionSystemApi.findByRoleAndResourceNameAndResourceId(1201, resourceName, 7).getActionIds());
+    }
+
+    /**
+     * The preload loads the role grant index, once.
+     */
+    @Order(3)
+    @Test
+    void grantIndexShouldBePreloadedOnce() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        PermissionIndexPreloadStatus before = permissionApi.getIndexPreloadStatus();
+        Assertions.assertFalse(before.isStarted());
+        Assertions.assertFalse(before.isReady());
+        PermissionIndexPreloadStatus status = permissionApi.preloadIndex();
+        Assertions.assertTrue(status.isStarted());
+        Assertions.assertTrue(status.isReady());
+        Assertions.assertFalse(status.isTimedOut());
+        Assertions.assertFalse(status.isFailed());
+        Assertions.assertTrue(status.getRolePermissions() > 0);
+        PermissionIndexPreloadStatus again = permissionApi.preloadIndex();
+        Assertions.assertEquals(status.getRolePermissions(), again.getRolePermissions());
+        Assertions.assertEquals(status.getElapsedMillis(), again.getElapsedMillis());
+        Assertions.assertTrue(permissionApi.getIndexPreloadStatus().isReady());
+        //role level permissions are answered by the index as well
+        Assertions.assertNotNull(permissionSystemApi.findByRoleAndResourceName(1201, "grantIndexResource"));
+        Assertions.assertNull(permissionSystemApi.findByRoleAndResourceName(1202, "grantIndexResource"));
+    }
+
+    /**
+     * The role grant index is built from the snapshot file, catching up on later changes, corrupt snapshots are ignored.
+     */
+    @Order(4)
+    @Test
+    void roleGrantIndexShouldBeLoadedFromValidSnapshotsOnly() throws IOException {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        String resourceName = "snapshotResource";
+        permissionApi.saveAll(List.of(
+                new WaterPermission("snapshotRole", 1, resourceName, 0L, 1401, 0),
+                new WaterPermission("snapshotFirst", 1, resourceName, 3L, 1401, 0)));
+        PermissionSnapshotReport report = permissionApi.writePermissionSnapshot();
+        Assertions.assertEquals(permissionRepository.getLastChangeSequence(), report.getVersion());
+        Assertions.assertTrue(report.getPermissions() >= 2);
+        Path snapshot = Paths.get("build/permission-snapshot.bin");
+        Assertions.assertEquals(Files.size(snapshot), report.getSizeBytes());
+        //changes recorded after the snapshot are applied when it is loaded
+        WaterPermission second = permissionApi.save(new WaterPermission("snapshotSecond", 1, resourceName, 8L, 1401, 0));
+        WaterPermission third = permissionApi.save(new WaterPermission("snapshotThird", 1, resourceName, 5L, 1401, 0));
+        //a permission moved to another role and entity leaves its previous key, both in the built index and when catching up
+        WaterPermission moved = new WaterPermission("snapshotThird", 1, resourceName, 6L, 1402, 0);
+        moved.setId(third.getId());
+        moved.setEntityVersion(third.getEntityVersion());
+        permissionApi.update(moved);
+        Assertions.assertArrayEquals(new long[]{3, 8}, permissionSystemApi.findResourceIdsGrantedToRoles(List.of(1401L), resourceName, 1));
+        Assertions.assertArrayEquals(new long[]{6}, permissionSystemApi.findResourceIdsGrantedToRoles(List.of(1402L), resourceName, 1));
+        PermissionInvalidationBus bus = componentRegistry.findComponent(PermissionInvalidationBus.class, null);
+        bus.publish(PermissionInvalidation.ALL);
+        //writing the snapshot builds the index synchronously, from the previous snapshot
+        permissionApi.writePermissionSnapshot();
+        Assertions.assertArrayEquals(new long[]{3, 8}, permissionSystemApi.findResourceIdsGrantedToRoles(List.of(1401L), resourceName, 1));
+        Assertions.assertArrayEquals(new long[]{6}, permissionSystemApi.findResourceIdsGrantedToRoles(List.of(1402L), resourceName, 1));
+        Assertions.assertNotNull(permissionSystemApi.findByRoleAndResourceName(1401, resourceName));
+        //a corrupt snapshot is ignored and the permission table is scanned
+        permissionApi.remove(second.getId());
+        byte[] content = Files.readAllBytes(snapshot);
+        content[content.length / 2] ^= 0x7f;
+        Files.write(snapshot, content);
+        bus.publish(PermissionInvalidation.ALL);
+        permissionApi.writePermissionSnapshot();
+        Assertions.assertArrayEquals(new long[]{3}, permissionSystemApi.findResourceIdsGrantedToRoles(List.of(1401L), resourceName, 1));
+        Assertions.assertNotNull(permissionSystemApi.findByRoleAndResourceName(1401, resourceName));
+    }
+
+    private WaterEffectivePermission effectivePermission(long userId, List<Long> roleIds, String resourceName) {
+        return permissionSystemApi.findEffectivePermissions(userId, roleIds, resourceName, 0).stream().findFirst().orElse(null);
+    }
+}
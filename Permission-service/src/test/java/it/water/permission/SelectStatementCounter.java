@@ -0,0 +1,40 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.permission;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the select statements prepared by hibernate, registered through hibernate.properties.
+ * Used by tests to check the number of round trips of an operation.
+ */
+public class SelectStatementCounter implements StatementInspector {
+    private static final AtomicLong selects = new AtomicLong();
+
+    public static long count() {
+        return selects.get();
+    }
+
+    @Override
+    public String inspect(String sql) {
+        if (sql.trim().toLowerCase().startsWith("select"))
+            selects.incrementAndGet();
+        return sql;
+    }
+}
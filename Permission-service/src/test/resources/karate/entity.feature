@@ -108,6 +108,31 @@ Feature: Check Permission Rest Api Response
        }
     """
 
+  # --------------- SMILE FIND -----------------------------
+
+    * def jsonPermission = response
+    Given header Accept = 'application/x-jackson-smile'
+    Given url serviceBaseUrl+'/water/permissions/'+entityId
+    When method GET
+    Then status 200
+    And match karate.response.header('Content-Type') contains 'application/x-jackson-smile'
+    # ---- Smile must carry the same fields of the json response ----
+    * def SmileFactory = Java.type('com.fasterxml.jackson.dataformat.smile.SmileFactory')
+    * def ObjectMapper = Java.type('com.fasterxml.jackson.databind.ObjectMapper')
+    * def LinkedHashMap = Java.type('java.util.LinkedHashMap')
+    * def smilePermission = new ObjectMapper(new SmileFactory()).readValue(responseBytes, LinkedHashMap.class)
+    And match smilePermission == jsonPermission
+
+  # --------------- CONDITIONAL FIND -----------------------------
+
+    * def permissionEtag = karate.response.header('ETag')
+    * match permissionEtag == '#string'
+    Given header Accept = 'application/json'
+    And header If-None-Match = permissionEtag
+    Given url serviceBaseUrl+'/water/permissions/'+entityId
+    When method GET
+    Then status 304
+
   # --------------- FIND ALL -----------------------------
 
     Given header Content-Type = 'application/json'
@@ -133,6 +158,16 @@ Feature: Check Permission Rest Api Response
     }
     """
 
+  # --------------- CONDITIONAL FIND ALL -----------------------------
+
+    * def listingEtag = karate.response.header('ETag')
+    * match listingEtag == '#string'
+    Given header Accept = 'application/json'
+    And header If-None-Match = listingEtag
+    Given url serviceBaseUrl+'/water/permissions'
+    When method GET
+    Then status 304
+
     # --------------- PERMISSION MAP -----------------------------
 
     Given header Content-Type = 'application/json'